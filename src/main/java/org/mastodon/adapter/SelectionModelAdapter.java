@@ -5,8 +5,11 @@ import java.util.Collection;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.Vertex;
+import org.mastodon.model.SelectionDelta;
+import org.mastodon.model.SelectionDeltaListener;
 import org.mastodon.model.SelectionListener;
 import org.mastodon.model.SelectionModel;
+import org.mastodon.util.Listeners;
 
 /**
  * Adapts a {@code SelectionModel<V, E>} as a {@code SelectionModel<WV, WE>}.
@@ -33,6 +36,14 @@ public class SelectionModelAdapter< V extends Vertex< E >, E extends Edge< V >,
 
 	private final ForwardedListeners< SelectionListener > listeners;
 
+	private final Listeners.List< SelectionDeltaListener< WV, WE > > deltaListeners;
+
+	/**
+	 * Registered to the adapted selection model, forwards its deltas to
+	 * {@link #deltaListeners} with vertices and edges mapped.
+	 */
+	private final SelectionDeltaListener< V, E > deltaForwarder;
+
 	public SelectionModelAdapter(
 			final SelectionModel< V, E > selection,
 			final RefBimap< V, WV > vertexMap,
@@ -42,6 +53,24 @@ public class SelectionModelAdapter< V extends Vertex< E >, E extends Edge< V >,
 		this.vertexMap = vertexMap;
 		this.edgeMap = edgeMap;
 		this.listeners = new ForwardedListeners.SynchronizedList<>( selection.listeners() );
+		this.deltaListeners = new Listeners.SynchronizedList<>();
+		this.deltaForwarder = delta -> {
+			if ( deltaListeners.list.isEmpty() )
+				return;
+			final SelectionDelta< WV, WE > wrapped = new DeltaAdapter( delta );
+			for ( final SelectionDeltaListener< WV, WE > l : deltaListeners.list )
+				l.selectionChanged( wrapped );
+		};
+		selection.deltaListeners().add( deltaForwarder );
+	}
+
+	/**
+	 * Unregisters this adapter from the adapted selection model. The
+	 * {@link #deltaListeners()} of this adapter are not notified anymore.
+	 */
+	public void dispose()
+	{
+		selection.deltaListeners().remove( deltaForwarder );
 	}
 
 	@Override
@@ -110,6 +139,18 @@ public class SelectionModelAdapter< V extends Vertex< E >, E extends Edge< V >,
 		return new RefSetAdapter<>( selection.getSelectedVertices(), vertexMap );
 	}
 
+	@Override
+	public RefSet< WE > getSelectedEdgesView()
+	{
+		return new RefSetAdapter<>( selection.getSelectedEdgesView(), edgeMap );
+	}
+
+	@Override
+	public RefSet< WV > getSelectedVerticesView()
+	{
+		return new RefSetAdapter<>( selection.getSelectedVerticesView(), vertexMap );
+	}
+
 	@Override
 	public boolean isEmpty()
 	{
@@ -122,6 +163,12 @@ public class SelectionModelAdapter< V extends Vertex< E >, E extends Edge< V >,
 		return listeners;
 	}
 
+	@Override
+	public Listeners< SelectionDeltaListener< WV, WE > > deltaListeners()
+	{
+		return deltaListeners;
+	}
+
 	@Override
 	public void resumeListeners()
 	{
@@ -133,4 +180,44 @@ public class SelectionModelAdapter< V extends Vertex< E >, E extends Edge< V >,
 	{
 		selection.pauseListeners();
 	}
+
+	private class DeltaAdapter implements SelectionDelta< WV, WE >
+	{
+		private final SelectionDelta< V, E > delta;
+
+		DeltaAdapter( final SelectionDelta< V, E > delta )
+		{
+			this.delta = delta;
+		}
+
+		@Override
+		public RefSet< WV > getAddedVertices()
+		{
+			return new RefSetAdapter<>( delta.getAddedVertices(), vertexMap );
+		}
+
+		@Override
+		public RefSet< WV > getRemovedVertices()
+		{
+			return new RefSetAdapter<>( delta.getRemovedVertices(), vertexMap );
+		}
+
+		@Override
+		public RefSet< WE > getAddedEdges()
+		{
+			return new RefSetAdapter<>( delta.getAddedEdges(), edgeMap );
+		}
+
+		@Override
+		public RefSet< WE > getRemovedEdges()
+		{
+			return new RefSetAdapter<>( delta.getRemovedEdges(), edgeMap );
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return delta.isEmpty();
+		}
+	}
 }
@@ -5,9 +5,9 @@ import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.ref.AbstractListenableEdge;
 import org.mastodon.grouping.GroupManager;
 import org.mastodon.grouping.GroupableModelFactory;
+import org.mastodon.model.BitSetSelectionModel;
 import org.mastodon.model.DefaultFocusModel;
 import org.mastodon.model.DefaultHighlightModel;
-import org.mastodon.model.DefaultSelectionModel;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.ForwardingNavigationHandler;
 import org.mastodon.model.ForwardingTimepointModel;
@@ -39,6 +39,12 @@ public class MastodonAppModel<
 
 	public final GroupableModelFactory< TimepointModel > TIMEPOINT = ForwardingTimepointModel.factory;
 
+	/**
+	 * Time window within which selection changes are coalesced before
+	 * {@link org.mastodon.model.SelectionDeltaListener}s are notified.
+	 */
+	private static final long SELECTION_DELTA_WINDOW_MILLIS = 20;
+
 	private final M model;
 
 	private final SelectionModel< V, E > selectionModel;
@@ -94,7 +100,8 @@ public class MastodonAppModel<
 		final ListenableReadOnlyGraph< V, E > graph = model.getGraph();
 		final GraphIdBimap< V, E > idmap = model.getGraphIdBimap();
 
-		final DefaultSelectionModel< V, E > selectionModel = new DefaultSelectionModel<>( graph, idmap );
+		final BitSetSelectionModel< V, E > selectionModel = new BitSetSelectionModel<>( graph, idmap );
+		selectionModel.setDeltaCoalescingWindow( SELECTION_DELTA_WINDOW_MILLIS );
 		graph.addGraphListener( selectionModel );
 		this.selectionModel = selectionModel;
 
@@ -107,6 +114,7 @@ public class MastodonAppModel<
 		this.focusModel = focusModel;
 
 		groupManager = new GroupManager( numGroups );
+		highlightModel.setEventBus( groupManager.getEventBus() );
 		groupManager.registerModel( TIMEPOINT );
 		groupManager.registerModel( NAVIGATION );
 
@@ -91,6 +91,7 @@ public class MastodonView<
 			highlightModelAdapter.listeners().removeAll();
 			focusModelAdapter.listeners().removeAll();
 			selectionModelAdapter.listeners().removeAll();
+			selectionModelAdapter.dispose();
 			navigationHandlerAdapter.listeners().removeAll();
 		});
 	}
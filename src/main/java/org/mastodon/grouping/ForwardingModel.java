@@ -28,6 +28,17 @@ public interface ForwardingModel< T >
 	 */
 	public void linkTo( final T model, final boolean copyCurrentStateToNewModel );
 
+	/**
+	 * Set the {@link GroupEventBus} through which this {@code ForwardingModel}
+	 * dispatches the events of its backing model to its listeners. By default,
+	 * events are dispatched synchronously and this method does nothing.
+	 *
+	 * @param bus
+	 *            the event bus.
+	 */
+	public default void setEventBus( final GroupEventBus bus )
+	{}
+
 	/**
 	 * Get a {@code T} that forwards to whichever {@code model} was last
 	 * {@link #linkTo(Object, boolean) linked to}.
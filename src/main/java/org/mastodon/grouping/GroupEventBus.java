@@ -0,0 +1,179 @@
+package org.mastodon.grouping;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Coalesces the events that models shared between views emit, and dispatches
+ * them once per frame.
+ * <p>
+ * Events are posted with a key. An event that is posted while an event with
+ * the same key is pending supersedes it: only the last one is delivered. This
+ * is meant for events after which listeners read the current state of the
+ * model, such as timepoint or highlight changes, where intermediate events
+ * only cause redundant repaints.
+ * <p>
+ * Pending events are delivered on the event dispatch thread, at most one
+ * frame after the first of them was posted, in the order their keys were
+ * first posted. With a frame of 0 milliseconds, events are delivered
+ * immediately, on the posting thread.
+ * <p>
+ * The bus counts the events that were posted, superseded and delivered.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class GroupEventBus
+{
+	/**
+	 * Default frame duration, in milliseconds.
+	 */
+	public static final long DEFAULT_FRAME_MILLIS = 16;
+
+	private static ScheduledExecutorService executor;
+
+	private static synchronized ScheduledExecutorService executor()
+	{
+		if ( executor == null )
+			executor = Executors.newSingleThreadScheduledExecutor( r -> {
+				final Thread thread = new Thread( r, "Group event dispatcher" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		return executor;
+	}
+
+	private final long frameMillis;
+
+	/**
+	 * Pending deliveries, by key. Guarded by {@code this}.
+	 */
+	private final LinkedHashMap< Object, Runnable > pending;
+
+	/**
+	 * Whether a flush is scheduled. Guarded by {@code this}.
+	 */
+	private boolean scheduled;
+
+	private final AtomicLong emitted;
+
+	private final AtomicLong coalesced;
+
+	private final AtomicLong delivered;
+
+	/**
+	 * Creates an event bus with the default frame duration.
+	 */
+	public GroupEventBus()
+	{
+		this( DEFAULT_FRAME_MILLIS );
+	}
+
+	/**
+	 * Creates an event bus with the specified frame duration.
+	 *
+	 * @param frameMillis
+	 *            the frame duration in milliseconds. If 0, events are
+	 *            delivered immediately.
+	 */
+	public GroupEventBus( final long frameMillis )
+	{
+		this.frameMillis = frameMillis;
+		this.pending = new LinkedHashMap<>();
+		this.emitted = new AtomicLong();
+		this.coalesced = new AtomicLong();
+		this.delivered = new AtomicLong();
+	}
+
+	/**
+	 * Posts an event. The event supersedes the pending event with the same
+	 * key, if any.
+	 *
+	 * @param key
+	 *            the key of the event, typically the emitting model.
+	 * @param delivery
+	 *            notifies the listeners of the event.
+	 */
+	public void post( final Object key, final Runnable delivery )
+	{
+		emitted.incrementAndGet();
+		if ( frameMillis <= 0 )
+		{
+			delivered.incrementAndGet();
+			delivery.run();
+			return;
+		}
+
+		synchronized ( this )
+		{
+			if ( pending.put( key, delivery ) != null )
+				coalesced.incrementAndGet();
+			if ( scheduled )
+				return;
+			scheduled = true;
+		}
+		executor().schedule( () -> SwingUtilities.invokeLater( this::flush ), frameMillis, TimeUnit.MILLISECONDS );
+	}
+
+	private void flush()
+	{
+		final ArrayList< Runnable > deliveries;
+		synchronized ( this )
+		{
+			deliveries = new ArrayList<>( pending.values() );
+			pending.clear();
+			scheduled = false;
+		}
+		for ( final Runnable delivery : deliveries )
+		{
+			delivered.incrementAndGet();
+			delivery.run();
+		}
+	}
+
+	/**
+	 * Returns the number of events posted to this bus.
+	 *
+	 * @return the number of events posted.
+	 */
+	public long getEmittedCount()
+	{
+		return emitted.get();
+	}
+
+	/**
+	 * Returns the number of events superseded by a later event before being
+	 * delivered.
+	 *
+	 * @return the number of events superseded.
+	 */
+	public long getCoalescedCount()
+	{
+		return coalesced.get();
+	}
+
+	/**
+	 * Returns the number of events delivered to listeners.
+	 *
+	 * @return the number of events delivered.
+	 */
+	public long getDeliveredCount()
+	{
+		return delivered.get();
+	}
+
+	/**
+	 * Resets the event counters.
+	 */
+	public void resetCounters()
+	{
+		emitted.set( 0 );
+		coalesced.set( 0 );
+		delivered.set( 0 );
+	}
+}
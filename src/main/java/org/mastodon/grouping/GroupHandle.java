@@ -76,6 +76,7 @@ public class GroupHandle
 		ModelData( final GroupableModelFactory< T > factory )
 		{
 			forwarding = factory.createForwardingModel();
+			forwarding.setEventBus( manager.getEventBus() );
 			backing = factory.createBackingModel();
 		}
 	}
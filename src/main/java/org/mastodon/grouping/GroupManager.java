@@ -39,6 +39,8 @@ public class GroupManager
 
 	private final int numGroups;
 
+	private final GroupEventBus eventBus;
+
 	/**
 	 *
 	 * @param numGroups
@@ -47,6 +49,7 @@ public class GroupManager
 	public GroupManager( final int numGroups )
 	{
 		this.numGroups = numGroups;
+		this.eventBus = new GroupEventBus();
 		groupIdToGroupHandles = new TIntObjectHashMap<>( DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, -1 );
 		for ( int i = 0; i < numGroups; ++i )
 			groupIdToGroupHandles.put( i, new HashSet<>() );
@@ -72,6 +75,17 @@ public class GroupManager
 		return numGroups;
 	}
 
+	/**
+	 * Get the {@link GroupEventBus} through which the forwarding models
+	 * dispatch the events of their backing models.
+	 *
+	 * @return the event bus.
+	 */
+	public GroupEventBus getEventBus()
+	{
+		return eventBus;
+	}
+
 	boolean setGroupId( final GroupHandle handle, final int groupId )
 	{
 		final int oldId = handle.groupId;
@@ -0,0 +1,700 @@
+package org.mastodon.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.util.Listeners;
+
+/**
+ * A {@link SelectionModel} that stores the selected state of vertices and
+ * edges in bitsets indexed by their id in a {@link GraphIdBimap}.
+ * <p>
+ * Compared to {@link DefaultSelectionModel}, reads do not take a lock:
+ * {@link #isSelected(Vertex)}, {@link #isSelected(Edge)}, {@link #isEmpty()}
+ * and the iteration of the views returned by {@link #getSelectedVerticesView()}
+ * and {@link #getSelectedEdgesView()} can be called from painting threads
+ * while the selection is being edited. Modifications are synchronized, and
+ * are made visible to readers when each modifying method returns. A read
+ * concurrent with a modification sees the selected state either before or
+ * after it.
+ * <p>
+ * {@link #clearSelection()} and bulk modifications with collections that are
+ * views of a {@link BitSetSelectionModel} work on 64 ids at a time.
+ * <p>
+ * {@link SelectionDeltaListener}s can be notified of the changes coalesced
+ * within a time window, see {@link #setDeltaCoalescingWindow(long)}.
+ * <p>
+ * Created instances must be registered as a {@link GraphListener} of the graph
+ * to always return consistent results.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ */
+public class BitSetSelectionModel< V extends Vertex< E >, E extends Edge< V > >
+		implements SelectionModel< V, E >, GraphListener< V, E >
+{
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	private final Bits vertexBits;
+
+	private final Bits edgeBits;
+
+	private final RefSet< V > vertexView;
+
+	private final RefSet< E > edgeView;
+
+	private final Listeners.List< SelectionListener > listeners;
+
+	private final SelectionDeltaTracker< V, E > deltaTracker;
+
+	/**
+	 * If <code>false</code>, listeners will not be notified when a
+	 * selection-change event happens.
+	 */
+	private boolean emitEvents;
+
+	/**
+	 * Is <code>true</code> if a selection-change event happened while the
+	 * listeners were paused.
+	 */
+	private boolean shouldEmitEvent;
+
+	/**
+	 * Creates a new selection for the specified graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param idmap
+	 *            the bidirectional id map, used to index the selected state
+	 *            of edges and vertices.
+	 */
+	public BitSetSelectionModel( final ListenableReadOnlyGraph< V, E > graph, final GraphIdBimap< V, E > idmap )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		vertexBits = new Bits();
+		edgeBits = new Bits();
+		vertexView = new VertexView();
+		edgeView = new EdgeView();
+		listeners = new Listeners.SynchronizedList<>();
+		deltaTracker = new SelectionDeltaTracker<>( graph, idmap, this, vertexBits::get, edgeBits::get );
+		emitEvents = true;
+		shouldEmitEvent = false;
+	}
+
+	@Override
+	public boolean isSelected( final V v )
+	{
+		return vertexBits.get( idmap.getVertexId( v ) );
+	}
+
+	@Override
+	public boolean isSelected( final E e )
+	{
+		return edgeBits.get( idmap.getEdgeId( e ) );
+	}
+
+	@Override
+	public synchronized void setSelected( final V v, final boolean selected )
+	{
+		final int id = idmap.getVertexId( v );
+		if ( vertexBits.set( id, selected ) )
+		{
+			deltaTracker.vertexChanged( id, !selected );
+			notifyListeners();
+		}
+	}
+
+	@Override
+	public synchronized void setSelected( final E e, final boolean selected )
+	{
+		final int id = idmap.getEdgeId( e );
+		if ( edgeBits.set( id, selected ) )
+		{
+			deltaTracker.edgeChanged( id, !selected );
+			notifyListeners();
+		}
+	}
+
+	@Override
+	public synchronized void toggle( final V v )
+	{
+		setSelected( v, !isSelected( v ) );
+	}
+
+	@Override
+	public synchronized void toggle( final E e )
+	{
+		setSelected( e, !isSelected( e ) );
+	}
+
+	@Override
+	public synchronized boolean setEdgesSelected( final Collection< E > edges, final boolean selected )
+	{
+		final boolean changed;
+		if ( edges instanceof BitSetSelectionModel.EdgeView )
+			changed = edgeBits.set( ( ( BitSetSelectionModel< ?, ? >.EdgeView ) edges ).bits(), selected, edgeChanges( !selected ) );
+		else
+		{
+			boolean c = false;
+			for ( final E e : edges )
+			{
+				final int id = idmap.getEdgeId( e );
+				if ( edgeBits.set( id, selected ) )
+				{
+					deltaTracker.edgeChanged( id, !selected );
+					c = true;
+				}
+			}
+			changed = c;
+		}
+		if ( changed )
+			notifyListeners();
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean setVerticesSelected( final Collection< V > vertices, final boolean selected )
+	{
+		final boolean changed;
+		if ( vertices instanceof BitSetSelectionModel.VertexView )
+			changed = vertexBits.set( ( ( BitSetSelectionModel< ?, ? >.VertexView ) vertices ).bits(), selected, vertexChanges( !selected ) );
+		else
+		{
+			boolean c = false;
+			for ( final V v : vertices )
+			{
+				final int id = idmap.getVertexId( v );
+				if ( vertexBits.set( id, selected ) )
+				{
+					deltaTracker.vertexChanged( id, !selected );
+					c = true;
+				}
+			}
+			changed = c;
+		}
+		if ( changed )
+			notifyListeners();
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean clearSelection()
+	{
+		final boolean changed = vertexBits.clear( vertexChanges( true ) ) | edgeBits.clear( edgeChanges( true ) );
+		if ( changed )
+			notifyListeners();
+		return changed;
+	}
+
+	/**
+	 * Returns the consumer reporting vertex ids whose bit changes to the
+	 * delta tracker, or {@code null} if it does not track changes.
+	 */
+	private IntConsumer vertexChanges( final boolean wasSelected )
+	{
+		return deltaTracker.isTracking() ? id -> deltaTracker.vertexChanged( id, wasSelected ) : null;
+	}
+
+	/**
+	 * Returns the consumer reporting edge ids whose bit changes to the delta
+	 * tracker, or {@code null} if it does not track changes.
+	 */
+	private IntConsumer edgeChanges( final boolean wasSelected )
+	{
+		return deltaTracker.isTracking() ? id -> deltaTracker.edgeChanged( id, wasSelected ) : null;
+	}
+
+	/**
+	 * Get the selected edges.
+	 *
+	 * @return a <b>new</b> {@link RefSet} containing the selected edges.
+	 */
+	@Override
+	public synchronized RefSet< E > getSelectedEdges()
+	{
+		final RefSet< E > set = RefCollections.createRefSet( graph.edges() );
+		set.addAll( edgeView );
+		return set;
+	}
+
+	/**
+	 * Get the selected vertices.
+	 *
+	 * @return a <b>new</b> {@link RefSet} containing the selected vertices.
+	 */
+	@Override
+	public synchronized RefSet< V > getSelectedVertices()
+	{
+		final RefSet< V > set = RefCollections.createRefSet( graph.vertices() );
+		set.addAll( vertexView );
+		return set;
+	}
+
+	/**
+	 * Returns a read-only view of the selected edges, backed by the bitset of
+	 * this model. The view always reflects the current selection, and its
+	 * iteration does not take a lock.
+	 *
+	 * @return the selected edges.
+	 */
+	@Override
+	public RefSet< E > getSelectedEdgesView()
+	{
+		return edgeView;
+	}
+
+	/**
+	 * Returns a read-only view of the selected vertices, backed by the bitset
+	 * of this model. The view always reflects the current selection, and its
+	 * iteration does not take a lock.
+	 *
+	 * @return the selected vertices.
+	 */
+	@Override
+	public RefSet< V > getSelectedVerticesView()
+	{
+		return vertexView;
+	}
+
+	@Override
+	public boolean isEmpty()
+	{
+		return vertexBits.cardinality() == 0 && edgeBits.cardinality() == 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder sb = new StringBuilder();
+		sb.append( super.toString() );
+		sb.append( "\nVertices: " + vertexView );
+		sb.append( "\nEdges:    " + edgeView );
+		return sb.toString();
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public void vertexAdded( final V v )
+	{}
+
+	@Override
+	public void vertexRemoved( final V v )
+	{
+		deltaTracker.vertexRemoved( idmap.getVertexId( v ) );
+		setSelected( v, false );
+	}
+
+	@Override
+	public void edgeAdded( final E e )
+	{}
+
+	@Override
+	public void edgeRemoved( final E e )
+	{
+		deltaTracker.edgeRemoved( idmap.getEdgeId( e ) );
+		setSelected( e, false );
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		// Ids of the previous graph are not reported.
+		final boolean changed = vertexBits.clear( null ) | edgeBits.clear( null );
+		deltaTracker.graphRebuilt();
+		if ( changed )
+			notifyListeners();
+	}
+
+	@Override
+	public Listeners< SelectionListener > listeners()
+	{
+		return listeners;
+	}
+
+	@Override
+	public Listeners< SelectionDeltaListener< V, E > > deltaListeners()
+	{
+		return deltaTracker.listeners();
+	}
+
+	/**
+	 * Sets the time window within which selection changes are coalesced
+	 * before the {@link SelectionDeltaListener}s are notified. With a
+	 * positive window, the first change schedules a notification at the end
+	 * of the window, delivered from a background thread. With a window of
+	 * {@code 0} (the default), each change is notified immediately.
+	 * {@link SelectionListener}s are always notified immediately.
+	 *
+	 * @param millis
+	 *            the coalescing window, in milliseconds.
+	 */
+	public void setDeltaCoalescingWindow( final long millis )
+	{
+		deltaTracker.setWindowMillis( millis );
+	}
+
+	private void notifyListeners()
+	{
+		if ( emitEvents )
+		{
+			for ( final SelectionListener l : listeners.list )
+				l.selectionChanged();
+			deltaTracker.selectionChanged();
+		}
+		else
+			shouldEmitEvent = true;
+	}
+
+	@Override
+	public void resumeListeners()
+	{
+		emitEvents = true;
+		if ( shouldEmitEvent )
+		{
+			// Catchup.
+			for ( final SelectionListener l : listeners.list )
+				l.selectionChanged();
+			deltaTracker.selectionChanged();
+			shouldEmitEvent = false;
+		}
+	}
+
+	@Override
+	public void pauseListeners()
+	{
+		emitEvents = false;
+	}
+
+	/**
+	 * A growable bitset with lock-free reads.
+	 * <p>
+	 * Writers must be serialized by the caller. Each writing method ends with
+	 * a write of the volatile {@link #words} field, even if the array did not
+	 * change, so that readers, which start with a read of {@link #words}, see
+	 * all the modifications made before.
+	 */
+	private static final class Bits
+	{
+		private volatile long[] words = new long[ 0 ];
+
+		private volatile int cardinality = 0;
+
+		boolean get( final int index )
+		{
+			final long[] w = words;
+			final int i = index >>> 6;
+			return i < w.length && ( w[ i ] & ( 1L << index ) ) != 0;
+		}
+
+		int cardinality()
+		{
+			return cardinality;
+		}
+
+		/**
+		 * Returns the index of the first set bit at or after {@code from}, or
+		 * {@code -1}.
+		 */
+		int nextSetBit( final int from )
+		{
+			final long[] w = words;
+			int i = from >>> 6;
+			if ( i >= w.length )
+				return -1;
+			long word = w[ i ] & ( -1L << from );
+			while ( true )
+			{
+				if ( word != 0 )
+					return ( i << 6 ) + Long.numberOfTrailingZeros( word );
+				if ( ++i == w.length )
+					return -1;
+				word = w[ i ];
+			}
+		}
+
+		/**
+		 * Sets one bit. Returns {@code true} if it changed.
+		 */
+		boolean set( final int index, final boolean value )
+		{
+			long[] w = words;
+			final int i = index >>> 6;
+			if ( i >= w.length )
+			{
+				if ( !value )
+					return false;
+				w = Arrays.copyOf( w, Math.max( i + 1, 2 * w.length ) );
+			}
+			final long old = w[ i ];
+			final long word = value ? old | ( 1L << index ) : old & ~( 1L << index );
+			if ( word == old )
+				return false;
+			w[ i ] = word;
+			cardinality += value ? 1 : -1;
+			words = w;
+			return true;
+		}
+
+		/**
+		 * Sets ({@code value == true}) or clears all the bits set in
+		 * {@code other}, word by word. Returns {@code true} if a bit changed.
+		 * The index of each changed bit is passed to {@code changed}, if it is
+		 * not {@code null}.
+		 */
+		boolean set( final Bits other, final boolean value, final IntConsumer changed )
+		{
+			final long[] o = other.words;
+			long[] w = words;
+			int n = o.length;
+			if ( value && n > w.length )
+				w = Arrays.copyOf( w, n );
+			else
+				n = Math.min( n, w.length );
+			int delta = 0;
+			for ( int i = 0; i < n; i++ )
+			{
+				final long old = w[ i ];
+				final long word = value ? old | o[ i ] : old & ~o[ i ];
+				w[ i ] = word;
+				delta += Long.bitCount( word ) - Long.bitCount( old );
+				if ( changed != null )
+					forEachBit( i, old ^ word, changed );
+			}
+			cardinality += delta;
+			words = w;
+			return delta != 0;
+		}
+
+		/**
+		 * Clears all bits. Returns {@code true} if a bit was set. The index of
+		 * each cleared bit is passed to {@code changed}, if it is not
+		 * {@code null}.
+		 */
+		boolean clear( final IntConsumer changed )
+		{
+			final long[] w = words;
+			if ( cardinality == 0 )
+				return false;
+			if ( changed != null )
+				for ( int i = 0; i < w.length; i++ )
+					forEachBit( i, w[ i ], changed );
+			Arrays.fill( w, 0L );
+			cardinality = 0;
+			words = w;
+			return true;
+		}
+
+		private static void forEachBit( final int wordIndex, long bits, final IntConsumer consumer )
+		{
+			while ( bits != 0 )
+			{
+				consumer.accept( ( wordIndex << 6 ) + Long.numberOfTrailingZeros( bits ) );
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	/**
+	 * Read-only {@link RefSet} view over a {@link Bits}.
+	 */
+	private abstract class View< O > extends AbstractSet< O > implements RefSet< O >
+	{
+		abstract Bits bits();
+
+		abstract O get( int id, O ref );
+
+		abstract int id( O o );
+
+		abstract boolean isInstance( Object o );
+
+		@Override
+		public int size()
+		{
+			return bits().cardinality();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return bits().cardinality() == 0;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		@Override
+		public boolean contains( final Object o )
+		{
+			return isInstance( o ) && bits().get( id( ( O ) o ) );
+		}
+
+		/**
+		 * The next set bit is looked up when {@link Iterator#hasNext()} is
+		 * called, so objects can be deselected (or removed from the graph)
+		 * while iterating.
+		 */
+		@Override
+		public Iterator< O > iterator()
+		{
+			return new Iterator< O >()
+			{
+				private final O ref = createRef();
+
+				private int current = -1;
+
+				private int next = -2;
+
+				@Override
+				public boolean hasNext()
+				{
+					if ( next == -2 )
+						next = bits().nextSetBit( current + 1 );
+					return next >= 0;
+				}
+
+				@Override
+				public O next()
+				{
+					if ( !hasNext() )
+						throw new NoSuchElementException();
+					current = next;
+					next = -2;
+					return get( current, ref );
+				}
+			};
+		}
+
+		@Override
+		public boolean add( final O o )
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+
+		@Override
+		public boolean remove( final Object o )
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+
+		@Override
+		public boolean addAll( final Collection< ? extends O > c )
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+
+		@Override
+		public boolean removeAll( final Collection< ? > c )
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+
+		@Override
+		public boolean retainAll( final Collection< ? > c )
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+
+		@Override
+		public void clear()
+		{
+			throw new UnsupportedOperationException( "Read-only selection view." );
+		}
+	}
+
+	private class VertexView extends View< V >
+	{
+		@Override
+		Bits bits()
+		{
+			return vertexBits;
+		}
+
+		@Override
+		V get( final int id, final V ref )
+		{
+			return idmap.getVertex( id, ref );
+		}
+
+		@Override
+		int id( final V v )
+		{
+			return idmap.getVertexId( v );
+		}
+
+		@Override
+		boolean isInstance( final Object o )
+		{
+			return o instanceof Vertex;
+		}
+
+		@Override
+		public V createRef()
+		{
+			return graph.vertexRef();
+		}
+
+		@Override
+		public void releaseRef( final V obj )
+		{
+			graph.releaseRef( obj );
+		}
+	}
+
+	private class EdgeView extends View< E >
+	{
+		@Override
+		Bits bits()
+		{
+			return edgeBits;
+		}
+
+		@Override
+		E get( final int id, final E ref )
+		{
+			return idmap.getEdge( id, ref );
+		}
+
+		@Override
+		int id( final E e )
+		{
+			return idmap.getEdgeId( e );
+		}
+
+		@Override
+		boolean isInstance( final Object o )
+		{
+			return o instanceof Edge;
+		}
+
+		@Override
+		public E createRef()
+		{
+			return graph.edgeRef();
+		}
+
+		@Override
+		public void releaseRef( final E obj )
+		{
+			graph.releaseRef( obj );
+		}
+	}
+}
@@ -4,6 +4,7 @@ import org.mastodon.graph.Edge;
 import org.mastodon.graph.GraphIdBimap;
 import org.mastodon.graph.GraphListener;
 import org.mastodon.graph.Vertex;
+import org.mastodon.grouping.GroupEventBus;
 import org.mastodon.util.Listeners;
 
 /**
@@ -30,6 +31,8 @@ public class DefaultHighlightModel< V extends Vertex< E >, E extends Edge< V > >
 
 	private final Listeners.List< HighlightListener > listeners;
 
+	private volatile GroupEventBus bus;
+
 	/**
 	 * Creates a new highlight model for the graph with the specified
 	 * bidirectional map.
@@ -46,6 +49,20 @@ public class DefaultHighlightModel< V extends Vertex< E >, E extends Edge< V > >
 		listeners = new Listeners.SynchronizedList<>();
 	}
 
+	/**
+	 * Sets the event bus through which highlight changes are dispatched to the
+	 * listeners. Successive changes are then coalesced, and listeners are
+	 * notified once per frame.
+	 *
+	 * @param bus
+	 *            the event bus, or {@code null} to notify listeners
+	 *            synchronously.
+	 */
+	public void setEventBus( final GroupEventBus bus )
+	{
+		this.bus = bus;
+	}
+
 	/**
 	 * Sets the specified vertex highlighted in this model.
 	 *
@@ -144,6 +161,15 @@ public class DefaultHighlightModel< V extends Vertex< E >, E extends Edge< V > >
 	}
 
 	private void notifyListeners()
+	{
+		final GroupEventBus bus = this.bus;
+		if ( bus == null )
+			fireHighlightChanged();
+		else
+			bus.post( this, this::fireHighlightChanged );
+	}
+
+	private void fireHighlightChanged()
 	{
 		for ( final HighlightListener l : listeners.list )
 			l.highlightChanged();
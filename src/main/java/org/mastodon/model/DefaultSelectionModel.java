@@ -46,6 +46,8 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 
 	private final Listeners.List< SelectionListener > listeners;
 
+	private final SelectionDeltaTracker< V, E > deltaTracker;
+
 	/**
 	 * If <code>false</code>, listeners will not be notified when a
 	 * selection-change event happens.
@@ -79,6 +81,7 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 		vertexBits = new BitSet();
 		edgeBits = new BitSet();
 		listeners = new Listeners.SynchronizedList<>();
+		deltaTracker = new SelectionDeltaTracker<>( graph, idmap, this, vertexBits::get, edgeBits::get );
 		emitEvents = true;
 		shouldEmitEvent = false;
 	}
@@ -122,7 +125,9 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	{
 		if ( isSelected( v ) != selected )
 		{
-			vertexBits.set( idmap.getVertexId( v ), selected );
+			final int id = idmap.getVertexId( v );
+			vertexBits.set( id, selected );
+			deltaTracker.vertexChanged( id, !selected );
 			if ( selected )
 				selectedVertices.add( v );
 			else
@@ -144,7 +149,9 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	{
 		if ( isSelected( e ) != selected )
 		{
-			edgeBits.set( idmap.getEdgeId( e ), selected );
+			final int id = idmap.getEdgeId( e );
+			edgeBits.set( id, selected );
+			deltaTracker.edgeChanged( id, !selected );
 			if ( selected )
 				selectedEdges.add( e );
 			else
@@ -190,7 +197,14 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	public synchronized boolean setEdgesSelected( final Collection< E > edges, final boolean selected )
 	{
 		for ( final E e : edges )
-			edgeBits.set( idmap.getEdgeId( e ), selected );
+		{
+			final int id = idmap.getEdgeId( e );
+			if ( edgeBits.get( id ) != selected )
+			{
+				edgeBits.set( id, selected );
+				deltaTracker.edgeChanged( id, !selected );
+			}
+		}
 		if ( selected )
 		{
 			final boolean changed = selectedEdges.addAll( edges );
@@ -220,7 +234,14 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	public synchronized boolean setVerticesSelected( final Collection< V > vertices, final boolean selected )
 	{
 		for ( final V v : vertices )
-			vertexBits.set( idmap.getVertexId( v ), selected );
+		{
+			final int id = idmap.getVertexId( v );
+			if ( vertexBits.get( id ) != selected )
+			{
+				vertexBits.set( id, selected );
+				deltaTracker.vertexChanged( id, !selected );
+			}
+		}
 		if ( selected )
 		{
 			final boolean changed = selectedVertices.addAll( vertices );
@@ -245,6 +266,22 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 */
 	@Override
 	public synchronized boolean clearSelection()
+	{
+		if ( deltaTracker.isTracking() )
+		{
+			for ( int id = vertexBits.nextSetBit( 0 ); id >= 0; id = vertexBits.nextSetBit( id + 1 ) )
+				deltaTracker.vertexChanged( id, true );
+			for ( int id = edgeBits.nextSetBit( 0 ); id >= 0; id = edgeBits.nextSetBit( id + 1 ) )
+				deltaTracker.edgeChanged( id, true );
+		}
+		return clear();
+	}
+
+	/**
+	 * Clears this selection without reporting the changed ids to the delta
+	 * tracker.
+	 */
+	private boolean clear()
 	{
 		vertexBits.clear();
 		edgeBits.clear();
@@ -309,6 +346,7 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public void vertexRemoved( final V v )
 	{
+		deltaTracker.vertexRemoved( idmap.getVertexId( v ) );
 		setSelected( v, false );
 	}
 
@@ -319,13 +357,16 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public void edgeRemoved( final E e )
 	{
+		deltaTracker.edgeRemoved( idmap.getEdgeId( e ) );
 		setSelected( e, false );
 	}
 
 	@Override
-	public void graphRebuilt()
+	public synchronized void graphRebuilt()
 	{
-		clearSelection();
+		// Ids of the previous graph are not reported.
+		deltaTracker.graphRebuilt();
+		clear();
 	}
 
 	@Override
@@ -334,11 +375,35 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 		return listeners;
 	}
 
+	@Override
+	public Listeners< SelectionDeltaListener< V, E > > deltaListeners()
+	{
+		return deltaTracker.listeners();
+	}
+
+	/**
+	 * Sets the time window within which selection changes are coalesced
+	 * before the {@link SelectionDeltaListener}s are notified. With a
+	 * positive window, the first change schedules a notification at the end
+	 * of the window, delivered from a background thread. With a window of
+	 * {@code 0} (the default), each change is notified immediately.
+	 *
+	 * @param millis
+	 *            the coalescing window, in milliseconds.
+	 */
+	public void setDeltaCoalescingWindow( final long millis )
+	{
+		deltaTracker.setWindowMillis( millis );
+	}
+
 	private void notifyListeners()
 	{
 		if ( emitEvents )
+		{
 			for ( final SelectionListener l : listeners.list )
 				l.selectionChanged();
+			deltaTracker.selectionChanged();
+		}
 		else
 			shouldEmitEvent = true;
 	}
@@ -352,6 +417,7 @@ public class DefaultSelectionModel< V extends Vertex< E >, E extends Edge< V > >
 			// Catchup.
 			for ( final SelectionListener l : listeners.list )
 				l.selectionChanged();
+			deltaTracker.selectionChanged();
 			shouldEmitEvent = false;
 		}
 	}
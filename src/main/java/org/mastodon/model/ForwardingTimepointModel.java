@@ -1,6 +1,7 @@
 package org.mastodon.model;
 
 import org.mastodon.grouping.ForwardingModel;
+import org.mastodon.grouping.GroupEventBus;
 import org.mastodon.grouping.GroupManager;
 import org.mastodon.grouping.GroupableModelFactory;
 import org.mastodon.util.Listeners;
@@ -21,10 +22,23 @@ public class ForwardingTimepointModel implements TimepointModel, ForwardingModel
 
 	private final TimepointListener listener;
 
+	private volatile GroupEventBus bus;
+
 	public ForwardingTimepointModel()
 	{
 		listeners = new Listeners.SynchronizedList<>();
-		listener = () -> listeners.list.forEach( TimepointListener::timepointChanged );
+		listener = () -> {
+			final GroupEventBus bus = this.bus;
+			if ( bus == null )
+				notifyListeners();
+			else
+				bus.post( this, this::notifyListeners );
+		};
+	}
+
+	private void notifyListeners()
+	{
+		listeners.list.forEach( TimepointListener::timepointChanged );
 	}
 
 	@Override
@@ -45,6 +59,12 @@ public class ForwardingTimepointModel implements TimepointModel, ForwardingModel
 		return listeners;
 	}
 
+	@Override
+	public void setEventBus( final GroupEventBus bus )
+	{
+		this.bus = bus;
+	}
+
 	@Override
 	public void linkTo( final TimepointModel newModel, final boolean copyCurrentStateToNewModel )
 	{
@@ -0,0 +1,64 @@
+package org.mastodon.model;
+
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Vertex;
+
+/**
+ * The changes of a {@link SelectionModel} since the previous
+ * {@link SelectionDeltaListener} notification.
+ * <p>
+ * The sets hold the vertices and edges whose selected state differs from the
+ * previously notified state. Objects that were removed from the graph in the
+ * meantime are not reported as deselected: they can not be retrieved anymore,
+ * and views are notified of their removal by the graph.
+ * <p>
+ * The sets are read-only. They may be resolved from object ids when first
+ * requested, so listeners must hold the read lock of the graph while getting
+ * them.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface SelectionDelta< V extends Vertex< E >, E extends Edge< V > >
+{
+	/**
+	 * Returns the vertices that were selected.
+	 *
+	 * @return the newly selected vertices.
+	 */
+	public RefSet< V > getAddedVertices();
+
+	/**
+	 * Returns the vertices that were deselected.
+	 *
+	 * @return the newly deselected vertices.
+	 */
+	public RefSet< V > getRemovedVertices();
+
+	/**
+	 * Returns the edges that were selected.
+	 *
+	 * @return the newly selected edges.
+	 */
+	public RefSet< E > getAddedEdges();
+
+	/**
+	 * Returns the edges that were deselected.
+	 *
+	 * @return the newly deselected edges.
+	 */
+	public RefSet< E > getRemovedEdges();
+
+	public default boolean isEmpty()
+	{
+		return getAddedVertices().isEmpty()
+				&& getRemovedVertices().isEmpty()
+				&& getAddedEdges().isEmpty()
+				&& getRemovedEdges().isEmpty();
+	}
+}
@@ -0,0 +1,31 @@
+package org.mastodon.model;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Vertex;
+
+/**
+ * Interface for listeners of the changes of a {@link SelectionModel}.
+ * <p>
+ * Unlike {@link SelectionListener}, the notification carries the vertices and
+ * edges whose selected state changed. Depending on the selection model,
+ * several changes may be coalesced in one notification, delivered on another
+ * thread.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface SelectionDeltaListener< V extends Vertex< E >, E extends Edge< V > >
+{
+	/**
+	 * Notifies when the selection has changed.
+	 *
+	 * @param delta
+	 *            the vertices and edges whose selected state changed since
+	 *            the previous notification.
+	 */
+	public void selectionChanged( SelectionDelta< V, E > delta );
+}
@@ -0,0 +1,385 @@
+package org.mastodon.model;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.util.Listeners;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Computes the {@link SelectionDelta}s of a selection model and notifies its
+ * {@link SelectionDeltaListener}s.
+ * <p>
+ * The selection model reports the id of each vertex and edge whose selected
+ * state changes, with its selected state before the change. The tracker
+ * records the state of each changed id at the last notification, so that the
+ * cost of a notification is proportional to the number of changed ids, not to
+ * the size of the graph. When nothing listens, changes are not recorded.
+ * <p>
+ * If a coalescing window is set, changes are accumulated during the window and
+ * notified once, from a background thread; otherwise they are notified
+ * immediately, from the calling thread. Deltas carry ids: they are resolved to
+ * vertices and edges by the listeners, when they first access them, and
+ * listeners must hold the graph read lock while doing so.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class SelectionDeltaTracker< V extends Vertex< E >, E extends Edge< V > >
+{
+	private static ScheduledExecutorService executor;
+
+	private static synchronized ScheduledExecutorService executor()
+	{
+		if ( executor == null )
+			executor = Executors.newSingleThreadScheduledExecutor( r -> {
+				final Thread thread = new Thread( r, "Selection delta notifier" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		return executor;
+	}
+
+	private final ReadOnlyGraph< V, E > graph;
+
+	private final GraphIdBimap< V, E > idmap;
+
+	/**
+	 * The lock of the selection model, held while changes are reported and
+	 * while reading the selected state.
+	 */
+	private final Object lock;
+
+	/**
+	 * Whether a vertex id is selected now. Called with {@link #lock} held.
+	 */
+	private final IntPredicate isVertexSelected;
+
+	/**
+	 * Whether an edge id is selected now. Called with {@link #lock} held.
+	 */
+	private final IntPredicate isEdgeSelected;
+
+	private final Listeners.List< SelectionDeltaListener< V, E > > listeners;
+
+	/**
+	 * Selected state at the last notification ({@code 1} if selected,
+	 * {@code 0} otherwise), of the vertex ids changed since. Guarded by
+	 * {@link #lock}.
+	 */
+	private TIntIntHashMap changedVertexIds;
+
+	private TIntIntHashMap changedEdgeIds;
+
+	/**
+	 * Ids of the objects removed from the graph since the last notification.
+	 * Guarded by {@link #lock}.
+	 */
+	private TIntHashSet removedVertexIds;
+
+	private TIntHashSet removedEdgeIds;
+
+	private volatile long windowMillis;
+
+	/**
+	 * Whether a notification is scheduled. Guarded by {@code this}.
+	 */
+	private boolean scheduled;
+
+	SelectionDeltaTracker(
+			final ReadOnlyGraph< V, E > graph,
+			final GraphIdBimap< V, E > idmap,
+			final Object lock,
+			final IntPredicate isVertexSelected,
+			final IntPredicate isEdgeSelected )
+	{
+		this.graph = graph;
+		this.idmap = idmap;
+		this.lock = lock;
+		this.isVertexSelected = isVertexSelected;
+		this.isEdgeSelected = isEdgeSelected;
+		this.listeners = new Listeners.SynchronizedList<>();
+		this.changedVertexIds = new TIntIntHashMap();
+		this.changedEdgeIds = new TIntIntHashMap();
+		this.removedVertexIds = new TIntHashSet();
+		this.removedEdgeIds = new TIntHashSet();
+		this.windowMillis = 0;
+	}
+
+	Listeners< SelectionDeltaListener< V, E > > listeners()
+	{
+		return listeners;
+	}
+
+	void setWindowMillis( final long windowMillis )
+	{
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * Returns whether changes must be reported. If not, the selection model
+	 * can skip enumerating the changed ids.
+	 *
+	 * @return {@code true} if some listeners are registered.
+	 */
+	boolean isTracking()
+	{
+		return !listeners.list.isEmpty();
+	}
+
+	/**
+	 * Records that the selected state of a vertex changed. Must be called with
+	 * {@link #lock} held.
+	 *
+	 * @param id
+	 *            the vertex id.
+	 * @param wasSelected
+	 *            the selected state of the vertex before the change.
+	 */
+	void vertexChanged( final int id, final boolean wasSelected )
+	{
+		if ( isTracking() )
+			changedVertexIds.putIfAbsent( id, wasSelected ? 1 : 0 );
+	}
+
+	/**
+	 * Records that the selected state of an edge changed. Must be called with
+	 * {@link #lock} held.
+	 *
+	 * @param id
+	 *            the edge id.
+	 * @param wasSelected
+	 *            the selected state of the edge before the change.
+	 */
+	void edgeChanged( final int id, final boolean wasSelected )
+	{
+		if ( isTracking() )
+			changedEdgeIds.putIfAbsent( id, wasSelected ? 1 : 0 );
+	}
+
+	void vertexRemoved( final int id )
+	{
+		synchronized ( lock )
+		{
+			if ( isTracking() )
+				removedVertexIds.add( id );
+		}
+	}
+
+	void edgeRemoved( final int id )
+	{
+		synchronized ( lock )
+		{
+			if ( isTracking() )
+				removedEdgeIds.add( id );
+		}
+	}
+
+	/**
+	 * Forgets the changes since the last notification: after a graph
+	 * rebuild, the ids do not point to the same objects anymore.
+	 */
+	void graphRebuilt()
+	{
+		synchronized ( lock )
+		{
+			changedVertexIds = new TIntIntHashMap();
+			changedEdgeIds = new TIntIntHashMap();
+			removedVertexIds = new TIntHashSet();
+			removedEdgeIds = new TIntHashSet();
+		}
+	}
+
+	/**
+	 * Notifies the listeners of the changes since the last notification,
+	 * immediately or at the end of the coalescing window.
+	 */
+	void selectionChanged()
+	{
+		if ( !isTracking() )
+			return;
+
+		final long window = windowMillis;
+		if ( window <= 0 )
+		{
+			notifyListeners();
+			return;
+		}
+
+		synchronized ( this )
+		{
+			if ( scheduled )
+				return;
+			scheduled = true;
+		}
+		executor().schedule( () -> {
+			synchronized ( this )
+			{
+				scheduled = false;
+			}
+			notifyListeners();
+		}, window, TimeUnit.MILLISECONDS );
+	}
+
+	private void notifyListeners()
+	{
+		final TIntArrayList addedVertices = new TIntArrayList();
+		final TIntArrayList removedVertices = new TIntArrayList();
+		final TIntArrayList addedEdges = new TIntArrayList();
+		final TIntArrayList removedEdges = new TIntArrayList();
+		synchronized ( lock )
+		{
+			diff( changedVertexIds, removedVertexIds, isVertexSelected, addedVertices, removedVertices );
+			diff( changedEdgeIds, removedEdgeIds, isEdgeSelected, addedEdges, removedEdges );
+			if ( !changedVertexIds.isEmpty() || !removedVertexIds.isEmpty() )
+			{
+				changedVertexIds = new TIntIntHashMap();
+				removedVertexIds = new TIntHashSet();
+			}
+			if ( !changedEdgeIds.isEmpty() || !removedEdgeIds.isEmpty() )
+			{
+				changedEdgeIds = new TIntIntHashMap();
+				removedEdgeIds = new TIntHashSet();
+			}
+		}
+
+		if ( addedVertices.isEmpty() && removedVertices.isEmpty() && addedEdges.isEmpty() && removedEdges.isEmpty() )
+			return;
+		final SelectionDelta< V, E > delta = new Delta( addedVertices, removedVertices, addedEdges, removedEdges );
+		for ( final SelectionDeltaListener< V, E > l : listeners.list )
+			l.selectionChanged( delta );
+	}
+
+	/**
+	 * Sorts the changed ids in ids selected and deselected since the last
+	 * notification. Ids of removed objects that are selected now belong to new
+	 * objects, and are added. Ids of removed objects that are not selected now
+	 * are not reported.
+	 */
+	private static void diff(
+			final TIntIntHashMap changed,
+			final TIntHashSet removed,
+			final IntPredicate isSelected,
+			final TIntArrayList added,
+			final TIntArrayList deselected )
+	{
+		final TIntIntIterator it = changed.iterator();
+		while ( it.hasNext() )
+		{
+			it.advance();
+			final int id = it.key();
+			final boolean before = it.value() != 0;
+			final boolean now = isSelected.test( id );
+			if ( now && ( !before || removed.contains( id ) ) )
+				added.add( id );
+			else if ( !now && before && !removed.contains( id ) )
+				deselected.add( id );
+		}
+	}
+
+	/**
+	 * A delta holding ids, resolved to vertices and edges on first access.
+	 */
+	private class Delta implements SelectionDelta< V, E >
+	{
+		private final TIntArrayList addedVertexIds;
+
+		private final TIntArrayList removedVertexIds;
+
+		private final TIntArrayList addedEdgeIds;
+
+		private final TIntArrayList removedEdgeIds;
+
+		private RefSet< V > addedVertices;
+
+		private RefSet< V > removedVertices;
+
+		private RefSet< E > addedEdges;
+
+		private RefSet< E > removedEdges;
+
+		Delta(
+				final TIntArrayList addedVertexIds,
+				final TIntArrayList removedVertexIds,
+				final TIntArrayList addedEdgeIds,
+				final TIntArrayList removedEdgeIds )
+		{
+			this.addedVertexIds = addedVertexIds;
+			this.removedVertexIds = removedVertexIds;
+			this.addedEdgeIds = addedEdgeIds;
+			this.removedEdgeIds = removedEdgeIds;
+		}
+
+		@Override
+		public synchronized RefSet< V > getAddedVertices()
+		{
+			if ( addedVertices == null )
+				addedVertices = toVertices( addedVertexIds );
+			return addedVertices;
+		}
+
+		@Override
+		public synchronized RefSet< V > getRemovedVertices()
+		{
+			if ( removedVertices == null )
+				removedVertices = toVertices( removedVertexIds );
+			return removedVertices;
+		}
+
+		@Override
+		public synchronized RefSet< E > getAddedEdges()
+		{
+			if ( addedEdges == null )
+				addedEdges = toEdges( addedEdgeIds );
+			return addedEdges;
+		}
+
+		@Override
+		public synchronized RefSet< E > getRemovedEdges()
+		{
+			if ( removedEdges == null )
+				removedEdges = toEdges( removedEdgeIds );
+			return removedEdges;
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return addedVertexIds.isEmpty()
+					&& removedVertexIds.isEmpty()
+					&& addedEdgeIds.isEmpty()
+					&& removedEdgeIds.isEmpty();
+		}
+
+		private RefSet< V > toVertices( final TIntArrayList ids )
+		{
+			final RefSet< V > set = RefCollections.createRefSet( graph.vertices() );
+			final V ref = graph.vertexRef();
+			for ( int i = 0; i < ids.size(); ++i )
+				set.add( idmap.getVertex( ids.getQuick( i ), ref ) );
+			graph.releaseRef( ref );
+			return set;
+		}
+
+		private RefSet< E > toEdges( final TIntArrayList ids )
+		{
+			final RefSet< E > set = RefCollections.createRefSet( graph.edges() );
+			final E ref = graph.edgeRef();
+			for ( int i = 0; i < ids.size(); ++i )
+				set.add( idmap.getEdge( ids.getQuick( i ), ref ) );
+			graph.releaseRef( ref );
+			return set;
+		}
+	}
+}
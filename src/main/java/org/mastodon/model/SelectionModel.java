@@ -125,6 +125,30 @@ public interface SelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 */
 	public RefSet< V > getSelectedVertices();
 
+	/**
+	 * Get the selected edges, as a read-only set that must not be modified.
+	 * Implementations may return a live view of the selection, that does not
+	 * copy it. By default, returns {@link #getSelectedEdges()}.
+	 *
+	 * @return a {@link RefSet} containing the selected edges.
+	 */
+	public default RefSet< E > getSelectedEdgesView()
+	{
+		return getSelectedEdges();
+	}
+
+	/**
+	 * Get the selected vertices, as a read-only set that must not be
+	 * modified. Implementations may return a live view of the selection, that
+	 * does not copy it. By default, returns {@link #getSelectedVertices()}.
+	 *
+	 * @return a {@link RefSet} containing the selected vertices.
+	 */
+	public default RefSet< V > getSelectedVerticesView()
+	{
+		return getSelectedVertices();
+	}
+
 	public boolean isEmpty();
 
 	/**
@@ -135,6 +159,15 @@ public interface SelectionModel< V extends Vertex< E >, E extends Edge< V > >
 	 */
 	public Listeners< SelectionListener > listeners();
 
+	/**
+	 * Get the list of selection delta listeners. Add a
+	 * {@link SelectionDeltaListener} to this list, for being notified of the
+	 * vertices and edges whose selected state changed.
+	 *
+	 * @return the list of listeners
+	 */
+	public Listeners< SelectionDeltaListener< V, E > > deltaListeners();
+
 	public void resumeListeners();
 
 	public void pauseListeners();
@@ -20,6 +20,7 @@ import org.mastodon.kdtree.ClipConvexPolytope;
 import org.mastodon.kdtree.IncrementalNearestNeighborSearch;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
+import org.mastodon.model.SelectionDelta;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.revised.bdv.overlay.ScreenVertexMath.Ellipse;
 import org.mastodon.revised.bdv.overlay.util.BdvRendererUtil;
@@ -749,6 +750,53 @@ public class OverlayGraphRenderer< V extends OverlayVertex< V, E >, E extends Ov
 		return renderTimepoint;
 	}
 
+	/**
+	 * Returns whether the specified selection changes can modify what this
+	 * renderer paints, that is whether they involve a vertex of the current
+	 * time-point or an edge painted at the current time-point.
+	 *
+	 * @param delta
+	 *            the selection changes.
+	 * @return {@code true} if the display must be repainted.
+	 */
+	public boolean isPainted( final SelectionDelta< V, E > delta )
+	{
+		final int currentTimepoint = renderTimepoint;
+		final int minTimepoint = currentTimepoint - settings.getTimeLimit();
+		final boolean drawLinks = settings.getDrawLinks();
+		final V ref = graph.vertexRef();
+		graph.getLock().readLock().lock();
+		try
+		{
+			for ( final V v : delta.getAddedVertices() )
+				if ( v.getTimepoint() == currentTimepoint )
+					return true;
+			for ( final V v : delta.getRemovedVertices() )
+				if ( v.getTimepoint() == currentTimepoint )
+					return true;
+			if ( !drawLinks )
+				return false;
+			for ( final E e : delta.getAddedEdges() )
+			{
+				final int t = e.getTarget( ref ).getTimepoint();
+				if ( t > minTimepoint && t <= currentTimepoint )
+					return true;
+			}
+			for ( final E e : delta.getRemovedEdges() )
+			{
+				final int t = e.getTarget( ref ).getTimepoint();
+				if ( t > minTimepoint && t <= currentTimepoint )
+					return true;
+			}
+			return false;
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+			graph.releaseRef( ref );
+		}
+	}
+
 	/**
 	 * Returns the vertex currently painted close to the specified location.
 	 * <p>
@@ -19,6 +19,8 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.Box;
 import javax.swing.GroupLayout;
@@ -41,7 +43,9 @@ import javax.swing.WindowConstants;
 
 import org.mastodon.graph.GraphChangeListener;
 import org.mastodon.revised.mamut.feature.MamutFeatureComputerService;
+import org.mastodon.revised.model.feature.FeatureComputation;
 import org.mastodon.revised.model.feature.FeatureComputer;
+import org.mastodon.revised.model.feature.FeatureComputerMetrics;
 import org.mastodon.revised.model.mamut.Model;
 import org.mastodon.revised.ui.ProgressListener;
 import org.scijava.Context;
@@ -193,10 +197,12 @@ public class FeatureComputersPanel extends JPanel
 					if ( null == worker )
 						return;
 
-					if ( worker.isDone() && !worker.isCancelled() )
+					if ( worker.isDone() )
 					{
 						enableComponents( FeatureComputersPanel.this, true );
-						lblComputationDate.setText( "Last feature computation: " + now() );
+						if ( worker.succeeded() )
+							lblComputationDate.setText( "Last feature computation: " + now() );
+						progressBar.setToolTipText( worker.metricsAsHtml() );
 						worker = null;
 						btnCompute.setText( "Compute" );
 						btnCompute.setIcon( GO_ICON );
@@ -207,13 +213,13 @@ public class FeatureComputersPanel extends JPanel
 		}
 		else
 		{
-			worker.cancel( true );
-			progressBar.clearStatus();
-			progressBar.setString( "Canceled." );
-			enableComponents( FeatureComputersPanel.this, true );
-			worker = null;
-			btnCompute.setText( "Compute" );
-			btnCompute.setIcon( GO_ICON );
+			/*
+			 * Cooperative cancellation: the worker finishes at the next
+			 * cancellation check, after the feature model has been restored.
+			 */
+			worker.computation.cancel();
+			progressBar.setString( "Canceling..." );
+			btnCompute.setEnabled( false );
 		}
 	}
 
@@ -278,19 +284,52 @@ public class FeatureComputersPanel extends JPanel
 	private class FeatureComputerWorker extends SwingWorker< Boolean, String >
 	{
 
+		private final FeatureComputation computation = new FeatureComputation( progressBar );
+
 		@Override
 		protected Boolean doInBackground() throws Exception
 		{
-			final boolean ok = computerService.compute( model, model.getFeatureModel(), selectedComputers, progressBar );
+			final boolean ok = computerService.compute( model, model.getFeatureModel(), selectedComputers, computation );
 			return Boolean.valueOf( ok );
 		}
+
+		private boolean succeeded()
+		{
+			try
+			{
+				return get().booleanValue();
+			}
+			catch ( InterruptedException | ExecutionException e )
+			{
+				return false;
+			}
+		}
+
+		private String metricsAsHtml()
+		{
+			final StringBuilder str = new StringBuilder( "<html>" );
+			for ( final FeatureComputerMetrics metrics : computation.getMetrics() )
+				str.append( metrics ).append( "<br>" );
+			return str.append( "</html>" ).toString();
+		}
 	}
 
+	/**
+	 * Progress bar fed by the feature computation. Progress is reported from
+	 * the computation threads, possibly several at once and out of order, so
+	 * updates are handed over to the EDT and the bar only moves forward until
+	 * it is cleared.
+	 */
 	private class MyProgressBar extends JProgressBar implements ProgressListener
 	{
 
 		private static final long serialVersionUID = 1L;
 
+		/**
+		 * Highest progress value reported since the last clear.
+		 */
+		private final AtomicInteger progress = new AtomicInteger();
+
 		public MyProgressBar()
 		{
 			super();
@@ -300,20 +339,24 @@ public class FeatureComputersPanel extends JPanel
 		@Override
 		public void showStatus( final String string )
 		{
-			setString( string );
+			SwingUtilities.invokeLater( () -> setString( string ) );
 		}
 
 		@Override
 		public void showProgress( final int current, final int total )
 		{
-			setValue( ( int ) ( 100. * current / total ) );
+			progress.accumulateAndGet( ( int ) ( 100. * current / total ), Math::max );
+			SwingUtilities.invokeLater( () -> setValue( progress.get() ) );
 		}
 
 		@Override
 		public void clearStatus()
 		{
-			setString( "" );
-			setValue( 0 );
+			progress.set( 0 );
+			SwingUtilities.invokeLater( () -> {
+				setString( "" );
+				setValue( progress.get() );
+			} );
 		}
 	}
 
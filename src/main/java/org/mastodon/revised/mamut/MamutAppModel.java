@@ -29,6 +29,8 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 
 	private final TrackSchemeStyleManager trackSchemeStyleManager;
 
+	private final SharedTrackSchemeGraph sharedTrackSchemeGraph;
+
 	private final RenderSettingsManager renderSettingsManager;
 
 	private final int minTimepoint;
@@ -50,6 +52,7 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 		this.radiusStats = new BoundingSphereRadiusStatistics( model );
 		this.sharedBdvData = sharedBdvData;
 		this.trackSchemeStyleManager = trackSchemeStyleManager;
+		this.sharedTrackSchemeGraph = new SharedTrackSchemeGraph( model );
 		this.renderSettingsManager = renderSettingsManager;
 		this.minTimepoint = 0;
 		this.maxTimepoint = sharedBdvData.getNumTimepoints() - 1;
@@ -66,6 +69,11 @@ public class MamutAppModel extends MastodonAppModel< Model, Spot, Link >
 		return trackSchemeStyleManager;
 	}
 
+	public SharedTrackSchemeGraph getSharedTrackSchemeGraph()
+	{
+		return sharedTrackSchemeGraph;
+	}
+
 	public RenderSettingsManager getRenderSettingsManager()
 	{
 		return renderSettingsManager;
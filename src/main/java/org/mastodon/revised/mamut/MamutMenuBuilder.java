@@ -41,6 +41,7 @@ public class MamutMenuBuilder extends ViewMenuBuilder
 		menuTexts.put( SelectionActions.SELECT_WHOLE_TRACK, "Select Whole Track" );
 		menuTexts.put( SelectionActions.SELECT_TRACK_DOWNWARD, "Select Track Downward" );
 		menuTexts.put( SelectionActions.SELECT_TRACK_UPWARD, "Select Track Upward" );
+		menuTexts.put( SelectionActions.SELECT_BRANCH, "Select Branch" );
 
 		menuTexts.put( BigDataViewerActionsMamut.LOAD_SETTINGS, "Load Bdv Settings" );
 		menuTexts.put( BigDataViewerActionsMamut.SAVE_SETTINGS, "Save Bdv Settings" );
@@ -94,7 +94,8 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 						item( SelectionActions.DELETE_SELECTION ),
 						item( SelectionActions.SELECT_WHOLE_TRACK ),
 						item( SelectionActions.SELECT_TRACK_DOWNWARD ),
-						item( SelectionActions.SELECT_TRACK_UPWARD )
+						item( SelectionActions.SELECT_TRACK_UPWARD ),
+						item( SelectionActions.SELECT_BRANCH )
 				),
 				ViewMenuBuilder.menu( "Settings",
 						item( BigDataViewerActionsMamut.BRIGHTNESS_SETTINGS ),
@@ -125,7 +126,10 @@ public class MamutViewBdv extends MamutView< OverlayGraphWrapper< Spot, Link >,
 		focusModel.listeners().add( () -> viewer.getDisplay().repaint() );
 		modelGraph.addGraphChangeListener( () -> viewer.getDisplay().repaint() );
 		modelGraph.addVertexPositionListener( ( v ) -> viewer.getDisplay().repaint() );
-		selectionModel.listeners().add( () -> viewer.getDisplay().repaint() );
+		selectionModel.deltaListeners().add( delta -> {
+			if ( tracksOverlay.isPainted( delta ) )
+				viewer.getDisplay().repaint();
+		} );
 
 		final OverlayNavigation< OverlayVertexWrapper< Spot, Link >, OverlayEdgeWrapper< Spot, Link > > overlayNavigation = new OverlayNavigation<>( viewer, viewGraph );
 		navigationHandler.listeners().add( overlayNavigation );
@@ -12,9 +12,9 @@ import org.mastodon.app.ui.MastodonFrameViewActions;
 import org.mastodon.app.ui.ViewMenu;
 import org.mastodon.app.ui.ViewMenuBuilder.JMenuHandle;
 import org.mastodon.model.AutoNavigateFocusModel;
+import org.mastodon.revised.model.feature.FeatureModel;
 import org.mastodon.revised.model.mamut.Link;
 import org.mastodon.revised.model.mamut.Model;
-import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
 import org.mastodon.revised.model.mamut.Spot;
 import org.mastodon.revised.model.tag.TagSetModel;
 import org.mastodon.revised.trackscheme.TrackSchemeContextListener;
@@ -34,8 +34,10 @@ import org.mastodon.revised.ui.HighlightBehaviours;
 import org.mastodon.revised.ui.SelectionActions;
 import org.mastodon.revised.ui.coloring.ColoringMenu;
 import org.mastodon.revised.ui.coloring.ColoringModel;
+import org.mastodon.revised.ui.coloring.FeatureGraphColorGenerator;
 import org.mastodon.revised.ui.coloring.GraphColorGeneratorAdapter;
 import org.mastodon.revised.ui.coloring.TagSetGraphColorGenerator;
+import org.mastodon.revised.util.MastodonDebugSettings;
 import org.mastodon.views.context.ContextChooser;
 import org.scijava.ui.behaviour.KeyPressedManager;
 
@@ -43,15 +45,18 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 {
 	private final ContextChooser< Spot > contextChooser;
 
+	/**
+	 * The current feature color generator, if coloring by a feature. Must be
+	 * disposed when the coloring changes.
+	 */
+	private FeatureGraphColorGenerator< Spot, Link > featureColoring;
+
 	public MamutViewTrackScheme( final MamutAppModel appModel )
 	{
 		super( appModel,
-				new TrackSchemeGraph<>(
-						appModel.getModel().getGraph(),
-						appModel.getModel().getGraphIdBimap(),
-						new ModelGraphTrackSchemeProperties( appModel.getModel().getGraph() ),
-						appModel.getModel().getGraph().getLock() ),
+				appModel.getSharedTrackSchemeGraph().acquire(),
 				new String[] { KeyConfigContexts.TRACKSCHEME } );
+		onClose( () -> appModel.getSharedTrackSchemeGraph().release() );
 
 		/*
 		 * TrackScheme ContextChooser
@@ -70,7 +75,8 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		final TrackSchemeOptions options = TrackSchemeOptions.options()
 				.shareKeyPressedEvents( keyPressedManager )
 				.style( forwardDefaultStyle )
-				.graphColorGenerator( coloring );
+				.graphColorGenerator( coloring )
+				.tiledRendering( MastodonDebugSettings.getInstance().isUseTiledTrackSchemeRendering() );
 		final AutoNavigateFocusModel< TrackSchemeVertex, TrackSchemeEdge > navigateFocusModel = new AutoNavigateFocusModel<>( focusModel, navigationHandler );
 		final TrackSchemeFrame frame = new TrackSchemeFrame(
 				viewGraph,
@@ -87,7 +93,10 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		frame.getTrackschemePanel().graphChanged();
 		contextListener.setContextListener( frame.getTrackschemePanel() );
 
-		final TrackSchemeStyle.UpdateListener updateListener = () -> frame.getTrackschemePanel().repaint();
+		final TrackSchemeStyle.UpdateListener updateListener = () -> {
+			frame.getTrackschemePanel().getGraphOverlay().invalidateTiles();
+			frame.getTrackschemePanel().repaint();
+		};
 		forwardDefaultStyle.updateListeners().add( updateListener );
 		onClose( () -> forwardDefaultStyle.updateListeners().remove( updateListener ) );
 
@@ -128,6 +137,7 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 						item( SelectionActions.SELECT_WHOLE_TRACK ),
 						item( SelectionActions.SELECT_TRACK_DOWNWARD ),
 						item( SelectionActions.SELECT_TRACK_UPWARD ),
+						item( SelectionActions.SELECT_BRANCH ),
 						separator(),
 						item( TrackSchemeNavigationActions.SELECT_NAVIGATE_CHILD ),
 						item( TrackSchemeNavigationActions.SELECT_NAVIGATE_PARENT ),
@@ -145,27 +155,54 @@ public class MamutViewTrackScheme extends MamutView< TrackSchemeGraph< Spot, Lin
 		appModel.getPlugins().addMenus( menu );
 
 		final TagSetModel< Spot, Link > tagSetModel = appModel.getModel().getTagSetModel();
-		final ColoringModel coloringModel = new ColoringModel( tagSetModel );
+		final FeatureModel featureModel = model.getFeatureModel();
+		final ColoringModel coloringModel = new ColoringModel( tagSetModel, featureModel, Spot.class, Link.class );
 		tagSetModel.listeners().add( coloringModel );
 		onClose( () -> tagSetModel.listeners().remove( coloringModel ) );
+		featureModel.listeners().add( coloringModel );
+		onClose( () -> featureModel.listeners().remove( coloringModel ) );
 
 		final ColoringMenu coloringMenu = new ColoringMenu( tagSetColoringMenuHandle.getMenu(), coloringModel );
 		tagSetModel.listeners().add( coloringMenu );
 		onClose( () -> tagSetModel.listeners().remove( coloringMenu ) );
+		featureModel.listeners().add( coloringMenu );
+		onClose( () -> featureModel.listeners().remove( coloringMenu ) );
 
 		final ColoringModel.ColoringChangedListener coloringChangedListener = () ->
 		{
+			disposeFeatureColoring();
 			if ( coloringModel.noColoring() )
 				coloring.setColorGenerator( null );
-			else if ( coloringModel.getTagSet() != null)
+			else if ( coloringModel.getTagSet() != null )
 				coloring.setColorGenerator( new TagSetGraphColorGenerator<>( tagSetModel, coloringModel.getTagSet() ) );
+			else if ( coloringModel.getFeatureKey() != null )
+			{
+				featureColoring = new FeatureGraphColorGenerator<>(
+						model.getGraph(),
+						featureModel,
+						model.getFeatureStatistics(),
+						coloringModel.getFeatureKey(),
+						coloringModel.getProjectionKey(),
+						coloringModel.getColorMap() );
+				coloring.setColorGenerator( featureColoring );
+			}
 			frame.getTrackschemePanel().entitiesAttributesChanged();
 		};
 		coloringModel.listeners().add( coloringChangedListener );
+		onClose( this::disposeFeatureColoring );
 
 		frame.getTrackschemePanel().repaint();
 	}
 
+	private void disposeFeatureColoring()
+	{
+		if ( featureColoring != null )
+		{
+			featureColoring.dispose();
+			featureColoring = null;
+		}
+	}
+
 	public ContextChooser< Spot > getContextChooser()
 	{
 		return contextChooser;
@@ -0,0 +1,66 @@
+package org.mastodon.revised.mamut;
+
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.trackscheme.TrackSchemeGraph;
+
+/**
+ * Reference-counted {@link TrackSchemeGraph} mirror of the model graph, shared
+ * by all TrackScheme views of a {@link MamutAppModel}.
+ * <p>
+ * The mirror is created when the first view {@link #acquire() acquires} it,
+ * and {@link TrackSchemeGraph#close() closed} when the last view
+ * {@link #release() releases} it. Layout attributes are not shared: each view
+ * stores them in the {@code LayoutAttributes} of its own layout.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class SharedTrackSchemeGraph
+{
+	private final Model model;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private int refCount;
+
+	public SharedTrackSchemeGraph( final Model model )
+	{
+		this.model = model;
+		this.refCount = 0;
+	}
+
+	/**
+	 * Returns the shared {@link TrackSchemeGraph}, creating it if needed. Each
+	 * call must be matched by a call to {@link #release()}.
+	 *
+	 * @return the shared {@link TrackSchemeGraph}.
+	 */
+	public synchronized TrackSchemeGraph< Spot, Link > acquire()
+	{
+		if ( graph == null )
+			graph = new TrackSchemeGraph<>(
+					model.getGraph(),
+					model.getGraphIdBimap(),
+					new ModelGraphTrackSchemeProperties( model.getGraph() ),
+					model.getGraph().getLock() );
+		++refCount;
+		return graph;
+	}
+
+	/**
+	 * Releases the shared {@link TrackSchemeGraph}. It is closed when it is
+	 * not used by any view anymore.
+	 */
+	public synchronized void release()
+	{
+		if ( refCount == 0 )
+			return;
+		if ( --refCount == 0 )
+		{
+			graph.close();
+			graph = null;
+		}
+	}
+}
@@ -12,5 +12,6 @@ public class DefaultMamutFeatureComputerService extends AbstractFeatureComputerS
 	{
 		initializeFeatureComputers( SpotFeatureComputer.class );
 		initializeFeatureComputers( LinkFeatureComputer.class );
+		initializeFeatureComputers( TrackFeatureComputer.class );
 	}
 }
@@ -6,6 +6,7 @@ import java.util.Set;
 
 import org.mastodon.properties.DoublePropertyMap;
 import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
 import org.mastodon.revised.model.feature.FeatureProjection;
 import org.mastodon.revised.model.feature.FeatureProjectors;
 import org.mastodon.revised.model.mamut.Link;
@@ -33,7 +34,7 @@ public class LinkDisplacementComputer implements LinkFeatureComputer
 	}
 
 	@Override
-	public Feature< Link, DoublePropertyMap< Link > > compute( final Model model )
+	public Feature< Link, DoublePropertyMap< Link > > compute( final Model model, final FeatureComputation computation )
 	{
 		final ModelGraph graph = model.getGraph();
 		final DoublePropertyMap< Link > pm = new DoublePropertyMap<>( graph.edges(), Double.NaN );
@@ -41,8 +42,10 @@ public class LinkDisplacementComputer implements LinkFeatureComputer
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
+		computation.setTotal( graph.edges().size() );
 		for ( final Link link : graph.edges() )
 		{
+			computation.processed();
 			final Spot source = link.getSource( ref1 );
 			final Spot target = link.getTarget( ref2 );
 			double d2 = 0.;
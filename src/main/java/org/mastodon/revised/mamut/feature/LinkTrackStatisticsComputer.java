@@ -0,0 +1,80 @@
+package org.mastodon.revised.mamut.feature;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.mastodon.pool.PoolCollectionWrapper;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.revised.mamut.feature.TrackStatisticsComputer.TrackStatisticsPropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.feature.FeatureProjectors;
+import org.mastodon.revised.model.mamut.ConnectedComponents;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Track;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Broadcasts the track statistics to the links of each track. The feature
+ * stores the track id of each link, which is the track of its source spot.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@Plugin( type = LinkFeatureComputer.class, name = "Link track statistics" )
+public class LinkTrackStatisticsComputer implements LinkFeatureComputer
+{
+
+	public static final String KEY = "Link track statistics";
+
+	public static final String TRACK_ID = "Link track id";
+
+	@Override
+	public Set< String > getDependencies()
+	{
+		return Collections.singleton( TrackStatisticsComputer.KEY );
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public Feature< Link, IntPropertyMap< Link > > compute( final Model model, final FeatureComputation computation )
+	{
+		final Feature< Track, TrackStatisticsPropertyMap > trackFeature =
+				( Feature< Track, TrackStatisticsPropertyMap > ) computation.getFeature( TrackStatisticsComputer.KEY, model.getFeatureModel() );
+		final TrackStatisticsPropertyMap statistics = trackFeature.getPropertyMap();
+		final ConnectedComponents components = statistics.getComponents();
+
+		final ModelGraph graph = model.getGraph();
+		final PoolCollectionWrapper< Link > edges = graph.edges();
+		final IntPropertyMap< Link > pm = new IntPropertyMap<>( edges, -1 );
+		final Spot ref = graph.vertexRef();
+		computation.setTotal( edges.size() );
+		for ( final Link link : edges )
+		{
+			computation.processed();
+			final int track = components.getComponent( link.getSource( ref ) );
+			if ( track >= 0 )
+				pm.set( link, track );
+		}
+		graph.releaseRef( ref );
+
+		final HashMap< String, FeatureProjection< Link > > map = new HashMap<>();
+		map.put( TRACK_ID, FeatureProjectors.project( pm ) );
+		for ( final String projectionKey : statistics.getProjectionKeys() )
+			map.put( projectionKey, FeatureProjectors.lookup( pm, statistics.getValues( projectionKey ) ) );
+		final Map< String, FeatureProjection< Link > > projections = Collections.unmodifiableMap( map );
+		final Feature< Link, IntPropertyMap< Link > > feature = new Feature<>( KEY, Link.class, pm, projections );
+		return feature;
+	}
+}
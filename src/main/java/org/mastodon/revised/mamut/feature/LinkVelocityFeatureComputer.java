@@ -1,19 +1,29 @@
 package org.mastodon.revised.mamut.feature;
 
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 
-import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
 import org.mastodon.revised.model.feature.Feature;
-import org.mastodon.revised.model.feature.FeatureProjection;
-import org.mastodon.revised.model.feature.FeatureProjectors;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.LazyFeaturePropertyMap;
 import org.mastodon.revised.model.mamut.Link;
 import org.mastodon.revised.model.mamut.Model;
 import org.mastodon.revised.model.mamut.ModelGraph;
 import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.spatial.VertexPositionListener;
 import org.scijava.plugin.Plugin;
 
+/**
+ * Lazily evaluated link velocity, computed from the positions and the
+ * time-points of the link source and target.
+ * <p>
+ * Values are computed on first access and invalidated when links are removed,
+ * or when the position of their source or target changes.
+ *
+ * @author Jean-Yves Tinevez
+ */
 @Plugin( type = LinkFeatureComputer.class, name = "Link velocity" )
 public class LinkVelocityFeatureComputer implements LinkFeatureComputer
 {
@@ -23,7 +33,7 @@ public class LinkVelocityFeatureComputer implements LinkFeatureComputer
 	@Override
 	public Set< String > getDependencies()
 	{
-		return Collections.singleton( LinkDisplacementComputer.KEY );
+		return Collections.emptySet();
 	}
 
 	@Override
@@ -33,36 +43,45 @@ public class LinkVelocityFeatureComputer implements LinkFeatureComputer
 	}
 
 	@Override
-	public Feature< Link, DoublePropertyMap< Link > > compute( final Model model )
+	public Feature< Link, LazyFeaturePropertyMap< Link > > compute( final Model model, final FeatureComputation computation )
 	{
 		final ModelGraph graph = model.getGraph();
-		final DoublePropertyMap< Link > pm = new DoublePropertyMap<>( graph.edges(), Double.NaN );
+		final RefPool< Link > pool = RefCollections.tryGetRefPool( graph.edges() );
 
+		/*
+		 * Projection values are computed one at a time, under the projection
+		 * lock, so the refs can be shared.
+		 */
 		final Spot ref1 = graph.vertexRef();
 		final Spot ref2 = graph.vertexRef();
 
-		@SuppressWarnings( "unchecked" )
-		final Feature< Link, DoublePropertyMap< Link > > displacementFeature =
-				( Feature< Link, DoublePropertyMap< Link > > ) model.getFeatureModel().getFeature( LinkDisplacementComputer.KEY );
-		final DoublePropertyMap< Link > displacement = displacementFeature.getPropertyMap();
-
-		for ( final Link link : graph.edges() )
-		{
-			if ( displacement.isSet( link ) )
+		final LazyFeaturePropertyMap< Link > pm = new LazyFeaturePropertyMap<>( Link.class, pool );
+		pm.addProjection( KEY, link -> {
+			final Spot source = link.getSource( ref1 );
+			final Spot target = link.getTarget( ref2 );
+			double d2 = 0.;
+			for ( int d = 0; d < 3; d++ )
 			{
-				final double disp = displacement.getDouble( link );
-				final Spot source = link.getSource( ref1 );
-				final Spot target = link.getTarget( ref2 );
-				final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
-				pm.set( link, disp / dt );
+				final double dx = source.getDoublePosition( d ) - target.getDoublePosition( d );
+				d2 += dx * dx;
 			}
-		}
+			final double dt = Math.abs( source.getTimepoint() - target.getTimepoint() );
+			return Math.sqrt( d2 ) / dt;
+		} );
 
-		graph.releaseRef( ref1 );
-		graph.releaseRef( ref2 );
+		final VertexPositionListener< Spot > positionListener = spot -> {
+			for ( final Link link : spot.edges() )
+				pm.invalidate( link );
+		};
+		graph.addVertexPositionListener( positionListener );
+		pm.invalidateOnRemoval( graph );
+		pm.onDispose( () -> {
+			graph.removeVertexPositionListener( positionListener );
+			graph.releaseRef( ref1 );
+			graph.releaseRef( ref2 );
+		} );
 
-		final Map< String, FeatureProjection< Link > > projections = Collections.singletonMap( KEY, FeatureProjectors.project( pm ) );
-		final Feature< Link, DoublePropertyMap< Link > > feature = new Feature<>( KEY, Link.class, pm, projections );
+		final Feature< Link, LazyFeaturePropertyMap< Link > > feature = new Feature<>( KEY, Link.class, pm, pm.getProjections() );
 		return feature;
 	}
 }
@@ -7,6 +7,7 @@ import java.util.Set;
 import org.mastodon.pool.PoolCollectionWrapper;
 import org.mastodon.properties.IntPropertyMap;
 import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
 import org.mastodon.revised.model.feature.FeatureProjection;
 import org.mastodon.revised.model.feature.FeatureProjectors;
 import org.mastodon.revised.model.mamut.Model;
@@ -32,13 +33,17 @@ public class SpotNLinksComputer implements SpotFeatureComputer
 	}
 
 	@Override
-	public Feature< Spot, IntPropertyMap< Spot > > compute( final Model model )
+	public Feature< Spot, IntPropertyMap< Spot > > compute( final Model model, final FeatureComputation computation )
 	{
 		final PoolCollectionWrapper< Spot > vertices = model.getGraph().vertices();
 		final IntPropertyMap< Spot > pm = new IntPropertyMap<>( vertices, -1 );
 
+		computation.setTotal( vertices.size() );
 		for ( final Spot spot : vertices )
+		{
+			computation.processed();
 			pm.set( spot, spot.edges().size() );
+		}
 
 		final Map< String, FeatureProjection< Spot > > projections = Collections.singletonMap( KEY, FeatureProjectors.project( pm ) );
 		final Feature< Spot, IntPropertyMap< Spot > > feature = new Feature<>( KEY, Spot.class, pm, projections );
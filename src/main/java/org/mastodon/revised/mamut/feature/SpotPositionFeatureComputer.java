@@ -8,6 +8,7 @@ import java.util.Set;
 import org.mastodon.properties.AbstractPropertyMap;
 import org.mastodon.properties.PropertyMap;
 import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
 import org.mastodon.revised.model.feature.FeatureProjection;
 import org.mastodon.revised.model.mamut.Model;
 import org.mastodon.revised.model.mamut.Spot;
@@ -34,7 +35,7 @@ public class SpotPositionFeatureComputer implements SpotFeatureComputer
 	}
 
 	@Override
-	public Feature< Spot, PropertyMap< Spot, RealLocalizable > > compute( final Model model )
+	public Feature< Spot, PropertyMap< Spot, RealLocalizable > > compute( final Model model, final FeatureComputation computation )
 	{
 		final HashMap< String, FeatureProjection< Spot > > map = new HashMap<>();
 		for ( int d = 0; d < 3; d++ )
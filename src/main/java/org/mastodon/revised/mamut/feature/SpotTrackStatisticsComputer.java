@@ -0,0 +1,75 @@
+package org.mastodon.revised.mamut.feature;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.mastodon.pool.PoolCollectionWrapper;
+import org.mastodon.properties.IntPropertyMap;
+import org.mastodon.revised.mamut.feature.TrackStatisticsComputer.TrackStatisticsPropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.feature.FeatureProjectors;
+import org.mastodon.revised.model.mamut.ConnectedComponents;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Track;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Broadcasts the track statistics to the spots of each track. The feature
+ * stores the track id of each spot.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@Plugin( type = SpotFeatureComputer.class, name = "Spot track statistics" )
+public class SpotTrackStatisticsComputer implements SpotFeatureComputer
+{
+
+	public static final String KEY = "Spot track statistics";
+
+	public static final String TRACK_ID = "Spot track id";
+
+	@Override
+	public Set< String > getDependencies()
+	{
+		return Collections.singleton( TrackStatisticsComputer.KEY );
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public Feature< Spot, IntPropertyMap< Spot > > compute( final Model model, final FeatureComputation computation )
+	{
+		final Feature< Track, TrackStatisticsPropertyMap > trackFeature =
+				( Feature< Track, TrackStatisticsPropertyMap > ) computation.getFeature( TrackStatisticsComputer.KEY, model.getFeatureModel() );
+		final TrackStatisticsPropertyMap statistics = trackFeature.getPropertyMap();
+		final ConnectedComponents components = statistics.getComponents();
+
+		final PoolCollectionWrapper< Spot > vertices = model.getGraph().vertices();
+		final IntPropertyMap< Spot > pm = new IntPropertyMap<>( vertices, -1 );
+		computation.setTotal( vertices.size() );
+		for ( final Spot spot : vertices )
+		{
+			computation.processed();
+			final int track = components.getComponent( spot );
+			if ( track >= 0 )
+				pm.set( spot, track );
+		}
+
+		final HashMap< String, FeatureProjection< Spot > > map = new HashMap<>();
+		map.put( TRACK_ID, FeatureProjectors.project( pm ) );
+		for ( final String projectionKey : statistics.getProjectionKeys() )
+			map.put( projectionKey, FeatureProjectors.lookup( pm, statistics.getValues( projectionKey ) ) );
+		final Map< String, FeatureProjection< Spot > > projections = Collections.unmodifiableMap( map );
+		final Feature< Spot, IntPropertyMap< Spot > > feature = new Feature<>( KEY, Spot.class, pm, projections );
+		return feature;
+	}
+}
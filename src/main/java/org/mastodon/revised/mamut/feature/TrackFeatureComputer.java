@@ -0,0 +1,13 @@
+package org.mastodon.revised.mamut.feature;
+
+import org.mastodon.revised.model.feature.FeatureComputer;
+import org.mastodon.revised.model.mamut.Model;
+
+/**
+ * Marker interface for MaMuT feature computers to sort between different
+ * targets.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface TrackFeatureComputer extends FeatureComputer< Model >
+{}
@@ -0,0 +1,347 @@
+package org.mastodon.revised.mamut.feature;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.mastodon.properties.AbstractPropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.mamut.ConnectedComponents;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Track;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Computes statistics on the tracks of the model: duration, number of
+ * divisions, mean speed and displacement.
+ * <p>
+ * Tracks are the connected components of the model graph, labelled with
+ * {@link ConnectedComponents}. The spot and link data needed by the statistics
+ * is first copied in primitive arrays, then the statistics of all the tracks
+ * are reduced in parallel.
+ * <p>
+ * The displacement of a track is the largest distance between its first spot
+ * and one of its leaves, the spots without outgoing links. For a linear track
+ * this is the distance between its first and last spots; for a branching track
+ * this is the displacement of the branch that went the farthest from the
+ * origin of the track. If several spots share the first time-point of a track,
+ * the first one in the track labelling is used as origin.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@Plugin( type = TrackFeatureComputer.class, name = "Track statistics" )
+public class TrackStatisticsComputer implements TrackFeatureComputer
+{
+
+	public static final String KEY = "Track statistics";
+
+	public static final String DURATION = "Track duration";
+
+	public static final String N_DIVISIONS = "Track N divisions";
+
+	public static final String MEAN_SPEED = "Track mean speed";
+
+	public static final String DISPLACEMENT = "Track displacement";
+
+	@Override
+	public Set< String > getDependencies()
+	{
+		return Collections.emptySet();
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	@Override
+	public Feature< Track, TrackStatisticsPropertyMap > compute( final Model model, final FeatureComputation computation )
+	{
+		final ModelGraph graph = model.getGraph();
+		final ConnectedComponents components = ConnectedComponents.compute( graph );
+
+		/*
+		 * Copy spot and link data in primitive arrays, indexed by spot pool
+		 * index. Speeds of links are accumulated on their source spot.
+		 */
+		final int capacity = components.capacity();
+		final int[] timepoints = new int[ capacity ];
+		final double[][] positions = new double[ 3 ][ capacity ];
+		final int[] nOutgoing = new int[ capacity ];
+		final double[] sumSpeeds = new double[ capacity ];
+		final int[] nSpeeds = new int[ capacity ];
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int i = spot.getInternalPoolIndex();
+			timepoints[ i ] = spot.getTimepoint();
+			for ( int d = 0; d < 3; d++ )
+				positions[ d ][ i ] = spot.getDoublePosition( d );
+			nOutgoing[ i ] = spot.outgoingEdges().size();
+		}
+
+		final Spot ref1 = graph.vertexRef();
+		final Spot ref2 = graph.vertexRef();
+		for ( final Link link : graph.edges() )
+		{
+			final int source = link.getSource( ref1 ).getInternalPoolIndex();
+			final int target = link.getTarget( ref2 ).getInternalPoolIndex();
+			final int dt = Math.abs( timepoints[ target ] - timepoints[ source ] );
+			if ( dt == 0 )
+				continue;
+			sumSpeeds[ source ] += distance( positions, source, target ) / dt;
+			nSpeeds[ source ]++;
+		}
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+
+		/*
+		 * Reduce per track.
+		 */
+		final int nTracks = components.numComponents();
+		final double[] durations = new double[ nTracks ];
+		final double[] nDivisions = new double[ nTracks ];
+		final double[] meanSpeeds = new double[ nTracks ];
+		final double[] displacements = new double[ nTracks ];
+		computation.setTotal( nTracks );
+		IntStream.range( 0, nTracks ).parallel().forEach( track -> {
+			computation.processed();
+			int first = -1;
+			int last = -1;
+			int divisions = 0;
+			double sumSpeed = 0.;
+			int nSpeed = 0;
+			final int size = components.size( track );
+			for ( int j = 0; j < size; j++ )
+			{
+				final int i = components.getMember( track, j );
+				if ( first < 0 || timepoints[ i ] < timepoints[ first ] )
+					first = i;
+				if ( last < 0 || timepoints[ i ] > timepoints[ last ] )
+					last = i;
+				if ( nOutgoing[ i ] > 1 )
+					divisions++;
+				sumSpeed += sumSpeeds[ i ];
+				nSpeed += nSpeeds[ i ];
+			}
+			double displacement = 0.;
+			for ( int j = 0; j < size; j++ )
+			{
+				final int i = components.getMember( track, j );
+				if ( nOutgoing[ i ] == 0 )
+					displacement = Math.max( displacement, distance( positions, first, i ) );
+			}
+			durations[ track ] = timepoints[ last ] - timepoints[ first ];
+			nDivisions[ track ] = divisions;
+			meanSpeeds[ track ] = nSpeed == 0 ? Double.NaN : sumSpeed / nSpeed;
+			displacements[ track ] = displacement;
+		} );
+
+		final Map< String, double[] > values = new LinkedHashMap<>();
+		values.put( DURATION, durations );
+		values.put( N_DIVISIONS, nDivisions );
+		values.put( MEAN_SPEED, meanSpeeds );
+		values.put( DISPLACEMENT, displacements );
+
+		final TrackStatisticsPropertyMap pm = new TrackStatisticsPropertyMap( components, values );
+		final HashMap< String, FeatureProjection< Track > > map = new HashMap<>();
+		for ( final String projectionKey : values.keySet() )
+			map.put( projectionKey, new TrackProjection( pm, values.get( projectionKey ) ) );
+		final Map< String, FeatureProjection< Track > > projections = Collections.unmodifiableMap( map );
+
+		final Feature< Track, TrackStatisticsPropertyMap > feature = new Feature<>( KEY, Track.class, pm, projections );
+		return feature;
+	}
+
+	private static double distance( final double[][] positions, final int i, final int j )
+	{
+		double d2 = 0.;
+		for ( int d = 0; d < 3; d++ )
+		{
+			final double dx = positions[ d ][ i ] - positions[ d ][ j ];
+			d2 += dx * dx;
+		}
+		return Math.sqrt( d2 );
+	}
+
+	private static final class TrackProjection implements FeatureProjection< Track >
+	{
+
+		private final TrackStatisticsPropertyMap pm;
+
+		private final double[] values;
+
+		public TrackProjection( final TrackStatisticsPropertyMap pm, final double[] values )
+		{
+			this.pm = pm;
+			this.values = values;
+		}
+
+		@Override
+		public boolean isSet( final Track obj )
+		{
+			return pm.isSet( obj );
+		}
+
+		@Override
+		public double value( final Track obj )
+		{
+			return isSet( obj ) ? values[ obj.id() ] : Double.NaN;
+		}
+	}
+
+	/**
+	 * Property map storing the statistics of all tracks, and the track
+	 * labelling they were computed on.
+	 * <p>
+	 * The value of a track is the array of its statistics, in the order of
+	 * {@link #getProjectionKeys()}. Values can be set and removed for the
+	 * tracks of the labelling; removed values read as <code>NaN</code>.
+	 *
+	 * @author Jean-Yves Tinevez
+	 */
+	public static final class TrackStatisticsPropertyMap extends AbstractPropertyMap< Track, double[] >
+	{
+
+		private final ConnectedComponents components;
+
+		private final Map< String, double[] > values;
+
+		/**
+		 * Tracks whose values were removed.
+		 */
+		private final BitSet removed;
+
+		private TrackStatisticsPropertyMap( final ConnectedComponents components, final Map< String, double[] > values )
+		{
+			this.components = components;
+			this.values = values;
+			this.removed = new BitSet();
+		}
+
+		/**
+		 * Returns the track labelling the statistics were computed on.
+		 *
+		 * @return the connected components of the model graph.
+		 */
+		public ConnectedComponents getComponents()
+		{
+			return components;
+		}
+
+		/**
+		 * Returns the keys of the statistics stored in this map.
+		 *
+		 * @return the projection keys.
+		 */
+		public Set< String > getProjectionKeys()
+		{
+			return Collections.unmodifiableSet( values.keySet() );
+		}
+
+		/**
+		 * Returns the values of the specified statistics for all tracks,
+		 * indexed by track id. The returned array is updated in place when
+		 * values are set or removed, and must not be modified.
+		 *
+		 * @param projectionKey
+		 *            the key of the statistics.
+		 * @return the values array, or <code>null</code> if the key is
+		 *         unknown.
+		 */
+		public double[] getValues( final String projectionKey )
+		{
+			return values.get( projectionKey );
+		}
+
+		/**
+		 * Sets the statistics of the specified track.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if the track is not in the labelling of this map, or if
+		 *             the number of values does not match the number of
+		 *             statistics.
+		 */
+		@Override
+		public double[] set( final Track key, final double[] value )
+		{
+			final int id = key.id();
+			if ( id < 0 || id >= components.numComponents() )
+				throw new IllegalArgumentException( "Track " + id + " is not in the track labelling." );
+			if ( value.length != values.size() )
+				throw new IllegalArgumentException( "Expected " + values.size() + " statistics values, got " + value.length + "." );
+			final double[] previous = get( key );
+			int i = 0;
+			for ( final double[] v : values.values() )
+				v[ id ] = value[ i++ ];
+			removed.clear( id );
+			notifyPropertyChanged( key );
+			return previous;
+		}
+
+		@Override
+		public double[] remove( final Track key )
+		{
+			final double[] previous = get( key );
+			if ( previous == null )
+				return null;
+			final int id = key.id();
+			for ( final double[] v : values.values() )
+				v[ id ] = Double.NaN;
+			removed.set( id );
+			notifyPropertyChanged( key );
+			return previous;
+		}
+
+		@Override
+		public void beforeDeleteObject( final Track key )
+		{}
+
+		@Override
+		public void beforeClearPool()
+		{}
+
+		@Override
+		public void clear()
+		{
+			for ( final double[] v : values.values() )
+				Arrays.fill( v, Double.NaN );
+			removed.set( 0, components.numComponents() );
+		}
+
+		@Override
+		public double[] get( final Track key )
+		{
+			if ( !isSet( key ) )
+				return null;
+			final double[] out = new double[ values.size() ];
+			int i = 0;
+			for ( final double[] v : values.values() )
+				out[ i++ ] = v[ key.id() ];
+			return out;
+		}
+
+		@Override
+		public boolean isSet( final Track key )
+		{
+			final int id = key.id();
+			return id >= 0 && id < components.numComponents() && !removed.get( id );
+		}
+
+		@Override
+		public int size()
+		{
+			return components.numComponents() - removed.cardinality();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package org.mastodon.revised.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Branch graph of a graph, where each branch is a maximal linear chain of
+ * vertices.
+ * <p>
+ * Two consecutive vertices of a branch are linked by an edge that is the only
+ * outgoing edge of its source and the only incoming edge of its target. A
+ * branch therefore ends at a division, a merge, or a leaf. The vertices of a
+ * branch are stored in order, so that the model vertices of a branch, its
+ * first and last vertices, and the position of a vertex in its branch are
+ * read without walking the chain. Branches are linked to their parent and
+ * child branches through the edges of their first and last vertices:
+ * traversing the branch graph costs one step per branch instead of one step
+ * per vertex.
+ * <p>
+ * Branches are identified by their first vertex, or by a branch id. Branch
+ * ids are only stable until the next modification of the graph.
+ * <p>
+ * The branches are maintained lazily, by registering as a
+ * {@link GraphListener}: adding or removing an edge invalidates the branches
+ * of its source and target, and of their neighbors whose linkage depends on
+ * the degree of the source or target. A branch is rebuilt when one of its
+ * vertices is queried, in time linear in its length.
+ * <p>
+ * All methods are synchronized. Callers should hold the read lock of the
+ * graph.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class BranchGraph< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+
+	private final RefPool< V > vertexPool;
+
+	/**
+	 * Branch of each vertex, indexed by vertex pool index. <code>-1</code> for
+	 * vertices not assigned to a branch yet.
+	 */
+	private int[] branchOf;
+
+	/**
+	 * Position of each vertex in its branch.
+	 */
+	private int[] position;
+
+	/**
+	 * Vertex pool indices of each branch, in order. <code>null</code> for
+	 * invalidated branches.
+	 */
+	private final ArrayList< int[] > branches;
+
+	/**
+	 * Number of vertices still pointing to each branch. Branches that are
+	 * invalidated and not pointed to anymore are recycled.
+	 */
+	private final TIntArrayList branchRefs;
+
+	private final TIntArrayList freeBranches;
+
+	/**
+	 * Creates a branch graph for the specified graph. Branches are built on
+	 * demand. The branch graph registers as a listener to the graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 */
+	public BranchGraph( final ListenableReadOnlyGraph< V, E > graph )
+	{
+		this.vertexPool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.branches = new ArrayList<>();
+		this.branchRefs = new TIntArrayList();
+		this.freeBranches = new TIntArrayList();
+		clear();
+		graph.addGraphListener( this );
+	}
+
+	/**
+	 * Returns the id of the branch of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the branch id.
+	 */
+	public synchronized int getBranchId( final V vertex )
+	{
+		return branch( vertexPool.getId( vertex ) );
+	}
+
+	/**
+	 * Returns the number of vertices in the branch of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the branch length.
+	 */
+	public synchronized int getBranchLength( final V vertex )
+	{
+		return branches.get( branch( vertexPool.getId( vertex ) ) ).length;
+	}
+
+	/**
+	 * Returns the position of the specified vertex in its branch, starting
+	 * from 0 for the first vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the position in the branch.
+	 */
+	public synchronized int getPositionInBranch( final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		branch( id );
+		return position[ id ];
+	}
+
+	/**
+	 * Returns the first vertex of the branch of the specified vertex. The
+	 * first vertex identifies the branch.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param ref
+	 *            a vertex reference used for retrieval.
+	 * @return the first vertex of the branch.
+	 */
+	public synchronized V getBranchStart( final V vertex, final V ref )
+	{
+		final int[] branch = branches.get( branch( vertexPool.getId( vertex ) ) );
+		return vertexPool.getObject( branch[ 0 ], ref );
+	}
+
+	/**
+	 * Returns the last vertex of the branch of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param ref
+	 *            a vertex reference used for retrieval.
+	 * @return the last vertex of the branch.
+	 */
+	public synchronized V getBranchEnd( final V vertex, final V ref )
+	{
+		final int[] branch = branches.get( branch( vertexPool.getId( vertex ) ) );
+		return vertexPool.getObject( branch[ branch.length - 1 ], ref );
+	}
+
+	/**
+	 * Adds the vertices and the edges of the branch of the specified vertex
+	 * to the specified collections, in order.
+	 *
+	 * @param vertex
+	 *            a vertex of the branch.
+	 * @param vertices
+	 *            the collection to add the branch vertices to. May be
+	 *            <code>null</code>.
+	 * @param edges
+	 *            the collection to add the edges linking the branch vertices
+	 *            to. May be <code>null</code>.
+	 */
+	public synchronized void getBranch( final V vertex, final Collection< V > vertices, final Collection< E > edges )
+	{
+		final int[] branch = branches.get( branch( vertexPool.getId( vertex ) ) );
+		final V ref = vertexPool.createRef();
+		for ( int i = 0; i < branch.length; i++ )
+		{
+			final V v = vertexPool.getObject( branch[ i ], ref );
+			if ( vertices != null )
+				vertices.add( v );
+			if ( edges != null && i < branch.length - 1 )
+				edges.add( v.outgoingEdges().iterator().next() );
+		}
+		vertexPool.releaseRef( ref );
+	}
+
+	/**
+	 * Adds the first vertices of the child branches of the branch of the
+	 * specified vertex to the specified collection.
+	 *
+	 * @param vertex
+	 *            a vertex of the branch.
+	 * @param starts
+	 *            the collection to add the first vertices of the child
+	 *            branches to.
+	 */
+	public synchronized void getChildBranches( final V vertex, final Collection< V > starts )
+	{
+		final int[] branch = branches.get( branch( vertexPool.getId( vertex ) ) );
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+		for ( final E e : vertexPool.getObject( branch[ branch.length - 1 ], ref1 ).outgoingEdges() )
+			starts.add( e.getTarget( ref2 ) );
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+	}
+
+	/**
+	 * Adds the last vertices of the parent branches of the branch of the
+	 * specified vertex to the specified collection.
+	 *
+	 * @param vertex
+	 *            a vertex of the branch.
+	 * @param ends
+	 *            the collection to add the last vertices of the parent
+	 *            branches to.
+	 */
+	public synchronized void getParentBranches( final V vertex, final Collection< V > ends )
+	{
+		final int[] branch = branches.get( branch( vertexPool.getId( vertex ) ) );
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+		for ( final E e : vertexPool.getObject( branch[ 0 ], ref1 ).incomingEdges() )
+			ends.add( e.getSource( ref2 ) );
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+	}
+
+	/**
+	 * Returns the branch of the vertex with the specified pool index,
+	 * rebuilding it if it was invalidated.
+	 */
+	private int branch( final int id )
+	{
+		if ( id < branchOf.length && branchOf[ id ] >= 0 && branches.get( branchOf[ id ] ) != null )
+			return branchOf[ id ];
+		ensureCapacity( id );
+
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+
+		// Walk back to the first vertex of the branch.
+		int start = id;
+		for ( int steps = 0; steps <= branchOf.length; steps++ )
+		{
+			final int prev = linkedParent( start, ref1, ref2 );
+			if ( prev < 0 || prev == id )
+				break;
+			start = prev;
+		}
+
+		// Walk forward to the last vertex of the branch.
+		final TIntArrayList members = new TIntArrayList();
+		int v = start;
+		do
+		{
+			members.add( v );
+			v = linkedChild( v, ref1, ref2 );
+		}
+		while ( v >= 0 && v != start );
+
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+
+		final int branch = newBranch();
+		final int[] vertices = members.toArray();
+		for ( int i = 0; i < vertices.length; i++ )
+		{
+			ensureCapacity( vertices[ i ] );
+			setBranch( vertices[ i ], branch );
+			position[ vertices[ i ] ] = i;
+		}
+		branches.set( branch, vertices );
+		return branch;
+	}
+
+	/**
+	 * Returns the pool index of the parent of the specified vertex if they
+	 * are in the same branch, <code>-1</code> otherwise.
+	 */
+	private int linkedParent( final int id, final V ref1, final V ref2 )
+	{
+		final Edges< E > incoming = vertexPool.getObject( id, ref1 ).incomingEdges();
+		if ( incoming.size() != 1 )
+			return -1;
+		final V parent = incoming.iterator().next().getSource( ref2 );
+		return parent.outgoingEdges().size() == 1 ? vertexPool.getId( parent ) : -1;
+	}
+
+	/**
+	 * Returns the pool index of the child of the specified vertex if they are
+	 * in the same branch, <code>-1</code> otherwise.
+	 */
+	private int linkedChild( final int id, final V ref1, final V ref2 )
+	{
+		final Edges< E > outgoing = vertexPool.getObject( id, ref1 ).outgoingEdges();
+		if ( outgoing.size() != 1 )
+			return -1;
+		final V child = outgoing.iterator().next().getTarget( ref2 );
+		return child.incomingEdges().size() == 1 ? vertexPool.getId( child ) : -1;
+	}
+
+	private int newBranch()
+	{
+		if ( !freeBranches.isEmpty() )
+		{
+			final int branch = freeBranches.removeAt( freeBranches.size() - 1 );
+			branches.set( branch, new int[ 0 ] );
+			branchRefs.set( branch, 0 );
+			return branch;
+		}
+		branches.add( new int[ 0 ] );
+		branchRefs.add( 0 );
+		return branches.size() - 1;
+	}
+
+	private void setBranch( final int id, final int branch )
+	{
+		final int old = branchOf[ id ];
+		if ( old >= 0 )
+			release( old );
+		branchOf[ id ] = branch;
+		branchRefs.set( branch, branchRefs.get( branch ) + 1 );
+	}
+
+	private void release( final int branch )
+	{
+		final int refs = branchRefs.get( branch ) - 1;
+		branchRefs.set( branch, refs );
+		if ( refs == 0 && branches.get( branch ) == null )
+			freeBranches.add( branch );
+	}
+
+	/**
+	 * Invalidates the branch of the vertex with the specified pool index.
+	 */
+	private void invalidate( final int id )
+	{
+		if ( id >= branchOf.length || branchOf[ id ] < 0 )
+			return;
+		final int branch = branchOf[ id ];
+		if ( branches.get( branch ) == null )
+			return;
+		branches.set( branch, null );
+		if ( branchRefs.get( branch ) == 0 )
+			freeBranches.add( branch );
+	}
+
+	private void forget( final int id )
+	{
+		if ( id < branchOf.length && branchOf[ id ] >= 0 )
+		{
+			invalidate( id );
+			release( branchOf[ id ] );
+			branchOf[ id ] = -1;
+		}
+	}
+
+	private void ensureCapacity( final int id )
+	{
+		if ( id < branchOf.length )
+			return;
+		final int length = branchOf.length;
+		final int capacity = Math.max( id + 1, 2 * length );
+		branchOf = Arrays.copyOf( branchOf, capacity );
+		Arrays.fill( branchOf, length, capacity, -1 );
+		position = Arrays.copyOf( position, capacity );
+	}
+
+	private void clear()
+	{
+		branchOf = new int[ 0 ];
+		position = new int[ 0 ];
+		branches.clear();
+		branchRefs.clear();
+		freeBranches.clear();
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		clear();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		ensureCapacity( id );
+		// The pool index may be reused from a removed vertex.
+		forget( id );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		forget( vertexPool.getId( vertex ) );
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		edgeChanged( edge );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		edgeChanged( edge );
+	}
+
+	/**
+	 * Invalidates the branches of the source and target of an edge, and of
+	 * their neighbors: the out-degree of the source decides whether it is
+	 * linked to its children, and the in-degree of the target whether it is
+	 * linked to its parents.
+	 */
+	private void edgeChanged( final E edge )
+	{
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+		final V source = edge.getSource( ref1 );
+		invalidate( vertexPool.getId( source ) );
+		for ( final E e : source.outgoingEdges() )
+			invalidate( vertexPool.getId( e.getTarget( ref2 ) ) );
+		final V target = edge.getTarget( ref1 );
+		invalidate( vertexPool.getId( target ) );
+		for ( final E e : target.incomingEdges() )
+			invalidate( vertexPool.getId( e.getSource( ref2 ) ) );
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+	}
+}
@@ -0,0 +1,433 @@
+package org.mastodon.revised.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Interval labelling of the lineage trees of a graph, for constant-time
+ * ancestor queries and subtree enumeration by range scan.
+ * <p>
+ * Lineage trees are spanned by the first incoming edge of each vertex: as in
+ * the TrackScheme layout, a vertex with several parents (a merge) belongs to
+ * the tree of its first parent. Each tree is stored as the array of its
+ * vertices in depth-first pre-order, and each vertex is labelled with its
+ * position in this array and the end of its subtree. The subtree of a vertex
+ * is then a contiguous range of the array, and a vertex is an ancestor of
+ * another vertex if the position of the latter is in its range.
+ * <p>
+ * The labelling is maintained lazily, by registering as a
+ * {@link GraphListener}: an edit of the graph topology only invalidates the
+ * trees of the vertices involved. A tree is relabelled when one of its
+ * vertices is queried, in time linear in its size.
+ * <p>
+ * All methods are synchronized. Callers should hold the read lock of the
+ * graph.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LineageIndex< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+
+	private final RefPool< V > vertexPool;
+
+	private final RefPool< E > edgePool;
+
+	/**
+	 * Tree of each vertex, indexed by vertex pool index. <code>-1</code> for
+	 * vertices not labelled yet.
+	 */
+	private int[] treeOf;
+
+	/**
+	 * Position of each vertex in the pre-order of its tree.
+	 */
+	private int[] pre;
+
+	/**
+	 * End (exclusive) of the subtree of each vertex in the pre-order of its
+	 * tree.
+	 */
+	private int[] end;
+
+	/**
+	 * Vertex pool indices of each tree, in pre-order. <code>null</code> for
+	 * invalidated trees.
+	 */
+	private final ArrayList< int[] > trees;
+
+	/**
+	 * Number of vertices still pointing to each tree. Trees that are
+	 * invalidated and not pointed to anymore are recycled.
+	 */
+	private final TIntArrayList treeRefs;
+
+	private final TIntArrayList freeTrees;
+
+	/**
+	 * Creates a lineage index for the specified graph. Trees are labelled on
+	 * demand. The index registers as a listener to the graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 */
+	public LineageIndex( final ListenableReadOnlyGraph< V, E > graph )
+	{
+		this.vertexPool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.edgePool = RefCollections.tryGetRefPool( graph.edges() );
+		this.trees = new ArrayList<>();
+		this.treeRefs = new TIntArrayList();
+		this.freeTrees = new TIntArrayList();
+		clear();
+		graph.addGraphListener( this );
+	}
+
+	/**
+	 * Returns whether a vertex is an ancestor of another vertex in the
+	 * lineage trees.
+	 *
+	 * @param ancestor
+	 *            the candidate ancestor.
+	 * @param descendant
+	 *            the candidate descendant.
+	 * @return <code>true</code> if {@code ancestor} is a strict ancestor of
+	 *         {@code descendant}.
+	 */
+	public synchronized boolean isAncestor( final V ancestor, final V descendant )
+	{
+		final int a = vertexPool.getId( ancestor );
+		final int d = vertexPool.getId( descendant );
+		label( a );
+		label( d );
+		return treeOf[ a ] == treeOf[ d ] && pre[ a ] < pre[ d ] && pre[ d ] < end[ a ];
+	}
+
+	/**
+	 * Returns the number of vertices in the lineage subtree of the specified
+	 * vertex, including itself.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the subtree size.
+	 */
+	public synchronized int getSubtreeSize( final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		label( id );
+		return end[ id ] - pre[ id ];
+	}
+
+	/**
+	 * Returns the root of the lineage tree of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param ref
+	 *            a vertex reference used for retrieval.
+	 * @return the root.
+	 */
+	public synchronized V getRoot( final V vertex, final V ref )
+	{
+		final int id = vertexPool.getId( vertex );
+		label( id );
+		return vertexPool.getObject( trees.get( treeOf[ id ] )[ 0 ], ref );
+	}
+
+	/**
+	 * Adds the vertices of the lineage subtree of the specified vertex,
+	 * including itself, to the specified collection, in pre-order.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param vertices
+	 *            the collection to add the vertices to.
+	 */
+	public synchronized void getSubtree( final V vertex, final Collection< V > vertices )
+	{
+		final int id = vertexPool.getId( vertex );
+		label( id );
+		final int[] tree = trees.get( treeOf[ id ] );
+		final V ref = vertexPool.createRef();
+		for ( int i = pre[ id ]; i < end[ id ]; i++ )
+			vertices.add( vertexPool.getObject( tree[ i ], ref ) );
+		vertexPool.releaseRef( ref );
+	}
+
+	/**
+	 * Adds all the vertices and edges reachable from the specified vertex
+	 * along outgoing edges, including itself, to the specified collections.
+	 * <p>
+	 * The lineage subtree of the vertex is read by range scan. Only the
+	 * edges leading to a merge, that is to a vertex whose first parent is
+	 * outside the subtree, require another range scan, of the subtree of the
+	 * merged vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @param vertices
+	 *            the collection to add the descendant vertices to.
+	 * @param edges
+	 *            the collection to add the edges between descendants to. May
+	 *            be <code>null</code>.
+	 */
+	public synchronized void getDescendants( final V vertex, final Collection< V > vertices, final Collection< E > edges )
+	{
+		final BitSet visited = new BitSet();
+		final TIntArrayList subtrees = new TIntArrayList();
+		subtrees.add( vertexPool.getId( vertex ) );
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+		while ( !subtrees.isEmpty() )
+		{
+			final int root = subtrees.removeAt( subtrees.size() - 1 );
+			if ( visited.get( root ) )
+				continue;
+			label( root );
+			final int[] tree = trees.get( treeOf[ root ] );
+			for ( int i = pre[ root ]; i < end[ root ]; i++ )
+			{
+				final int id = tree[ i ];
+				visited.set( id );
+				final V v = vertexPool.getObject( id, ref1 );
+				vertices.add( v );
+				for ( final E e : v.outgoingEdges() )
+				{
+					if ( edges != null )
+						edges.add( e );
+					final V target = e.getTarget( ref2 );
+					if ( firstIncomingEdge( target ) != edgePool.getId( e ) )
+						subtrees.add( vertexPool.getId( target ) );
+				}
+			}
+		}
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+	}
+
+	/**
+	 * Makes sure the vertex with the specified pool index is labelled, by
+	 * relabelling its tree if it was invalidated.
+	 */
+	private void label( final int id )
+	{
+		if ( id < treeOf.length && treeOf[ id ] >= 0 && trees.get( treeOf[ id ] ) != null )
+			return;
+		ensureCapacity( id );
+
+		// Walk up to the root along first parents.
+		final V ref1 = vertexPool.createRef();
+		final V ref2 = vertexPool.createRef();
+		int root = id;
+		for ( int steps = 0; steps <= treeOf.length; steps++ )
+		{
+			final Edges< E > incoming = vertexPool.getObject( root, ref1 ).incomingEdges();
+			if ( incoming.isEmpty() )
+				break;
+			root = vertexPool.getId( incoming.iterator().next().getSource( ref2 ) );
+		}
+		build( root, ref1, ref2 );
+		// Only reached on a cycle along first parents.
+		if ( treeOf[ id ] < 0 || trees.get( treeOf[ id ] ) == null )
+			build( id, ref1, ref2 );
+		vertexPool.releaseRef( ref1 );
+		vertexPool.releaseRef( ref2 );
+	}
+
+	/**
+	 * Labels the tree rooted at the specified vertex, by depth-first search
+	 * along tree edges.
+	 */
+	private void build( final int rootId, final V ref1, final V ref2 )
+	{
+		final int tree = newTree();
+		final TIntArrayList order = new TIntArrayList();
+		final TIntArrayList parentPos = new TIntArrayList();
+		final TIntArrayList stack = new TIntArrayList();
+		final TIntArrayList stackParentPos = new TIntArrayList();
+		stack.add( rootId );
+		stackParentPos.add( -1 );
+		while ( !stack.isEmpty() )
+		{
+			final int id = stack.removeAt( stack.size() - 1 );
+			final int pp = stackParentPos.removeAt( stackParentPos.size() - 1 );
+			ensureCapacity( id );
+			if ( treeOf[ id ] == tree )
+				continue; // Cycle along first parents.
+			setTree( id, tree );
+			final int pos = order.size();
+			pre[ id ] = pos;
+			order.add( id );
+			parentPos.add( pp );
+
+			// Push tree children in reverse order, to visit them in order.
+			final Edges< E > outgoing = vertexPool.getObject( id, ref1 ).outgoingEdges();
+			final int start = stack.size();
+			for ( final E e : outgoing )
+			{
+				final V target = e.getTarget( ref2 );
+				if ( firstIncomingEdge( target ) == edgePool.getId( e ) )
+				{
+					stack.add( vertexPool.getId( target ) );
+					stackParentPos.add( pos );
+				}
+			}
+			stack.reverse( start, stack.size() );
+		}
+
+		// Subtree ends, from subtree sizes accumulated in reverse pre-order.
+		final int n = order.size();
+		final int[] sizes = new int[ n ];
+		Arrays.fill( sizes, 1 );
+		for ( int i = n - 1; i > 0; i-- )
+			sizes[ parentPos.get( i ) ] += sizes[ i ];
+		for ( int i = 0; i < n; i++ )
+			end[ order.get( i ) ] = i + sizes[ i ];
+		trees.set( tree, order.toArray() );
+	}
+
+	private int firstIncomingEdge( final V vertex )
+	{
+		final Edges< E > incoming = vertex.incomingEdges();
+		return incoming.isEmpty() ? -1 : edgePool.getId( incoming.iterator().next() );
+	}
+
+	private int newTree()
+	{
+		if ( !freeTrees.isEmpty() )
+		{
+			final int tree = freeTrees.removeAt( freeTrees.size() - 1 );
+			trees.set( tree, new int[ 0 ] );
+			treeRefs.set( tree, 0 );
+			return tree;
+		}
+		trees.add( new int[ 0 ] );
+		treeRefs.add( 0 );
+		return trees.size() - 1;
+	}
+
+	private void setTree( final int id, final int tree )
+	{
+		final int old = treeOf[ id ];
+		if ( old >= 0 )
+			release( old );
+		treeOf[ id ] = tree;
+		treeRefs.set( tree, treeRefs.get( tree ) + 1 );
+	}
+
+	private void release( final int tree )
+	{
+		final int refs = treeRefs.get( tree ) - 1;
+		treeRefs.set( tree, refs );
+		if ( refs == 0 && trees.get( tree ) == null )
+			freeTrees.add( tree );
+	}
+
+	/**
+	 * Invalidates the tree of the vertex with the specified pool index.
+	 */
+	private void invalidate( final int id )
+	{
+		if ( id >= treeOf.length || treeOf[ id ] < 0 )
+			return;
+		final int tree = treeOf[ id ];
+		if ( trees.get( tree ) == null )
+			return;
+		trees.set( tree, null );
+		if ( treeRefs.get( tree ) == 0 )
+			freeTrees.add( tree );
+	}
+
+	private void ensureCapacity( final int id )
+	{
+		if ( id < treeOf.length )
+			return;
+		final int length = treeOf.length;
+		final int capacity = Math.max( id + 1, 2 * length );
+		treeOf = Arrays.copyOf( treeOf, capacity );
+		Arrays.fill( treeOf, length, capacity, -1 );
+		pre = Arrays.copyOf( pre, capacity );
+		end = Arrays.copyOf( end, capacity );
+	}
+
+	private void clear()
+	{
+		treeOf = new int[ 0 ];
+		pre = new int[ 0 ];
+		end = new int[ 0 ];
+		trees.clear();
+		treeRefs.clear();
+		freeTrees.clear();
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		clear();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		ensureCapacity( id );
+		// The pool index may be reused from a removed vertex.
+		if ( treeOf[ id ] >= 0 )
+		{
+			invalidate( id );
+			release( treeOf[ id ] );
+			treeOf[ id ] = -1;
+		}
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		final int id = vertexPool.getId( vertex );
+		if ( id < treeOf.length && treeOf[ id ] >= 0 )
+		{
+			invalidate( id );
+			release( treeOf[ id ] );
+			treeOf[ id ] = -1;
+		}
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		edgeChanged( edge );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		edgeChanged( edge );
+	}
+
+	private void edgeChanged( final E edge )
+	{
+		final V ref = vertexPool.createRef();
+		invalidate( vertexPool.getId( edge.getSource( ref ) ) );
+		invalidate( vertexPool.getId( edge.getTarget( ref ) ) );
+		vertexPool.releaseRef( ref );
+	}
+}
@@ -0,0 +1,344 @@
+package org.mastodon.revised.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+
+/**
+ * Maintained index of the tracks (connected components) of a graph.
+ * <p>
+ * Track membership is stored in a union-find forest over vertex pool indices,
+ * with union by size and path compression. The members of each track are
+ * linked in a circular list, spliced in constant time when two tracks merge,
+ * so that the vertices of a track can be enumerated without a graph search.
+ * <p>
+ * The index is updated incrementally, by registering as a
+ * {@link GraphListener}:
+ * <ul>
+ * <li>adding an edge merges the tracks of its source and target;
+ * <li>removing an edge or a vertex may split a track. The track is only marked
+ * as dirty, and is repaired when it is queried, by relabelling its members
+ * from the graph edges;
+ * <li>the index is rebuilt when the graph is rebuilt.
+ * </ul>
+ * Track ids are the pool index of a vertex of the track. They are only stable
+ * until the next modification of the graph.
+ * <p>
+ * All methods are synchronized. Callers should hold the read lock of the
+ * graph.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TrackMembership< V extends Vertex< E >, E extends Edge< V > > implements GraphListener< V, E >
+{
+
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final RefPool< V > pool;
+
+	/**
+	 * Union-find parent, indexed by vertex pool index.
+	 */
+	private int[] parent;
+
+	/**
+	 * Number of members of the track, for track roots. Includes removed
+	 * vertices not yet repaired.
+	 */
+	private int[] size;
+
+	/**
+	 * Circular linked list of the members of each track.
+	 */
+	private int[] next;
+
+	/**
+	 * Roots of the tracks that may have been split.
+	 */
+	private final BitSet dirty;
+
+	/**
+	 * Pool indices of removed vertices, still linked in their track until it
+	 * is repaired.
+	 */
+	private final BitSet removed;
+
+	/**
+	 * Creates a track index for the specified graph. The index is immediately
+	 * usable, and registers as a listener to the graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 */
+	public TrackMembership( final ListenableReadOnlyGraph< V, E > graph )
+	{
+		this.graph = graph;
+		this.pool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.dirty = new BitSet();
+		this.removed = new BitSet();
+		rebuild();
+		graph.addGraphListener( this );
+	}
+
+	/**
+	 * Returns the id of the track of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the track id.
+	 */
+	public synchronized int getTrackId( final V vertex )
+	{
+		return repairedRoot( pool.getId( vertex ) );
+	}
+
+	/**
+	 * Returns the number of vertices in the track of the specified vertex.
+	 *
+	 * @param vertex
+	 *            the vertex.
+	 * @return the number of vertices in the track.
+	 */
+	public synchronized int getTrackSize( final V vertex )
+	{
+		return size[ repairedRoot( pool.getId( vertex ) ) ];
+	}
+
+	/**
+	 * Returns whether the two specified vertices belong to the same track.
+	 *
+	 * @param v1
+	 *            the first vertex.
+	 * @param v2
+	 *            the second vertex.
+	 * @return <code>true</code> if the vertices are in the same track.
+	 */
+	public synchronized boolean isSameTrack( final V v1, final V v2 )
+	{
+		return repairedRoot( pool.getId( v1 ) ) == repairedRoot( pool.getId( v2 ) );
+	}
+
+	/**
+	 * Adds the vertices and the edges of the track of the specified vertex to
+	 * the specified collections.
+	 *
+	 * @param vertex
+	 *            a vertex of the track.
+	 * @param vertices
+	 *            the collection to add the track vertices to. May be
+	 *            <code>null</code>.
+	 * @param edges
+	 *            the collection to add the track edges to. May be
+	 *            <code>null</code>.
+	 */
+	public synchronized void getTrack( final V vertex, final Collection< V > vertices, final Collection< E > edges )
+	{
+		final int root = repairedRoot( pool.getId( vertex ) );
+		final V ref = pool.createRef();
+		int id = root;
+		do
+		{
+			final V v = pool.getObject( id, ref );
+			if ( vertices != null )
+				vertices.add( v );
+			// Each edge is added from its source.
+			if ( edges != null )
+				for ( final E e : v.outgoingEdges() )
+					edges.add( e );
+			id = next[ id ];
+		}
+		while ( id != root );
+		pool.releaseRef( ref );
+	}
+
+	/**
+	 * Returns the root of the track of the specified vertex, repairing the
+	 * track if it was marked as dirty.
+	 */
+	private int repairedRoot( final int id )
+	{
+		final int root = find( id );
+		if ( !dirty.get( root ) )
+			return root;
+		repair( root );
+		return find( id );
+	}
+
+	/**
+	 * Relabels the members of a dirty track from the graph edges. The removed
+	 * vertices are detached from the track.
+	 */
+	private void repair( final int root )
+	{
+		dirty.clear( root );
+		final int n = size[ root ];
+		final int[] members = new int[ n ];
+		int id = root;
+		for ( int i = 0; i < n; i++ )
+		{
+			members[ i ] = id;
+			id = next[ id ];
+		}
+
+		final boolean[] live = new boolean[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int m = members[ i ];
+			live[ i ] = !removed.get( m );
+			removed.clear( m );
+			makeSingleton( m );
+		}
+
+		final V ref1 = pool.createRef();
+		final V ref2 = pool.createRef();
+		for ( int i = 0; i < n; i++ )
+		{
+			if ( !live[ i ] )
+				continue;
+			final int m = members[ i ];
+			for ( final E e : pool.getObject( m, ref1 ).outgoingEdges() )
+				union( m, pool.getId( e.getTarget( ref2 ) ) );
+		}
+		pool.releaseRef( ref1 );
+		pool.releaseRef( ref2 );
+	}
+
+	private int find( final int id )
+	{
+		int root = id;
+		while ( parent[ root ] != root )
+			root = parent[ root ];
+		int x = id;
+		while ( parent[ x ] != root )
+		{
+			final int p = parent[ x ];
+			parent[ x ] = root;
+			x = p;
+		}
+		return root;
+	}
+
+	private void union( final int a, final int b )
+	{
+		int ra = find( a );
+		int rb = find( b );
+		if ( ra == rb )
+			return;
+		if ( size[ ra ] < size[ rb ] )
+		{
+			final int tmp = ra;
+			ra = rb;
+			rb = tmp;
+		}
+		parent[ rb ] = ra;
+		size[ ra ] += size[ rb ];
+		if ( dirty.get( rb ) )
+		{
+			dirty.clear( rb );
+			dirty.set( ra );
+		}
+		// Splice the member lists.
+		final int na = next[ ra ];
+		final int nb = next[ rb ];
+		next[ ra ] = nb;
+		next[ rb ] = na;
+	}
+
+	private void makeSingleton( final int id )
+	{
+		parent[ id ] = id;
+		size[ id ] = 1;
+		next[ id ] = id;
+	}
+
+	private void ensureCapacity( final int id )
+	{
+		if ( id < parent.length )
+			return;
+		final int capacity = Math.max( id + 1, 2 * parent.length );
+		parent = Arrays.copyOf( parent, capacity );
+		size = Arrays.copyOf( size, capacity );
+		next = Arrays.copyOf( next, capacity );
+	}
+
+	private void rebuild()
+	{
+		int capacity = 0;
+		for ( final V v : graph.vertices() )
+			capacity = Math.max( capacity, pool.getId( v ) + 1 );
+		parent = new int[ capacity ];
+		size = new int[ capacity ];
+		next = new int[ capacity ];
+		dirty.clear();
+		removed.clear();
+		for ( final V v : graph.vertices() )
+			makeSingleton( pool.getId( v ) );
+		final V ref1 = pool.createRef();
+		final V ref2 = pool.createRef();
+		for ( final E e : graph.edges() )
+			union( pool.getId( e.getSource( ref1 ) ), pool.getId( e.getTarget( ref2 ) ) );
+		pool.releaseRef( ref1 );
+		pool.releaseRef( ref2 );
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		rebuild();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		final int id = pool.getId( vertex );
+		// The pool index may be reused from a removed vertex, still linked
+		// in a dirty track.
+		if ( removed.get( id ) )
+			repair( find( id ) );
+		ensureCapacity( id );
+		makeSingleton( id );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		final int id = pool.getId( vertex );
+		removed.set( id );
+		dirty.set( find( id ) );
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		final V ref = pool.createRef();
+		final int source = pool.getId( edge.getSource( ref ) );
+		final int target = pool.getId( edge.getTarget( ref ) );
+		pool.releaseRef( ref );
+		union( source, target );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		final V ref = pool.createRef();
+		final int source = pool.getId( edge.getSource( ref ) );
+		pool.releaseRef( ref );
+		dirty.set( find( source ) );
+	}
+}
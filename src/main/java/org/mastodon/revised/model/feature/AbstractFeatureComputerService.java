@@ -1,5 +1,7 @@
 package org.mastodon.revised.model.feature;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -8,6 +10,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.graph.algorithm.TopologicalSort;
 import org.mastodon.graph.object.ObjectEdge;
@@ -44,6 +48,15 @@ public abstract class AbstractFeatureComputerService< AM extends AbstractModel<
 	@Override
 	public boolean compute( final AM model, final FeatureModel featureModel, final Set< FeatureComputer< AM > > computers, final ProgressListener progressListener )
 	{
+		return compute( model, featureModel, computers, new FeatureComputation( progressListener ) );
+	}
+
+	@Override
+	public boolean compute( final AM model, final FeatureModel featureModel, final Set< FeatureComputer< AM > > computers, final FeatureComputation computation )
+	{
+		final ProgressListener progressListener = computation.getProgressListener() == null
+				? NO_PROGRESS
+				: computation.getProgressListener();
 		final ObjectGraph< FeatureComputer< AM > > dependencyGraph = getDependencyGraph( computers );
 		final TopologicalSort< ObjectVertex< FeatureComputer< AM > >, ObjectEdge< FeatureComputer< AM > > > sorter = new TopologicalSort<>( dependencyGraph );
 
@@ -57,17 +70,83 @@ public abstract class AbstractFeatureComputerService< AM extends AbstractModel<
 
 		final long start = System.currentTimeMillis();
 
-		featureModel.clear();
-		int progress = 1;
-		for ( final ObjectVertex< FeatureComputer< AM > > v : sorter.get() )
+		/*
+		 * Features are computed aside, and only replace the ones of the feature
+		 * model once all computers completed, so that the feature model is
+		 * left untouched if the computation is canceled or fails.
+		 */
+		final ReentrantReadWriteLock lock = model.getGraph().getLock();
+		try
 		{
-			final FeatureComputer< AM > computer = v.getContent();
-			progressListener.showStatus( computer.getKey() );
-			final Feature< ?, ? > feature = computer.compute( model );
-			featureModel.declareFeature( feature );
+			final int nComputers = dependencyGraph.vertices().size();
+			int index = 0;
+			for ( final ObjectVertex< FeatureComputer< AM > > v : sorter.get() )
+			{
+				final FeatureComputer< AM > computer = v.getContent();
+				computation.checkCanceled();
+				computation.startComputer( computer.getKey(), index++, nComputers );
 
-			progressListener.showProgress( progress++, computers.size() );
+				final long allocStart = allocatedBytes();
+				final long lockStart = System.nanoTime();
+				lock.readLock().lock();
+				final long computeStart = System.nanoTime();
+				final Feature< ?, ? > feature;
+				try
+				{
+					feature = computer.compute( model, computation );
+				}
+				finally
+				{
+					lock.readLock().unlock();
+				}
+				final long computeEnd = System.nanoTime();
+				final long allocEnd = allocatedBytes();
+
+				computation.addFeature( feature );
+				final FeatureComputerMetrics metrics = new FeatureComputerMetrics(
+						computer.getKey(),
+						computation.getProcessed(),
+						computeEnd - computeStart,
+						computeStart - lockStart,
+						allocStart < 0 || allocEnd < 0 ? -1 : allocEnd - allocStart );
+				computation.addMetrics( metrics );
+				logService.debug( metrics );
+			}
+		}
+		catch ( final CancellationException e )
+		{
+			disposeUndeclared( featureModel, computation.getComputedFeatures() );
+			progressListener.clearStatus();
+			progressListener.showStatus( "Canceled." );
+			return false;
+		}
+		catch ( final RuntimeException e )
+		{
+			disposeUndeclared( featureModel, computation.getComputedFeatures() );
+			logService.error( "Feature computation failed: " + e.getMessage() );
+			progressListener.clearStatus();
+			progressListener.showStatus( "Failed: " + e.getMessage() );
+			return false;
+		}
+
+		/*
+		 * Swap the new features in under the graph write lock, so that readers
+		 * holding the read lock see a consistent feature model. Listeners are
+		 * notified after the lock is released.
+		 */
+		final List< Feature< ?, ? > > previous = new ArrayList<>( featureModel.getFeatures() );
+		featureModel.pauseListeners();
+		lock.writeLock().lock();
+		try
+		{
+			featureModel.setFeatures( computation.getComputedFeatures() );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+			featureModel.resumeListeners();
 		}
+		disposeUndeclared( featureModel, previous );
 
 		final long end = System.currentTimeMillis();
 		progressListener.clearStatus();
@@ -76,6 +155,48 @@ public abstract class AbstractFeatureComputerService< AM extends AbstractModel<
 		return true;
 	}
 
+	/**
+	 * Disposes the lazy features of the specified list that are not declared
+	 * in the feature model anymore, so that they stop listening to the model.
+	 */
+	private static void disposeUndeclared( final FeatureModel featureModel, final Collection< Feature< ?, ? > > features )
+	{
+		for ( final Feature< ?, ? > feature : features )
+			if ( LazyFeaturePropertyMap.isLazy( feature ) && featureModel.getFeature( feature.getKey() ) != feature )
+				( ( LazyFeaturePropertyMap< ? > ) feature.getPropertyMap() ).dispose();
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or
+	 * <code>-1</code> if the JVM does not support this measurement.
+	 */
+	private static long allocatedBytes()
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( bean instanceof com.sun.management.ThreadMXBean )
+		{
+			final com.sun.management.ThreadMXBean sunBean = ( com.sun.management.ThreadMXBean ) bean;
+			if ( sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled() )
+				return sunBean.getThreadAllocatedBytes( Thread.currentThread().getId() );
+		}
+		return -1;
+	}
+
+	private static final ProgressListener NO_PROGRESS = new ProgressListener()
+	{
+		@Override
+		public void showStatus( final String string )
+		{}
+
+		@Override
+		public void showProgress( final int current, final int total )
+		{}
+
+		@Override
+		public void clearStatus()
+		{}
+	};
+
 	/*
 	 * DEPENDENCY GRAPH.
 	 */
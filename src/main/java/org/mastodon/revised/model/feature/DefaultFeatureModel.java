@@ -1,10 +1,14 @@
 package org.mastodon.revised.model.feature;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.mastodon.util.Listeners;
+
 /**
  * Default feature model.
  *
@@ -13,9 +17,24 @@ import java.util.Set;
 public class DefaultFeatureModel implements FeatureModel
 {
 
-	private final Map< Class< ? >, Set< Feature< ?, ? > > > targetClassToFeatures;
+	/*
+	 * The maps are replaced, not modified, by setFeatures(), so that readers
+	 * see either the old or the new features.
+	 */
+
+	private volatile Map< Class< ? >, Set< Feature< ?, ? > > > targetClassToFeatures;
+
+	private volatile Map< String, Feature< ?, ? > > keyToFeature;
+
+	private final Listeners.List< FeatureModelListener > listeners;
 
-	private final Map< String, Feature< ?, ? > > keyToFeature;
+	private boolean emitEvents;
+
+	/**
+	 * Is <code>true</code> if a change happened while the listeners were
+	 * paused.
+	 */
+	private boolean shouldEmitEvent;
 
 	/**
 	 * Creates a new, empty, feature model.
@@ -24,10 +43,34 @@ public class DefaultFeatureModel implements FeatureModel
 	{
 		targetClassToFeatures = new HashMap<>();
 		keyToFeature = new HashMap<>();
+		listeners = new Listeners.SynchronizedList<>();
+		emitEvents = true;
+		shouldEmitEvent = false;
 	}
 
 	@Override
 	public void declareFeature( final Feature< ?, ? > feature )
+	{
+		declareFeature( feature, targetClassToFeatures, keyToFeature );
+		notifyListeners();
+	}
+
+	@Override
+	public void setFeatures( final Collection< Feature< ?, ? > > features )
+	{
+		final Map< Class< ? >, Set< Feature< ?, ? > > > newTargetClassToFeatures = new HashMap<>();
+		final Map< String, Feature< ?, ? > > newKeyToFeature = new HashMap<>();
+		for ( final Feature< ?, ? > feature : features )
+			declareFeature( feature, newTargetClassToFeatures, newKeyToFeature );
+		targetClassToFeatures = newTargetClassToFeatures;
+		keyToFeature = newKeyToFeature;
+		notifyListeners();
+	}
+
+	private static void declareFeature(
+			final Feature< ?, ? > feature,
+			final Map< Class< ? >, Set< Feature< ?, ? > > > targetClassToFeatures,
+			final Map< String, Feature< ?, ? > > keyToFeature )
 	{
 		// Features.
 		final Class< ? > clazz = feature.getTargetClass();
@@ -48,6 +91,7 @@ public class DefaultFeatureModel implements FeatureModel
 	{
 		targetClassToFeatures.clear();
 		keyToFeature.clear();
+		notifyListeners();
 	}
 
 	@Override
@@ -61,4 +105,42 @@ public class DefaultFeatureModel implements FeatureModel
 	{
 		return keyToFeature.get( key );
 	}
+
+	@Override
+	public Collection< Feature< ?, ? > > getFeatures()
+	{
+		return Collections.unmodifiableCollection( keyToFeature.values() );
+	}
+
+	@Override
+	public Listeners< FeatureModelListener > listeners()
+	{
+		return listeners;
+	}
+
+	@Override
+	public void pauseListeners()
+	{
+		emitEvents = false;
+	}
+
+	@Override
+	public void resumeListeners()
+	{
+		emitEvents = true;
+		if ( shouldEmitEvent )
+		{
+			shouldEmitEvent = false;
+			notifyListeners();
+		}
+	}
+
+	private void notifyListeners()
+	{
+		if ( emitEvents )
+			for ( final FeatureModelListener l : listeners.list )
+				l.featureModelChanged();
+		else
+			shouldEmitEvent = true;
+	}
 }
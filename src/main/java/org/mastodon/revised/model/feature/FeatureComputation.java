@@ -0,0 +1,247 @@
+package org.mastodon.revised.model.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mastodon.revised.ui.ProgressListener;
+
+/**
+ * Handle on a feature computation, shared by the feature computer service and
+ * the feature computers it runs.
+ * <p>
+ * The handle supports cooperative cancellation: {@link #cancel()} can be
+ * called from any thread, and computers check it through
+ * {@link #checkCanceled()} or {@link #processed()}, which throw a
+ * {@link CancellationException} once the computation is canceled.
+ * <p>
+ * Computers report fine-grained progress by declaring the number of elements
+ * they will process with {@link #setTotal(long)}, then calling
+ * {@link #processed()} for each processed element. Both methods can be called
+ * from several threads, for instance from a parallel stream. Progress is
+ * forwarded to the progress listener in steps of 1%, each step at most once.
+ * The listener is called from the thread that processed the element completing
+ * a step, so calls from different threads can arrive out of order, and
+ * listeners that update a UI must hand the update over to the UI thread.
+ * <p>
+ * The service records the {@link FeatureComputerMetrics} of each computer in
+ * the handle, as well as the features computed so far. These features are only
+ * declared in the feature model once the whole computation completes, so
+ * computers retrieve the features they depend on with
+ * {@link #getFeature(String, FeatureModel)}.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class FeatureComputation
+{
+
+	/**
+	 * Number of progress steps reported per computer.
+	 */
+	private static final int N_STEPS = 100;
+
+	private final ProgressListener progressListener;
+
+	private final List< FeatureComputerMetrics > metrics;
+
+	private final Map< String, Feature< ?, ? > > computed;
+
+	private final AtomicLong processed;
+
+	private volatile boolean canceled;
+
+	private volatile long total;
+
+	/**
+	 * Last progress step reported for the current computer.
+	 */
+	private final AtomicInteger lastStep;
+
+	private int computerIndex;
+
+	private int nComputers;
+
+	/**
+	 * Creates a computation handle that does not report progress.
+	 */
+	public FeatureComputation()
+	{
+		this( null );
+	}
+
+	/**
+	 * Creates a computation handle.
+	 *
+	 * @param progressListener
+	 *            the listener progress is reported to. Can be
+	 *            <code>null</code>.
+	 */
+	public FeatureComputation( final ProgressListener progressListener )
+	{
+		this.progressListener = progressListener;
+		this.metrics = Collections.synchronizedList( new ArrayList<>() );
+		this.computed = Collections.synchronizedMap( new LinkedHashMap<>() );
+		this.processed = new AtomicLong();
+		this.lastStep = new AtomicInteger();
+		this.nComputers = 1;
+	}
+
+	/**
+	 * Requests cancellation of the computation. Computers stop at their next
+	 * cancellation check.
+	 */
+	public void cancel()
+	{
+		canceled = true;
+	}
+
+	/**
+	 * Returns whether cancellation was requested.
+	 *
+	 * @return <code>true</code> if the computation is canceled.
+	 */
+	public boolean isCanceled()
+	{
+		return canceled;
+	}
+
+	/**
+	 * Checks whether cancellation was requested.
+	 *
+	 * @throws CancellationException
+	 *             if the computation is canceled.
+	 */
+	public void checkCanceled()
+	{
+		if ( canceled )
+			throw new CancellationException( "Feature computation canceled." );
+	}
+
+	/**
+	 * Sets the number of elements the current computer will process.
+	 *
+	 * @param total
+	 *            the number of elements.
+	 */
+	public void setTotal( final long total )
+	{
+		this.total = total;
+	}
+
+	/**
+	 * Signals that the current computer processed one element.
+	 *
+	 * @throws CancellationException
+	 *             if the computation is canceled.
+	 */
+	public void processed()
+	{
+		checkCanceled();
+		final long n = processed.incrementAndGet();
+		final long t = total;
+		if ( t <= 0 || progressListener == null )
+			return;
+		final int step = ( int ) Math.min( N_STEPS, n * N_STEPS / t );
+		final int last = lastStep.get();
+		if ( step > last && lastStep.compareAndSet( last, step ) )
+			progressListener.showProgress( computerIndex * N_STEPS + step, nComputers * N_STEPS );
+	}
+
+	/**
+	 * Returns the number of elements processed by the current computer.
+	 *
+	 * @return the number of processed elements.
+	 */
+	public long getProcessed()
+	{
+		return processed.get();
+	}
+
+	/**
+	 * Returns the metrics of the computers that completed, in execution order.
+	 *
+	 * @return an unmodifiable list of metrics.
+	 */
+	public List< FeatureComputerMetrics > getMetrics()
+	{
+		synchronized ( metrics )
+		{
+			return Collections.unmodifiableList( new ArrayList<>( metrics ) );
+		}
+	}
+
+	/**
+	 * Returns the feature with the specified key computed earlier in this
+	 * computation or, if it was not, the one declared in the specified feature
+	 * model.
+	 *
+	 * @param key
+	 *            the key of the feature to retrieve.
+	 * @param featureModel
+	 *            the feature model to fall back on.
+	 * @return the feature, or <code>null</code> if there is no feature with
+	 *         the specified key.
+	 */
+	public Feature< ?, ? > getFeature( final String key, final FeatureModel featureModel )
+	{
+		final Feature< ?, ? > feature = computed.get( key );
+		return feature != null ? feature : featureModel.getFeature( key );
+	}
+
+	/*
+	 * Methods used by the feature computer service.
+	 */
+
+	/**
+	 * Signals that a new computer starts.
+	 *
+	 * @param key
+	 *            the key of the computer.
+	 * @param index
+	 *            the index of the computer in the execution order.
+	 * @param n
+	 *            the number of computers to execute.
+	 */
+	void startComputer( final String key, final int index, final int n )
+	{
+		computerIndex = index;
+		nComputers = n;
+		total = 0;
+		lastStep.set( 0 );
+		processed.set( 0 );
+		if ( progressListener != null )
+		{
+			progressListener.showStatus( key );
+			progressListener.showProgress( index * N_STEPS, n * N_STEPS );
+		}
+	}
+
+	void addMetrics( final FeatureComputerMetrics m )
+	{
+		metrics.add( m );
+	}
+
+	void addFeature( final Feature< ?, ? > feature )
+	{
+		computed.put( feature.getKey(), feature );
+	}
+
+	Collection< Feature< ?, ? > > getComputedFeatures()
+	{
+		synchronized ( computed )
+		{
+			return new ArrayList<>( computed.values() );
+		}
+	}
+
+	ProgressListener getProgressListener()
+	{
+		return progressListener;
+	}
+}
@@ -32,11 +32,41 @@ public interface FeatureComputer< AM extends AbstractModel< ?, ?, ? > > extends
 	 * Objects for which the feature is defined are taken from the specified
 	 * model. The model is also used to store the feature within one of its
 	 * feature model components.
+	 * <p>
+	 * The default implementation calls
+	 * {@link #compute(AbstractModel, FeatureComputation)} with a computation
+	 * handle that does not report progress.
+	 *
+	 * @param model
+	 *            the model to retrieve objects from.
+	 * @return the feature.
+	 */
+	public default Feature< ?, ? > compute( final AM model )
+	{
+		return compute( model, new FeatureComputation() );
+	}
+
+	/**
+	 * Performs feature calculation, reporting progress to and checking for
+	 * cancellation in the specified computation handle.
+	 * <p>
+	 * Computers that process many elements should call
+	 * {@link FeatureComputation#setTotal(long)} and then
+	 * {@link FeatureComputation#processed()} for each element. The features
+	 * this computer depends on must be retrieved with
+	 * {@link FeatureComputation#getFeature(String, FeatureModel)}, since they
+	 * are not declared in the feature model before the whole computation
+	 * completes.
 	 *
 	 * @param model
 	 *            the model to retrieve objects from.
+	 * @param computation
+	 *            the computation handle.
+	 * @return the feature.
+	 * @throws java.util.concurrent.CancellationException
+	 *             if the computation is canceled.
 	 */
-	public Feature< ?, ? > compute( final AM model );
+	public Feature< ?, ? > compute( final AM model, final FeatureComputation computation );
 
 	/**
 	 * Returns the string key of the feature calculated by this computer.
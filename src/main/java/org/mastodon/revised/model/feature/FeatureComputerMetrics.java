@@ -0,0 +1,101 @@
+package org.mastodon.revised.model.feature;
+
+/**
+ * Metrics recorded for the execution of a feature computer.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class FeatureComputerMetrics
+{
+
+	private final String key;
+
+	private final long nElements;
+
+	private final long elapsedNanos;
+
+	private final long lockWaitNanos;
+
+	private final long allocatedBytes;
+
+	/**
+	 * Creates metrics for a computer execution.
+	 *
+	 * @param key
+	 *            the key of the feature computer.
+	 * @param nElements
+	 *            the number of elements the computer reported as processed.
+	 * @param elapsedNanos
+	 *            the time spent computing, in nanoseconds.
+	 * @param lockWaitNanos
+	 *            the time spent waiting for the graph lock, in nanoseconds.
+	 * @param allocatedBytes
+	 *            the number of bytes allocated by the calling thread, or
+	 *            <code>-1</code> if unavailable.
+	 */
+	public FeatureComputerMetrics( final String key, final long nElements, final long elapsedNanos, final long lockWaitNanos, final long allocatedBytes )
+	{
+		this.key = key;
+		this.nElements = nElements;
+		this.elapsedNanos = elapsedNanos;
+		this.lockWaitNanos = lockWaitNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public String getKey()
+	{
+		return key;
+	}
+
+	/**
+	 * Returns the number of elements the computer reported as processed.
+	 * <code>0</code> for computers that do not report progress.
+	 *
+	 * @return the number of processed elements.
+	 */
+	public long getNElements()
+	{
+		return nElements;
+	}
+
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	public long getLockWaitNanos()
+	{
+		return lockWaitNanos;
+	}
+
+	/**
+	 * Returns the number of bytes allocated during the computation by the
+	 * thread that ran the computer. Allocations made by other threads (for
+	 * instance in parallel streams) are not counted.
+	 *
+	 * @return the number of allocated bytes, or <code>-1</code> if the JVM
+	 *         does not support allocation measurement.
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * Returns the processing throughput.
+	 *
+	 * @return the number of elements processed per second.
+	 */
+	public double getElementsPerSecond()
+	{
+		return elapsedNanos > 0 ? nElements * 1e9 / elapsedNanos : Double.NaN;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "%s: %d elements in %.1f ms (%.0f elements/s), %.1f ms waiting for lock, %s allocated",
+				key, nElements, elapsedNanos / 1e6, getElementsPerSecond(), lockWaitNanos / 1e6,
+				allocatedBytes < 0 ? "n/a" : String.format( "%.1f MB", allocatedBytes / 1e6 ) );
+	}
+}
@@ -43,4 +43,28 @@ public interface FeatureComputerService< AM extends AbstractModel< ?, ?, ? > > e
 	 */
 	public boolean compute( AM model, FeatureModel featureModel, Set< FeatureComputer< AM > > selectedComputers, ProgressListener progressListener );
 
+	/**
+	 * Executes feature computation for the specified computers on the specified
+	 * model, with a computation handle that can be used to cancel it, and that
+	 * reports progress and records per-computer metrics.
+	 * <p>
+	 * The features are computed aside, then replace the features of the
+	 * feature model in one step, under the graph write lock. Listeners of the
+	 * feature model are notified once, after that. If the computation is
+	 * canceled or fails, the feature model is left untouched.
+	 *
+	 * @param model
+	 *            the model to compute features on.
+	 * @param featureModel
+	 *            the feature model to stores feature values in.
+	 * @param selectedComputers
+	 *            what computers to run. The computers in the specified set must
+	 *            have been discovered by this instance.
+	 * @param computation
+	 *            the computation handle.
+	 * @return <code>true</code> if computation terminated successfully,
+	 *         <code>false</code> if it failed or was canceled.
+	 */
+	public boolean compute( AM model, FeatureModel featureModel, Set< FeatureComputer< AM > > selectedComputers, FeatureComputation computation );
+
 }
@@ -1,7 +1,10 @@
 package org.mastodon.revised.model.feature;
 
+import java.util.Collection;
 import java.util.Set;
 
+import org.mastodon.util.Listeners;
+
 /**
  * Interface for feature models, classes that manage a collection of features in
  * a model graph.
@@ -27,6 +30,15 @@ public interface FeatureModel
 	 */
 	public void declareFeature( final Feature< ?, ? > feature );
 
+	/**
+	 * Replaces all the features of this model by the specified ones, and
+	 * notifies listeners once.
+	 *
+	 * @param features
+	 *            the features.
+	 */
+	public void setFeatures( final Collection< Feature< ?, ? > > features );
+
 	/**
 	 * Returns the feature with the specified key.
 	 *
@@ -37,4 +49,45 @@ public interface FeatureModel
 	 */
 	public Feature< ?, ? > getFeature( String key );
 
+	/**
+	 * Returns all the features registered in this model.
+	 *
+	 * @return an unmodifiable collection of features.
+	 */
+	public Collection< Feature< ?, ? > > getFeatures();
+
+	/**
+	 * Interface for listeners notified when features are declared in or
+	 * cleared from a {@link FeatureModel}.
+	 */
+	public interface FeatureModelListener
+	{
+		/**
+		 * Notifies that the collection of features declared in the feature
+		 * model has changed.
+		 */
+		public void featureModelChanged();
+	}
+
+	/**
+	 * Get the list of feature model listeners. Add a
+	 * {@link FeatureModelListener} to this list, for being notified when
+	 * features are declared or cleared.
+	 *
+	 * @return the list of listeners.
+	 */
+	public Listeners< FeatureModelListener > listeners();
+
+	/**
+	 * Pauses sending events to {@link FeatureModelListener}s. When
+	 * {@link #resumeListeners()} is called, a single event is sent if the
+	 * feature model changed in the meantime.
+	 */
+	public void pauseListeners();
+
+	/**
+	 * Resumes sending events to {@link FeatureModelListener}s, and sends one
+	 * event if the feature model changed while the listeners were paused.
+	 */
+	public void resumeListeners();
 }
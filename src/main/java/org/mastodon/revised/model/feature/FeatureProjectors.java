@@ -38,6 +38,26 @@ public class FeatureProjectors
 		return new IntFeatureProjection<>( feature );
 	}
 
+	/**
+	 * Returns a projection that looks up the value of each object in the
+	 * specified array, at the index stored for this object in the specified
+	 * <code>int</code> feature.
+	 * <p>
+	 * This is used to broadcast values computed for groups of objects (for
+	 * instance tracks) to the objects of each group. Objects with no index, or
+	 * an index out of the array bounds, have no value.
+	 *
+	 * @param indices
+	 *            the feature storing the index of each object in the array.
+	 * @param values
+	 *            the values, indexed by group.
+	 * @return a feature projection reading values in the array.
+	 */
+	public static final < O > FeatureProjection< O > lookup( final IntPropertyMap< O > indices, final double[] values )
+	{
+		return new LookupFeatureProjection<>( indices, values );
+	}
+
 	private static final class DoubleFeatureProjection< O > implements FeatureProjection< O >
 	{
 
@@ -84,6 +104,35 @@ public class FeatureProjectors
 		}
 	}
 
+	private static final class LookupFeatureProjection< O > implements FeatureProjection< O >
+	{
+
+		private final IntPropertyMap< O > indices;
+
+		private final double[] values;
+
+		public LookupFeatureProjection( final IntPropertyMap< O > indices, final double[] values )
+		{
+			this.indices = indices;
+			this.values = values;
+		}
+
+		@Override
+		public boolean isSet( final O obj )
+		{
+			if ( !indices.isSet( obj ) )
+				return false;
+			final int index = indices.getInt( obj );
+			return index >= 0 && index < values.length;
+		}
+
+		@Override
+		public double value( final O obj )
+		{
+			return isSet( obj ) ? values[ indices.getInt( obj ) ] : Double.NaN;
+		}
+	}
+
 	private FeatureProjectors()
 	{}
 }
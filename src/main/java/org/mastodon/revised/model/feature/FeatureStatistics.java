@@ -0,0 +1,525 @@
+package org.mastodon.revised.model.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMap;
+import org.mastodon.spatial.HasTimepoint;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * A class that serves statistics about the values of all the feature
+ * projections declared in a {@link FeatureModel}, for vertex and edge
+ * features.
+ * <p>
+ * For each projection, {@link ProjectionStatistics} are maintained globally
+ * and per time-point. Edges are attributed to the time-point of their source
+ * vertex. Statistics are kept up to date incrementally:
+ * <ul>
+ * <li>features declared in or cleared from the feature model are picked up by
+ * registering as a {@link FeatureModel.FeatureModelListener};
+ * <li>feature values that are set or removed are picked up by registering as a
+ * {@link PropertyChangeListener} of the feature property map;
+ * <li>vertices and edges that are added or removed are picked up by
+ * registering as a {@link GraphListener}.
+ * </ul>
+ * Features evaluated lazily (see {@link LazyFeaturePropertyMap}) are only
+ * tracked once their statistics are requested for the first time, so that
+ * declaring them does not trigger the computation of their values.
+ * <p>
+ * Queries do not touch the graph. The last known value of each projection is
+ * stored in a primitive column indexed by the pool index of the objects, so
+ * that updates and removals can be processed without iterating over the graph.
+ * <p>
+ * The {@link ProjectionStatistics} instances returned by this class are
+ * read-only for clients. They are updated in place, except for the statistics
+ * of a time-point that loses all its values: they are discarded, and a new
+ * instance is created if values are added again. Clients that read them while the model is being edited should
+ * synchronize on this {@link FeatureStatistics} instance, and query them again
+ * rather than keeping them.
+ * <p>
+ * Removing the last value equal to the min or max of a projection invalidates
+ * its extrema. The statistics of this projection are then rebuilt from the
+ * value columns when they are next requested, in time linear in the number of
+ * objects.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class FeatureStatistics< V extends Vertex< E > & HasTimepoint, E extends Edge< V > >
+		implements FeatureModel.FeatureModelListener, GraphListener< V, E >
+{
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final FeatureModel featureModel;
+
+	private final Class< V > vertexClass;
+
+	private final Class< E > edgeClass;
+
+	private final RefPool< V > vertexPool;
+
+	private final RefPool< E > edgePool;
+
+	/**
+	 * Tracked features, mapped by their key.
+	 */
+	private final Map< String, TrackedFeature< ? > > trackedFeatures;
+
+	/**
+	 * Lazy features not tracked yet, mapped by their key.
+	 */
+	private final Map< String, Feature< ?, ? > > lazyFeatures;
+
+	/**
+	 * Vertex ref used to retrieve the time-point of edges.
+	 */
+	private final V vref;
+
+	/**
+	 * Creates a new statistics object for the features of the specified
+	 * feature model. After this constructor returns, statistics are
+	 * immediately available. The returned instance is registered as a listener
+	 * to changes in the graph and in the feature model.
+	 *
+	 * @param graph
+	 *            the graph whose vertices and edges are the feature targets.
+	 * @param featureModel
+	 *            the feature model to build statistics for.
+	 * @param vertexClass
+	 *            the class of the vertices, used to retrieve vertex features.
+	 * @param edgeClass
+	 *            the class of the edges, used to retrieve edge features.
+	 */
+	public FeatureStatistics(
+			final ListenableReadOnlyGraph< V, E > graph,
+			final FeatureModel featureModel,
+			final Class< V > vertexClass,
+			final Class< E > edgeClass )
+	{
+		this.graph = graph;
+		this.featureModel = featureModel;
+		this.vertexClass = vertexClass;
+		this.edgeClass = edgeClass;
+		this.vertexPool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.edgePool = RefCollections.tryGetRefPool( graph.edges() );
+		this.trackedFeatures = new HashMap<>();
+		this.lazyFeatures = new HashMap<>();
+		this.vref = graph.vertexRef();
+		graph.addGraphListener( this );
+		featureModel.listeners().add( this );
+		featureModelChanged();
+	}
+
+	/**
+	 * Returns the global statistics of the specified feature projection.
+	 *
+	 * @param featureKey
+	 *            the key of the feature.
+	 * @param projectionKey
+	 *            the key of the projection in the feature.
+	 * @return the statistics, or <code>null</code> if the feature or the
+	 *         projection is unknown.
+	 */
+	public synchronized ProjectionStatistics getStatistics( final String featureKey, final String projectionKey )
+	{
+		final TrackedFeature< ? > tf = getTrackedFeature( featureKey );
+		if ( tf == null )
+			return null;
+		final int p = tf.projectionIndex( projectionKey );
+		if ( p < 0 )
+			return null;
+		tf.repairIfNeeded( p );
+		return tf.global[ p ];
+	}
+
+	/**
+	 * Returns the statistics of the specified feature projection, restricted
+	 * to the objects of the specified time-point.
+	 *
+	 * @param featureKey
+	 *            the key of the feature.
+	 * @param projectionKey
+	 *            the key of the projection in the feature.
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the statistics, or <code>null</code> if the feature or the
+	 *         projection is unknown, or if there are no values at the
+	 *         specified time-point.
+	 */
+	public synchronized ProjectionStatistics getStatistics( final String featureKey, final String projectionKey, final int timepoint )
+	{
+		final TrackedFeature< ? > tf = getTrackedFeature( featureKey );
+		if ( tf == null )
+			return null;
+		final int p = tf.projectionIndex( projectionKey );
+		if ( p < 0 )
+			return null;
+		tf.repairIfNeeded( p );
+		return tf.perTimepoint.get( p ).get( timepoint );
+	}
+
+	/**
+	 * Returns the tracked feature with the specified key, starting to track it
+	 * if it is a lazy feature requested for the first time.
+	 */
+	private TrackedFeature< ? > getTrackedFeature( final String featureKey )
+	{
+		final TrackedFeature< ? > tf = trackedFeatures.get( featureKey );
+		if ( tf != null )
+			return tf;
+		final Feature< ?, ? > feature = lazyFeatures.remove( featureKey );
+		if ( feature == null )
+			return null;
+		track( feature );
+		return trackedFeatures.get( featureKey );
+	}
+
+	/*
+	 * FeatureModelListener.
+	 */
+
+	@Override
+	public synchronized void featureModelChanged()
+	{
+		final Map< String, Feature< ?, ? > > current = new HashMap<>();
+		collect( vertexClass, current );
+		collect( edgeClass, current );
+
+		// Forget about features that were cleared or re-declared.
+		final Iterator< Map.Entry< String, TrackedFeature< ? > > > it = trackedFeatures.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			final Map.Entry< String, TrackedFeature< ? > > entry = it.next();
+			if ( current.get( entry.getKey() ) != entry.getValue().feature )
+			{
+				entry.getValue().dispose();
+				it.remove();
+			}
+		}
+
+		// Track new features, and defer lazy ones.
+		lazyFeatures.clear();
+		for ( final Feature< ?, ? > feature : current.values() )
+		{
+			if ( trackedFeatures.containsKey( feature.getKey() ) )
+				continue;
+			if ( LazyFeaturePropertyMap.isLazy( feature ) )
+				lazyFeatures.put( feature.getKey(), feature );
+			else
+				track( feature );
+		}
+	}
+
+	private void collect( final Class< ? > targetClass, final Map< String, Feature< ?, ? > > map )
+	{
+		final Set< Feature< ?, ? > > features = featureModel.getFeatureSet( targetClass );
+		if ( features == null )
+			return;
+		for ( final Feature< ?, ? > feature : features )
+			map.put( feature.getKey(), feature );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private void track( final Feature< ?, ? > feature )
+	{
+		final TrackedFeature< ? > tf;
+		if ( feature.getTargetClass() == vertexClass )
+			tf = new TrackedFeature< V >( ( Feature< V, ? > ) feature, graph.vertices(), vertexPool, v -> v.getTimepoint() );
+		else
+			tf = new TrackedFeature< E >( ( Feature< E, ? > ) feature, graph.edges(), edgePool, e -> e.getSource( vref ).getTimepoint() );
+		trackedFeatures.put( feature.getKey(), tf );
+	}
+
+	/*
+	 * GraphListener.
+	 */
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		for ( final TrackedFeature< ? > tf : trackedFeatures.values() )
+			if ( tf.feature.getTargetClass() == vertexClass )
+				( ( TrackedFeature< V > ) tf ).update( vertex );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		for ( final TrackedFeature< ? > tf : trackedFeatures.values() )
+			if ( tf.feature.getTargetClass() == vertexClass )
+				( ( TrackedFeature< V > ) tf ).removed( vertex );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		for ( final TrackedFeature< ? > tf : trackedFeatures.values() )
+			if ( tf.feature.getTargetClass() == edgeClass )
+				( ( TrackedFeature< E > ) tf ).update( edge );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		for ( final TrackedFeature< ? > tf : trackedFeatures.values() )
+			if ( tf.feature.getTargetClass() == edgeClass )
+				( ( TrackedFeature< E > ) tf ).removed( edge );
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		for ( final TrackedFeature< ? > tf : trackedFeatures.values() )
+			tf.init();
+	}
+
+	/**
+	 * Statistics and value columns for the projections of one feature.
+	 *
+	 * @param <O>
+	 *            the feature target type.
+	 */
+	private final class TrackedFeature< O > implements PropertyChangeListener< O >
+	{
+		private final Feature< O, ? > feature;
+
+		private final Iterable< O > objects;
+
+		private final RefPool< O > pool;
+
+		private final ToIntFunction< O > timepointFunction;
+
+		private final String[] projectionKeys;
+
+		private final List< FeatureProjection< O > > projections;
+
+		private final ProjectionStatistics[] global;
+
+		private final List< TIntObjectHashMap< ProjectionStatistics > > perTimepoint;
+
+		/**
+		 * Last known projection values, indexed by projection then pool index.
+		 * {@code NaN} for objects that have no value.
+		 */
+		private double[][] values;
+
+		/**
+		 * Last known time-point of objects, indexed by pool index.
+		 */
+		private int[] timepoints;
+
+		/**
+		 * Whether the min and max of some statistics of each projection must
+		 * be recomputed.
+		 */
+		private final boolean[] dirty;
+
+		@SuppressWarnings( "unchecked" )
+		private TrackedFeature(
+				final Feature< O, ? > feature,
+				final Iterable< O > objects,
+				final RefPool< O > pool,
+				final ToIntFunction< O > timepointFunction )
+		{
+			this.feature = feature;
+			this.objects = objects;
+			this.pool = pool;
+			this.timepointFunction = timepointFunction;
+
+			final Map< String, FeatureProjection< O > > map = feature.getProjections();
+			final int nProjections = map.size();
+			projectionKeys = new String[ nProjections ];
+			projections = new ArrayList<>( nProjections );
+			global = new ProjectionStatistics[ nProjections ];
+			perTimepoint = new ArrayList<>( nProjections );
+			int p = 0;
+			for ( final Map.Entry< String, FeatureProjection< O > > entry : map.entrySet() )
+			{
+				projectionKeys[ p ] = entry.getKey();
+				projections.add( entry.getValue() );
+				global[ p ] = new ProjectionStatistics();
+				perTimepoint.add( new TIntObjectHashMap<>() );
+				p++;
+			}
+			values = new double[ nProjections ][ 0 ];
+			timepoints = new int[ 0 ];
+			dirty = new boolean[ nProjections ];
+
+			init();
+
+			final PropertyMap< O, ? > pm = feature.getPropertyMap();
+			if ( pm instanceof Property )
+				( ( Property< O > ) pm ).addPropertyChangeListener( this );
+		}
+
+		@SuppressWarnings( "unchecked" )
+		private void dispose()
+		{
+			final PropertyMap< O, ? > pm = feature.getPropertyMap();
+			if ( pm instanceof Property )
+				( ( Property< O > ) pm ).removePropertyChangeListener( this );
+		}
+
+		private int projectionIndex( final String projectionKey )
+		{
+			for ( int p = 0; p < projectionKeys.length; p++ )
+				if ( projectionKeys[ p ].equals( projectionKey ) )
+					return p;
+			return -1;
+		}
+
+		private void init()
+		{
+			for ( int p = 0; p < global.length; p++ )
+			{
+				global[ p ].clear();
+				perTimepoint.get( p ).clear();
+				Arrays.fill( values[ p ], Double.NaN );
+			}
+			for ( final O o : objects )
+				update( o );
+			Arrays.fill( dirty, false );
+		}
+
+		@Override
+		public void propertyChanged( final O o )
+		{
+			synchronized ( FeatureStatistics.this )
+			{
+				update( o );
+			}
+		}
+
+		/**
+		 * Updates the statistics with the current projection values of the
+		 * specified object.
+		 */
+		private void update( final O o )
+		{
+			final int id = pool.getId( o );
+			ensureCapacity( id + 1 );
+			final int oldT = timepoints[ id ];
+			final int t = timepointFunction.applyAsInt( o );
+			timepoints[ id ] = t;
+			for ( int p = 0; p < global.length; p++ )
+			{
+				final FeatureProjection< O > projection = projections.get( p );
+				final double oldValue = values[ p ][ id ];
+				final double value = projection.isSet( o ) ? projection.value( o ) : Double.NaN;
+				if ( oldT == t && Double.compare( oldValue, value ) == 0 )
+					continue;
+				remove( p, oldT, oldValue );
+				add( p, t, value );
+				values[ p ][ id ] = value;
+			}
+		}
+
+		/**
+		 * Removes the last known projection values of the specified object
+		 * from the statistics.
+		 */
+		private void removed( final O o )
+		{
+			final int id = pool.getId( o );
+			if ( id >= timepoints.length )
+				return;
+			final int t = timepoints[ id ];
+			for ( int p = 0; p < global.length; p++ )
+			{
+				remove( p, t, values[ p ][ id ] );
+				values[ p ][ id ] = Double.NaN;
+			}
+		}
+
+		private void add( final int p, final int t, final double value )
+		{
+			if ( Double.isNaN( value ) )
+				return;
+			global[ p ].add( value );
+			final TIntObjectHashMap< ProjectionStatistics > map = perTimepoint.get( p );
+			ProjectionStatistics stats = map.get( t );
+			if ( stats == null )
+			{
+				stats = new ProjectionStatistics();
+				map.put( t, stats );
+			}
+			stats.add( value );
+		}
+
+		private void remove( final int p, final int t, final double value )
+		{
+			if ( Double.isNaN( value ) )
+				return;
+			global[ p ].remove( value );
+			dirty[ p ] |= !global[ p ].isExtremaValid();
+			final TIntObjectHashMap< ProjectionStatistics > map = perTimepoint.get( p );
+			final ProjectionStatistics stats = map.get( t );
+			if ( stats == null )
+				return;
+			stats.remove( value );
+			if ( stats.getN() == 0 )
+				map.remove( t );
+			else
+				dirty[ p ] |= !stats.isExtremaValid();
+		}
+
+		/**
+		 * Rebuilds the statistics of the specified projection from its value
+		 * column if the last occurrence of an extremum was removed. The
+		 * statistics instances are rebuilt in place, and the statistics of
+		 * time-points left without values are discarded. This does not touch
+		 * the graph.
+		 */
+		private void repairIfNeeded( final int p )
+		{
+			if ( !dirty[ p ] )
+				return;
+			global[ p ].clear();
+			for ( final ProjectionStatistics stats : perTimepoint.get( p ).valueCollection() )
+				stats.clear();
+			final double[] column = values[ p ];
+			for ( int id = 0; id < column.length; id++ )
+				add( p, timepoints[ id ], column[ id ] );
+			perTimepoint.get( p ).retainEntries( ( t, stats ) -> stats.getN() > 0 );
+			dirty[ p ] = false;
+		}
+
+		private void ensureCapacity( final int capacity )
+		{
+			final int length = timepoints.length;
+			if ( capacity <= length )
+				return;
+			final int newLength = Math.max( capacity, 2 * length );
+			timepoints = Arrays.copyOf( timepoints, newLength );
+			for ( int p = 0; p < values.length; p++ )
+			{
+				values[ p ] = Arrays.copyOf( values[ p ], newLength );
+				Arrays.fill( values[ p ], length, newLength, Double.NaN );
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package org.mastodon.revised.model.feature;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.RefPool;
+
+/**
+ * A feature projection whose values are computed on first access, then
+ * memoized.
+ * <p>
+ * Values are cached in a primitive column indexed by the pool index of the
+ * objects, and a bitmap records which entries of the column are valid. The
+ * function computing the values must return {@code NaN} for objects that have
+ * no value. Cached values are discarded with {@link #invalidate(Object)} and
+ * {@link #invalidateAll()}, normally called by the
+ * {@link LazyFeaturePropertyMap} that owns this projection.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @param <O>
+ *            the feature target type.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LazyFeatureProjection< O > implements FeatureProjection< O >
+{
+
+	private final RefPool< O > pool;
+
+	private final ToDoubleFunction< O > function;
+
+	/**
+	 * Memoized values, indexed by pool index.
+	 */
+	private double[] values;
+
+	/**
+	 * Bitmap of the valid entries of {@link #values}.
+	 */
+	private long[] computed;
+
+	/**
+	 * Creates a lazy projection.
+	 *
+	 * @param pool
+	 *            the pool of the feature targets, used to index the cache.
+	 * @param function
+	 *            the function computing the value of an object, or returning
+	 *            {@code NaN} if the object has no value.
+	 */
+	public LazyFeatureProjection( final RefPool< O > pool, final ToDoubleFunction< O > function )
+	{
+		this.pool = pool;
+		this.function = function;
+		this.values = new double[ 0 ];
+		this.computed = new long[ 0 ];
+	}
+
+	@Override
+	public boolean isSet( final O obj )
+	{
+		return !Double.isNaN( value( obj ) );
+	}
+
+	@Override
+	public synchronized double value( final O obj )
+	{
+		final int id = pool.getId( obj );
+		final int word = id >>> 6;
+		final long bit = 1L << id;
+		if ( word < computed.length && ( computed[ word ] & bit ) != 0 )
+			return values[ id ];
+
+		final double value = function.applyAsDouble( obj );
+		ensureCapacity( id + 1 );
+		values[ id ] = value;
+		computed[ word ] |= bit;
+		return value;
+	}
+
+	/**
+	 * Returns whether the value of the specified object is memoized. This
+	 * does not trigger any computation.
+	 *
+	 * @param obj
+	 *            the object.
+	 * @return {@code true} if the value is memoized.
+	 */
+	public synchronized boolean isComputed( final O obj )
+	{
+		final int id = pool.getId( obj );
+		final int word = id >>> 6;
+		return word < computed.length && ( computed[ word ] & ( 1L << id ) ) != 0;
+	}
+
+	/**
+	 * Memoizes the specified value for the specified object, in place of the
+	 * computed one, until it is invalidated.
+	 *
+	 * @param obj
+	 *            the object.
+	 * @param value
+	 *            the value.
+	 */
+	public synchronized void memoize( final O obj, final double value )
+	{
+		final int id = pool.getId( obj );
+		ensureCapacity( id + 1 );
+		values[ id ] = value;
+		computed[ id >>> 6 ] |= 1L << id;
+	}
+
+	/**
+	 * Discards the memoized value of the specified object. It will be
+	 * computed again on next access.
+	 *
+	 * @param obj
+	 *            the object.
+	 */
+	public synchronized void invalidate( final O obj )
+	{
+		final int id = pool.getId( obj );
+		final int word = id >>> 6;
+		if ( word < computed.length )
+			computed[ word ] &= ~( 1L << id );
+	}
+
+	/**
+	 * Discards all memoized values.
+	 */
+	public synchronized void invalidateAll()
+	{
+		Arrays.fill( computed, 0L );
+	}
+
+	/**
+	 * Returns the number of objects whose value is currently memoized.
+	 *
+	 * @return the number of memoized values.
+	 */
+	public synchronized int numComputed()
+	{
+		int n = 0;
+		for ( final long word : computed )
+			n += Long.bitCount( word );
+		return n;
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > values.length )
+			values = Arrays.copyOf( values, Math.max( capacity, 2 * values.length ) );
+		final int nWords = ( capacity + 63 ) >>> 6;
+		if ( nWords > computed.length )
+			computed = Arrays.copyOf( computed, Math.max( nWords, 2 * computed.length ) );
+	}
+}
@@ -0,0 +1,326 @@
+package org.mastodon.revised.model.feature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+import org.mastodon.RefPool;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.AbstractPropertyMap;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Property map for features evaluated lazily.
+ * <p>
+ * A lazy feature is declared by a feature computer without computing any
+ * value. The computer creates this map, adds one
+ * {@link LazyFeatureProjection} per projection with
+ * {@link #addProjection(String, ToDoubleFunction)}, and declares which changes
+ * make the memoized values stale:
+ * <ul>
+ * <li>{@link #invalidateOn(Property)} for properties of the feature targets
+ * the values depend on;
+ * <li>{@link #invalidateOnRemoval(ListenableReadOnlyGraph)} so that pool
+ * indices reused by new objects do not expose stale values;
+ * <li>{@link #onDispose(Runnable)} to unregister listeners wired manually, for
+ * instance for dependencies on properties of other object types.
+ * </ul>
+ * Values are then only computed when a view, a query or the
+ * {@link FeatureStatistics} request them. When a memoized value is
+ * invalidated, the listeners of this map are notified so that clients can
+ * request the new value.
+ * <p>
+ * The value of an object is the array of its projection values, in the order
+ * the projections were added. Writes act on the memoized values:
+ * {@link #set(Object, double[])} memoizes the specified values in place of the
+ * computed ones until they are invalidated, {@link #remove(Object)} and
+ * {@link #clear()} invalidate them.
+ * <p>
+ * The feature computer service calls {@link #dispose()} when the feature is
+ * replaced or cleared from the feature model.
+ *
+ * @param <O>
+ *            the feature target type.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LazyFeaturePropertyMap< O > extends AbstractPropertyMap< O, double[] >
+{
+
+	private final Class< O > targetClass;
+
+	private final RefPool< O > pool;
+
+	private final Map< String, LazyFeatureProjection< O > > projections;
+
+	private final List< Runnable > disposeActions;
+
+	/**
+	 * Creates an empty lazy property map.
+	 *
+	 * @param targetClass
+	 *            the class of the feature targets.
+	 * @param pool
+	 *            the pool of the feature targets.
+	 */
+	public LazyFeaturePropertyMap( final Class< O > targetClass, final RefPool< O > pool )
+	{
+		this.targetClass = targetClass;
+		this.pool = pool;
+		this.projections = new LinkedHashMap<>();
+		this.disposeActions = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a lazily evaluated projection to this map.
+	 *
+	 * @param projectionKey
+	 *            the key of the projection.
+	 * @param function
+	 *            the function computing the value of an object, or returning
+	 *            {@code NaN} if the object has no value.
+	 * @return the new projection.
+	 */
+	public LazyFeatureProjection< O > addProjection( final String projectionKey, final ToDoubleFunction< O > function )
+	{
+		final LazyFeatureProjection< O > projection = new LazyFeatureProjection<>( pool, function );
+		projections.put( projectionKey, projection );
+		return projection;
+	}
+
+	/**
+	 * Returns the projections of this map, to be passed to the
+	 * {@link Feature} constructor.
+	 *
+	 * @return an unmodifiable map of the projections, by key.
+	 */
+	public Map< String, FeatureProjection< O > > getProjections()
+	{
+		return Collections.unmodifiableMap( new LinkedHashMap<>( projections ) );
+	}
+
+	/**
+	 * Discards the memoized values of the specified object, and notifies the
+	 * listeners of this map.
+	 *
+	 * @param obj
+	 *            the object.
+	 */
+	public void invalidate( final O obj )
+	{
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			projection.invalidate( obj );
+		notifyPropertyChanged( obj );
+	}
+
+	/**
+	 * Discards all memoized values. Listeners are not notified.
+	 */
+	public void invalidateAll()
+	{
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			projection.invalidateAll();
+	}
+
+	/**
+	 * Invalidates the values of objects when the specified property changes
+	 * for them.
+	 *
+	 * @param property
+	 *            a property of the feature targets the values depend on.
+	 */
+	public void invalidateOn( final Property< O > property )
+	{
+		final PropertyChangeListener< O > listener = o -> invalidate( o );
+		property.addPropertyChangeListener( listener );
+		onDispose( () -> property.removePropertyChangeListener( listener ) );
+	}
+
+	/**
+	 * Invalidates the values of objects removed from the specified graph, and
+	 * all the values when the graph is rebuilt.
+	 *
+	 * @param graph
+	 *            the graph whose vertices or edges are the feature targets.
+	 */
+	public < V extends Vertex< E >, E extends Edge< V > > void invalidateOnRemoval( final ListenableReadOnlyGraph< V, E > graph )
+	{
+		final GraphListener< V, E > listener = new RemovalListener<>();
+		graph.addGraphListener( listener );
+		onDispose( () -> graph.removeGraphListener( listener ) );
+	}
+
+	/**
+	 * Registers an action to run when this map is disposed.
+	 *
+	 * @param action
+	 *            the action, typically removing a listener.
+	 */
+	public synchronized void onDispose( final Runnable action )
+	{
+		disposeActions.add( action );
+	}
+
+	/**
+	 * Unregisters all the listeners this map registered, and discards the
+	 * memoized values.
+	 */
+	public synchronized void dispose()
+	{
+		for ( final Runnable action : disposeActions )
+			action.run();
+		disposeActions.clear();
+		invalidateAll();
+	}
+
+	/**
+	 * Returns whether the specified feature is evaluated lazily.
+	 *
+	 * @param feature
+	 *            the feature.
+	 * @return <code>true</code> if the property map of the feature is a
+	 *         {@link LazyFeaturePropertyMap}.
+	 */
+	public static boolean isLazy( final Feature< ?, ? > feature )
+	{
+		return feature.getPropertyMap() instanceof LazyFeaturePropertyMap;
+	}
+
+	/**
+	 * Memoizes the specified projection values for the specified object, in
+	 * place of the computed ones, until they are invalidated.
+	 *
+	 * @return the values that were memoized for the object, or {@code null}.
+	 */
+	@Override
+	public double[] set( final O key, final double[] value )
+	{
+		if ( value.length != projections.size() )
+			throw new IllegalArgumentException( "Expected " + projections.size() + " projection values, got " + value.length + "." );
+		final double[] previous = memoized( key );
+		int i = 0;
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			projection.memoize( key, value[ i++ ] );
+		notifyPropertyChanged( key );
+		return previous;
+	}
+
+	/**
+	 * Discards the memoized values of the specified object, as
+	 * {@link #invalidate(Object)}.
+	 *
+	 * @return the values that were memoized for the object, or {@code null}.
+	 */
+	@Override
+	public double[] remove( final O key )
+	{
+		final double[] previous = memoized( key );
+		invalidate( key );
+		return previous;
+	}
+
+	@Override
+	public void beforeDeleteObject( final O key )
+	{
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			projection.invalidate( key );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		invalidateAll();
+	}
+
+	/**
+	 * Discards all memoized values, as {@link #invalidateAll()}.
+	 */
+	@Override
+	public void clear()
+	{
+		invalidateAll();
+	}
+
+	@Override
+	public double[] get( final O key )
+	{
+		final double[] out = new double[ projections.size() ];
+		int i = 0;
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			out[ i++ ] = projection.value( key );
+		return out;
+	}
+
+	@Override
+	public boolean isSet( final O key )
+	{
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			if ( projection.isSet( key ) )
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns the number of objects whose values are currently memoized. This
+	 * does not trigger any computation.
+	 */
+	@Override
+	public int size()
+	{
+		int size = 0;
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			size = Math.max( size, projection.numComputed() );
+		return size;
+	}
+
+	/**
+	 * Returns the memoized values of the specified object, or {@code null} if
+	 * some are not memoized. This does not trigger any computation.
+	 */
+	private double[] memoized( final O key )
+	{
+		for ( final LazyFeatureProjection< O > projection : projections.values() )
+			if ( !projection.isComputed( key ) )
+				return null;
+		return get( key );
+	}
+
+	private final class RemovalListener< V, E > implements GraphListener< V, E >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			if ( targetClass.isInstance( vertex ) )
+				beforeDeleteObject( targetClass.cast( vertex ) );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			if ( targetClass.isInstance( edge ) )
+				beforeDeleteObject( targetClass.cast( edge ) );
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package org.mastodon.revised.model.feature;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Running statistics over the values of a {@link FeatureProjection}.
+ * <p>
+ * Maintains the count, sum, min and max of the values added to it, plus a
+ * streaming quantile sketch. Values can be added and removed in any order, so
+ * that the statistics can be kept up to date incrementally as feature values
+ * are changed.
+ * <p>
+ * The quantile sketch stores counts in logarithmically spaced buckets, so that
+ * quantiles are returned with a relative accuracy of {@value #RELATIVE_ACCURACY}
+ * (a returned value {@code x} for a true quantile {@code q} satisfies
+ * {@code |x - q| <= RELATIVE_ACCURACY * |q|}). The number of buckets depends
+ * only on the dynamic range of the values, not on their number.
+ * <p>
+ * Min and max are exact. The number of values equal to the min and to the max
+ * are counted, so that removing one of several equal extrema keeps them valid.
+ * When the last value equal to the min (or max) is removed, they cannot be
+ * restored from the sketch alone; {@link #isExtremaValid()} then returns
+ * {@code false} and the owner of this instance must re-add all values after a
+ * {@link #clear()}.
+ * <p>
+ * Values are added and removed by {@link FeatureStatistics}. Instances are
+ * read-only for other classes.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class ProjectionStatistics
+{
+	/**
+	 * Relative accuracy of the quantile sketch.
+	 */
+	public static final double RELATIVE_ACCURACY = 0.01;
+
+	/**
+	 * Values smaller than this (in absolute value) are counted in the zero
+	 * bucket.
+	 */
+	private static final double MIN_INDEXABLE_VALUE = 1e-12;
+
+	private static final double GAMMA = ( 1. + RELATIVE_ACCURACY ) / ( 1. - RELATIVE_ACCURACY );
+
+	private static final double LOG_GAMMA = Math.log( GAMMA );
+
+	private final TIntIntHashMap positiveBuckets;
+
+	private final TIntIntHashMap negativeBuckets;
+
+	private int zeroCount;
+
+	private int n;
+
+	private double sum;
+
+	private double min;
+
+	private double max;
+
+	/**
+	 * Number of values equal to {@link #min}.
+	 */
+	private int minCount;
+
+	/**
+	 * Number of values equal to {@link #max}.
+	 */
+	private int maxCount;
+
+	private boolean extremaValid;
+
+	/**
+	 * Sorted bucket indices, cached between modifications.
+	 */
+	private int[] sortedPositive;
+
+	private int[] sortedNegative;
+
+	ProjectionStatistics()
+	{
+		positiveBuckets = new TIntIntHashMap();
+		negativeBuckets = new TIntIntHashMap();
+		clear();
+	}
+
+	/**
+	 * Removes all values from these statistics.
+	 */
+	void clear()
+	{
+		positiveBuckets.clear();
+		negativeBuckets.clear();
+		zeroCount = 0;
+		n = 0;
+		sum = 0.;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		minCount = 0;
+		maxCount = 0;
+		extremaValid = true;
+		sortedPositive = null;
+		sortedNegative = null;
+	}
+
+	/**
+	 * Adds a value to these statistics. {@code NaN} values are ignored.
+	 *
+	 * @param value
+	 *            the value to add.
+	 */
+	void add( final double value )
+	{
+		if ( Double.isNaN( value ) )
+			return;
+
+		n++;
+		sum += value;
+		if ( value < min )
+		{
+			min = value;
+			minCount = 1;
+		}
+		else if ( value == min )
+			minCount++;
+		if ( value > max )
+		{
+			max = value;
+			maxCount = 1;
+		}
+		else if ( value == max )
+			maxCount++;
+
+		if ( value > MIN_INDEXABLE_VALUE )
+		{
+			positiveBuckets.adjustOrPutValue( index( value ), 1, 1 );
+			sortedPositive = null;
+		}
+		else if ( value < -MIN_INDEXABLE_VALUE )
+		{
+			negativeBuckets.adjustOrPutValue( index( -value ), 1, 1 );
+			sortedNegative = null;
+		}
+		else
+			zeroCount++;
+	}
+
+	/**
+	 * Removes a value, previously added, from these statistics. {@code NaN}
+	 * values are ignored.
+	 *
+	 * @param value
+	 *            the value to remove.
+	 */
+	void remove( final double value )
+	{
+		if ( Double.isNaN( value ) || n == 0 )
+			return;
+
+		n--;
+		sum -= value;
+		if ( n == 0 )
+		{
+			clear();
+			return;
+		}
+		if ( value <= min && --minCount <= 0 )
+			extremaValid = false;
+		if ( value >= max && --maxCount <= 0 )
+			extremaValid = false;
+
+		if ( value > MIN_INDEXABLE_VALUE )
+		{
+			decrement( positiveBuckets, index( value ) );
+			sortedPositive = null;
+		}
+		else if ( value < -MIN_INDEXABLE_VALUE )
+		{
+			decrement( negativeBuckets, index( -value ) );
+			sortedNegative = null;
+		}
+		else
+			zeroCount--;
+	}
+
+	/**
+	 * Returns whether the min and max values are exact. This is
+	 * <code>false</code> after the last value equal to the current min or max
+	 * has been removed.
+	 *
+	 * @return <code>true</code> if the min and max values can be used.
+	 */
+	public boolean isExtremaValid()
+	{
+		return extremaValid;
+	}
+
+	/**
+	 * Returns the number of values in these statistics.
+	 *
+	 * @return the number of values.
+	 */
+	public int getN()
+	{
+		return n;
+	}
+
+	/**
+	 * Returns the min value, or {@code NaN} if there are no values.
+	 *
+	 * @return the min value.
+	 */
+	public double getMin()
+	{
+		return n == 0 ? Double.NaN : min;
+	}
+
+	/**
+	 * Returns the max value, or {@code NaN} if there are no values.
+	 *
+	 * @return the max value.
+	 */
+	public double getMax()
+	{
+		return n == 0 ? Double.NaN : max;
+	}
+
+	/**
+	 * Returns the mean value, or {@code NaN} if there are no values.
+	 *
+	 * @return the mean value.
+	 */
+	public double getMean()
+	{
+		return n == 0 ? Double.NaN : sum / n;
+	}
+
+	/**
+	 * Returns an estimate of the specified quantile of the values.
+	 *
+	 * @param q
+	 *            the quantile, in the range <code>[0, 1]</code>.
+	 * @return the quantile estimate, or {@code NaN} if there are no values.
+	 */
+	public double getQuantile( final double q )
+	{
+		if ( n == 0 )
+			return Double.NaN;
+		if ( q <= 0. )
+			return getMin();
+		if ( q >= 1. )
+			return getMax();
+
+		final long rank = ( long ) ( q * ( n - 1 ) );
+		long count = 0;
+
+		// Negative values, from most negative to least negative.
+		final int[] neg = sortedNegative();
+		for ( int i = neg.length - 1; i >= 0; i-- )
+		{
+			count += negativeBuckets.get( neg[ i ] );
+			if ( count > rank )
+				return clamp( -value( neg[ i ] ) );
+		}
+
+		count += zeroCount;
+		if ( count > rank )
+			return clamp( 0. );
+
+		final int[] pos = sortedPositive();
+		for ( int i = 0; i < pos.length; i++ )
+		{
+			count += positiveBuckets.get( pos[ i ] );
+			if ( count > rank )
+				return clamp( value( pos[ i ] ) );
+		}
+		return getMax();
+	}
+
+	/**
+	 * Returns a histogram of the values, computed from the quantile sketch
+	 * over the range <code>[min, max]</code>.
+	 *
+	 * @param nBins
+	 *            the number of bins in the histogram.
+	 * @return a new <code>int</code> array of size <code>nBins</code>.
+	 */
+	public int[] getHistogram( final int nBins )
+	{
+		final int[] histogram = new int[ nBins ];
+		if ( n == 0 )
+			return histogram;
+
+		final double lmin = getMin();
+		final double range = getMax() - lmin;
+		if ( range <= 0. )
+		{
+			histogram[ 0 ] = n;
+			return histogram;
+		}
+
+		final double scale = nBins / range;
+		for ( final int i : negativeBuckets.keys() )
+			histogram[ bin( -value( i ), lmin, scale, nBins ) ] += negativeBuckets.get( i );
+		if ( zeroCount > 0 )
+			histogram[ bin( 0., lmin, scale, nBins ) ] += zeroCount;
+		for ( final int i : positiveBuckets.keys() )
+			histogram[ bin( value( i ), lmin, scale, nBins ) ] += positiveBuckets.get( i );
+		return histogram;
+	}
+
+	private static int bin( final double value, final double min, final double scale, final int nBins )
+	{
+		final int bin = ( int ) ( ( value - min ) * scale );
+		return Math.max( 0, Math.min( nBins - 1, bin ) );
+	}
+
+	private double clamp( final double value )
+	{
+		return Math.max( getMin(), Math.min( getMax(), value ) );
+	}
+
+	private int[] sortedPositive()
+	{
+		if ( sortedPositive == null )
+		{
+			sortedPositive = positiveBuckets.keys();
+			Arrays.sort( sortedPositive );
+		}
+		return sortedPositive;
+	}
+
+	private int[] sortedNegative()
+	{
+		if ( sortedNegative == null )
+		{
+			sortedNegative = negativeBuckets.keys();
+			Arrays.sort( sortedNegative );
+		}
+		return sortedNegative;
+	}
+
+	private static void decrement( final TIntIntHashMap buckets, final int index )
+	{
+		final int count = buckets.get( index );
+		if ( count <= 1 )
+			buckets.remove( index );
+		else
+			buckets.put( index, count - 1 );
+	}
+
+	/**
+	 * Index of the bucket for a strictly positive value.
+	 */
+	private static int index( final double value )
+	{
+		return ( int ) Math.ceil( Math.log( value ) / LOG_GAMMA );
+	}
+
+	/**
+	 * Representative value of the bucket with the specified index.
+	 */
+	private static double value( final int index )
+	{
+		return 2. * Math.pow( GAMMA, index ) / ( GAMMA + 1. );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "%s( n=%d, min=%g, max=%g, mean=%g, median=%g )",
+				getClass().getSimpleName(), getN(), getMin(), getMax(), getMean(), getQuantile( 0.5 ) );
+	}
+}
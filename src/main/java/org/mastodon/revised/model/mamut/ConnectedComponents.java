@@ -0,0 +1,253 @@
+package org.mastodon.revised.model.mamut;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Labelling of the connected components (tracks) of a {@link ModelGraph}.
+ * <p>
+ * Components are found with a concurrent union-find over the links of the
+ * graph. Vertex and link endpoints are first copied into primitive arrays,
+ * then links are merged in parallel with lock-free, compare-and-set linking
+ * (the root with the larger index is always linked under the root with the
+ * smaller index, so that concurrent unions cannot create cycles). Component
+ * indices are then made dense with a parallel prefix sum.
+ * <p>
+ * Components are numbered from 0 to {@link #numComponents()} - 1, in the order
+ * of the smallest vertex pool index they contain. Isolated spots are
+ * components of their own. The members of each component are available in
+ * increasing pool index order.
+ * <p>
+ * A labelling is a snapshot: it is not updated when the graph changes.
+ * Vertices added after the labelling was computed have no component.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class ConnectedComponents
+{
+	/**
+	 * Component index of each vertex, indexed by vertex pool index.
+	 * <code>-1</code> for unused pool indices.
+	 */
+	private final int[] vertexComponents;
+
+	private final int numComponents;
+
+	/**
+	 * Start of each component in {@link #members}. Has size
+	 * <code>numComponents + 1</code>.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * Vertex pool indices, grouped by component.
+	 */
+	private final int[] members;
+
+	private ConnectedComponents( final int[] vertexComponents, final int numComponents, final int[] offsets, final int[] members )
+	{
+		this.vertexComponents = vertexComponents;
+		this.numComponents = numComponents;
+		this.offsets = offsets;
+		this.members = members;
+	}
+
+	/**
+	 * Computes the connected components of the specified graph.
+	 * <p>
+	 * The graph must not be modified during this call. Callers should hold
+	 * the read lock of the graph.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @return a new labelling.
+	 */
+	public static ConnectedComponents compute( final ModelGraph graph )
+	{
+		int capacity = 0;
+		for ( final Spot spot : graph.vertices() )
+			capacity = Math.max( capacity, spot.getInternalPoolIndex() + 1 );
+		final boolean[] live = new boolean[ capacity ];
+		for ( final Spot spot : graph.vertices() )
+			live[ spot.getInternalPoolIndex() ] = true;
+
+		final int nLinks = graph.edges().size();
+		final int[] sources = new int[ nLinks ];
+		final int[] targets = new int[ nLinks ];
+		final Spot ref = graph.vertexRef();
+		int i = 0;
+		for ( final Link link : graph.edges() )
+		{
+			sources[ i ] = link.getSource( ref ).getInternalPoolIndex();
+			targets[ i ] = link.getTarget( ref ).getInternalPoolIndex();
+			i++;
+		}
+		graph.releaseRef( ref );
+
+		return label( live, sources, targets );
+	}
+
+	/**
+	 * Computes the connected components of a graph specified by primitive
+	 * arrays.
+	 *
+	 * @param live
+	 *            for each vertex pool index, whether the index is used by a
+	 *            vertex.
+	 * @param sources
+	 *            the pool index of the source vertex of each edge.
+	 * @param targets
+	 *            the pool index of the target vertex of each edge.
+	 * @return a new labelling.
+	 */
+	public static ConnectedComponents label( final boolean[] live, final int[] sources, final int[] targets )
+	{
+		final int n = live.length;
+
+		final int[] identity = new int[ n ];
+		Arrays.parallelSetAll( identity, v -> v );
+		final AtomicIntegerArray parent = new AtomicIntegerArray( identity );
+
+		IntStream.range( 0, sources.length ).parallel().forEach( e -> union( parent, sources[ e ], targets[ e ] ) );
+
+		final int[] roots = new int[ n ];
+		Arrays.parallelSetAll( roots, v -> live[ v ] ? find( parent, v ) : -1 );
+
+		// Dense component indices, in increasing order of root pool index.
+		final int[] rank = new int[ n ];
+		Arrays.parallelSetAll( rank, v -> roots[ v ] == v ? 1 : 0 );
+		Arrays.parallelPrefix( rank, Integer::sum );
+		final int numComponents = n == 0 ? 0 : rank[ n - 1 ];
+		final int[] components = new int[ n ];
+		Arrays.parallelSetAll( components, v -> roots[ v ] < 0 ? -1 : rank[ roots[ v ] ] - 1 );
+
+		// Group members by component (counting sort).
+		final int[] offsets = new int[ numComponents + 1 ];
+		for ( int v = 0; v < n; v++ )
+			if ( components[ v ] >= 0 )
+				offsets[ components[ v ] + 1 ]++;
+		for ( int c = 0; c < numComponents; c++ )
+			offsets[ c + 1 ] += offsets[ c ];
+		final int[] members = new int[ offsets[ numComponents ] ];
+		final int[] fill = Arrays.copyOf( offsets, numComponents );
+		for ( int v = 0; v < n; v++ )
+			if ( components[ v ] >= 0 )
+				members[ fill[ components[ v ] ]++ ] = v;
+
+		return new ConnectedComponents( components, numComponents, offsets, members );
+	}
+
+	private static void union( final AtomicIntegerArray parent, final int v1, final int v2 )
+	{
+		int a = v1;
+		int b = v2;
+		while ( true )
+		{
+			a = find( parent, a );
+			b = find( parent, b );
+			if ( a == b )
+				return;
+			if ( a < b )
+			{
+				final int tmp = a;
+				a = b;
+				b = tmp;
+			}
+			// a is the larger root. Link it under b, unless it was linked
+			// elsewhere in the meantime.
+			if ( parent.compareAndSet( a, a, b ) )
+				return;
+		}
+	}
+
+	private static int find( final AtomicIntegerArray parent, final int v )
+	{
+		int x = v;
+		int p;
+		while ( ( p = parent.get( x ) ) != x )
+		{
+			// Path halving.
+			final int gp = parent.get( p );
+			if ( gp != p )
+				parent.compareAndSet( x, p, gp );
+			x = gp;
+		}
+		return x;
+	}
+
+	/**
+	 * Returns the number of connected components.
+	 *
+	 * @return the number of components.
+	 */
+	public int numComponents()
+	{
+		return numComponents;
+	}
+
+	/**
+	 * Returns the component of the vertex with the specified pool index.
+	 *
+	 * @param vertexIndex
+	 *            the vertex pool index.
+	 * @return the component index, or <code>-1</code> if the vertex was not
+	 *         labelled.
+	 */
+	public int getComponent( final int vertexIndex )
+	{
+		return vertexIndex < vertexComponents.length ? vertexComponents[ vertexIndex ] : -1;
+	}
+
+	/**
+	 * Returns the component of the specified spot.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the component index, or <code>-1</code> if the spot was not
+	 *         labelled.
+	 */
+	public int getComponent( final Spot spot )
+	{
+		return getComponent( spot.getInternalPoolIndex() );
+	}
+
+	/**
+	 * Returns the number of vertices in the specified component.
+	 *
+	 * @param component
+	 *            the component index.
+	 * @return the number of vertices.
+	 */
+	public int size( final int component )
+	{
+		return offsets[ component + 1 ] - offsets[ component ];
+	}
+
+	/**
+	 * Returns the pool index of the i-th vertex of the specified component.
+	 * Vertices of a component are ordered by increasing pool index.
+	 *
+	 * @param component
+	 *            the component index.
+	 * @param i
+	 *            the index of the vertex in the component, from 0 to
+	 *            {@link #size(int)} - 1.
+	 * @return the vertex pool index.
+	 */
+	public int getMember( final int component, final int i )
+	{
+		return members[ offsets[ component ] + i ];
+	}
+
+	/**
+	 * Returns the size of the vertex pool index range covered by this
+	 * labelling.
+	 *
+	 * @return the pool index capacity.
+	 */
+	public int capacity()
+	{
+		return vertexComponents.length;
+	}
+}
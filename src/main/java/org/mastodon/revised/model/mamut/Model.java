@@ -10,6 +10,7 @@ import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
@@ -18,11 +19,17 @@ import org.mastodon.labels.LabelSets;
 import org.mastodon.properties.Property;
 import org.mastodon.revised.mamut.MamutProject;
 import org.mastodon.revised.model.AbstractModel;
+import org.mastodon.revised.model.BranchGraph;
+import org.mastodon.revised.model.LineageIndex;
+import org.mastodon.revised.model.TrackMembership;
 import org.mastodon.revised.model.feature.DefaultFeatureModel;
 import org.mastodon.revised.model.feature.FeatureModel;
+import org.mastodon.revised.model.feature.FeatureStatistics;
+import org.mastodon.revised.model.tag.DefaultObjTags;
 import org.mastodon.revised.model.tag.DefaultTagSetModel;
 import org.mastodon.revised.model.tag.RawTagSetModelIO;
 import org.mastodon.revised.model.tag.TagSetModel;
+import org.mastodon.revised.model.tag.TagTimepointIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.spatial.SpatioTemporalIndexImp;
 import org.mastodon.spatial.SpatioTemporalIndexImpRebuilderThread;
@@ -47,6 +54,11 @@ import net.imglib2.RealLocalizable;
  * the model graph are done through {@link Model}. This includes vertex and edge
  * attribute changes (although this currently cannot be enforced through
  * {@link ReadOnlyGraph}).
+ * <p>
+ * The indices and statistics maintained over the model graph (feature
+ * statistics, tag time-point index, track membership, lineage index and branch
+ * graph) are created when they are first requested. Until then they do not
+ * listen to the graph, and editing it does not pay for their updates.
  *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
@@ -63,8 +75,18 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 
 	private final FeatureModel featureModel;
 
+	private final Lazy< FeatureStatistics< Spot, Link > > featureStatistics;
+
 	private final DefaultTagSetModel< Spot, Link > tagSetModel;
 
+	private final Lazy< TagTimepointIndex< Spot, Link > > tagTimepointIndex;
+
+	private final Lazy< TrackMembership< Spot, Link > > trackMembership;
+
+	private final Lazy< LineageIndex< Spot, Link > > lineageIndex;
+
+	private final Lazy< BranchGraph< Spot, Link > > branchGraph;
+
 	public Model()
 	{
 		super( new ModelGraph() );
@@ -89,7 +111,12 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		final List< Property< Link > > edgeUndoableProperties = new ArrayList<>();
 
 		featureModel = new DefaultFeatureModel();
+		featureStatistics = new Lazy<>( () -> new FeatureStatistics<>( modelGraph, featureModel, Spot.class, Link.class ) );
 		tagSetModel = new DefaultTagSetModel<>( getGraph() );
+		tagTimepointIndex = new Lazy<>( () -> new TagTimepointIndex<>( modelGraph, tagSetModel ) );
+		trackMembership = new Lazy<>( () -> new TrackMembership<>( modelGraph ) );
+		lineageIndex = new Lazy<>( () -> new LineageIndex<>( modelGraph ) );
+		branchGraph = new Lazy<>( () -> new BranchGraph<>( modelGraph ) );
 		vertexUndoableProperties.add(
 				new DefaultTagSetModel.SerialisationAccess< Spot, Link >( tagSetModel )
 				{
@@ -120,6 +147,8 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 
 		final Recorder< DefaultTagSetModel.SetTagSetStructureUndoableEdit > recorder = undoRecorder.createGenericUndoableEditRecorder();
 		tagSetModel.setUndoRecorder( recorder );
+		final Recorder< DefaultObjTags.BulkTagUndoableEdit > bulkTagRecorder = undoRecorder.createGenericUndoableEditRecorder();
+		tagSetModel.setBulkTagUndoRecorder( bulkTagRecorder );
 	}
 
 	/**
@@ -216,8 +245,102 @@ public class Model extends AbstractModel< ModelGraph, Spot, Link > implements Un
 		return featureModel;
 	}
 
+	/**
+	 * Exposes the statistics of the feature projections declared in the
+	 * feature model of this model.
+	 *
+	 * @return the feature statistics.
+	 */
+	public FeatureStatistics< Spot, Link > getFeatureStatistics()
+	{
+		return featureStatistics.get();
+	}
+
 	public TagSetModel< Spot, Link > getTagSetModel()
 	{
 		return tagSetModel;
 	}
+
+	/**
+	 * Exposes the index of the time-points of tagged spots.
+	 *
+	 * @return the tag time-point index.
+	 */
+	public TagTimepointIndex< Spot, Link > getTagTimepointIndex()
+	{
+		return tagTimepointIndex.get();
+	}
+
+	/**
+	 * Exposes the index of the tracks the spots and links belong to.
+	 *
+	 * @return the track membership index.
+	 */
+	public TrackMembership< Spot, Link > getTrackMembership()
+	{
+		return trackMembership.get();
+	}
+
+	/**
+	 * Exposes the interval labelling of the lineage trees of the spots.
+	 *
+	 * @return the lineage index.
+	 */
+	public LineageIndex< Spot, Link > getLineageIndex()
+	{
+		return lineageIndex.get();
+	}
+
+	/**
+	 * Exposes the branch graph of the spots, where each branch is a linear
+	 * chain of spots between divisions.
+	 *
+	 * @return the branch graph.
+	 */
+	public BranchGraph< Spot, Link > getBranchGraph()
+	{
+		return branchGraph.get();
+	}
+
+	/**
+	 * Creates an object on its first request, under the read lock of the
+	 * model graph so that the graph is not modified while the object is built
+	 * from it. The read lock is acquired before the monitor of this holder, so
+	 * that a thread holding the write lock can request the object too.
+	 *
+	 * @param <T>
+	 *            the type of the object.
+	 */
+	private final class Lazy< T >
+	{
+		private final Supplier< T > factory;
+
+		private volatile T instance;
+
+		private Lazy( final Supplier< T > factory )
+		{
+			this.factory = factory;
+		}
+
+		private T get()
+		{
+			final T t = instance;
+			if ( t != null )
+				return t;
+			lock.readLock().lock();
+			try
+			{
+				synchronized ( this )
+				{
+					if ( instance == null )
+						instance = factory.get();
+					return instance;
+				}
+			}
+			finally
+			{
+				lock.readLock().unlock();
+			}
+		}
+	}
 }
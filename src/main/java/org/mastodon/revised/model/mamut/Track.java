@@ -0,0 +1,54 @@
+package org.mastodon.revised.model.mamut;
+
+/**
+ * A track of the model, that is a connected component of the model graph.
+ * <p>
+ * Tracks are identified by their component index in a
+ * {@link ConnectedComponents} labelling, and are used as the target of
+ * track-level features.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public final class Track
+{
+	private final int id;
+
+	/**
+	 * Creates a track object for the component with the specified index.
+	 *
+	 * @param id
+	 *            the component index of the track.
+	 */
+	public Track( final int id )
+	{
+		this.id = id;
+	}
+
+	/**
+	 * Returns the component index of this track.
+	 *
+	 * @return the track id.
+	 */
+	public int id()
+	{
+		return id;
+	}
+
+	@Override
+	public boolean equals( final Object obj )
+	{
+		return ( obj instanceof Track ) && ( ( Track ) obj ).id == id;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return id;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Track( " + id + " )";
+	}
+}
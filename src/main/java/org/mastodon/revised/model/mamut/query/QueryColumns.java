@@ -0,0 +1,210 @@
+package org.mastodon.revised.model.mamut.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.tag.ObjTagMap;
+import org.mastodon.revised.model.tag.TagSetStructure;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Snapshot of spot attributes, feature projections and tags in primitive
+ * columns, indexed by spot pool index, on which {@link SpotQuery} predicates
+ * are evaluated.
+ * <p>
+ * Columns are extracted on demand when query nodes are bound, and shared
+ * between the nodes that use the same attribute. Numerical columns are
+ * extracted in parallel chunks, each chunk using its own spot reference. Tag
+ * columns are extracted sequentially, as tag maps are not safe for concurrent
+ * access.
+ * <p>
+ * Callers must hold the read lock of the graph while columns are extracted.
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class QueryColumns
+{
+
+	private final Model model;
+
+	private final ModelGraph graph;
+
+	private final RefPool< Spot > pool;
+
+	/**
+	 * Pool index capacity.
+	 */
+	private final int size;
+
+	/**
+	 * Bitmap of the pool indices used by a spot.
+	 */
+	private final long[] live;
+
+	private final Map< String, double[] > numeric;
+
+	private final Map< TagSet, int[] > tags;
+
+	QueryColumns( final Model model )
+	{
+		this.model = model;
+		this.graph = model.getGraph();
+		this.pool = RefCollections.tryGetRefPool( graph.vertices() );
+		int capacity = 0;
+		for ( final Spot spot : graph.vertices() )
+			capacity = Math.max( capacity, spot.getInternalPoolIndex() + 1 );
+		this.size = capacity;
+		this.live = new long[ ( size + 63 ) >>> 6 ];
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int i = spot.getInternalPoolIndex();
+			live[ i >>> 6 ] |= 1L << i;
+		}
+		this.numeric = new HashMap<>();
+		this.tags = new HashMap<>();
+	}
+
+	/**
+	 * Returns the pool index capacity covered by the columns.
+	 *
+	 * @return the column size.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the bitmap of the pool indices used by a spot.
+	 *
+	 * @return the live bitmap.
+	 */
+	long[] live()
+	{
+		return live;
+	}
+
+	TagSetStructure getTagSetStructure()
+	{
+		return model.getTagSetModel().getTagSetStructure();
+	}
+
+	/**
+	 * Returns the column for the specified numerical attribute. The attribute
+	 * is either one of the spot built-in attributes (<code>t</code> or
+	 * <code>timepoint</code>, <code>x</code>, <code>y</code>, <code>z</code>,
+	 * <code>r</code> or <code>radius</code>), or the key of a projection of a
+	 * spot feature. Unset values are <code>NaN</code>.
+	 *
+	 * @param attribute
+	 *            the attribute name.
+	 * @return the column.
+	 * @throws IllegalArgumentException
+	 *             if the attribute is unknown.
+	 */
+	double[] numeric( final String attribute )
+	{
+		double[] column = numeric.get( attribute );
+		if ( column == null )
+		{
+			column = extract( resolve( attribute ) );
+			numeric.put( attribute, column );
+		}
+		return column;
+	}
+
+	/**
+	 * Returns the column for the specified tag set. The column stores the id
+	 * of the tag of each spot in the tag set, or <code>-1</code> if the spot
+	 * is not tagged.
+	 *
+	 * @param tagSet
+	 *            the tag set.
+	 * @return the column.
+	 */
+	int[] tags( final TagSet tagSet )
+	{
+		int[] column = tags.get( tagSet );
+		if ( column == null )
+		{
+			column = new int[ size ];
+			Arrays.fill( column, -1 );
+			final ObjTagMap< Spot, Tag > tagMap = model.getTagSetModel().getVertexTags().tags( tagSet );
+			for ( final Spot spot : graph.vertices() )
+			{
+				final Tag tag = tagMap.get( spot );
+				if ( tag != null )
+					column[ spot.getInternalPoolIndex() ] = tag.id();
+			}
+			tags.put( tagSet, column );
+		}
+		return column;
+	}
+
+	private ToDoubleFunction< Spot > resolve( final String attribute )
+	{
+		switch ( attribute )
+		{
+		case "t":
+		case "timepoint":
+			return Spot::getTimepoint;
+		case "x":
+			return spot -> spot.getDoublePosition( 0 );
+		case "y":
+			return spot -> spot.getDoublePosition( 1 );
+		case "z":
+			return spot -> spot.getDoublePosition( 2 );
+		case "r":
+		case "radius":
+			return spot -> Math.sqrt( spot.getBoundingSphereRadiusSquared() );
+		default:
+			final Set< Feature< ?, ? > > features = model.getFeatureModel().getFeatureSet( Spot.class );
+			for ( final Feature< ?, ? > feature : features == null ? Collections.< Feature< ?, ? > >emptySet() : features )
+			{
+				@SuppressWarnings( "unchecked" )
+				final FeatureProjection< Spot > projection = ( FeatureProjection< Spot > ) feature.getProjections().get( attribute );
+				if ( projection != null )
+					return spot -> projection.isSet( spot ) ? projection.value( spot ) : Double.NaN;
+			}
+			throw new IllegalArgumentException( "Unknown spot attribute or feature projection: \"" + attribute + "\"" );
+		}
+	}
+
+	private double[] extract( final ToDoubleFunction< Spot > f )
+	{
+		final double[] column = new double[ size ];
+		final int nChunks = ( size + SpotQuery.CHUNK_SIZE - 1 ) / SpotQuery.CHUNK_SIZE;
+		final List< Spot > refs = new ArrayList<>( nChunks );
+		for ( int c = 0; c < nChunks; c++ )
+			refs.add( pool.createRef() );
+
+		IntStream.range( 0, nChunks ).parallel().forEach( c -> {
+			final Spot ref = refs.get( c );
+			final int from = c * SpotQuery.CHUNK_SIZE;
+			final int to = Math.min( size, from + SpotQuery.CHUNK_SIZE );
+			for ( int i = from; i < to; i++ )
+				column[ i ] = ( live[ i >>> 6 ] & ( 1L << i ) ) != 0
+						? f.applyAsDouble( pool.getObject( i, ref ) )
+						: Double.NaN;
+		} );
+
+		for ( final Spot ref : refs )
+			pool.releaseRef( ref );
+		return column;
+	}
+}
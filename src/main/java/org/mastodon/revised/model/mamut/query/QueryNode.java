@@ -0,0 +1,541 @@
+package org.mastodon.revised.model.mamut.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Node of the syntax tree of a {@link SpotQuery}.
+ * <p>
+ * A node is bound to the columns of a model snapshot to give an
+ * {@link Evaluator}, that tests a range of spots.
+ * <p>
+ * Predicates are evaluated with three-valued logic: a predicate on an
+ * attribute that is not set for a spot is neither true nor false for this
+ * spot. A node can therefore also be bound to a {@link TernaryEvaluator},
+ * that also returns its "is set" bits, the spots for which its value is known,
+ * so that a {@link Not} does not match the spots for which its operand is
+ * unknown.
+ *
+ * @author Jean-Yves Tinevez
+ */
+abstract class QueryNode
+{
+
+	/**
+	 * Tests a range of spots against a bound query node.
+	 */
+	interface Evaluator
+	{
+		/**
+		 * Evaluates the predicate for the spots with pool index in
+		 * <code>[from, to)</code>.
+		 *
+		 * @param from
+		 *            the first pool index, inclusive. Must be a multiple of
+		 *            64.
+		 * @param to
+		 *            the last pool index, exclusive.
+		 * @return a new bitmap of size <code>ceil((to - from) / 64)</code>
+		 *         words. Bit <code>i</code> is set if spot
+		 *         <code>from + i</code> matches.
+		 */
+		long[] evaluate( int from, int to );
+	}
+
+	/**
+	 * Binds this node to the specified columns. Columns needed by this node
+	 * are extracted from the model during this call.
+	 *
+	 * @param columns
+	 *            the columns.
+	 * @return a new evaluator.
+	 */
+	abstract Evaluator bind( QueryColumns columns );
+
+	/**
+	 * Tests a range of spots against a bound query node, with three-valued
+	 * logic.
+	 */
+	interface TernaryEvaluator
+	{
+		/**
+		 * Evaluates the predicate and whether its value is known, for the
+		 * spots with pool index in <code>[from, to)</code>.
+		 *
+		 * @param from
+		 *            the first pool index, inclusive. Must be a multiple of
+		 *            64.
+		 * @param to
+		 *            the last pool index, exclusive.
+		 * @return two new bitmaps, laid out as in
+		 *         {@link Evaluator#evaluate(int, int)}. The first one has the
+		 *         bits of the spots that match, the second one has the bits of
+		 *         the spots for which the value of the node is known, true or
+		 *         false.
+		 */
+		long[][] evaluate( int from, int to );
+	}
+
+	/**
+	 * Binds this node to the specified columns for three-valued evaluation.
+	 * Operators bind each of their operands once, and evaluate each of them
+	 * once per range, so that binding and evaluation are linear in the size
+	 * of the syntax tree.
+	 *
+	 * @param columns
+	 *            the columns.
+	 * @return a new evaluator.
+	 */
+	abstract TernaryEvaluator bindTernary( QueryColumns columns );
+
+	/**
+	 * Combines the evaluators of the value and of the "is set" bits of a
+	 * predicate.
+	 */
+	static TernaryEvaluator ternary( final Evaluator value, final Evaluator isSet )
+	{
+		return ( from, to ) -> new long[][] { value.evaluate( from, to ), isSet.evaluate( from, to ) };
+	}
+
+	static int nWords( final int from, final int to )
+	{
+		return ( to - from + 63 ) >>> 6;
+	}
+
+	/**
+	 * Evaluator of the spots for which a numerical column is not
+	 * <code>NaN</code>.
+	 */
+	static Evaluator isSet( final double[] column )
+	{
+		return ( from, to ) -> {
+			final long[] bits = new long[ nWords( from, to ) ];
+			for ( int i = from; i < to; i++ )
+			{
+				final double x = column[ i ];
+				if ( x == x )
+					bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+			}
+			return bits;
+		};
+	}
+
+	/**
+	 * Returns a new bitmap in which all the bits of the range are set.
+	 */
+	static long[] all( final int from, final int to )
+	{
+		final long[] bits = new long[ nWords( from, to ) ];
+		Arrays.fill( bits, -1L );
+		final int tail = ( to - from ) & 63;
+		if ( tail != 0 )
+			bits[ bits.length - 1 ] = ( 1L << tail ) - 1;
+		return bits;
+	}
+
+	/*
+	 * Boolean operators.
+	 */
+
+	static final class And extends QueryNode
+	{
+		private final QueryNode left;
+
+		private final QueryNode right;
+
+		And( final QueryNode left, final QueryNode right )
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final Evaluator l = left.bind( columns );
+			final Evaluator r = right.bind( columns );
+			return ( from, to ) -> {
+				final long[] a = l.evaluate( from, to );
+				final long[] b = r.evaluate( from, to );
+				for ( int w = 0; w < a.length; w++ )
+					a[ w ] &= b[ w ];
+				return a;
+			};
+		}
+
+		/**
+		 * Known if both operands are known, or if one of them is false.
+		 */
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			final TernaryEvaluator l = left.bindTernary( columns );
+			final TernaryEvaluator r = right.bindTernary( columns );
+			return ( from, to ) -> {
+				final long[][] x = l.evaluate( from, to );
+				final long[][] y = r.evaluate( from, to );
+				final long[] a = x[ 0 ];
+				final long[] as = x[ 1 ];
+				final long[] b = y[ 0 ];
+				final long[] bs = y[ 1 ];
+				for ( int w = 0; w < a.length; w++ )
+				{
+					as[ w ] = ( as[ w ] & bs[ w ] ) | ( as[ w ] & ~a[ w ] ) | ( bs[ w ] & ~b[ w ] );
+					a[ w ] &= b[ w ];
+				}
+				return x;
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + left + " and " + right + ")";
+		}
+	}
+
+	static final class Or extends QueryNode
+	{
+		private final QueryNode left;
+
+		private final QueryNode right;
+
+		Or( final QueryNode left, final QueryNode right )
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final Evaluator l = left.bind( columns );
+			final Evaluator r = right.bind( columns );
+			return ( from, to ) -> {
+				final long[] a = l.evaluate( from, to );
+				final long[] b = r.evaluate( from, to );
+				for ( int w = 0; w < a.length; w++ )
+					a[ w ] |= b[ w ];
+				return a;
+			};
+		}
+
+		/**
+		 * Known if both operands are known, or if one of them is true.
+		 */
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			final TernaryEvaluator l = left.bindTernary( columns );
+			final TernaryEvaluator r = right.bindTernary( columns );
+			return ( from, to ) -> {
+				final long[][] x = l.evaluate( from, to );
+				final long[][] y = r.evaluate( from, to );
+				final long[] a = x[ 0 ];
+				final long[] as = x[ 1 ];
+				final long[] b = y[ 0 ];
+				final long[] bs = y[ 1 ];
+				for ( int w = 0; w < a.length; w++ )
+				{
+					a[ w ] |= b[ w ];
+					as[ w ] = ( as[ w ] & bs[ w ] ) | a[ w ];
+				}
+				return x;
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(" + left + " or " + right + ")";
+		}
+	}
+
+	/**
+	 * Negates its operand, for the spots for which the operand is known.
+	 */
+	static final class Not extends QueryNode
+	{
+		private final QueryNode child;
+
+		Not( final QueryNode child )
+		{
+			this.child = child;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final TernaryEvaluator c = bindTernary( columns );
+			return ( from, to ) -> c.evaluate( from, to )[ 0 ];
+		}
+
+		/**
+		 * Known where the operand is known.
+		 */
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			final TernaryEvaluator c = child.bindTernary( columns );
+			return ( from, to ) -> {
+				final long[][] x = c.evaluate( from, to );
+				final long[] a = x[ 0 ];
+				final long[] set = x[ 1 ];
+				for ( int w = 0; w < a.length; w++ )
+					a[ w ] = ~a[ w ] & set[ w ];
+				return x;
+			};
+		}
+
+		@Override
+		public String toString()
+		{
+			return "not " + child;
+		}
+	}
+
+	/*
+	 * Predicates.
+	 */
+
+	enum Op
+	{
+		LT( "<" ), LE( "<=" ), GT( ">" ), GE( ">=" ), EQ( "=" ), NE( "!=" );
+
+		private final String symbol;
+
+		private Op( final String symbol )
+		{
+			this.symbol = symbol;
+		}
+
+		@Override
+		public String toString()
+		{
+			return symbol;
+		}
+	}
+
+	/**
+	 * Compares a numerical attribute to a constant. Spots for which the
+	 * attribute is not set (<code>NaN</code>) never match.
+	 */
+	static final class Compare extends QueryNode
+	{
+		private final String attribute;
+
+		private final Op op;
+
+		private final double value;
+
+		Compare( final String attribute, final Op op, final double value )
+		{
+			this.attribute = attribute;
+			this.op = op;
+			this.value = value;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final double[] column = columns.numeric( attribute );
+			final double v = value;
+			/*
+			 * One tight loop per operator, so that the operator is not
+			 * dispatched for every spot.
+			 */
+			switch ( op )
+			{
+			case LT:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] < v )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					return bits;
+				};
+			case LE:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] <= v )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					return bits;
+				};
+			case GT:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] > v )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					return bits;
+				};
+			case GE:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] >= v )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					return bits;
+				};
+			case EQ:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] == v )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					return bits;
+				};
+			case NE:
+			default:
+				return ( from, to ) -> {
+					final long[] bits = new long[ nWords( from, to ) ];
+					for ( int i = from; i < to; i++ )
+					{
+						final double x = column[ i ];
+						if ( x != v && x == x )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+					}
+					return bits;
+				};
+			}
+		}
+
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			return ternary( bind( columns ), isSet( columns.numeric( attribute ) ) );
+		}
+
+		@Override
+		public String toString()
+		{
+			return "\"" + attribute + "\" " + op + " " + value;
+		}
+	}
+
+	/**
+	 * Tests whether a numerical attribute is in a closed range.
+	 */
+	static final class Range extends QueryNode
+	{
+		private final String attribute;
+
+		private final double min;
+
+		private final double max;
+
+		Range( final String attribute, final double min, final double max )
+		{
+			this.attribute = attribute;
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final double[] column = columns.numeric( attribute );
+			final double lo = min;
+			final double hi = max;
+			return ( from, to ) -> {
+				final long[] bits = new long[ nWords( from, to ) ];
+				for ( int i = from; i < to; i++ )
+				{
+					final double x = column[ i ];
+					if ( x >= lo && x <= hi )
+						bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+				}
+				return bits;
+			};
+		}
+
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			return ternary( bind( columns ), isSet( columns.numeric( attribute ) ) );
+		}
+
+		@Override
+		public String toString()
+		{
+			return "\"" + attribute + "\" in " + min + ".." + max;
+		}
+	}
+
+	/**
+	 * Tests whether spots are tagged with a tag, specified by its label, and
+	 * optionally by the name of its tag set. If no tag set is specified, the
+	 * tags with this label in all the tag sets are matched.
+	 */
+	static final class HasTag extends QueryNode
+	{
+		private final String tagSetName;
+
+		private final String label;
+
+		HasTag( final String tagSetName, final String label )
+		{
+			this.tagSetName = tagSetName;
+			this.label = label;
+		}
+
+		@Override
+		Evaluator bind( final QueryColumns columns )
+		{
+			final List< int[] > tagColumns = new ArrayList<>();
+			final List< Integer > tagIds = new ArrayList<>();
+			for ( final TagSet tagSet : columns.getTagSetStructure().getTagSets() )
+			{
+				if ( tagSetName != null && !tagSetName.equals( tagSet.getName() ) )
+					continue;
+				for ( final Tag tag : tagSet.getTags() )
+				{
+					if ( label.equals( tag.label() ) )
+					{
+						tagColumns.add( columns.tags( tagSet ) );
+						tagIds.add( tag.id() );
+					}
+				}
+			}
+			if ( tagColumns.isEmpty() )
+				throw new IllegalArgumentException( "Unknown tag: " + this );
+
+			final int[][] cols = tagColumns.toArray( new int[ tagColumns.size() ][] );
+			final int[] ids = tagIds.stream().mapToInt( Integer::intValue ).toArray();
+			return ( from, to ) -> {
+				final long[] bits = new long[ nWords( from, to ) ];
+				for ( int k = 0; k < cols.length; k++ )
+				{
+					final int[] column = cols[ k ];
+					final int id = ids[ k ];
+					for ( int i = from; i < to; i++ )
+						if ( column[ i ] == id )
+							bits[ ( i - from ) >>> 6 ] |= 1L << ( i - from );
+				}
+				return bits;
+			};
+		}
+
+		/**
+		 * Whether a spot has a tag is always known.
+		 */
+		@Override
+		TernaryEvaluator bindTernary( final QueryColumns columns )
+		{
+			return ternary( bind( columns ), QueryNode::all );
+		}
+
+		@Override
+		public String toString()
+		{
+			return tagSetName == null
+					? "tag = \"" + label + "\""
+					: "tag(\"" + tagSetName + "\") = \"" + label + "\"";
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package org.mastodon.revised.model.mamut.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.mastodon.revised.model.mamut.query.QueryNode.Op;
+
+/**
+ * Recursive descent parser for {@link SpotQuery} expressions.
+ * <p>
+ * Grammar:
+ *
+ * <pre>
+ * expression := and ( ( "or" | "||" ) and )*
+ * and        := unary ( ( "and" | "&amp;&amp;" ) unary )*
+ * unary      := ( "not" | "!" ) unary | "(" expression ")" | predicate
+ * predicate  := "tag" [ "(" name ")" ] ( "=" | "==" ) name
+ *             | name op number
+ *             | name "in" number ".." number
+ * op         := "&lt;" | "&lt;=" | "&gt;" | "&gt;=" | "=" | "==" | "!="
+ * name       := identifier | quoted string
+ * </pre>
+ *
+ * Keywords are case insensitive.
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class QueryParser
+{
+
+	private enum Type
+	{
+		NAME, STRING, NUMBER, OP, LPAREN, RPAREN, RANGE, END
+	}
+
+	private static final class Token
+	{
+		final Type type;
+
+		final String text;
+
+		final int position;
+
+		Token( final Type type, final String text, final int position )
+		{
+			this.type = type;
+			this.text = text;
+			this.position = position;
+		}
+
+		boolean isKeyword( final String keyword )
+		{
+			return type == Type.NAME && text.toLowerCase( Locale.ROOT ).equals( keyword );
+		}
+
+		boolean is( final Type t, final String s )
+		{
+			return type == t && text.equals( s );
+		}
+	}
+
+	private final String expression;
+
+	private final List< Token > tokens;
+
+	private int pos;
+
+	private QueryParser( final String expression )
+	{
+		this.expression = expression;
+		this.tokens = tokenize( expression );
+		this.pos = 0;
+	}
+
+	/**
+	 * Parses the specified expression.
+	 *
+	 * @param expression
+	 *            the expression.
+	 * @return the root of the syntax tree.
+	 * @throws IllegalArgumentException
+	 *             if the expression cannot be parsed.
+	 */
+	static QueryNode parse( final String expression )
+	{
+		final QueryParser parser = new QueryParser( expression );
+		final QueryNode root = parser.parseOr();
+		if ( parser.peek().type != Type.END )
+			throw parser.error( "Unexpected '" + parser.peek().text + "'" );
+		return root;
+	}
+
+	private Token peek()
+	{
+		return tokens.get( pos );
+	}
+
+	private Token next()
+	{
+		return tokens.get( pos++ );
+	}
+
+	private IllegalArgumentException error( final String message )
+	{
+		return new IllegalArgumentException( message + " at position " + peek().position + " in query: " + expression );
+	}
+
+	private QueryNode parseOr()
+	{
+		QueryNode node = parseAnd();
+		while ( peek().isKeyword( "or" ) || peek().is( Type.OP, "||" ) )
+		{
+			next();
+			node = new QueryNode.Or( node, parseAnd() );
+		}
+		return node;
+	}
+
+	private QueryNode parseAnd()
+	{
+		QueryNode node = parseUnary();
+		while ( peek().isKeyword( "and" ) || peek().is( Type.OP, "&&" ) )
+		{
+			next();
+			node = new QueryNode.And( node, parseUnary() );
+		}
+		return node;
+	}
+
+	private QueryNode parseUnary()
+	{
+		final Token token = peek();
+		if ( token.isKeyword( "not" ) || token.is( Type.OP, "!" ) )
+		{
+			next();
+			return new QueryNode.Not( parseUnary() );
+		}
+		if ( token.type == Type.LPAREN )
+		{
+			next();
+			final QueryNode node = parseOr();
+			expect( Type.RPAREN, "')'" );
+			return node;
+		}
+		return parsePredicate();
+	}
+
+	private QueryNode parsePredicate()
+	{
+		if ( peek().isKeyword( "tag" ) )
+		{
+			next();
+			String tagSetName = null;
+			if ( peek().type == Type.LPAREN )
+			{
+				next();
+				tagSetName = parseName();
+				expect( Type.RPAREN, "')'" );
+			}
+			final Token op = next();
+			if ( !op.is( Type.OP, "=" ) && !op.is( Type.OP, "==" ) )
+			{
+				pos--;
+				throw error( "Expected '=' after tag" );
+			}
+			return new QueryNode.HasTag( tagSetName, parseName() );
+		}
+
+		final String attribute = parseName();
+		if ( peek().isKeyword( "in" ) )
+		{
+			next();
+			final double min = parseNumber();
+			expect( Type.RANGE, "'..'" );
+			final double max = parseNumber();
+			return new QueryNode.Range( attribute, min, max );
+		}
+		final Op op = parseOp();
+		return new QueryNode.Compare( attribute, op, parseNumber() );
+	}
+
+	private String parseName()
+	{
+		final Token token = peek();
+		if ( token.type != Type.NAME && token.type != Type.STRING )
+			throw error( "Expected a name" );
+		next();
+		return token.text;
+	}
+
+	private double parseNumber()
+	{
+		final Token token = peek();
+		if ( token.type != Type.NUMBER )
+			throw error( "Expected a number" );
+		next();
+		return Double.parseDouble( token.text );
+	}
+
+	private Op parseOp()
+	{
+		final Token token = peek();
+		if ( token.type == Type.OP )
+		{
+			switch ( token.text )
+			{
+			case "<":
+				next();
+				return Op.LT;
+			case "<=":
+				next();
+				return Op.LE;
+			case ">":
+				next();
+				return Op.GT;
+			case ">=":
+				next();
+				return Op.GE;
+			case "=":
+			case "==":
+				next();
+				return Op.EQ;
+			case "!=":
+				next();
+				return Op.NE;
+			}
+		}
+		throw error( "Expected a comparison operator or 'in'" );
+	}
+
+	private void expect( final Type type, final String description )
+	{
+		if ( peek().type != type )
+			throw error( "Expected " + description );
+		next();
+	}
+
+	private static List< Token > tokenize( final String s )
+	{
+		final List< Token > tokens = new ArrayList<>();
+		final int n = s.length();
+		int i = 0;
+		while ( i < n )
+		{
+			final char c = s.charAt( i );
+			final int start = i;
+			if ( Character.isWhitespace( c ) )
+			{
+				i++;
+			}
+			else if ( c == '(' )
+			{
+				tokens.add( new Token( Type.LPAREN, "(", start ) );
+				i++;
+			}
+			else if ( c == ')' )
+			{
+				tokens.add( new Token( Type.RPAREN, ")", start ) );
+				i++;
+			}
+			else if ( c == '.' && i + 1 < n && s.charAt( i + 1 ) == '.' )
+			{
+				tokens.add( new Token( Type.RANGE, "..", start ) );
+				i += 2;
+			}
+			else if ( c == '"' || c == '\'' )
+			{
+				final int end = s.indexOf( c, i + 1 );
+				if ( end < 0 )
+					throw new IllegalArgumentException( "Unterminated string at position " + start + " in query: " + s );
+				tokens.add( new Token( Type.STRING, s.substring( i + 1, end ), start ) );
+				i = end + 1;
+			}
+			else if ( Character.isDigit( c ) || ( ( c == '-' || c == '+' || c == '.' ) && i + 1 < n && Character.isDigit( s.charAt( i + 1 ) ) ) )
+			{
+				i++;
+				while ( i < n && Character.isDigit( s.charAt( i ) ) )
+					i++;
+				// Decimal part, but not a range operator.
+				if ( i + 1 < n && s.charAt( i ) == '.' && Character.isDigit( s.charAt( i + 1 ) ) )
+				{
+					i++;
+					while ( i < n && Character.isDigit( s.charAt( i ) ) )
+						i++;
+				}
+				if ( i < n && ( s.charAt( i ) == 'e' || s.charAt( i ) == 'E' ) )
+				{
+					int j = i + 1;
+					if ( j < n && ( s.charAt( j ) == '-' || s.charAt( j ) == '+' ) )
+						j++;
+					if ( j < n && Character.isDigit( s.charAt( j ) ) )
+					{
+						i = j;
+						while ( i < n && Character.isDigit( s.charAt( i ) ) )
+							i++;
+					}
+				}
+				tokens.add( new Token( Type.NUMBER, s.substring( start, i ), start ) );
+			}
+			else if ( Character.isLetter( c ) || c == '_' )
+			{
+				i++;
+				while ( i < n && ( Character.isLetterOrDigit( s.charAt( i ) ) || s.charAt( i ) == '_' ) )
+					i++;
+				tokens.add( new Token( Type.NAME, s.substring( start, i ), start ) );
+			}
+			else
+			{
+				final String two = i + 1 < n ? s.substring( i, i + 2 ) : "";
+				if ( two.equals( "<=" ) || two.equals( ">=" ) || two.equals( "==" ) || two.equals( "!=" ) || two.equals( "&&" ) || two.equals( "||" ) )
+				{
+					tokens.add( new Token( Type.OP, two, start ) );
+					i += 2;
+				}
+				else if ( c == '<' || c == '>' || c == '=' || c == '!' )
+				{
+					tokens.add( new Token( Type.OP, String.valueOf( c ), start ) );
+					i++;
+				}
+				else
+					throw new IllegalArgumentException( "Unexpected character '" + c + "' at position " + start + " in query: " + s );
+			}
+		}
+		tokens.add( new Token( Type.END, "end of query", n ) );
+		return tokens;
+	}
+}
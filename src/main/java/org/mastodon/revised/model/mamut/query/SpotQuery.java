@@ -0,0 +1,156 @@
+package org.mastodon.revised.model.mamut.query;
+
+import java.util.BitSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefSet;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.query.QueryNode.Evaluator;
+
+/**
+ * A compiled query selecting the spots of a model that match a predicate
+ * expression over spot attributes, spot feature projections and tags.
+ * <p>
+ * Examples:
+ *
+ * <pre>
+ * "Track mean speed" &gt; 5 and t in 100..200 and tag = mitosis
+ * not ( x &lt; 10 or tag("Cell type") = "neuron" )
+ * </pre>
+ *
+ * Built-in attributes are <code>t</code> (or <code>timepoint</code>),
+ * <code>x</code>, <code>y</code>, <code>z</code> and <code>r</code> (or
+ * <code>radius</code>). Other names are looked up in the projections of the
+ * spot features of the model's feature model. Tags are matched by label, in
+ * all tag sets or in the tag set specified in parentheses.
+ * <p>
+ * A spot for which an attribute is not set matches neither a comparison on
+ * this attribute nor its negation: <code>not x &lt; 10</code> only matches
+ * spots that have an <code>x</code> value of at least 10.
+ * <p>
+ * The attributes used by the query are first copied into primitive columns
+ * indexed by spot pool index. Predicates are then evaluated as tight scans
+ * over these columns, in parallel chunks of {@value #CHUNK_SIZE} spots,
+ * combined word-wise as bitmaps.
+ * <p>
+ * Results are returned as a {@link BitSet} of spot pool indices, or as a
+ * {@link RefSet} that can for instance be passed to
+ * {@link org.mastodon.model.SelectionModel#setVerticesSelected}.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class SpotQuery
+{
+
+	/**
+	 * Number of spots evaluated per parallel task. Must be a multiple of 64.
+	 */
+	static final int CHUNK_SIZE = 1 << 16;
+
+	private final String expression;
+
+	private final QueryNode root;
+
+	private SpotQuery( final String expression, final QueryNode root )
+	{
+		this.expression = expression;
+		this.root = root;
+	}
+
+	/**
+	 * Compiles the specified query expression.
+	 *
+	 * @param expression
+	 *            the query expression.
+	 * @return a new query.
+	 * @throws IllegalArgumentException
+	 *             if the expression cannot be parsed.
+	 */
+	public static SpotQuery compile( final String expression )
+	{
+		return new SpotQuery( expression, QueryParser.parse( expression ) );
+	}
+
+	/**
+	 * Evaluates this query on the specified model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return a new bitmap, in which the pool indices of the matching spots
+	 *         are set.
+	 * @throws IllegalArgumentException
+	 *             if the query refers to an unknown attribute or tag.
+	 */
+	public BitSet evaluate( final Model model )
+	{
+		final ReentrantReadWriteLock lock = model.getGraph().getLock();
+		lock.readLock().lock();
+		try
+		{
+			final QueryColumns columns = new QueryColumns( model );
+			final Evaluator evaluator = root.bind( columns );
+			final int size = columns.size();
+			final long[] live = columns.live();
+			final long[] words = new long[ live.length ];
+
+			final int nChunks = ( size + CHUNK_SIZE - 1 ) / CHUNK_SIZE;
+			IntStream.range( 0, nChunks ).parallel().forEach( c -> {
+				final int from = c * CHUNK_SIZE;
+				final int to = Math.min( size, from + CHUNK_SIZE );
+				final long[] bits = evaluator.evaluate( from, to );
+				final int offset = from >>> 6;
+				for ( int w = 0; w < bits.length; w++ )
+					words[ offset + w ] = bits[ w ] & live[ offset + w ];
+			} );
+			return BitSet.valueOf( words );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Evaluates this query on the specified model, and returns the matching
+	 * spots.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return a new set containing the matching spots.
+	 * @throws IllegalArgumentException
+	 *             if the query refers to an unknown attribute or tag.
+	 */
+	public RefSet< Spot > evaluateAsRefSet( final Model model )
+	{
+		final BitSet bits = evaluate( model );
+		final ModelGraph graph = model.getGraph();
+		final RefPool< Spot > pool = RefCollections.tryGetRefPool( graph.vertices() );
+		final RefSet< Spot > set = RefCollections.createRefSet( graph.vertices() );
+		final Spot ref = graph.vertexRef();
+		for ( int i = bits.nextSetBit( 0 ); i >= 0; i = bits.nextSetBit( i + 1 ) )
+			set.add( pool.getObject( i, ref ) );
+		graph.releaseRef( ref );
+		return set;
+	}
+
+	/**
+	 * Returns the expression this query was compiled from.
+	 *
+	 * @return the query expression.
+	 */
+	public String getExpression()
+	{
+		return expression;
+	}
+
+	@Override
+	public String toString()
+	{
+		return root.toString();
+	}
+}
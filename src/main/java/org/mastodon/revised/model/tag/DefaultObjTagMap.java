@@ -1,6 +1,7 @@
 package org.mastodon.revised.model.tag;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -8,11 +9,14 @@ import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.mastodon.RefPool;
 import org.mastodon.labels.LabelSet;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.properties.ObjPropertyMap;
 import org.mastodon.revised.model.tag.TagSetStructure.Tag;
 
+import gnu.trove.list.array.TIntArrayList;
+
 /**
  * Default implementation of {@link ObjTagMap}.
  * <p>
@@ -27,6 +31,15 @@ import org.mastodon.revised.model.tag.TagSetStructure.Tag;
  * Tags must map to {@link Integer} IDs that are globally unique across all tag
  * sets. {@code DefaultObjTagMap} is backed a {@link LabelSets} property of the
  * objects (which can be shared among all {@code DefaultObjTagMap}s).
+ * <p>
+ * When created with the {@link RefPool} of the objects, the map also keeps a
+ * dense column, indexed by pool index, holding the ID of the tag of each object
+ * or {@code -1}. {@link #get(Object)} and {@link #getTagId(Object)} then cost
+ * one array read instead of a lookup in the {@link LabelSets}. The
+ * {@link LabelSets} remain the reference storage (for undo/redo and
+ * serialization), and the column is kept consistent with them by
+ * {@link DefaultObjTags}, through {@link #refresh(Object)},
+ * {@link #clear(Object)} and {@link #rebuild()}.
  *
  * @param <O>
  *            the type of object to tag.
@@ -50,6 +63,28 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 
 	private final HashMap< Integer, List< Integer > > idToOtherIds = new HashMap<>();
 
+	/**
+	 * Tags indexed by their ID, for lookups from the tag column.
+	 */
+	private Object[] tagOfId = new Object[ 0 ];
+
+	/**
+	 * The pool of the objects. {@code null} if there is no tag column.
+	 */
+	private final RefPool< O > pool;
+
+	/**
+	 * Tag ID of objects, indexed by pool index. {@code -1} for objects that
+	 * are not tagged. Indices beyond the column length are not tagged.
+	 */
+	private volatile int[] column;
+
+	/**
+	 * The {@link DefaultObjTags} this map belongs to, notified of edits. May
+	 * be {@code null}.
+	 */
+	private final DefaultObjTags< O > owner;
+
 	/**
 	 * Create a tag map with the given set of mutually exclusive {@code tags},
 	 * mapped to IDs by the specified {@code tagToIdFunction} and backed by the
@@ -63,10 +98,46 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 			final LabelSets< O, Integer > idLabelSets,
 			final Collection< T > tags,
 			final Function< T, Integer > tagToIdFunction )
+	{
+		this( idLabelSets, null, tags, tagToIdFunction );
+	}
+
+	/**
+	 * Create a tag map with the given set of mutually exclusive {@code tags},
+	 * mapped to IDs by the specified {@code tagToIdFunction}, backed by the
+	 * specified {@code idLabelSets} property and by a tag column indexed by
+	 * the pool index of the objects.
+	 *
+	 * @param idLabelSets
+	 * @param pool
+	 *            the pool of the objects, used to index the tag column. If
+	 *            {@code null}, tags are only stored in {@code idLabelSets}.
+	 * @param tags
+	 * @param tagToIdFunction
+	 */
+	public DefaultObjTagMap(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final Collection< T > tags,
+			final Function< T, Integer > tagToIdFunction )
+	{
+		this( idLabelSets, pool, tags, tagToIdFunction, null );
+	}
+
+	DefaultObjTagMap(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final Collection< T > tags,
+			final Function< T, Integer > tagToIdFunction,
+			final DefaultObjTags< O > owner )
 	{
 		this.idLabelSets = idLabelSets;
+		this.pool = pool;
 		this.tagToIdFunction = tagToIdFunction;
+		this.owner = owner;
+		this.column = new int[ 0 ];
 		update( tags );
+		rebuild();
 	}
 
 	@Override
@@ -75,15 +146,20 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		if ( tag == null )
 		{
 			remove( object );
+			return;
 		}
-		else
+
+		final Integer id = tagToIdFunction.apply( tag );
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		beginEdit();
+		try
+		{
+			set( object, id, ref );
+		}
+		finally
 		{
-			final LabelSet< O, Integer > ref = idLabelSets.createRef();
-			final Integer id = tagToIdFunction.apply( tag );
-			final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
-			labels.removeAll( idToOtherIds.get( id ) );
-			labels.add( id );
 			idLabelSets.releaseRef( ref );
+			endEdit();
 		}
 	}
 
@@ -91,13 +167,142 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 	public void remove( final O object )
 	{
 		final LabelSet< O, Integer > ref = idLabelSets.createRef();
-		idLabelSets.getLabels( object, ref ).removeAll( ids );
-		idLabelSets.releaseRef( ref );
+		beginEdit();
+		try
+		{
+			remove( object, ref );
+		}
+		finally
+		{
+			idLabelSets.releaseRef( ref );
+			endEdit();
+		}
+	}
+
+	/**
+	 * Tags all the specified objects. If the map has a tag column and belongs
+	 * to a {@link DefaultObjTags}, the objects whose tag changes are collected
+	 * in a single pass over the tag column, then their labels are updated
+	 * with the property change listeners of the {@link LabelSets} paused. The
+	 * change is recorded as a single {@link DefaultObjTags.BulkTagUndoableEdit},
+	 * and listeners are notified once.
+	 */
+	@Override
+	public void set( final Collection< O > objects, final T tag )
+	{
+		if ( tag == null )
+		{
+			remove( objects );
+			return;
+		}
+
+		final Integer id = tagToIdFunction.apply( tag );
+		if ( pool != null && owner != null )
+		{
+			bulkEdit( objects, id );
+			return;
+		}
+
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		beginEdit();
+		try
+		{
+			for ( final O object : objects )
+				set( object, id, ref );
+		}
+		finally
+		{
+			idLabelSets.releaseRef( ref );
+			endEdit();
+		}
+	}
+
+	@Override
+	public void remove( final Collection< O > objects )
+	{
+		if ( pool != null && owner != null )
+		{
+			bulkEdit( objects, -1 );
+			return;
+		}
+
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		beginEdit();
+		try
+		{
+			for ( final O object : objects )
+				remove( object, ref );
+		}
+		finally
+		{
+			idLabelSets.releaseRef( ref );
+			endEdit();
+		}
+	}
+
+	private void set( final O object, final Integer id, final LabelSet< O, Integer > ref )
+	{
+		final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+		if ( pool == null )
+		{
+			labels.removeAll( idToOtherIds.get( id ) );
+			labels.add( id );
+			return;
+		}
+		final int current = getTagId( object );
+		if ( current == id.intValue() )
+			return;
+		if ( current >= 0 )
+			labels.remove( Integer.valueOf( current ) );
+		labels.add( id );
+		setColumn( object, id );
+	}
+
+	private void remove( final O object, final LabelSet< O, Integer > ref )
+	{
+		if ( pool == null )
+		{
+			idLabelSets.getLabels( object, ref ).removeAll( ids );
+			return;
+		}
+		final int current = getTagId( object );
+		if ( current < 0 )
+			return;
+		idLabelSets.getLabels( object, ref ).remove( Integer.valueOf( current ) );
+		setColumn( object, -1 );
+	}
+
+	/**
+	 * Sets the tag ID of the specified objects as a bulk edit of the owner.
+	 *
+	 * @param id
+	 *            the tag ID, or {@code -1} to un-tag the objects.
+	 */
+	private void bulkEdit( final Collection< O > objects, final int id )
+	{
+		final TIntArrayList poolIds = new TIntArrayList();
+		final TIntArrayList previousIds = new TIntArrayList();
+		for ( final O object : objects )
+		{
+			final int current = getTagId( object );
+			if ( current != id )
+			{
+				poolIds.add( pool.getId( object ) );
+				previousIds.add( current );
+			}
+		}
+		if ( !poolIds.isEmpty() )
+			owner.bulkEdit( poolIds.toArray(), previousIds.toArray(), id );
 	}
 
 	@Override
 	public T get( final O object )
 	{
+		if ( pool != null )
+		{
+			final int id = getTagId( object );
+			return id < 0 ? null : tag( id );
+		}
 		final LabelSet< O, Integer > ref = idLabelSets.createRef();
 		try
 		{
@@ -122,6 +327,125 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 		return Collections.unmodifiableCollection( idLabelSets.getLabeledWith( id ) );
 	}
 
+	/**
+	 * Returns the ID of the tag of the specified object.
+	 *
+	 * @param object
+	 *            the object.
+	 * @return the tag ID, or {@code -1} if the object is not tagged.
+	 */
+	public int getTagId( final O object )
+	{
+		if ( pool == null )
+		{
+			final T tag = get( object );
+			return tag == null ? -1 : tagToIdFunction.apply( tag );
+		}
+		final int[] c = column;
+		final int index = pool.getId( object );
+		return index < c.length ? c[ index ] : -1;
+	}
+
+	/**
+	 * Updates the tag column for the specified object, from the labels it has
+	 * in the {@link LabelSets}.
+	 *
+	 * @param object
+	 *            the object whose labels changed.
+	 */
+	void refresh( final O object )
+	{
+		if ( pool == null )
+			return;
+		final LabelSet< O, Integer > ref = idLabelSets.createRef();
+		final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, ref );
+		int tagId = -1;
+		for ( final Integer id : ids )
+			if ( labels.contains( id ) )
+			{
+				tagId = id;
+				break;
+			}
+		idLabelSets.releaseRef( ref );
+		setColumn( object, tagId );
+	}
+
+	/**
+	 * Marks the specified object as not tagged in the tag column, for instance
+	 * because it was removed from the graph.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	void clear( final O object )
+	{
+		if ( pool != null )
+			setColumn( object, -1 );
+	}
+
+	/**
+	 * Rebuilds the tag column from the {@link LabelSets}.
+	 */
+	void rebuild()
+	{
+		if ( pool == null )
+			return;
+		int[] c = new int[ 0 ];
+		for ( final Integer id : ids )
+		{
+			for ( final O o : idLabelSets.getLabeledWith( id ) )
+			{
+				final int index = pool.getId( o );
+				if ( index >= c.length )
+				{
+					final int length = c.length;
+					c = Arrays.copyOf( c, Math.max( index + 1, 2 * length ) );
+					Arrays.fill( c, length, c.length, -1 );
+				}
+				c[ index ] = id;
+			}
+		}
+		column = c;
+	}
+
+	private void beginEdit()
+	{
+		if ( owner != null )
+			owner.beginEdit();
+	}
+
+	private void endEdit()
+	{
+		if ( owner != null )
+			owner.endEdit();
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private T tag( final int id )
+	{
+		return ( T ) tagOfId[ id ];
+	}
+
+	private void setColumn( final O object, final int tagId )
+	{
+		if ( pool == null )
+			return;
+		final int index = pool.getId( object );
+		int[] c = column;
+		if ( index >= c.length )
+		{
+			if ( tagId < 0 )
+				return;
+			final int length = c.length;
+			c = Arrays.copyOf( c, Math.max( index + 1, 2 * length ) );
+			Arrays.fill( c, length, c.length, -1 );
+			c[ index ] = tagId;
+			column = c;
+		}
+		else
+			c[ index ] = tagId;
+	}
+
 	/**
 	 * Rebuild internal data structures to handle the given tag set.
 	 */
@@ -140,6 +464,16 @@ public class DefaultObjTagMap< O, T > implements ObjTagMap< O, T >
 			tagToId.put( tag, id );
 			idToTag.put( id, tag );
 		}
+		if ( pool != null )
+		{
+			final int maxId = ids.stream().mapToInt( Integer::intValue ).max().orElse( -1 );
+			tagOfId = new Object[ maxId + 1 ];
+			idToTag.forEach( ( id, tag ) -> {
+				if ( id < 0 )
+					throw new IllegalArgumentException( "inconsistent tag set: ids must not be negative" );
+				tagOfId[ id ] = tag;
+			} );
+		}
 		idToTag.keySet().forEach( id ->
 				idToOtherIds.put( id,
 						idToTag.keySet().stream().filter( oid -> oid != id ).collect( Collectors.toList() ) ) );
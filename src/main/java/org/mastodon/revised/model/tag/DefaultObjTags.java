@@ -4,15 +4,32 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.mastodon.RefPool;
+import org.mastodon.labels.LabelSet;
 import org.mastodon.labels.LabelSets;
 import org.mastodon.revised.model.tag.TagSetStructure.Tag;
 import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+import org.mastodon.undo.Recorder;
+import org.mastodon.undo.UndoableEdit;
+import org.mastodon.util.Listeners;
 
 /**
  * Default implementation of {@link ObjTags}.
  * <p>
  * Manages tags for a collection of objects, according to a specified
  * {@link TagSetStructure}.
+ * <p>
+ * When created with the {@link RefPool} of the objects, the
+ * {@link DefaultObjTagMap}s of each tag set keep a tag column indexed by pool
+ * index. The columns are kept consistent with the {@link LabelSets} by
+ * listening to its changes, including those made by undo/redo. Removal and
+ * addition of objects must be forwarded with {@link #refresh(Object)} and
+ * {@link #objectRemoved(Object)}.
+ * <p>
+ * Bulk edits made through the tag maps do not notify the property change
+ * listeners of the {@link LabelSets}, and are not undo-recorded per object.
+ * They notify the {@link BulkTagListener}s once, and are recorded as a single
+ * {@link BulkTagUndoableEdit}.
  *
  * @param <O>
  *            the type of object to tag.
@@ -21,6 +38,19 @@ public class DefaultObjTags< O > implements ObjTags< O >
 {
 	private final LabelSets< O, Integer > idLabelSets;
 
+	private final RefPool< O > pool;
+
+	private final Runnable tagsChanged;
+
+	private final Listeners.List< BulkTagListener > bulkTagListeners;
+
+	private Recorder< BulkTagUndoableEdit > editRecorder;
+
+	/**
+	 * Number of edits in progress through the tag maps.
+	 */
+	private int editDepth;
+
 	private final Map< Tag, TagSet > tagToTagSet = new HashMap<>();
 
 	private final Map< TagSet, DefaultObjTagMap< O, Tag > > tagSetToTagMap = new HashMap<>();
@@ -28,9 +58,49 @@ public class DefaultObjTags< O > implements ObjTags< O >
 	public DefaultObjTags(
 			final LabelSets< O, Integer > idLabelSets,
 			final TagSetStructure tagSetStructure )
+	{
+		this( idLabelSets, null, tagSetStructure );
+	}
+
+	public DefaultObjTags(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final TagSetStructure tagSetStructure )
+	{
+		this( idLabelSets, pool, tagSetStructure, null );
+	}
+
+	/**
+	 * Creates tags for a collection of objects.
+	 *
+	 * @param idLabelSets
+	 *            the label sets storing the tag IDs of the objects.
+	 * @param pool
+	 *            the pool of the objects, used to index the tag columns. If
+	 *            {@code null}, tags are only stored in {@code idLabelSets}.
+	 * @param tagSetStructure
+	 *            the tag set structure.
+	 * @param tagsChanged
+	 *            called once after each (single or bulk) edit made through the
+	 *            tag maps. May be {@code null}.
+	 */
+	public DefaultObjTags(
+			final LabelSets< O, Integer > idLabelSets,
+			final RefPool< O > pool,
+			final TagSetStructure tagSetStructure,
+			final Runnable tagsChanged )
 	{
 		this.idLabelSets = idLabelSets;
+		this.pool = pool;
+		this.tagsChanged = tagsChanged;
+		this.bulkTagListeners = new Listeners.SynchronizedList<>();
 		update( tagSetStructure );
+		if ( pool != null )
+			idLabelSets.addPropertyChangeListener( o -> {
+				// Edits made through the tag maps update the columns directly.
+				if ( editDepth == 0 )
+					refresh( o );
+			} );
 	}
 
 	@Override
@@ -59,6 +129,185 @@ public class DefaultObjTags< O > implements ObjTags< O >
 			return tags( tagToTagSet.get( tag ) ).getTaggedWith( tag );
 	}
 
+	/**
+	 * Listener notified once per bulk edit made through the tag maps, and per
+	 * undo or redo of a bulk edit.
+	 */
+	public interface BulkTagListener
+	{
+		/**
+		 * Notified after the tags of the specified objects changed.
+		 *
+		 * @param poolIds
+		 *            the pool indices of the objects whose tags changed. Must
+		 *            not be modified.
+		 */
+		public void tagsChanged( int[] poolIds );
+	}
+
+	public Listeners< BulkTagListener > bulkTagListeners()
+	{
+		return bulkTagListeners;
+	}
+
+	/**
+	 * Sets the recorder of the bulk edits made through the tag maps. If
+	 * {@code null}, bulk edits are not undoable.
+	 *
+	 * @param editRecorder
+	 *            the recorder.
+	 */
+	void setUndoRecorder( final Recorder< BulkTagUndoableEdit > editRecorder )
+	{
+		this.editRecorder = editRecorder;
+	}
+
+	/**
+	 * Replaces the tag IDs of the specified objects, and records the change as
+	 * a single undoable edit.
+	 *
+	 * @param poolIds
+	 *            the pool indices of the objects.
+	 * @param previousIds
+	 *            the current tag ID of each object, or {@code -1}.
+	 * @param id
+	 *            the new tag ID of all objects, or {@code -1} to un-tag them.
+	 */
+	void bulkEdit( final int[] poolIds, final int[] previousIds, final int id )
+	{
+		replaceTags( poolIds, previousIds, id, false );
+		if ( editRecorder != null )
+			editRecorder.record( new BulkTagUndoableEdit( this, poolIds, previousIds, id ) );
+	}
+
+	/**
+	 * Replaces the tag ID {@code from} by {@code to} on the object with pool
+	 * index {@code poolIds[ i ]}, where {@code from} and {@code to} are
+	 * {@code previousIds[ i ]} and {@code id}, or the reverse if
+	 * {@code reverse} is set. Negative IDs stand for no tag.
+	 * <p>
+	 * The property change listeners of the {@link LabelSets}, including the
+	 * per-object undo recording, are paused. The tag columns are updated, and
+	 * the listeners are notified once.
+	 */
+	void replaceTags( final int[] poolIds, final int[] previousIds, final int id, final boolean reverse )
+	{
+		final O ref = pool.createRef();
+		final LabelSet< O, Integer > lref = idLabelSets.createRef();
+		beginEdit();
+		idLabelSets.pauseListeners();
+		try
+		{
+			for ( int i = 0; i < poolIds.length; i++ )
+			{
+				final O object = pool.getObject( poolIds[ i ], ref );
+				final LabelSet< O, Integer > labels = idLabelSets.getLabels( object, lref );
+				final int from = reverse ? id : previousIds[ i ];
+				final int to = reverse ? previousIds[ i ] : id;
+				if ( from >= 0 )
+					labels.remove( Integer.valueOf( from ) );
+				if ( to >= 0 )
+					labels.add( Integer.valueOf( to ) );
+				refresh( object );
+			}
+		}
+		finally
+		{
+			idLabelSets.resumeListeners();
+			idLabelSets.releaseRef( lref );
+			pool.releaseRef( ref );
+			bulkTagListeners.list.forEach( l -> l.tagsChanged( poolIds ) );
+			endEdit();
+		}
+	}
+
+	void beginEdit()
+	{
+		editDepth++;
+	}
+
+	void endEdit()
+	{
+		if ( --editDepth == 0 && tagsChanged != null )
+			tagsChanged.run();
+	}
+
+	/**
+	 * Updates the tag columns for an object that was added, or whose labels
+	 * changed.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	void refresh( final O object )
+	{
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagSetToTagMap.values() )
+			tagMap.refresh( object );
+	}
+
+	/**
+	 * Clears the tag columns for an object that was removed.
+	 *
+	 * @param object
+	 *            the object.
+	 */
+	void objectRemoved( final O object )
+	{
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagSetToTagMap.values() )
+			tagMap.clear( object );
+	}
+
+	/**
+	 * Rebuilds the tag columns from the {@link LabelSets}.
+	 */
+	void rebuild()
+	{
+		for ( final DefaultObjTagMap< O, Tag > tagMap : tagSetToTagMap.values() )
+			tagMap.rebuild();
+	}
+
+	/**
+	 * Single undoable edit for a bulk edit made through the tag maps. Stores
+	 * the pool indices of the edited objects, their previous tag IDs, and the
+	 * new tag ID.
+	 * <p>
+	 * Edits are undone and redone in stack order. When this edit is undone or
+	 * redone, the later edits have been undone, including the removal of
+	 * edited objects. The pools reuse freed indices last in, first out, so
+	 * objects re-created by undo are back at the pool index they had when
+	 * this edit was recorded.
+	 */
+	public static class BulkTagUndoableEdit implements UndoableEdit
+	{
+		private final DefaultObjTags< ? > objTags;
+
+		private final int[] poolIds;
+
+		private final int[] previousIds;
+
+		private final int id;
+
+		BulkTagUndoableEdit( final DefaultObjTags< ? > objTags, final int[] poolIds, final int[] previousIds, final int id )
+		{
+			this.objTags = objTags;
+			this.poolIds = poolIds;
+			this.previousIds = previousIds;
+			this.id = id;
+		}
+
+		@Override
+		public void undo()
+		{
+			objTags.replaceTags( poolIds, previousIds, id, true );
+		}
+
+		@Override
+		public void redo()
+		{
+			objTags.replaceTags( poolIds, previousIds, id, false );
+		}
+	}
+
 	/**
 	 * Rebuild internal data structures to handle the given
 	 * {@link TagSetStructure}.
@@ -69,7 +318,7 @@ public class DefaultObjTags< O > implements ObjTags< O >
 		tagSetToTagMap.clear();
 		for ( final TagSet tagSet : tagSetStructure.getTagSets() )
 		{
-			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( idLabelSets, tagSet.getTags(), Tag::id ) );
+			tagSetToTagMap.put( tagSet, new DefaultObjTagMap<>( idLabelSets, pool, tagSet.getTags(), Tag::id, this ) );
 			for ( final Tag tag : tagSet.getTags() )
 				tagToTagSet.put( tag, tagSet );
 		}
@@ -7,6 +7,8 @@ import org.mastodon.RefPool;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
 import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
 import org.mastodon.labels.LabelSet;
@@ -23,6 +25,10 @@ import org.mastodon.util.Listeners;
  * Assigns tags to vertices and edges of a graph, according to a {@link TagSetStructure}.
  * <p>
  * Provides facilities for serialization and undo/redo.
+ * <p>
+ * If the graph is a {@link ListenableReadOnlyGraph}, the tag maps keep a tag
+ * column per tag set, indexed by the pool index of vertices and edges, so that
+ * retrieving the tag of an object costs one array read.
  *
  * @param <V>
  *            the type of the vertices in the graph.
@@ -61,9 +67,62 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		this.tagSetStructure = new TagSetStructure();
 		vertexIdLabelSets = new LabelSets<>( vertexPool );
 		edgeIdLabelSets = new LabelSets<>( edgePool );
-		vertexTags = new DefaultObjTags<>( vertexIdLabelSets, tagSetStructure );
-		edgeTags = new DefaultObjTags<>( edgeIdLabelSets, tagSetStructure );
 		listeners = new Listeners.SynchronizedList<>();
+		if ( graph instanceof ListenableReadOnlyGraph )
+		{
+			vertexTags = new DefaultObjTags<>( vertexIdLabelSets, vertexPool, tagSetStructure, this::notifyTagsChanged );
+			edgeTags = new DefaultObjTags<>( edgeIdLabelSets, edgePool, tagSetStructure, this::notifyTagsChanged );
+			( ( ListenableReadOnlyGraph< V, E > ) graph ).addGraphListener( new TagColumnUpdater() );
+		}
+		else
+		{
+			vertexTags = new DefaultObjTags<>( vertexIdLabelSets, null, tagSetStructure, this::notifyTagsChanged );
+			edgeTags = new DefaultObjTags<>( edgeIdLabelSets, null, tagSetStructure, this::notifyTagsChanged );
+		}
+	}
+
+	private void notifyTagsChanged()
+	{
+		listeners.list.forEach( TagSetModelListener::tagsChanged );
+	}
+
+	/**
+	 * Keeps the tag columns consistent with the graph. Objects added to the
+	 * graph may reuse the pool index of a removed object, and may have labels
+	 * restored by undo.
+	 */
+	private class TagColumnUpdater implements GraphListener< V, E >
+	{
+		@Override
+		public void graphRebuilt()
+		{
+			vertexTags.rebuild();
+			edgeTags.rebuild();
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{
+			vertexTags.refresh( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			vertexTags.objectRemoved( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{
+			edgeTags.refresh( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{
+			edgeTags.objectRemoved( edge );
+		}
 	}
 
 	@Override
@@ -130,6 +189,19 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		this.editRecorder = editRecorder;
 	}
 
+	/**
+	 * Sets the recorder of the bulk tag edits made through the tag maps of
+	 * the vertices and edges.
+	 *
+	 * @param editRecorder
+	 *            the recorder.
+	 */
+	public void setBulkTagUndoRecorder( final Recorder< DefaultObjTags.BulkTagUndoableEdit > editRecorder )
+	{
+		vertexTags.setUndoRecorder( editRecorder );
+		edgeTags.setUndoRecorder( editRecorder );
+	}
+
 	@Override
 	public Listeners< TagSetModelListener > listeners()
 	{
@@ -148,6 +220,11 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 			this.tagSetModel = tagSetModel;
 		}
 
+		protected ReadOnlyGraph< V, E > getGraph()
+		{
+			return tagSetModel.graph;
+		}
+
 		protected LabelSets< V, Integer > getVertexIdLabelSets()
 		{
 			return tagSetModel.vertexIdLabelSets;
@@ -162,6 +239,7 @@ public class DefaultTagSetModel< V extends Vertex< E >, E extends Edge< V > > im
 		{
 			tagSetModel.vertexTags.update( tagSetModel.tagSetStructure );
 			tagSetModel.edgeTags.update( tagSetModel.tagSetStructure );
+			tagSetModel.listeners.list.forEach( TagSetModelListener::tagSetStructureChanged );
 		}
 	}
 
@@ -0,0 +1,228 @@
+package org.mastodon.revised.model.tag;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Compressed encoding of sets of non-negative integer ids, used to store the
+ * file ids of tagged objects.
+ * <p>
+ * Ids are partitioned in chunks of 2<sup>16</sup> consecutive values, keyed by
+ * their high 16 bits. Each non-empty chunk is stored in the smallest of three
+ * containers, as in roaring bitmaps:
+ * <ul>
+ * <li>an array container: the sorted low 16 bits of the ids;
+ * <li>a bitmap container: 2<sup>16</sup> bits;
+ * <li>a run container: the start and length of runs of consecutive ids.
+ * </ul>
+ * The encoded form is:
+ *
+ * <pre>
+ * int nIds
+ * int nChunks
+ * for each chunk:
+ *   short key
+ *   byte container type
+ *   container data
+ * </pre>
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class IdBitmapCodec
+{
+
+	private static final int CHUNK_BITS = 16;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int BITMAP_WORDS = CHUNK_SIZE / 64;
+
+	private static final byte ARRAY = 0;
+
+	private static final byte BITMAP = 1;
+
+	private static final byte RUN = 2;
+
+	private IdBitmapCodec()
+	{}
+
+	/**
+	 * Encodes the specified ids.
+	 *
+	 * @param ids
+	 *            the ids, non-negative. Sorted in place.
+	 * @param n
+	 *            the number of ids to read from the array.
+	 * @return the encoded ids.
+	 */
+	static byte[] encode( final int[] ids, final int n )
+	{
+		Arrays.sort( ids, 0, n );
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream out = new DataOutputStream( bytes ))
+		{
+			// Count distinct ids and chunks.
+			int nIds = 0;
+			int nChunks = 0;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( i > 0 && ids[ i ] == ids[ i - 1 ] )
+					continue;
+				if ( nIds == 0 || ( ids[ i ] >>> CHUNK_BITS ) != ( ids[ i - 1 ] >>> CHUNK_BITS ) )
+					nChunks++;
+				nIds++;
+			}
+			out.writeInt( nIds );
+			out.writeInt( nChunks );
+
+			int start = 0;
+			while ( start < n )
+			{
+				final int key = ids[ start ] >>> CHUNK_BITS;
+				int end = start;
+				while ( end < n && ( ids[ end ] >>> CHUNK_BITS ) == key )
+					end++;
+				writeChunk( out, key, ids, start, end );
+				start = end;
+			}
+		}
+		catch ( final IOException e )
+		{
+			// Cannot happen with a byte array.
+			throw new UncheckedIOException( e );
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeChunk( final DataOutputStream out, final int key, final int[] ids, final int start, final int end ) throws IOException
+	{
+		int cardinality = 0;
+		int nRuns = 0;
+		for ( int i = start; i < end; i++ )
+		{
+			if ( i > start && ids[ i ] == ids[ i - 1 ] )
+				continue;
+			cardinality++;
+			if ( i == start || ids[ i ] != ids[ i - 1 ] + 1 )
+				nRuns++;
+		}
+
+		final int arrayBytes = 4 + 2 * cardinality;
+		final int bitmapBytes = 8 * BITMAP_WORDS;
+		final int runBytes = 4 + 4 * nRuns;
+
+		out.writeShort( key );
+		if ( runBytes <= arrayBytes && runBytes <= bitmapBytes )
+		{
+			out.writeByte( RUN );
+			out.writeInt( nRuns );
+			int i = start;
+			while ( i < end )
+			{
+				final int runStart = ids[ i ];
+				int runEnd = runStart;
+				while ( i < end && ids[ i ] <= runEnd + 1 )
+					runEnd = Math.max( runEnd, ids[ i++ ] );
+				out.writeShort( runStart & ( CHUNK_SIZE - 1 ) );
+				out.writeShort( runEnd - runStart );
+			}
+		}
+		else if ( arrayBytes <= bitmapBytes )
+		{
+			out.writeByte( ARRAY );
+			out.writeInt( cardinality );
+			for ( int i = start; i < end; i++ )
+				if ( i == start || ids[ i ] != ids[ i - 1 ] )
+					out.writeShort( ids[ i ] & ( CHUNK_SIZE - 1 ) );
+		}
+		else
+		{
+			out.writeByte( BITMAP );
+			final long[] words = new long[ BITMAP_WORDS ];
+			for ( int i = start; i < end; i++ )
+			{
+				final int low = ids[ i ] & ( CHUNK_SIZE - 1 );
+				words[ low >>> 6 ] |= 1L << low;
+			}
+			for ( final long word : words )
+				out.writeLong( word );
+		}
+	}
+
+	/**
+	 * Decodes ids encoded with {@link #encode(int[], int)}.
+	 *
+	 * @param data
+	 *            the encoded ids.
+	 * @return the sorted ids.
+	 * @throws IllegalArgumentException
+	 *             if the data is not a valid encoding.
+	 */
+	static int[] decode( final byte[] data )
+	{
+		try (final DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ) ))
+		{
+			final int nIds = in.readInt();
+			final int nChunks = in.readInt();
+			// Each chunk takes at least 3 bytes and holds at most CHUNK_SIZE ids.
+			if ( nIds < 0 || nChunks < 0 || nChunks > data.length / 3 || nIds > ( long ) nChunks * CHUNK_SIZE )
+				throw new IllegalArgumentException( "Corrupted id bitmap." );
+			final int[] ids = new int[ nIds ];
+			int n = 0;
+			for ( int c = 0; c < nChunks; c++ )
+			{
+				final int high = in.readUnsignedShort() << CHUNK_BITS;
+				final byte type = in.readByte();
+				switch ( type )
+				{
+				case ARRAY:
+				{
+					final int cardinality = in.readInt();
+					for ( int i = 0; i < cardinality; i++ )
+						ids[ n++ ] = high | in.readUnsignedShort();
+					break;
+				}
+				case BITMAP:
+				{
+					for ( int w = 0; w < BITMAP_WORDS; w++ )
+					{
+						long word = in.readLong();
+						while ( word != 0 )
+						{
+							ids[ n++ ] = high | ( w << 6 ) | Long.numberOfTrailingZeros( word );
+							word &= word - 1;
+						}
+					}
+					break;
+				}
+				case RUN:
+				{
+					final int nRuns = in.readInt();
+					for ( int r = 0; r < nRuns; r++ )
+					{
+						final int runStart = high | in.readUnsignedShort();
+						final int length = in.readUnsignedShort();
+						for ( int i = 0; i <= length; i++ )
+							ids[ n++ ] = runStart + i;
+					}
+					break;
+				}
+				default:
+					throw new IllegalArgumentException( "Unknown container type: " + type );
+				}
+			}
+			if ( n != nIds || in.available() > 0 )
+				throw new IllegalArgumentException( "Corrupted id bitmap." );
+			return ids;
+		}
+		catch ( final IOException | ArrayIndexOutOfBoundsException e )
+		{
+			throw new IllegalArgumentException( "Corrupted id bitmap.", e );
+		}
+	}
+}
@@ -52,6 +52,37 @@ public interface ObjTagMap< O, T >
 	 */
 	void remove( final O object );
 
+	/**
+	 * Tags all the specified objects with the specified {@code tag}. The
+	 * specified {@code tag} may be {@code null}, in which case the objects are
+	 * un-tagged (see {@link #remove(Collection)}).
+	 * <p>
+	 * Implementations should update their storage in a single pass and notify
+	 * listeners once for the whole collection.
+	 *
+	 * @param objects
+	 *            the objects to tag.
+	 * @param tag
+	 *            the tag to apply.
+	 */
+	default void set( final Collection< O > objects, final T tag )
+	{
+		for ( final O object : objects )
+			set( object, tag );
+	}
+
+	/**
+	 * Un-tag all the specified objects.
+	 *
+	 * @param objects
+	 *            the objects whose tag to remove.
+	 */
+	default void remove( final Collection< O > objects )
+	{
+		for ( final O object : objects )
+			remove( object );
+	}
+
 	/**
 	 * Returns the tag of the specified object.
 	 *
@@ -1,6 +1,8 @@
 package org.mastodon.revised.model.tag;
 
+import java.util.AbstractCollection;
 import java.util.Collection;
+import java.util.Iterator;
 
 import org.mastodon.adapter.CollectionAdapter;
 import org.mastodon.adapter.RefBimap;
@@ -43,6 +45,18 @@ public class ObjTagMapAdapter< O, WO, T > implements ObjTagMap< WO, T >
 		objTagMap.remove( refmap.getLeft( object ) );
 	}
 
+	@Override
+	public void set( final Collection< WO > objects, final T tag )
+	{
+		objTagMap.set( new LeftCollection( objects ), tag );
+	}
+
+	@Override
+	public void remove( final Collection< WO > objects )
+	{
+		objTagMap.remove( new LeftCollection( objects ) );
+	}
+
 	@Override
 	public T get( final WO object )
 	{
@@ -54,4 +68,45 @@ public class ObjTagMapAdapter< O, WO, T > implements ObjTagMap< WO, T >
 	{
 		return new CollectionAdapter<>( objTagMap.getTaggedWith( tag ), refmap );
 	}
+
+	/**
+	 * Read-only view of a collection of wrapped objects as source objects.
+	 * Source objects are retrieved with the reusable refs of the
+	 * {@link RefBimap}, and must be consumed before iterating to the next one.
+	 */
+	private class LeftCollection extends AbstractCollection< O >
+	{
+		private final Collection< WO > objects;
+
+		LeftCollection( final Collection< WO > objects )
+		{
+			this.objects = objects;
+		}
+
+		@Override
+		public Iterator< O > iterator()
+		{
+			final Iterator< WO > it = objects.iterator();
+			return new Iterator< O >()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+
+				@Override
+				public O next()
+				{
+					return refmap.getLeft( it.next() );
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return objects.size();
+		}
+	}
 }
@@ -3,15 +3,59 @@ package org.mastodon.revised.model.tag;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
 
 import org.mastodon.graph.Edge;
+import org.mastodon.graph.ReadOnlyGraph;
 import org.mastodon.graph.Vertex;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.io.labels.LabelSetsSerializer;
+import org.mastodon.labels.LabelSet;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
 
+/**
+ * Reads and writes the tags of a {@link DefaultTagSetModel}.
+ * <p>
+ * Tags are written in a bitmap format: after the {@link TagSetStructure}, the
+ * vertex tags then the edge tags are written as one block per tag, holding
+ * the file ids of the objects that carry the tag, compressed with
+ * {@link IdBitmapCodec}:
+ *
+ * <pre>
+ * int MAGIC
+ * int VERSION
+ * TagSetStructure
+ * for vertices, then edges:
+ *   int nTags
+ *   for each tag:
+ *     int tagId
+ *     int nBytes
+ *     byte[ nBytes ] encoded file ids
+ * </pre>
+ *
+ * Blocks are encoded and decoded in parallel. Because each block is prefixed
+ * by its size, the file can also be read tag by tag with a
+ * {@link TagBitmapReader}, skipping the tags that are not needed.
+ * <p>
+ * Files written in the former format, where the labels of each object were
+ * serialized with {@link LabelSetsSerializer}, are still readable.
+ */
 public class RawTagSetModelIO
 {
+	/**
+	 * Marks files in the bitmap format. In the former format, the first int
+	 * is the number of tag sets.
+	 */
+	static final int MAGIC = 0x4D544147;
+
+	static final int VERSION = 1;
+
 	public static < V extends Vertex< E >, E extends Edge< V > > void read(
 			final DefaultTagSetModel< V, E > tagSetModel,
 			final FileIdToGraphMap< V, E > idmap,
@@ -22,9 +66,19 @@ public class RawTagSetModelIO
 		{
 			void read() throws IOException
 			{
-				tagSetModel.getTagSetStructure().loadRaw( ois );
-				LabelSetsSerializer.readPropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), ois );
-				LabelSetsSerializer.readPropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), ois );
+				final int first = ois.readInt();
+				if ( first == MAGIC )
+				{
+					final TagBitmapReader reader = new TagBitmapReader( ois, false );
+					tagSetModel.getTagSetStructure().set( reader.getTagSetStructure() );
+					readBitmaps( reader, getVertexIdLabelSets(), getEdgeIdLabelSets(), idmap, getGraph() );
+				}
+				else
+				{
+					tagSetModel.getTagSetStructure().loadRaw( ois, first );
+					LabelSetsSerializer.readPropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), ois );
+					LabelSetsSerializer.readPropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), ois );
+				}
 				updateObjTags();
 			}
 		}.read();
@@ -40,13 +94,294 @@ public class RawTagSetModelIO
 		{
 			void write() throws IOException
 			{
-				tagSetModel.getTagSetStructure().saveRaw( oos );
-				LabelSetsSerializer.writePropertyMap( getVertexIdLabelSets(), intLabelSerializer, idmap.vertices(), oos );
-				LabelSetsSerializer.writePropertyMap( getEdgeIdLabelSets(), intLabelSerializer, idmap.edges(), oos );
+				oos.writeInt( MAGIC );
+				oos.writeInt( VERSION );
+				final TagSetStructure tss = tagSetModel.getTagSetStructure();
+				tss.saveRaw( oos );
+				final int[] tagIds = tss.getTagSets().stream()
+						.flatMap( ts -> ts.getTags().stream() )
+						.mapToInt( Tag::id )
+						.toArray();
+				writeBitmaps( getVertexIdLabelSets(), v -> idmap.vertices().getId( v ), tagIds, oos );
+				writeBitmaps( getEdgeIdLabelSets(), e -> idmap.edges().getId( e ), tagIds, oos );
 			}
 		}.write();
 	}
 
+	private static < O > void writeBitmaps(
+			final LabelSets< O, Integer > labelSets,
+			final ToIntFunction< O > fileId,
+			final int[] tagIds,
+			final ObjectOutputStream oos )
+			throws IOException
+	{
+		// Collect file ids sequentially: label sets are not thread-safe.
+		final int nTags = tagIds.length;
+		final int[][] fileIds = new int[ nTags ][];
+		for ( int t = 0; t < nTags; t++ )
+		{
+			final Collection< O > objects = labelSets.getLabeledWith( tagIds[ t ] );
+			final int[] ids = new int[ objects.size() ];
+			int n = 0;
+			for ( final O o : objects )
+				ids[ n++ ] = fileId.applyAsInt( o );
+			fileIds[ t ] = ids;
+		}
+
+		// Sort and encode in parallel.
+		final byte[][] encoded = new byte[ nTags ][];
+		IntStream.range( 0, nTags ).parallel().forEach( t -> {
+			encoded[ t ] = IdBitmapCodec.encode( fileIds[ t ], fileIds[ t ].length );
+			fileIds[ t ] = null;
+		} );
+
+		oos.writeInt( nTags );
+		for ( int t = 0; t < nTags; t++ )
+		{
+			oos.writeInt( tagIds[ t ] );
+			oos.writeInt( encoded[ t ].length );
+			oos.write( encoded[ t ] );
+		}
+	}
+
+	private static < V extends Vertex< E >, E extends Edge< V > > void readBitmaps(
+			final TagBitmapReader reader,
+			final LabelSets< V, Integer > vertexLabelSets,
+			final LabelSets< E, Integer > edgeLabelSets,
+			final FileIdToGraphMap< V, E > idmap,
+			final ReadOnlyGraph< V, E > graph )
+			throws IOException
+	{
+		// Read the encoded blocks sequentially.
+		final List< byte[] > vertexBlocks = new ArrayList<>();
+		final List< Integer > vertexTagIds = new ArrayList<>();
+		final List< byte[] > edgeBlocks = new ArrayList<>();
+		final List< Integer > edgeTagIds = new ArrayList<>();
+		while ( reader.next() )
+		{
+			if ( reader.isVertexTag() )
+			{
+				vertexTagIds.add( reader.getTagId() );
+				vertexBlocks.add( reader.getEncodedFileIds() );
+			}
+			else
+			{
+				edgeTagIds.add( reader.getTagId() );
+				edgeBlocks.add( reader.getEncodedFileIds() );
+			}
+		}
+
+		// Decode in parallel.
+		final int[][] vertexFileIds;
+		final int[][] edgeFileIds;
+		try
+		{
+			vertexFileIds = decode( vertexBlocks );
+			edgeFileIds = decode( edgeBlocks );
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			throw new IOException( "Corrupted tag file.", e );
+		}
+
+		// Apply sequentially.
+		final V vref = graph.vertexRef();
+		final LabelSet< V, Integer > vlref = vertexLabelSets.createRef();
+		for ( int t = 0; t < vertexFileIds.length; t++ )
+		{
+			final Integer tagId = vertexTagIds.get( t );
+			for ( final int id : vertexFileIds[ t ] )
+				vertexLabelSets.getLabels( idmap.vertices().getObject( id, vref ), vlref ).add( tagId );
+		}
+		vertexLabelSets.releaseRef( vlref );
+		graph.releaseRef( vref );
+
+		final E eref = graph.edgeRef();
+		final LabelSet< E, Integer > elref = edgeLabelSets.createRef();
+		for ( int t = 0; t < edgeFileIds.length; t++ )
+		{
+			final Integer tagId = edgeTagIds.get( t );
+			for ( final int id : edgeFileIds[ t ] )
+				edgeLabelSets.getLabels( idmap.edges().getObject( id, eref ), elref ).add( tagId );
+		}
+		edgeLabelSets.releaseRef( elref );
+		graph.releaseRef( eref );
+	}
+
+	private static int[][] decode( final List< byte[] > blocks )
+	{
+		final int[][] decoded = new int[ blocks.size() ][];
+		IntStream.range( 0, decoded.length ).parallel().forEach( t -> decoded[ t ] = IdBitmapCodec.decode( blocks.get( t ) ) );
+		return decoded;
+	}
+
+	/**
+	 * Streaming reader for tag files in the bitmap format.
+	 * <p>
+	 * The reader reads the {@link TagSetStructure} when created, then iterates
+	 * over the tag blocks with {@link #next()}: vertex tags first, then edge
+	 * tags. The file ids of the current tag are only decoded if
+	 * {@link #getFileIds()} is called; otherwise the block is skipped. This
+	 * allows partial loads, for instance of a single tag.
+	 */
+	public static class TagBitmapReader
+	{
+		private final ObjectInputStream ois;
+
+		private final TagSetStructure tagSetStructure;
+
+		/**
+		 * -1 before the vertex section, 0 in the vertex section, 1 in the edge
+		 * section.
+		 */
+		private int section;
+
+		/**
+		 * Number of tag blocks remaining in the current section.
+		 */
+		private int remaining;
+
+		private int tagId;
+
+		private int nBytes;
+
+		private boolean consumed;
+
+		/**
+		 * Creates a reader on the specified stream, positioned at the
+		 * beginning of a tag file.
+		 *
+		 * @param ois
+		 *            the stream to read from.
+		 * @throws IOException
+		 *             if an I/O error occurs, or if the stream is not in the
+		 *             bitmap format.
+		 */
+		public TagBitmapReader( final ObjectInputStream ois ) throws IOException
+		{
+			this( ois, true );
+		}
+
+		private TagBitmapReader( final ObjectInputStream ois, final boolean readMagic ) throws IOException
+		{
+			this.ois = ois;
+			if ( readMagic && ois.readInt() != MAGIC )
+				throw new IOException( "Not a tag file in the bitmap format." );
+			final int version = ois.readInt();
+			if ( version < 1 || version > VERSION )
+				throw new IOException( "Unsupported tag file version: " + version );
+			this.tagSetStructure = new TagSetStructure();
+			tagSetStructure.loadRaw( ois );
+			this.section = -1;
+			this.remaining = 0;
+			this.consumed = true;
+		}
+
+		public TagSetStructure getTagSetStructure()
+		{
+			return tagSetStructure;
+		}
+
+		/**
+		 * Moves to the next tag block, skipping the current one if its file
+		 * ids were not read.
+		 *
+		 * @return <code>true</code> if there is a next tag block,
+		 *         <code>false</code> at the end of the file.
+		 * @throws IOException
+		 *             if an I/O error occurs.
+		 */
+		public boolean next() throws IOException
+		{
+			if ( !consumed )
+				skip( nBytes );
+			consumed = true;
+			while ( remaining == 0 )
+			{
+				if ( section == 1 )
+					return false;
+				section++;
+				remaining = ois.readInt();
+				if ( remaining < 0 )
+					throw new IOException( "Corrupted tag file." );
+			}
+			remaining--;
+			tagId = ois.readInt();
+			nBytes = ois.readInt();
+			if ( nBytes < 0 )
+				throw new IOException( "Corrupted tag file." );
+			consumed = false;
+			return true;
+		}
+
+		/**
+		 * Returns whether the current tag block is for vertices or for edges.
+		 *
+		 * @return <code>true</code> for vertices.
+		 */
+		public boolean isVertexTag()
+		{
+			return section == 0;
+		}
+
+		/**
+		 * Returns the id of the tag of the current block. Can be resolved with
+		 * {@link #getTagSetStructure()}.
+		 *
+		 * @return the tag id.
+		 */
+		public int getTagId()
+		{
+			return tagId;
+		}
+
+		/**
+		 * Reads and decodes the file ids of the objects that carry the current
+		 * tag. Can be called at most once per block.
+		 *
+		 * @return the sorted file ids.
+		 * @throws IOException
+		 *             if an I/O error occurs, or if the block is corrupted.
+		 */
+		public int[] getFileIds() throws IOException
+		{
+			try
+			{
+				return IdBitmapCodec.decode( getEncodedFileIds() );
+			}
+			catch ( final IllegalArgumentException e )
+			{
+				throw new IOException( "Corrupted tag file.", e );
+			}
+		}
+
+		private byte[] getEncodedFileIds() throws IOException
+		{
+			if ( consumed )
+				throw new IllegalStateException( "The current tag block was already read." );
+			final byte[] bytes = new byte[ nBytes ];
+			ois.readFully( bytes );
+			consumed = true;
+			return bytes;
+		}
+
+		private void skip( final int n ) throws IOException
+		{
+			int skipped = 0;
+			while ( skipped < n )
+			{
+				final int s = ois.skipBytes( n - skipped );
+				if ( s <= 0 )
+				{
+					ois.readByte();
+					skipped++;
+				}
+				else
+					skipped += s;
+			}
+		}
+	}
+
 	private static final LabelSetsSerializer.LabelSerializer< Integer > intLabelSerializer = new LabelSetsSerializer.LabelSerializer< Integer >()
 	{
 		@Override
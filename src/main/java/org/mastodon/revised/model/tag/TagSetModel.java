@@ -27,6 +27,13 @@ public interface TagSetModel< V, E >
 	interface TagSetModelListener
 	{
 		void tagSetStructureChanged();
+
+		/**
+		 * Notified when tags are assigned to or removed from objects through
+		 * an {@link ObjTagMap}. Bulk operations trigger a single notification.
+		 */
+		default void tagsChanged()
+		{}
 	}
 
 	Listeners< TagSetModelListener > listeners();
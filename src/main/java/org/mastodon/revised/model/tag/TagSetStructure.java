@@ -79,11 +79,19 @@ public class TagSetStructure
 	}
 
 	public void loadRaw( final ObjectInputStream ois ) throws IOException
+	{
+		// N tagsets.
+		loadRaw( ois, ois.readInt() );
+	}
+
+	/**
+	 * Loads the tag sets, when the number of tag sets was already read from
+	 * the stream.
+	 */
+	void loadRaw( final ObjectInputStream ois, final int nTagSets ) throws IOException
 	{
 		tagSets.clear();
 
-		// N tagsets.
-		final int nTagSets = ois.readInt();
 		for ( int i = 0; i < nTagSets; i++ )
 		{
 			// TagSet id.
@@ -0,0 +1,458 @@
+package org.mastodon.revised.model.tag;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.labels.LabelSet;
+import org.mastodon.labels.LabelSets;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+import org.mastodon.spatial.HasTimepoint;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Inverted index from vertex tags to the time-points of the vertices that
+ * carry them.
+ * <p>
+ * For each tag, the number of tagged vertices is stored per time-point, in a
+ * plain array and in a Fenwick tree (binary indexed tree). This allows for
+ * retrieving the count of a tag at one time-point in constant time, and the
+ * count over a range of time-points, or the next time-point containing a
+ * tag, in <code>O(log T)</code>, where <code>T</code> is the number of
+ * time-points.
+ * <p>
+ * The index is updated incrementally:
+ * <ul>
+ * <li>tag changes are picked up by listening to the vertex {@link LabelSets}
+ * of the {@link DefaultTagSetModel}, which includes changes replayed by
+ * undo/redo, and to the bulk edits of its vertex tags;
+ * <li>vertices added and removed are picked up by registering as a
+ * {@link GraphListener};
+ * <li>the index is rebuilt when the {@link TagSetStructure} changes or when
+ * the graph is rebuilt.
+ * </ul>
+ * The last known tag of each vertex is stored in one column per tag set,
+ * indexed by pool index, so that removals can be processed without reading
+ * the label sets.
+ * <p>
+ * All methods are synchronized.
+ *
+ * @param <V>
+ *            the type of vertices in the graph.
+ * @param <E>
+ *            the type of edges in the graph.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TagTimepointIndex< V extends Vertex< E > & HasTimepoint, E extends Edge< V > >
+		implements GraphListener< V, E >, TagSetModel.TagSetModelListener, PropertyChangeListener< V >
+{
+
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final TagSetModel< V, E > tagSetModel;
+
+	private final LabelSets< V, Integer > labelSets;
+
+	private final RefPool< V > pool;
+
+	/**
+	 * Maps tag ids to tag slots.
+	 */
+	private final TIntIntHashMap tagIdToSlot;
+
+	/**
+	 * Tag set index of each tag slot.
+	 */
+	private int[] tagSetOfSlot;
+
+	/**
+	 * Tag counts, indexed by tag slot then time-point.
+	 */
+	private int[][] counts;
+
+	/**
+	 * Fenwick trees of the tag counts, indexed by tag slot then time-point + 1.
+	 */
+	private int[][] trees;
+
+	/**
+	 * Total tag counts, indexed by tag slot.
+	 */
+	private int[] totals;
+
+	/**
+	 * Last known tag slot of vertices, indexed by tag set index then pool
+	 * index. <code>-1</code> for untagged vertices.
+	 */
+	private int[][] lastSlots;
+
+	/**
+	 * Last known time-point of vertices, indexed by pool index.
+	 */
+	private int[] timepoints;
+
+	/**
+	 * Number of time-points covered by the count arrays.
+	 */
+	private int nTimepoints;
+
+	/**
+	 * Creates an index of the vertex tags of the specified tag set model. The
+	 * index is immediately usable, and registers as a listener to the graph,
+	 * the tag set model and the vertex label sets.
+	 *
+	 * @param graph
+	 *            the graph whose vertices are tagged.
+	 * @param tagSetModel
+	 *            the tag set model.
+	 */
+	public TagTimepointIndex( final ListenableReadOnlyGraph< V, E > graph, final DefaultTagSetModel< V, E > tagSetModel )
+	{
+		this.graph = graph;
+		this.tagSetModel = tagSetModel;
+		this.labelSets = new DefaultTagSetModel.SerialisationAccess<>( tagSetModel ).getVertexIdLabelSets();
+		this.pool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.tagIdToSlot = new TIntIntHashMap( 10, 0.5f, -1, -1 );
+		rebuild();
+		graph.addGraphListener( this );
+		tagSetModel.listeners().add( this );
+		labelSets.addPropertyChangeListener( this );
+		tagSetModel.getVertexTags().bulkTagListeners().add( this::bulkTagsChanged );
+	}
+
+	/**
+	 * Returns the number of vertices carrying the specified tag at the
+	 * specified time-point.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @param timepoint
+	 *            the time-point.
+	 * @return the number of tagged vertices.
+	 */
+	public synchronized int count( final Tag tag, final int timepoint )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		if ( slot < 0 || timepoint < 0 || timepoint >= nTimepoints )
+			return 0;
+		return counts[ slot ][ timepoint ];
+	}
+
+	/**
+	 * Returns the number of vertices carrying the specified tag in the
+	 * specified range of time-points.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @param from
+	 *            the first time-point of the range (inclusive).
+	 * @param to
+	 *            the last time-point of the range (inclusive).
+	 * @return the number of tagged vertices.
+	 */
+	public synchronized int count( final Tag tag, final int from, final int to )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		if ( slot < 0 || to < from )
+			return 0;
+		return prefix( trees[ slot ], to ) - prefix( trees[ slot ], from - 1 );
+	}
+
+	/**
+	 * Returns the number of vertices carrying the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return the number of tagged vertices.
+	 */
+	public synchronized int count( final Tag tag )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		return slot < 0 ? 0 : totals[ slot ];
+	}
+
+	/**
+	 * Returns the first time-point, at or after the specified one, that
+	 * contains vertices carrying the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @param from
+	 *            the time-point to start searching from.
+	 * @return the time-point, or <code>-1</code> if there is none.
+	 */
+	public synchronized int nextTimepoint( final Tag tag, final int from )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		if ( slot < 0 )
+			return -1;
+		final int[] tree = trees[ slot ];
+		final int before = prefix( tree, Math.max( 0, from ) - 1 );
+		if ( before == totals[ slot ] )
+			return -1;
+		return search( tree, before + 1 );
+	}
+
+	/**
+	 * Returns the last time-point, at or before the specified one, that
+	 * contains vertices carrying the specified tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @param from
+	 *            the time-point to start searching from.
+	 * @return the time-point, or <code>-1</code> if there is none.
+	 */
+	public synchronized int previousTimepoint( final Tag tag, final int from )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		if ( slot < 0 || from < 0 )
+			return -1;
+		final int[] tree = trees[ slot ];
+		final int upTo = prefix( tree, from );
+		if ( upTo == 0 )
+			return -1;
+		return search( tree, upTo );
+	}
+
+	/**
+	 * Returns the time-points that contain vertices carrying the specified
+	 * tag.
+	 *
+	 * @param tag
+	 *            the tag.
+	 * @return a new sorted array of time-points.
+	 */
+	public synchronized int[] getTimepoints( final Tag tag )
+	{
+		final int slot = tagIdToSlot.get( tag.id() );
+		if ( slot < 0 )
+			return new int[ 0 ];
+		final int[] c = counts[ slot ];
+		int n = 0;
+		final int[] out = new int[ nTimepoints ];
+		for ( int t = 0; t < nTimepoints; t++ )
+			if ( c[ t ] > 0 )
+				out[ n++ ] = t;
+		return Arrays.copyOf( out, n );
+	}
+
+	/*
+	 * Listeners.
+	 */
+
+	@Override
+	public synchronized void propertyChanged( final V vertex )
+	{
+		update( vertex );
+	}
+
+	private synchronized void bulkTagsChanged( final int[] poolIds )
+	{
+		final V ref = pool.createRef();
+		for ( final int id : poolIds )
+			update( pool.getObject( id, ref ) );
+		pool.releaseRef( ref );
+	}
+
+	@Override
+	public synchronized void tagSetStructureChanged()
+	{
+		rebuild();
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		rebuild();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		update( vertex );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		final int id = pool.getId( vertex );
+		if ( id >= timepoints.length )
+			return;
+		final int t = timepoints[ id ];
+		for ( final int[] column : lastSlots )
+		{
+			if ( column[ id ] >= 0 )
+				increment( column[ id ], t, -1 );
+			column[ id ] = -1;
+		}
+	}
+
+	@Override
+	public void edgeAdded( final E edge )
+	{}
+
+	@Override
+	public void edgeRemoved( final E edge )
+	{}
+
+	/*
+	 * Index maintenance.
+	 */
+
+	private void rebuild()
+	{
+		tagIdToSlot.clear();
+		final List< TagSet > tagSets = tagSetModel.getTagSetStructure().getTagSets();
+		int nSlots = 0;
+		for ( final TagSet tagSet : tagSets )
+			nSlots += tagSet.getTags().size();
+		tagSetOfSlot = new int[ nSlots ];
+		int slot = 0;
+		for ( int ts = 0; ts < tagSets.size(); ts++ )
+		{
+			for ( final Tag tag : tagSets.get( ts ).getTags() )
+			{
+				tagIdToSlot.put( tag.id(), slot );
+				tagSetOfSlot[ slot ] = ts;
+				slot++;
+			}
+		}
+
+		nTimepoints = 0;
+		counts = new int[ nSlots ][ 0 ];
+		trees = new int[ nSlots ][ 1 ];
+		totals = new int[ nSlots ];
+		lastSlots = new int[ tagSets.size() ][ 0 ];
+		timepoints = new int[ 0 ];
+		for ( final V v : graph.vertices() )
+			update( v );
+	}
+
+	/**
+	 * Updates the counts with the current tags of the specified vertex.
+	 */
+	private void update( final V vertex )
+	{
+		final int id = pool.getId( vertex );
+		ensureObjectCapacity( id + 1 );
+		final int oldT = timepoints[ id ];
+		final int t = vertex.getTimepoint();
+		timepoints[ id ] = t;
+
+		final int nTagSets = lastSlots.length;
+		final int[] newSlots = new int[ nTagSets ];
+		Arrays.fill( newSlots, -1 );
+		final LabelSet< V, Integer > ref = labelSets.createRef();
+		for ( final Integer tagId : labelSets.getLabels( vertex, ref ) )
+		{
+			final int slot = tagIdToSlot.get( tagId );
+			if ( slot >= 0 )
+				newSlots[ tagSetOfSlot[ slot ] ] = slot;
+		}
+		labelSets.releaseRef( ref );
+
+		for ( int ts = 0; ts < nTagSets; ts++ )
+		{
+			final int oldSlot = lastSlots[ ts ][ id ];
+			final int newSlot = newSlots[ ts ];
+			if ( oldSlot == newSlot && oldT == t )
+				continue;
+			if ( oldSlot >= 0 )
+				increment( oldSlot, oldT, -1 );
+			if ( newSlot >= 0 )
+				increment( newSlot, t, 1 );
+			lastSlots[ ts ][ id ] = newSlot;
+		}
+	}
+
+	private void increment( final int slot, final int t, final int delta )
+	{
+		ensureTimepointCapacity( t + 1 );
+		counts[ slot ][ t ] += delta;
+		totals[ slot ] += delta;
+		final int[] tree = trees[ slot ];
+		for ( int i = t + 1; i < tree.length; i += i & -i )
+			tree[ i ] += delta;
+	}
+
+	/**
+	 * Returns the sum of the counts from time-point 0 to <code>t</code>
+	 * included.
+	 */
+	private int prefix( final int[] tree, final int t )
+	{
+		int sum = 0;
+		for ( int i = Math.min( t + 1, tree.length - 1 ); i > 0; i -= i & -i )
+			sum += tree[ i ];
+		return sum;
+	}
+
+	/**
+	 * Returns the smallest time-point whose prefix sum is at least
+	 * <code>target</code>. The target must be positive and not greater than
+	 * the total count.
+	 */
+	private int search( final int[] tree, final int target )
+	{
+		int pos = 0;
+		int remaining = target;
+		for ( int step = Integer.highestOneBit( tree.length - 1 ); step > 0; step >>= 1 )
+		{
+			final int next = pos + step;
+			if ( next < tree.length && tree[ next ] < remaining )
+			{
+				pos = next;
+				remaining -= tree[ next ];
+			}
+		}
+		// pos is the largest 1-based index with prefix < target.
+		return pos;
+	}
+
+	private void ensureTimepointCapacity( final int capacity )
+	{
+		if ( capacity <= nTimepoints )
+			return;
+		final int newLength = Math.max( capacity, 2 * nTimepoints );
+		for ( int slot = 0; slot < counts.length; slot++ )
+		{
+			counts[ slot ] = Arrays.copyOf( counts[ slot ], newLength );
+			// Rebuild the Fenwick tree in linear time.
+			final int[] tree = new int[ newLength + 1 ];
+			for ( int t = 0; t < newLength; t++ )
+				tree[ t + 1 ] = counts[ slot ][ t ];
+			for ( int i = 1; i <= newLength; i++ )
+			{
+				final int parent = i + ( i & -i );
+				if ( parent <= newLength )
+					tree[ parent ] += tree[ i ];
+			}
+			trees[ slot ] = tree;
+		}
+		nTimepoints = newLength;
+	}
+
+	private void ensureObjectCapacity( final int capacity )
+	{
+		final int length = timepoints.length;
+		if ( capacity <= length )
+			return;
+		final int newLength = Math.max( capacity, 2 * length );
+		timepoints = Arrays.copyOf( timepoints, newLength );
+		for ( int ts = 0; ts < lastSlots.length; ts++ )
+		{
+			lastSlots[ ts ] = Arrays.copyOf( lastSlots[ ts ], newLength );
+			Arrays.fill( lastSlots[ ts ], length, newLength, -1 );
+		}
+	}
+}
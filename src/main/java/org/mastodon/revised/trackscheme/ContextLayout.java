@@ -1,9 +1,17 @@
 package org.mastodon.revised.trackscheme;
 
+import java.util.Arrays;
+
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.views.context.Context;
 
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
 /**
  * Algorithm:
  * <ol>
@@ -14,6 +22,13 @@ import org.mastodon.views.context.Context;
  * vertices (also ghosts) will have been marked with the
  * {@link LineageTreeLayout#getCurrentLayoutTimestamp()}).
  * </ol>
+ * <p>
+ * The vertices in context are remembered for each time-point. When the
+ * time-point range is unchanged, and the context still contains the same
+ * vertices, the layout is not updated. When only some vertices entered or
+ * left the context, only the trees that contain them are marked and laid out
+ * again, with
+ * {@link LineageTreeLayout#layoutContextIncremental(RefList, int, TIntSet)}.
  *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
@@ -26,18 +41,57 @@ public class ContextLayout
 	 */
 	private final LineageTreeLayout layout;
 
+	/**
+	 * the layout timestamps of the vertices, used to mark them.
+	 */
+	private final LayoutAttributes attributes;
+
 	private int previousMinTimepoint;
 
 	private int previousMaxTimepoint;
 
+	/**
+	 * The sorted internal pool indices of the vertices in context in the
+	 * previous layout, for each time-point of the range.
+	 */
+	private TIntObjectMap< int[] > previousInsideVertices;
+
+	/**
+	 * The internal pool indices of the roots of the previous layout.
+	 */
+	private final TIntArrayList previousRoots;
+
+	/**
+	 * The internal pool indices of the graph roots of
+	 * {@link #previousRoots}.
+	 */
+	private final TIntArrayList previousRootGraphRoots;
+
+	/**
+	 * The layout timestamp after the previous layout. If the current layout
+	 * timestamp differs, the layout was changed by somebody else.
+	 */
+	private int previousLayoutTimestamp;
+
+	/**
+	 * Whether tracing parents reached a vertex with several parents, which
+	 * can belong to a tree that is not laid out again.
+	 */
+	private boolean merge;
+
 	public ContextLayout(
 			final TrackSchemeGraph< ?, ? > graph,
 			final LineageTreeLayout layout )
 	{
 		this.graph = graph;
 		this.layout = layout;
+		this.attributes = layout.getLayoutAttributes();
 		this.previousMinTimepoint = -1;
 		this.previousMaxTimepoint = -1;
+		this.previousInsideVertices = new TIntObjectHashMap<>();
+		this.previousRoots = new TIntArrayList();
+		this.previousRootGraphRoots = new TIntArrayList();
+		this.previousLayoutTimestamp = -1;
 	}
 
 	/**
@@ -47,6 +101,9 @@ public class ContextLayout
 	 * {@link ScreenTransform#getMaxY()} of {@code transform} determines the
 	 * time-point range to cover. If the time-point range is the same as in the
 	 * previous call nothing is updated, unless {@code forceUpdate == true}.
+	 * Even then, nothing is updated if the vertices in context are the same
+	 * as in the previous call, and only the trees containing vertices that
+	 * entered or left the context are laid out again otherwise.
 	 *
 	 * @param context
 	 *            the context to layout.
@@ -65,38 +122,144 @@ public class ContextLayout
 	{
 		final int minTimepoint = ( int ) transform.getMinY();
 		final int maxTimepoint = ( int ) transform.getMaxY() + 1;
-		if ( minTimepoint == previousMinTimepoint && maxTimepoint == previousMaxTimepoint && !forceUpdate )
+		final boolean sameRange = minTimepoint == previousMinTimepoint && maxTimepoint == previousMaxTimepoint;
+		if ( sameRange && !forceUpdate )
 			return false;
 
+		final TIntObjectMap< int[] > insideVertices = new TIntObjectHashMap<>();
+		context.readLock().lock();
+		try
+		{
+			for ( int t = minTimepoint; t <= maxTimepoint; ++t )
+			{
+				final TIntArrayList ids = new TIntArrayList();
+				for ( final TrackSchemeVertex tv : context.getInsideVertices( t ) )
+					ids.add( tv.getInternalPoolIndex() );
+				final int[] sorted = ids.toArray();
+				Arrays.sort( sorted );
+				insideVertices.put( t, sorted );
+			}
+		}
+		finally
+		{
+			context.readLock().unlock();
+		}
+
+		boolean updated = false;
+		if ( sameRange
+				&& layout.getCurrentLayoutTimestamp() == previousLayoutTimestamp
+				&& layout.isContextIncremental() )
+		{
+			final TIntArrayList changed = new TIntArrayList();
+			for ( int t = minTimepoint; t <= maxTimepoint; ++t )
+				diff( previousInsideVertices.get( t ), insideVertices.get( t ), changed );
+			if ( changed.isEmpty() )
+				return false;
+			updated = buildContextIncremental( insideVertices, changed, minTimepoint, maxTimepoint );
+		}
+		if ( !updated )
+			buildContextFull( insideVertices, minTimepoint, maxTimepoint );
+
 		previousMinTimepoint = minTimepoint;
 		previousMaxTimepoint = maxTimepoint;
+		previousInsideVertices = insideVertices;
+		previousLayoutTimestamp = layout.getCurrentLayoutTimestamp();
+		return true;
+	}
 
+	/**
+	 * Marks all vertices in context and lays them out.
+	 */
+	private void buildContextFull( final TIntObjectMap< int[] > insideVertices, final int minTimepoint, final int maxTimepoint )
+	{
 		final int ghostmark = layout.nextLayoutTimestamp();
 		final int mark = layout.nextLayoutTimestamp();
 		final RefList< TrackSchemeVertex > roots = RefCollections.createRefList( graph.vertices() );
 
-		context.readLock().lock();
-		try
+		final TrackSchemeVertex tv = graph.vertexRef();
+		for ( int t = minTimepoint; t <= maxTimepoint; ++t )
 		{
-			for ( int t = minTimepoint; t <= maxTimepoint; ++t )
+			for ( final int id : insideVertices.get( t ) )
 			{
-				for ( final TrackSchemeVertex tv : context.getInsideVertices( t ) )
-				{
-					tv.setLayoutTimestamp( mark );
-					if ( t == minTimepoint )
-						roots.add( tv );
-					else
-						buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
-				}
+				graph.getVertexPool().getObject( id, tv );
+				attributes.setLayoutTimestamp( tv, mark );
+				if ( t == minTimepoint )
+					roots.add( tv );
+				else
+					buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
 			}
 		}
-		finally
+		graph.releaseRef( tv );
+
+		final RefList< TrackSchemeVertex > sortedRoots = LexicographicalVertexOrder.sort( graph, roots );
+		layout.layout( sortedRoots, mark );
+		setPreviousRoots( sortedRoots );
+	}
+
+	/**
+	 * Marks the vertices in context that belong to the trees of the
+	 * {@code changed} vertices, and lays out these trees again.
+	 *
+	 * @return {@code false} if the layout could not be updated incrementally.
+	 */
+	private boolean buildContextIncremental( final TIntObjectMap< int[] > insideVertices, final TIntArrayList changed, final int minTimepoint, final int maxTimepoint )
+	{
+		final int previousTimestamp = layout.getCurrentLayoutTimestamp();
+		final TrackSchemeVertex tv = graph.vertexRef();
+		final TrackSchemeVertex root = graph.vertexRef();
+
+		// Trees of the vertices that entered or left the context.
+		final TIntSet dirtyGraphRoots = new TIntHashSet();
+		for ( int i = 0; i < changed.size(); ++i )
 		{
-			context.readLock().unlock();
+			graph.getVertexPool().getObject( changed.getQuick( i ), tv );
+			dirtyGraphRoots.add( getGraphRoot( tv, root ).getInternalPoolIndex() );
+			if ( attributes.getLayoutTimestamp( tv ) == previousTimestamp && layout.getColumnRoot( tv, root ) != null )
+				dirtyGraphRoots.add( root.getInternalPoolIndex() );
+		}
+
+		// Mark the vertices of these trees. Vertices in context that were not
+		// laid out belong to them.
+		final int ghostmark = layout.nextLayoutTimestamp();
+		final int mark = layout.nextLayoutTimestamp();
+		final RefList< TrackSchemeVertex > roots = RefCollections.createRefList( graph.vertices() );
+		merge = false;
+		for ( int t = minTimepoint; t <= maxTimepoint && !merge; ++t )
+		{
+			for ( final int id : insideVertices.get( t ) )
+			{
+				graph.getVertexPool().getObject( id, tv );
+				if ( attributes.getLayoutTimestamp( tv ) == previousTimestamp
+						&& layout.getColumnRoot( tv, root ) != null
+						&& !dirtyGraphRoots.contains( root.getInternalPoolIndex() ) )
+					continue;
+
+				attributes.setLayoutTimestamp( tv, mark );
+				if ( t == minTimepoint )
+					roots.add( tv );
+				else
+					buildContextTraceParents( tv, ghostmark, minTimepoint, roots );
+			}
+		}
+		if ( merge )
+		{
+			graph.releaseRef( tv );
+			graph.releaseRef( root );
+			return false;
 		}
 
-		layout.layout( LexicographicalVertexOrder.sort( graph, roots ), mark );
+		// The roots of the other trees are unchanged.
+		for ( int i = 0; i < previousRoots.size(); ++i )
+			if ( !dirtyGraphRoots.contains( previousRootGraphRoots.getQuick( i ) ) )
+				roots.add( graph.getVertexPool().getObject( previousRoots.getQuick( i ), tv ) );
+		graph.releaseRef( tv );
+		graph.releaseRef( root );
 
+		final RefList< TrackSchemeVertex > sortedRoots = LexicographicalVertexOrder.sort( graph, roots );
+		if ( !layout.layoutContextIncremental( sortedRoots, mark, dirtyGraphRoots ) )
+			return false;
+
+		setPreviousRoots( sortedRoots );
 		return true;
 	}
 
@@ -117,13 +280,15 @@ public class ContextLayout
 			roots.add( tv );
 		else
 		{
+			if ( tv.incomingEdges().size() > 1 )
+				merge = true;
 			final TrackSchemeVertex ref = graph.vertexRef();
 			for ( final TrackSchemeEdge te : tv.incomingEdges() )
 			{
 				final TrackSchemeVertex parent = te.getSource( ref );
-				if ( parent.getLayoutTimestamp() < ghostmark )
+				if ( attributes.getLayoutTimestamp( parent ) < ghostmark )
 				{
-					parent.setLayoutTimestamp( ghostmark );
+					attributes.setLayoutTimestamp( parent, ghostmark );
 					if ( parent.getTimepoint() <= minTimepoint )
 						roots.add( parent );
 					else
@@ -133,4 +298,68 @@ public class ContextLayout
 			graph.releaseRef( ref );
 		}
 	}
+
+	/**
+	 * Remembers the roots of the layout and their graph roots.
+	 *
+	 * @param sortedRoots
+	 *            the roots of the layout.
+	 */
+	private void setPreviousRoots( final RefList< TrackSchemeVertex > sortedRoots )
+	{
+		final TIntArrayList roots = new TIntArrayList( sortedRoots.size() );
+		final TIntArrayList graphRoots = new TIntArrayList( sortedRoots.size() );
+		final TrackSchemeVertex tv = graph.vertexRef();
+		final TrackSchemeVertex root = graph.vertexRef();
+		for ( int i = 0; i < sortedRoots.size(); ++i )
+		{
+			sortedRoots.get( i, tv );
+			roots.add( tv.getInternalPoolIndex() );
+			graphRoots.add( getGraphRoot( tv, root ).getInternalPoolIndex() );
+		}
+		graph.releaseRef( tv );
+		graph.releaseRef( root );
+		previousRoots.clear();
+		previousRoots.addAll( roots );
+		previousRootGraphRoots.clear();
+		previousRootGraphRoots.addAll( graphRoots );
+	}
+
+	/**
+	 * Finds the graph root of a vertex, following the first incoming edges
+	 * like the layout does.
+	 */
+	private TrackSchemeVertex getGraphRoot( final TrackSchemeVertex v, final TrackSchemeVertex graphRoot )
+	{
+		graphRoot.refTo( v );
+		while ( !graphRoot.incomingEdges().isEmpty() )
+			graphRoot.incomingEdges().iterator().next().getSource( graphRoot );
+		return graphRoot;
+	}
+
+	/**
+	 * Adds the elements that are in only one of two sorted arrays to
+	 * {@code changed}.
+	 */
+	private static void diff( final int[] previous, final int[] current, final TIntArrayList changed )
+	{
+		int i = 0;
+		int j = 0;
+		while ( i < previous.length && j < current.length )
+		{
+			if ( previous[ i ] < current[ j ] )
+				changed.add( previous[ i++ ] );
+			else if ( previous[ i ] > current[ j ] )
+				changed.add( current[ j++ ] );
+			else
+			{
+				++i;
+				++j;
+			}
+		}
+		while ( i < previous.length )
+			changed.add( previous[ i++ ] );
+		while ( j < current.length )
+			changed.add( current[ j++ ] );
+	}
 }
@@ -0,0 +1,211 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.Arrays;
+
+import org.mastodon.graph.GraphListener;
+
+/**
+ * Per-view layout attributes of the vertices and edges of a
+ * {@link TrackSchemeGraph}.
+ * <p>
+ * A {@link TrackSchemeGraph} can be shared by several TrackScheme views, that
+ * each lay it out differently. The attributes that depend on the layout (layout
+ * X coordinate, layout timestamp, ghost flag, and indices of the screen
+ * entities created for vertices and edges) are therefore not stored in the
+ * vertex and edge pools, but in side columns owned by the
+ * {@link LineageTreeLayout} of each view, indexed by internal pool index.
+ * <p>
+ * The columns grow when vertices and edges are added to the graph, and the
+ * attributes of added vertices and edges are reset to their initial values.
+ * {@link #close()} must be called when the view is closed.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LayoutAttributes implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+{
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	private final TrackSchemeGraph< ?, ? > graph;
+
+	private double[] layoutX;
+
+	private int[] layoutTimestamp;
+
+	private boolean[] ghost;
+
+	private int[] screenVertexIndex;
+
+	private int[] screenEdgeIndex;
+
+	public LayoutAttributes( final TrackSchemeGraph< ?, ? > graph )
+	{
+		this.graph = graph;
+		layoutX = new double[ 0 ];
+		layoutTimestamp = new int[ 0 ];
+		ghost = new boolean[ 0 ];
+		screenVertexIndex = new int[ 0 ];
+		screenEdgeIndex = new int[ 0 ];
+		graphRebuilt();
+		graph.graphListeners().add( this );
+	}
+
+	/**
+	 * Unregisters from the graph.
+	 */
+	public void close()
+	{
+		graph.graphListeners().remove( this );
+	}
+
+	public double getLayoutX( final TrackSchemeVertex v )
+	{
+		return layoutX[ v.getInternalPoolIndex() ];
+	}
+
+	void setLayoutX( final TrackSchemeVertex v, final double x )
+	{
+		layoutX[ v.getInternalPoolIndex() ] = x;
+	}
+
+	/**
+	 * Layout timestamp is set when the vertex is layouted (assigned a
+	 * {@link #getLayoutX(TrackSchemeVertex) coordinate}). It is also used to
+	 * mark active vertices before a partial layout.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return layout timestamp.
+	 */
+	public int getLayoutTimestamp( final TrackSchemeVertex v )
+	{
+		return layoutTimestamp[ v.getInternalPoolIndex() ];
+	}
+
+	public void setLayoutTimestamp( final TrackSchemeVertex v, final int timestamp )
+	{
+		layoutTimestamp[ v.getInternalPoolIndex() ] = timestamp;
+	}
+
+	/**
+	 * A vertex is set to <em>ghost</em> if it is hit during a partial layout
+	 * and is marked with a timestamp &lt; the current mark.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return whether the vertex is a ghost
+	 */
+	boolean isGhost( final TrackSchemeVertex v )
+	{
+		return ghost[ v.getInternalPoolIndex() ];
+	}
+
+	void setGhost( final TrackSchemeVertex v, final boolean isGhost )
+	{
+		ghost[ v.getInternalPoolIndex() ] = isGhost;
+	}
+
+	/**
+	 * Internal pool index of last {@link ScreenVertex} that was created for
+	 * the vertex. Used for lookup when creating {@link ScreenEdge}s.
+	 *
+	 * @param v
+	 *            the vertex.
+	 * @return internal pool index of associated {@link ScreenVertex}.
+	 */
+	public int getScreenVertexIndex( final TrackSchemeVertex v )
+	{
+		return screenVertexIndex[ v.getInternalPoolIndex() ];
+	}
+
+	void setScreenVertexIndex( final TrackSchemeVertex v, final int index )
+	{
+		screenVertexIndex[ v.getInternalPoolIndex() ] = index;
+	}
+
+	/**
+	 * Internal pool index of last {@link ScreenEdge} that was created for the
+	 * edge.
+	 *
+	 * @param e
+	 *            the edge.
+	 * @return internal pool index of associated {@link ScreenEdge}.
+	 */
+	public int getScreenEdgeIndex( final TrackSchemeEdge e )
+	{
+		return screenEdgeIndex[ e.getInternalPoolIndex() ];
+	}
+
+	void setScreenEdgeIndex( final TrackSchemeEdge e, final int index )
+	{
+		screenEdgeIndex[ e.getInternalPoolIndex() ] = index;
+	}
+
+	private void resetVertex( final int id )
+	{
+		if ( id >= layoutX.length )
+		{
+			final int capacity = Math.max( id + 1, Math.max( DEFAULT_CAPACITY, 2 * layoutX.length ) );
+			final int from = layoutX.length;
+			layoutX = Arrays.copyOf( layoutX, capacity );
+			layoutTimestamp = Arrays.copyOf( layoutTimestamp, capacity );
+			ghost = Arrays.copyOf( ghost, capacity );
+			screenVertexIndex = Arrays.copyOf( screenVertexIndex, capacity );
+			Arrays.fill( layoutTimestamp, from, capacity, -1 );
+			Arrays.fill( screenVertexIndex, from, capacity, -1 );
+		}
+		layoutX[ id ] = 0;
+		layoutTimestamp[ id ] = -1;
+		ghost[ id ] = false;
+		screenVertexIndex[ id ] = -1;
+	}
+
+	private void resetEdge( final int id )
+	{
+		if ( id >= screenEdgeIndex.length )
+		{
+			final int capacity = Math.max( id + 1, Math.max( DEFAULT_CAPACITY, 2 * screenEdgeIndex.length ) );
+			final int from = screenEdgeIndex.length;
+			screenEdgeIndex = Arrays.copyOf( screenEdgeIndex, capacity );
+			Arrays.fill( screenEdgeIndex, from, capacity, -1 );
+		}
+		screenEdgeIndex[ id ] = -1;
+	}
+
+	/*
+	 * GraphListener
+	 */
+
+	@Override
+	public void graphRebuilt()
+	{
+		layoutX = new double[ 0 ];
+		layoutTimestamp = new int[ 0 ];
+		ghost = new boolean[ 0 ];
+		screenVertexIndex = new int[ 0 ];
+		screenEdgeIndex = new int[ 0 ];
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			resetVertex( v.getInternalPoolIndex() );
+		for ( final TrackSchemeEdge e : graph.edges() )
+			resetEdge( e.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void vertexAdded( final TrackSchemeVertex vertex )
+	{
+		resetVertex( vertex.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void vertexRemoved( final TrackSchemeVertex vertex )
+	{}
+
+	@Override
+	public void edgeAdded( final TrackSchemeEdge edge )
+	{
+		resetEdge( edge.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void edgeRemoved( final TrackSchemeEdge edge )
+	{}
+}
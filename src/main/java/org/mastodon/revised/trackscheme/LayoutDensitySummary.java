@@ -0,0 +1,516 @@
+package org.mastodon.revised.trackscheme;
+
+import java.util.Arrays;
+
+import org.mastodon.collection.RefList;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.trackscheme.ScreenVertex.ScreenVertexPool;
+import org.mastodon.revised.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
+import org.mastodon.revised.ui.coloring.GraphColorGenerator;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Multi-resolution summary of a {@link LineageTreeLayout}, used to paint the
+ * layout when zoomed out.
+ * <p>
+ * For each timepoint row, the layout X axis is divided in buckets of width
+ * <em>2<sup>level</sup></em>. At each level, the summary stores the occupied
+ * buckets, with the number of vertices they contain and the number of edges
+ * incoming to these vertices from laid out vertices. Buckets are stored
+ * sparsely, so that the summary takes about twice the memory of the laid out
+ * vertex ids.
+ * <p>
+ * {@link #cropAndScale(ScreenTransform, ScreenEntities, int, int, SelectionModel, TrackSchemeVertex, GraphColorGenerator)}
+ * creates {@link ScreenVertexRange}s for dense runs of occupied buckets at the
+ * level where a bucket is about one pixel wide. This takes time proportional to
+ * the number of visible rows and pixels, plus the number of vertices painted
+ * individually, instead of the number of visible vertices.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class LayoutDensitySummary
+{
+	/**
+	 * Summary of one timepoint row.
+	 */
+	private static class Row
+	{
+		/**
+		 * Sorted indices of the occupied buckets, by level.
+		 */
+		final int[][] buckets;
+
+		/**
+		 * Number of vertices in each occupied bucket, by level.
+		 */
+		final int[][] vertexCounts;
+
+		/**
+		 * Number of incoming edges of the vertices in each occupied bucket, by
+		 * level.
+		 */
+		final int[][] edgeCounts;
+
+		Row( final int numLevels )
+		{
+			buckets = new int[ numLevels ][];
+			vertexCounts = new int[ numLevels ][];
+			edgeCounts = new int[ numLevels ][];
+		}
+	}
+
+	/**
+	 * Minimal number of vertices in a run of buckets painted as a
+	 * {@link ScreenVertexRange}.
+	 */
+	private static final int MIN_RANGE_SIZE = 3;
+
+	/**
+	 * Occupied buckets closer than this number of pixels are merged in runs.
+	 */
+	private static final double MIN_RANGE_GAP_PIXELS = 2;
+
+	private final TrackSchemeGraph< ?, ? > graph;
+
+	private final LayoutAttributes attributes;
+
+	private final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices;
+
+	private final TIntArrayList timepoints;
+
+	private final TIntObjectMap< Row > rows;
+
+	private final int numLevels;
+
+	/**
+	 * Builds the summary of a layout.
+	 *
+	 * @param graph
+	 *            the laid out graph.
+	 * @param attributes
+	 *            the layout attributes of the graph vertices.
+	 * @param timepoints
+	 *            the ordered timepoints of the layout.
+	 * @param timepointToOrderedVertices
+	 *            the laid out vertices of each timepoint, ordered by layout X.
+	 * @param maxLayoutX
+	 *            the maximum layout X of the layout.
+	 * @param timestamp
+	 *            the timestamp of the layout. Only edges from vertices with
+	 *            this timestamp are counted.
+	 */
+	LayoutDensitySummary(
+			final TrackSchemeGraph< ?, ? > graph,
+			final LayoutAttributes attributes,
+			final TIntArrayList timepoints,
+			final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices,
+			final double maxLayoutX,
+			final int timestamp )
+	{
+		this.graph = graph;
+		this.attributes = attributes;
+		this.timepointToOrderedVertices = timepointToOrderedVertices;
+		this.timepoints = new TIntArrayList( timepoints );
+		this.rows = new TIntObjectHashMap<>( 2 * timepoints.size() );
+		int levels = 1;
+		while ( levels < 31 && ( ( long ) Math.max( maxLayoutX, 0 ) >> ( levels - 1 ) ) > 0 )
+			++levels;
+		this.numLevels = levels;
+
+		final TrackSchemeVertex v = graph.vertexRef();
+		final TrackSchemeVertex source = graph.vertexRef();
+		final TIntIterator iter = timepoints.iterator();
+		while ( iter.hasNext() )
+		{
+			final int timepoint = iter.next();
+			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
+			final int n = vertexList.size();
+			final Row row = new Row( numLevels );
+
+			// Level 0, from the vertices.
+			final int[] buckets = new int[ n ];
+			final int[] vertexCounts = new int[ n ];
+			final int[] edgeCounts = new int[ n ];
+			int size = 0;
+			for ( int i = 0; i < n; ++i )
+			{
+				vertexList.get( i, v );
+				final int bucket = ( int ) Math.floor( attributes.getLayoutX( v ) );
+				int edges = 0;
+				for ( final TrackSchemeEdge edge : v.incomingEdges() )
+					if ( attributes.getLayoutTimestamp( edge.getSource( source ) ) == timestamp )
+						++edges;
+				if ( size == 0 || buckets[ size - 1 ] != bucket )
+				{
+					buckets[ size ] = bucket;
+					vertexCounts[ size ] = 0;
+					edgeCounts[ size ] = 0;
+					++size;
+				}
+				++vertexCounts[ size - 1 ];
+				edgeCounts[ size - 1 ] += edges;
+			}
+			row.buckets[ 0 ] = Arrays.copyOf( buckets, size );
+			row.vertexCounts[ 0 ] = Arrays.copyOf( vertexCounts, size );
+			row.edgeCounts[ 0 ] = Arrays.copyOf( edgeCounts, size );
+
+			// Coarser levels, by merging pairs of buckets.
+			for ( int level = 1; level < numLevels; ++level )
+			{
+				final int[] fb = row.buckets[ level - 1 ];
+				final int[] fv = row.vertexCounts[ level - 1 ];
+				final int[] fe = row.edgeCounts[ level - 1 ];
+				size = 0;
+				for ( int i = 0; i < fb.length; ++i )
+				{
+					final int bucket = fb[ i ] >> 1;
+					if ( size == 0 || buckets[ size - 1 ] != bucket )
+					{
+						buckets[ size ] = bucket;
+						vertexCounts[ size ] = 0;
+						edgeCounts[ size ] = 0;
+						++size;
+					}
+					vertexCounts[ size - 1 ] += fv[ i ];
+					edgeCounts[ size - 1 ] += fe[ i ];
+				}
+				row.buckets[ level ] = Arrays.copyOf( buckets, size );
+				row.vertexCounts[ level ] = Arrays.copyOf( vertexCounts, size );
+				row.edgeCounts[ level ] = Arrays.copyOf( edgeCounts, size );
+			}
+			rows.put( timepoint, row );
+		}
+		graph.releaseRef( v );
+		graph.releaseRef( source );
+	}
+
+	/**
+	 * Returns the summary level whose buckets are at least as wide as the
+	 * specified number of layout X units.
+	 *
+	 * @param layoutXPerPixel
+	 *            the number of layout X units per pixel.
+	 * @return the summary level.
+	 */
+	int getLevel( final double layoutXPerPixel )
+	{
+		int level = 0;
+		while ( level < numLevels - 1 && ( 1 << level ) < layoutXPerPixel )
+			++level;
+		return level;
+	}
+
+	/**
+	 * Returns the number of vertices in the specified bucket.
+	 *
+	 * @param timepoint
+	 *            the timepoint row.
+	 * @param level
+	 *            the summary level.
+	 * @param bucket
+	 *            the bucket index, in units of <em>2<sup>level</sup></em>
+	 *            layout X.
+	 * @return the number of vertices in the bucket.
+	 */
+	int getVertexCount( final int timepoint, final int level, final int bucket )
+	{
+		final Row row = rows.get( timepoint );
+		if ( row == null )
+			return 0;
+		final int i = Arrays.binarySearch( row.buckets[ level ], bucket );
+		return i < 0 ? 0 : row.vertexCounts[ level ][ i ];
+	}
+
+	/**
+	 * Returns the number of incoming edges of the vertices in the specified
+	 * bucket.
+	 *
+	 * @param timepoint
+	 *            the timepoint row.
+	 * @param level
+	 *            the summary level.
+	 * @param bucket
+	 *            the bucket index, in units of <em>2<sup>level</sup></em>
+	 *            layout X.
+	 * @return the number of incoming edges in the bucket.
+	 */
+	int getEdgeCount( final int timepoint, final int level, final int bucket )
+	{
+		final Row row = rows.get( timepoint );
+		if ( row == null )
+			return 0;
+		final int i = Arrays.binarySearch( row.buckets[ level ], bucket );
+		return i < 0 ? 0 : row.edgeCounts[ level ][ i ];
+	}
+
+	/**
+	 * Creates screen entities for the part of the layout visible with the
+	 * specified transform.
+	 * <p>
+	 * In each timepoint row, consecutive occupied buckets closer than
+	 * {@link #MIN_RANGE_GAP_PIXELS} are merged in runs. A run of at least
+	 * {@link #MIN_RANGE_SIZE} vertices is what the exact crop collapses into
+	 * a dense range, and is painted as a {@link ScreenVertexRange}. A range
+	 * spans from the previous timepoint row if it has incoming edges. Vertices
+	 * of smaller runs are painted as {@link ScreenVertex}s, with the
+	 * {@link ScreenEdge}s from their painted parents. So are the selected and
+	 * focused vertices inside ranges, so that they remain visible.
+	 *
+	 * @param transform
+	 *            the layout-to-screen transform.
+	 * @param screenEntities
+	 *            the screen entities to add vertices, edges and ranges to.
+	 * @param decorationsOffsetX
+	 *            the screen entities are shifted in X by this amount.
+	 * @param decorationsOffsetY
+	 *            the screen entities are shifted in Y by this amount.
+	 * @param selection
+	 *            the selection model.
+	 * @param focused
+	 *            the focused vertex, or <code>null</code>.
+	 * @param colorGenerator
+	 *            the color generator for vertices and edges.
+	 */
+	void cropAndScale(
+			final ScreenTransform transform,
+			final ScreenEntities screenEntities,
+			final int decorationsOffsetX,
+			final int decorationsOffsetY,
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final TrackSchemeVertex focused,
+			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator )
+	{
+		final double minX = transform.getMinX();
+		final double maxX = transform.getMaxX();
+		final double minY = transform.getMinY();
+		final double maxY = transform.getMaxY();
+		final double xScale = transform.getScaleX();
+		final double yScale = transform.getScaleY();
+
+		final int level = getLevel( 1 / xScale );
+		final int width = 1 << level;
+		final int maxBucketGap = Math.max( 1, ( int ) ( MIN_RANGE_GAP_PIXELS / xScale / width ) );
+		final int minBucket = ( ( int ) Math.floor( minX ) >> level ) - 1;
+		final int maxBucket = ( ( int ) Math.floor( maxX ) >> level ) + 1;
+
+		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
+		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
+		final ScreenVertexPool screenVertexPool = screenEntities.getVertexPool();
+		final ScreenVertexRangePool screenRangePool = screenEntities.getRangePool();
+		final TrackSchemeVertex v1 = graph.vertexRef();
+		final TrackSchemeVertex v2 = graph.vertexRef();
+		final ScreenVertex sv = screenVertexPool.createRef();
+		final ScreenEdge se = screenEntities.getEdgePool().createRef();
+		final ScreenVertexRange sr = screenRangePool.createRef();
+
+		final TIntObjectMap< TIntArrayList > emphasized = getEmphasized( selection, focused, level, minBucket, maxBucket, minY, maxY, v1 );
+
+		int t = timepoints.binarySearch( ( int ) Math.floor( minY ) - 1 );
+		if ( t < 0 )
+			t = -1 - t;
+		for ( ; t < timepoints.size(); ++t )
+		{
+			final int timepoint = timepoints.getQuick( t );
+			if ( timepoint - 1 > maxY )
+				break;
+
+			final int timepointStartScreenVertexIndex = screenVertices.size();
+			// screen y of vertices of timepoint
+			final double y = ( timepoint - minY ) * yScale + decorationsOffsetY;
+			// screen y of vertices of (timepoint-1)
+			final double prevY = ( timepoint - 1 - minY ) * yScale + decorationsOffsetY;
+
+			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
+			final TIntArrayList rowEmphasized = emphasized.get( timepoint );
+			int e = 0;
+			double prevX = Double.NEGATIVE_INFINITY;
+			double minVertexScreenDist = yScale;
+
+			final Row row = rows.get( timepoint );
+			final int[] buckets = row.buckets[ level ];
+			final int[] vertexCounts = row.vertexCounts[ level ];
+			final int[] edgeCounts = row.edgeCounts[ level ];
+			int i = Arrays.binarySearch( buckets, minBucket );
+			if ( i < 0 )
+				i = -1 - i;
+			while ( i < buckets.length && buckets[ i ] <= maxBucket )
+			{
+				// Extend run over close occupied buckets.
+				final int first = buckets[ i ];
+				int last = first;
+				int vertices = vertexCounts[ i ];
+				int edges = edgeCounts[ i ];
+				while ( ++i < buckets.length && buckets[ i ] - last <= maxBucketGap && buckets[ i ] <= maxBucket )
+				{
+					last = buckets[ i ];
+					vertices += vertexCounts[ i ];
+					edges += edgeCounts[ i ];
+				}
+
+				// Indices of the run vertices in the vertex list.
+				final int fromIndex = vertexList.binarySearch( Math.nextDown( ( double ) first * width ) ) + 1;
+				final int toIndex = vertexList.binarySearch( Math.nextDown( ( double ) ( last + 1 ) * width ) ) + 1;
+
+				if ( vertices >= MIN_RANGE_SIZE )
+				{
+					final double svMinX = ( ( double ) first * width - minX ) * xScale + decorationsOffsetX;
+					final double svMaxX = ( ( double ) ( last + 1 ) * width - minX ) * xScale + decorationsOffsetX;
+					final double svMinY = edges > 0 ? prevY : y - 1;
+					vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, svMinY, y ) );
+					minVertexScreenDist = 0;
+
+					if ( rowEmphasized != null )
+					{
+						while ( e < rowEmphasized.size() && rowEmphasized.getQuick( e ) < fromIndex )
+							++e;
+						for ( ; e < rowEmphasized.size() && rowEmphasized.getQuick( e ) < toIndex; ++e )
+						{
+							vertexList.get( rowEmphasized.getQuick( e ), v1 );
+							addScreenVertex( v1, minX, xScale, y, decorationsOffsetX, screenEntities, selection, colorGenerator, v2, sv, se );
+						}
+					}
+				}
+				else
+				{
+					for ( int k = fromIndex; k < toIndex; ++k )
+					{
+						vertexList.get( k, v1 );
+						final double x = addScreenVertex( v1, minX, xScale, y, decorationsOffsetX, screenEntities, selection, colorGenerator, v2, sv, se );
+						minVertexScreenDist = Math.min( minVertexScreenDist, x - prevX );
+						prevX = x;
+					}
+				}
+			}
+			for ( int k = timepointStartScreenVertexIndex; k < screenVertices.size(); ++k )
+				screenVertices.get( k, sv ).setVertexDist( minVertexScreenDist );
+		}
+
+		screenRangePool.releaseRef( sr );
+		screenEntities.getEdgePool().releaseRef( se );
+		screenVertexPool.releaseRef( sv );
+		graph.releaseRef( v1 );
+		graph.releaseRef( v2 );
+	}
+
+	/**
+	 * Creates the screen vertex of the specified layout vertex, and the screen
+	 * edges from its incoming edges whose source has a screen vertex.
+	 *
+	 * @return the screen X coordinate of the vertex.
+	 */
+	private double addScreenVertex(
+			final TrackSchemeVertex v1,
+			final double minX,
+			final double xScale,
+			final double y,
+			final int decorationsOffsetX,
+			final ScreenEntities screenEntities,
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator,
+			final TrackSchemeVertex v2,
+			final ScreenVertex sv,
+			final ScreenEdge se )
+	{
+		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
+		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
+
+		final int v1si = screenVertices.size();
+		attributes.setScreenVertexIndex( v1, v1si );
+		final int id = v1.getInternalPoolIndex();
+		final double x = ( attributes.getLayoutX( v1 ) - minX ) * xScale + decorationsOffsetX;
+		final boolean selected = selection.isSelected( v1 );
+		final boolean ghost = attributes.isGhost( v1 );
+		screenEntities.getVertexPool().create( sv ).init( id, x, y, selected, ghost, colorGenerator.color( v1 ) );
+		screenVertices.add( sv );
+
+		for ( final TrackSchemeEdge edge : v1.incomingEdges() )
+		{
+			edge.getSource( v2 );
+			final int v2si = attributes.getScreenVertexIndex( v2 );
+			if ( v2si >= 0 && v2si < screenVertices.size() && screenVertices.get( v2si, sv ).getTrackSchemeVertexId() == v2.getInternalPoolIndex() )
+			{
+				final int eid = edge.getInternalPoolIndex();
+				final boolean eselected = selection.isSelected( edge );
+				screenEntities.getEdgePool().create( se ).init( eid, v2si, v1si, eselected, colorGenerator.color( edge, v2, v1 ) );
+				screenEdges.add( se );
+				attributes.setScreenEdgeIndex( edge, se.getInternalPoolIndex() );
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Returns the sorted vertex list indices of the selected and focused
+	 * vertices in the crop region, by timepoint.
+	 */
+	private TIntObjectMap< TIntArrayList > getEmphasized(
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final TrackSchemeVertex focused,
+			final int level,
+			final int minBucket,
+			final int maxBucket,
+			final double minY,
+			final double maxY,
+			final TrackSchemeVertex ref )
+	{
+		final TIntObjectMap< TIntArrayList > emphasized = new TIntObjectHashMap<>();
+		for ( final TrackSchemeVertex v : selection.getSelectedVertices() )
+			addEmphasized( v, level, minBucket, maxBucket, minY, maxY, emphasized, ref );
+		if ( focused != null )
+			addEmphasized( focused, level, minBucket, maxBucket, minY, maxY, emphasized, ref );
+
+		for ( final TIntArrayList indices : emphasized.valueCollection() )
+		{
+			indices.sort();
+			// Remove the focused vertex if it is also selected.
+			int n = 0;
+			for ( int i = 0; i < indices.size(); ++i )
+				if ( n == 0 || indices.getQuick( i ) != indices.getQuick( n - 1 ) )
+					indices.setQuick( n++, indices.getQuick( i ) );
+			indices.remove( n, indices.size() - n );
+		}
+		return emphasized;
+	}
+
+	private void addEmphasized(
+			final TrackSchemeVertex v,
+			final int level,
+			final int minBucket,
+			final int maxBucket,
+			final double minY,
+			final double maxY,
+			final TIntObjectMap< TIntArrayList > emphasized,
+			final TrackSchemeVertex ref )
+	{
+		final int timepoint = v.getTimepoint();
+		if ( timepoint + 1 < minY || timepoint - 1 > maxY )
+			return;
+		final double x = attributes.getLayoutX( v );
+		final int bucket = ( int ) Math.floor( x ) >> level;
+		if ( bucket < minBucket || bucket > maxBucket )
+			return;
+		final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
+		if ( vertexList == null )
+			return;
+
+		// Find the vertex in the list, vertices may share the same layout X.
+		final int id = v.getInternalPoolIndex();
+		int i = vertexList.binarySearch( x );
+		while ( i >= 0 && vertexList.get( i, ref ).getInternalPoolIndex() != id && attributes.getLayoutX( ref ) == x )
+			--i;
+		if ( i < 0 || vertexList.get( i, ref ).getInternalPoolIndex() != id )
+			return;
+
+		TIntArrayList indices = emphasized.get( timepoint );
+		if ( indices == null )
+		{
+			indices = new TIntArrayList();
+			emphasized.put( timepoint, indices );
+		}
+		indices.add( i );
+	}
+}
@@ -0,0 +1,338 @@
+package org.mastodon.revised.trackscheme;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+
+/**
+ * A kd-tree over the laid out vertices of a {@link LineageTreeLayout}, in
+ * layout space {@code (layoutX, timepoint)}, used for picking and box
+ * selection.
+ * <p>
+ * The tree is stored implicitly in primitive arrays: the root of the subtree
+ * of elements {@code [lo, hi)} is the median element {@code (lo + hi) / 2},
+ * and subtrees split alternately along X and along timepoints. Subtrees of at
+ * most {@link #LEAF_SIZE} elements are scanned linearly.
+ * <p>
+ * As in {@link LineageTreeLayout}, a vertex at {@code (x, t)} lies in the
+ * rectangle with corners {@code (lx1, ly1)} and {@code (lx2, ly2)} if
+ * {@code min(lx1, lx2) < x <= max(lx1, lx2)} and
+ * {@code min(ly1, ly2) <= t <= max(ly1, ly2)}. Distances are Euclidean in
+ * layout space, with Y distances multiplied by an aspect ratio.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class LayoutVertexIndex
+{
+	private static final int LEAF_SIZE = 8;
+
+	private final int size;
+
+	private final double[] xs;
+
+	private final double[] ts;
+
+	private final int[] ids;
+
+	/**
+	 * Builds the index of the vertices of a layout.
+	 *
+	 * @param attributes
+	 *            the layout attributes of the graph vertices.
+	 * @param timepoints
+	 *            the ordered timepoints of the layout.
+	 * @param timepointToOrderedVertices
+	 *            the laid out vertices of each timepoint.
+	 */
+	LayoutVertexIndex(
+			final LayoutAttributes attributes,
+			final TIntArrayList timepoints,
+			final TIntObjectMap< TrackSchemeVertexList > timepointToOrderedVertices )
+	{
+		int n = 0;
+		TIntIterator iter = timepoints.iterator();
+		while ( iter.hasNext() )
+			n += timepointToOrderedVertices.get( iter.next() ).size();
+		size = n;
+		xs = new double[ n ];
+		ts = new double[ n ];
+		ids = new int[ n ];
+
+		int i = 0;
+		iter = timepoints.iterator();
+		while ( iter.hasNext() )
+		{
+			final int timepoint = iter.next();
+			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoint );
+			final TrackSchemeVertex v = vertexList.createRef();
+			for ( int j = 0; j < vertexList.size(); ++j )
+			{
+				vertexList.get( j, v );
+				xs[ i ] = attributes.getLayoutX( v );
+				ts[ i ] = timepoint;
+				ids[ i ] = v.getInternalPoolIndex();
+				++i;
+			}
+			vertexList.releaseRef( v );
+		}
+		build( 0, size, 0 );
+	}
+
+	/**
+	 * Returns the number of indexed vertices.
+	 *
+	 * @return the number of vertices.
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the internal pool index of the vertex closest to {@code (x, y)}.
+	 *
+	 * @param x
+	 *            the layout X coordinate.
+	 * @param y
+	 *            the layout Y coordinate.
+	 * @param aspectRatioXtoY
+	 *            the factor applied to Y distances.
+	 * @return the internal pool index of the closest vertex, or -1 if the
+	 *         index is empty.
+	 */
+	int nearest( final double x, final double y, final double aspectRatioXtoY )
+	{
+		final Search search = new Search( x, y, aspectRatioXtoY,
+				Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY );
+		search.nearest( 0, size, 0 );
+		return search.bestId;
+	}
+
+	/**
+	 * Returns the internal pool index of the vertex closest to
+	 * {@code (lx2, ly2)}, of the vertices in the rectangle with corners
+	 * {@code (lx1, ly1)} and {@code (lx2, ly2)}.
+	 *
+	 * @param lx1
+	 *            the x coordinate of the first corner.
+	 * @param ly1
+	 *            the y coordinate of the first corner.
+	 * @param lx2
+	 *            the x coordinate of the second corner.
+	 * @param ly2
+	 *            the y coordinate of the second corner.
+	 * @param aspectRatioXtoY
+	 *            the factor applied to Y distances.
+	 * @return the internal pool index of the closest vertex, or -1 if there is
+	 *         no vertex in the rectangle.
+	 */
+	int nearestWithin( final double lx1, final double ly1, final double lx2, final double ly2, final double aspectRatioXtoY )
+	{
+		final Search search = new Search( lx2, ly2, aspectRatioXtoY,
+				Math.min( lx1, lx2 ), Math.max( lx1, lx2 ), Math.min( ly1, ly2 ), Math.max( ly1, ly2 ) );
+		search.nearest( 0, size, 0 );
+		return search.bestId;
+	}
+
+	/**
+	 * Adds the internal pool indices of the vertices in the rectangle with
+	 * corners {@code (lx1, ly1)} and {@code (lx2, ly2)} to the specified list.
+	 *
+	 * @param lx1
+	 *            the x coordinate of the first corner.
+	 * @param ly1
+	 *            the y coordinate of the first corner.
+	 * @param lx2
+	 *            the x coordinate of the second corner.
+	 * @param ly2
+	 *            the y coordinate of the second corner.
+	 * @param result
+	 *            the list to add indices to.
+	 */
+	void within( final double lx1, final double ly1, final double lx2, final double ly2, final TIntArrayList result )
+	{
+		within( 0, size, 0,
+				Math.min( lx1, lx2 ), Math.max( lx1, lx2 ), Math.min( ly1, ly2 ), Math.max( ly1, ly2 ),
+				result );
+	}
+
+	private void within(
+			final int lo,
+			final int hi,
+			final int depth,
+			final double minX,
+			final double maxX,
+			final double minY,
+			final double maxY,
+			final TIntArrayList result )
+	{
+		if ( hi - lo <= LEAF_SIZE )
+		{
+			for ( int i = lo; i < hi; ++i )
+				if ( contains( i, minX, maxX, minY, maxY ) )
+					result.add( ids[ i ] );
+			return;
+		}
+		final int mid = ( lo + hi ) >>> 1;
+		if ( contains( mid, minX, maxX, minY, maxY ) )
+			result.add( ids[ mid ] );
+		final double[] coords = ( depth & 1 ) == 0 ? xs : ts;
+		final double split = coords[ mid ];
+		final double min = ( depth & 1 ) == 0 ? minX : minY;
+		final double max = ( depth & 1 ) == 0 ? maxX : maxY;
+		if ( min <= split )
+			within( lo, mid, depth + 1, minX, maxX, minY, maxY, result );
+		if ( max >= split )
+			within( mid + 1, hi, depth + 1, minX, maxX, minY, maxY, result );
+	}
+
+	private boolean contains( final int i, final double minX, final double maxX, final double minY, final double maxY )
+	{
+		final double x = xs[ i ];
+		final double t = ts[ i ];
+		return x > minX && x <= maxX && t >= minY && t <= maxY;
+	}
+
+	/**
+	 * State of a nearest neighbor search, restricted to a rectangle.
+	 */
+	private class Search
+	{
+		private final double x;
+
+		private final double y;
+
+		private final double ratio;
+
+		private final double minX;
+
+		private final double maxX;
+
+		private final double minY;
+
+		private final double maxY;
+
+		private double bestSquDist;
+
+		private int bestId;
+
+		Search( final double x, final double y, final double ratio, final double minX, final double maxX, final double minY, final double maxY )
+		{
+			this.x = x;
+			this.y = y;
+			this.ratio = ratio;
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+			bestSquDist = Double.POSITIVE_INFINITY;
+			bestId = -1;
+		}
+
+		void nearest( final int lo, final int hi, final int depth )
+		{
+			if ( hi - lo <= LEAF_SIZE )
+			{
+				for ( int i = lo; i < hi; ++i )
+					test( i );
+				return;
+			}
+			final int mid = ( lo + hi ) >>> 1;
+			test( mid );
+			final boolean splitX = ( depth & 1 ) == 0;
+			final double split = splitX ? xs[ mid ] : ts[ mid ];
+			final double diff = splitX ? x - split : ( y - split ) * ratio;
+			final boolean leftInRect = splitX ? minX <= split : minY <= split;
+			final boolean rightInRect = splitX ? maxX >= split : maxY >= split;
+			final boolean leftFirst = diff < 0;
+			if ( leftFirst ? leftInRect : rightInRect )
+			{
+				if ( leftFirst )
+					nearest( lo, mid, depth + 1 );
+				else
+					nearest( mid + 1, hi, depth + 1 );
+			}
+			if ( diff * diff < bestSquDist && ( leftFirst ? rightInRect : leftInRect ) )
+			{
+				if ( leftFirst )
+					nearest( mid + 1, hi, depth + 1 );
+				else
+					nearest( lo, mid, depth + 1 );
+			}
+		}
+
+		private void test( final int i )
+		{
+			if ( !contains( i, minX, maxX, minY, maxY ) )
+				return;
+			final double dx = x - xs[ i ];
+			final double dy = ( y - ts[ i ] ) * ratio;
+			final double d2 = dx * dx + dy * dy;
+			if ( d2 < bestSquDist )
+			{
+				bestSquDist = d2;
+				bestId = ids[ i ];
+			}
+		}
+	}
+
+	/*
+	 * Tree construction.
+	 */
+
+	private void build( final int lo, final int hi, final int depth )
+	{
+		if ( hi - lo <= LEAF_SIZE )
+			return;
+		final int mid = ( lo + hi ) >>> 1;
+		select( lo, hi - 1, mid, ( depth & 1 ) == 0 ? xs : ts );
+		build( lo, mid, depth + 1 );
+		build( mid + 1, hi, depth + 1 );
+	}
+
+	/**
+	 * Partially sorts elements {@code [left, right]} so that element
+	 * {@code k} is the one that would be there if they were sorted by the
+	 * specified coordinates, with smaller or equal elements before and larger
+	 * or equal elements after. Partitions in three ways, because many
+	 * vertices share the same timepoint.
+	 */
+	private void select( int left, int right, final int k, final double[] coords )
+	{
+		while ( right > left )
+		{
+			final double pivot = coords[ ( left + right ) >>> 1 ];
+			int lt = left;
+			int gt = right;
+			int i = left;
+			while ( i <= gt )
+			{
+				if ( coords[ i ] < pivot )
+					swap( lt++, i++ );
+				else if ( coords[ i ] > pivot )
+					swap( i, gt-- );
+				else
+					++i;
+			}
+			if ( k < lt )
+				right = lt - 1;
+			else if ( k > gt )
+				left = gt + 1;
+			else
+				return;
+		}
+	}
+
+	private void swap( final int i, final int j )
+	{
+		final double x = xs[ i ];
+		xs[ i ] = xs[ j ];
+		xs[ j ] = x;
+		final double t = ts[ i ];
+		ts[ i ] = ts[ j ];
+		ts[ j ] = t;
+		final int id = ids[ i ];
+		ids[ i ] = ids[ j ];
+		ids[ j ] = id;
+	}
+}
@@ -1,14 +1,21 @@
 package org.mastodon.revised.trackscheme;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.collection.RefSet;
 import org.mastodon.graph.Edges;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.model.FocusModel;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.revised.trackscheme.ScreenEdge.ScreenEdgePool;
 import org.mastodon.revised.trackscheme.ScreenVertex.ScreenVertexPool;
@@ -17,13 +24,17 @@ import org.mastodon.revised.ui.coloring.ColorGenerator;
 import org.mastodon.revised.ui.coloring.GraphColorGenerator;
 import org.mastodon.util.Listeners;
 
-import gnu.trove.iterator.TIntAlternatingIterator;
 import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TDoubleList;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TIntObjectArrayMap;
+import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.RealLocalizable;
 
 /**
@@ -72,6 +83,17 @@ public class LineageTreeLayout
 
 	private final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection;
 
+	private final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus;
+
+	/**
+	 * The layout coordinates, timestamps, ghost flags and screen entity
+	 * indices of the vertices and edges of the {@link #graph}, specific to
+	 * this layout.
+	 */
+	private final LayoutAttributes attributes;
+
+	private final GraphChangeTracker changeTracker;
+
 	private final Listeners.List< LayoutListener > listeners;
 
 	/**
@@ -89,7 +111,7 @@ public class LineageTreeLayout
 	/**
 	 * The mark timestamp for the current layout. Context trackscheme marks
 	 * vertices that should be laid out by setting their
-	 * {@link TrackSchemeVertex#getLayoutTimestamp() layout timestamp} to a mark
+	 * {@link LayoutAttributes#getLayoutTimestamp(TrackSchemeVertex) layout timestamp} to a mark
 	 * value that is higher than any previously assigned timestamp. During
 	 * layout, vertices marked with a timestamp &lt; {@link #mark}) are marked
 	 * as ghosts. Additionally, vertices marked with a timestamp &lt;
@@ -128,6 +150,18 @@ public class LineageTreeLayout
 	 */
 	private static final double MIN_COLUMN_WIDTH = 30;
 
+	/**
+	 * The number of layout X units per pixel above which screen entities are
+	 * created from the {@link LayoutDensitySummary}.
+	 */
+	private static final double DENSITY_SUMMARY_MIN_LAYOUT_X_PER_PIXEL = 2;
+
+	/**
+	 * The number of vertices in the graph below which layouts are not done in
+	 * parallel.
+	 */
+	private static final int PARALLEL_MIN_VERTICES = 50000;
+
 	/**
 	 * The column layout X coordinates.
 	 */
@@ -138,12 +172,83 @@ public class LineageTreeLayout
 	 */
 	private final RefList< TrackSchemeVertex > currentLayoutColumnRoot;
 
+	/**
+	 * The map that {@link #appendToOrderedVertices(TrackSchemeVertex)} adds
+	 * laid out vertices to. This is {@link #timepointToOrderedVertices},
+	 * except when laying out single trees during an incremental layout.
+	 */
+	private TIntObjectMap< TrackSchemeVertexList > orderedVertices;
+
+	/**
+	 * Whether the current layout is a layout of all graph roots (see
+	 * {@link #layout()}), that can be updated incrementally.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Columns of the current layout that contain vertices or edges that were
+	 * added or removed since the layout.
+	 */
+	private final BitSet dirtyColumns;
+
+	/**
+	 * Whether graph changes since the current layout cannot be handled by an
+	 * incremental layout.
+	 */
+	private boolean fullLayoutRequired;
+
+	/**
+	 * Whether the current layout is a context layout (see
+	 * {@link #layout(Collection, int)}) that can be updated incrementally,
+	 * that is, the graph did not change since.
+	 */
+	private boolean contextIncremental;
+
+	/**
+	 * Whether the trees of graph roots can be laid out in parallel.
+	 */
+	private boolean parallel;
+
+	/**
+	 * Summary of the current layout used when zoomed out. Built on demand,
+	 * and discarded when the layout changes.
+	 */
+	private LayoutDensitySummary densitySummary;
+
+	/**
+	 * Spatial index of the vertices of the current layout, used for picking
+	 * and box selection. Built on demand, and discarded when the layout
+	 * changes.
+	 */
+	private LayoutVertexIndex vertexIndex;
+
 	public LineageTreeLayout(
 			final TrackSchemeGraph< ?, ? > graph,
 			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection )
+	{
+		this( graph, selection, null );
+	}
+
+	/**
+	 * Creates a layout of the specified graph.
+	 *
+	 * @param graph
+	 *            the graph to lay out.
+	 * @param selection
+	 *            the selection model.
+	 * @param focus
+	 *            the focus model, used to keep the focused vertex visible when
+	 *            zoomed out. Can be <code>null</code>.
+	 */
+	public LineageTreeLayout(
+			final TrackSchemeGraph< ?, ? > graph,
+			final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection,
+			final FocusModel< TrackSchemeVertex, TrackSchemeEdge > focus )
 	{
 		this.graph = graph;
 		this.selection = selection;
+		this.focus = focus;
+		attributes = new LayoutAttributes( graph );
 		listeners = new Listeners.SynchronizedList<>();
 		rightmost = 0;
 		timestamp = 0;
@@ -151,8 +256,34 @@ public class LineageTreeLayout
 		timepointToOrderedVertices = new TIntObjectArrayMap< >();
 		currentLayoutColumnX = new TDoubleArrayList();
 		currentLayoutColumnRoot = RefCollections.createRefList( graph.vertices() );
+		orderedVertices = timepointToOrderedVertices;
+		dirtyColumns = new BitSet();
+		parallel = true;
 		stack = new ArrayList<>();
 		stack.add( new StackFrame( null ) );
+		changeTracker = new GraphChangeTracker();
+		graph.graphListeners().add( changeTracker );
+	}
+
+	/**
+	 * Unregisters this layout from the graph. The layout cannot be used
+	 * anymore after this call.
+	 */
+	public void close()
+	{
+		graph.graphListeners().remove( changeTracker );
+		attributes.close();
+	}
+
+	/**
+	 * Returns the layout coordinates, timestamps and ghost flags that this
+	 * layout assigns to the vertices of the graph.
+	 *
+	 * @return the layout attributes.
+	 */
+	public LayoutAttributes getLayoutAttributes()
+	{
+		return attributes;
 	}
 
 	/**
@@ -160,10 +291,22 @@ public class LineageTreeLayout
 	 * <p>
 	 * This calls {@link #layout(Collection, int)} with parameter {@code mark = -1},
 	 * that is, no vertices will me marked as ghosts.
+	 * <p>
+	 * If the previous layout was also a layout of the graph roots, only the
+	 * trees that were modified since are laid out again. The columns of the
+	 * other trees are shifted in X to make room, and the modified trees are
+	 * spliced into the {@link TrackSchemeVertexList}s of their timepoints.
+	 * The result is the same as that of a full layout. A full layout is done
+	 * when modifications involve vertices with several parents, or when they
+	 * change the order of the untouched trees.
 	 */
 	public void layout()
 	{
-		layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ), -1 );
+		if ( !layoutIncremental() )
+		{
+			layout( LexicographicalVertexOrder.sort( graph, graph.getRoots() ), -1 );
+			incremental = true;
+		}
 	}
 
 	/**
@@ -189,9 +332,9 @@ public class LineageTreeLayout
 	 * in the layout, it sets their layout timestamp to a value higher than that
 	 * used in any previous layout (see {@link #nextLayoutTimestamp()}). During
 	 * layout, it is checked whether a vertex's
-	 * {@link TrackSchemeVertex#getLayoutTimestamp() timestamp} &lt;
+	 * {@link LayoutAttributes#getLayoutTimestamp(TrackSchemeVertex) timestamp} &lt;
 	 * {@code mark}. In this case, the vertex is marked as a ghost. If
-	 * additionally the vertex's {@link TrackSchemeVertex#getLayoutTimestamp()
+	 * additionally the vertex's {@link LayoutAttributes#getLayoutTimestamp(TrackSchemeVertex)
 	 * timestamp} &lt; {@code mark-1}, it is treated as a leaf node in the
 	 * layout.
 	 *
@@ -203,15 +346,33 @@ public class LineageTreeLayout
 	 */
 	public void layout( final Collection< TrackSchemeVertex > layoutRoots, final int mark )
 	{
+		incremental = false;
+		contextIncremental = false;
+		dirtyColumns.clear();
+		fullLayoutRequired = false;
 		++timestamp;
 		rightmost = 0;
 		timepoints.clear();
 		timepointToOrderedVertices.clear();
 		currentLayoutColumnX.clear();
 		currentLayoutColumnRoot.clear();
+		this.mark = mark;
+		if ( parallel
+				&& mark < 0
+				&& layoutRoots.size() > 1
+				&& graph.vertices().size() >= PARALLEL_MIN_VERTICES )
+		{
+			if ( layoutParallel( layoutRoots ) )
+			{
+				notifyListeners();
+				return;
+			}
+			// Vertices visited by the parallel layout must be laid out again.
+			++timestamp;
+		}
+
 		final TrackSchemeVertex previousGraphRoot = graph.vertexRef();
 		final TrackSchemeVertex currentGraphRoot = graph.vertexRef();
-		this.mark = mark;
 		boolean first = true;
 		currentLayoutColumnX.add( rightmost );
 		for ( final TrackSchemeVertex root : layoutRoots )
@@ -228,11 +389,25 @@ public class LineageTreeLayout
 		}
 		currentLayoutMinX = 0;
 		currentLayoutMaxX = rightmost - 1;
+		contextIncremental = mark >= 0;
 		graph.releaseRef( previousGraphRoot );
 		graph.releaseRef( currentGraphRoot );
 		notifyListeners();
 	}
 
+	/**
+	 * Sets whether the trees of graph roots can be laid out in parallel. This
+	 * is the default. Parallel layout is only used for large graphs, and for
+	 * layouts without ghosts starting from graph roots.
+	 *
+	 * @param parallel
+	 *            whether to lay out trees in parallel.
+	 */
+	public void setParallelLayout( final boolean parallel )
+	{
+		this.parallel = parallel;
+	}
+
 	/**
 	 * Get the minimum layoutX coordinate assigned to any vertex in the current
 	 * layout (last call of one of the {@code layout(...)} methods).
@@ -279,6 +454,7 @@ public class LineageTreeLayout
 	 */
 	public int nextLayoutTimestamp()
 	{
+		incremental = false;
 		++timestamp;
 		return timestamp;
 	}
@@ -313,6 +489,18 @@ public class LineageTreeLayout
 		final double yScale = transform.getScaleY();
 		screenEntities.screenTransform().set( transform );
 
+		if ( isSummarized( transform ) )
+		{
+			if ( densitySummary == null )
+				densitySummary = new LayoutDensitySummary( graph, attributes, timepoints, timepointToOrderedVertices, currentLayoutMaxX, timestamp );
+			final TrackSchemeVertex fref = graph.vertexRef();
+			final TrackSchemeVertex focused = focus == null ? null : focus.getFocusedVertex( fref );
+			densitySummary.cropAndScale( transform, screenEntities, decorationsOffsetX, decorationsOffsetY, selection, focused, colorGenerator );
+			graph.releaseRef( fref );
+			cropAndScaleColumns( minX, maxX, xScale, screenEntities, decorationsOffsetX );
+			return;
+		}
+
 		final RefList< ScreenVertex > screenVertices = screenEntities.getVertices();
 		final RefList< ScreenEdge > screenEdges = screenEntities.getEdges();
 		final RefList< ScreenVertexRange > vertexRanges = screenEntities.getRanges();
@@ -373,13 +561,12 @@ public class LineageTreeLayout
 					{
 						vertexList.get( i, v1 );
 						final int v1si = screenVertices.size();
-						v1.setScreenVertexIndex( v1si );
+						attributes.setScreenVertexIndex( v1, v1si );
 						final int id = v1.getInternalPoolIndex();
-						final String label = v1.getLabel();
-						final double x = ( v1.getLayoutX() - minX ) * xScale + decorationsOffsetX;
+						final double x = ( attributes.getLayoutX( v1 ) - minX ) * xScale + decorationsOffsetX;
 						final boolean selected = selection.isSelected( v1 );
-						final boolean ghost = v1.isGhost();
-						screenVertexPool.create( sv ).init( id, label, x, y, selected, ghost, colorGenerator.color( v1 ) );
+						final boolean ghost = attributes.isGhost( v1 );
+						screenVertexPool.create( sv ).init( id, x, y, selected, ghost, colorGenerator.color( v1 ) );
 						screenVertices.add( sv );
 
 						minVertexScreenDist = Math.min( minVertexScreenDist, x - prevX );
@@ -388,7 +575,7 @@ public class LineageTreeLayout
 						for ( final TrackSchemeEdge edge : v1.incomingEdges() )
 						{
 							edge.getSource( v2 );
-							final int v2si = v2.getScreenVertexIndex();
+							final int v2si = attributes.getScreenVertexIndex( v2 );
 							// TODO: additionally to checking for id ref consistency, the following should be decided by layout timestamp
 							if ( v2si >= 0 && v2si < screenVertices.size() && screenVertices.get( v2si, sv ).getTrackSchemeVertexId() == v2.getInternalPoolIndex() )
 							{
@@ -399,7 +586,7 @@ public class LineageTreeLayout
 								screenEdgePool.create( se ).init( eid, sourceScreenVertexIndex, targetScreenVertexIndex, eselected, colorGenerator.color( edge, v2, v1 ) );
 								screenEdges.add( se );
 								final int sei = se.getInternalPoolIndex();
-								edge.setScreenEdgeIndex( sei );
+								attributes.setScreenEdgeIndex( edge, sei );
 							}
 						}
 					}
@@ -409,8 +596,8 @@ public class LineageTreeLayout
 						final int rangeMaxIndex = riter.next();
 						nextRangeStart = riter.next();
 						i = rangeMaxIndex;
-						final double svMinX = ( vertexList.get( rangeMinIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX;
-						final double svMaxX = ( vertexList.get( rangeMaxIndex, v1 ).getLayoutX() - minX ) * xScale + decorationsOffsetX; // TODO: make minimum width (maybe only when painting...)
+						final double svMinX = ( attributes.getLayoutX( vertexList.get( rangeMinIndex, v1 ) ) - minX ) * xScale + decorationsOffsetX;
+						final double svMaxX = ( attributes.getLayoutX( vertexList.get( rangeMaxIndex, v1 ) ) - minX ) * xScale + decorationsOffsetX; // TODO: make minimum width (maybe only when painting...)
 						vertexRanges.add( screenRangePool.create( sr ).init( svMinX, svMaxX, prevY, y ) );
 						minVertexScreenDist = 0;
 					}
@@ -427,10 +614,36 @@ public class LineageTreeLayout
 		graph.releaseRef( v1 );
 		graph.releaseRef( v2 );
 
-		/*
-		 * Columns
-		 */
+		cropAndScaleColumns( minX, maxX, xScale, screenEntities, decorationsOffsetX );
+	}
 
+	/**
+	 * Returns whether {@link #cropAndScale} creates the screen entities for the
+	 * specified transform from the summary of the layout. In that case, dense
+	 * parts of the layout are painted as ranges, and only the selected and
+	 * focused vertices inside them are painted individually, so changing the
+	 * selection or the focus requires to crop the layout again.
+	 *
+	 * @param transform
+	 *            the layout-to-screen transform.
+	 * @return whether the layout summary is used.
+	 */
+	public boolean isSummarized( final ScreenTransform transform )
+	{
+		return 1 / transform.getScaleX() >= DENSITY_SUMMARY_MIN_LAYOUT_X_PER_PIXEL;
+	}
+
+	/**
+	 * Creates the {@link ScreenColumn}s visible in the specified layout X
+	 * range.
+	 */
+	private void cropAndScaleColumns(
+			final double minX,
+			final double maxX,
+			final double xScale,
+			final ScreenEntities screenEntities,
+			final int decorationsOffsetX )
+	{
 		final List< ScreenColumn > screenColumns = screenEntities.getColumns();
 		int minC = currentLayoutColumnX.binarySearch( minX );
 		if ( minC < 0 )
@@ -484,35 +697,7 @@ public class LineageTreeLayout
 	{
 		final double lx = layoutPos.getDoublePosition( 0 );
 		final double ly = layoutPos.getDoublePosition( 1 );
-
-		double closestVertexSquareDist = Double.POSITIVE_INFINITY;
-		int closestVertexIndex = -1;
-
-		final TIntIterator tpIter = new TIntAlternatingIterator( timepoints, ( int ) ly );
-		while( tpIter.hasNext() )
-		{
-			final int tp = tpIter.next();
-			final double diffy = ( ly - tp ) * aspectRatioXtoY;
-			if ( diffy * diffy >= closestVertexSquareDist )
-				break;
-
-			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( tp );
-			final int left = vertexList.binarySearch( lx );
-			final int begin = Math.max( 0, left );
-			final int end = Math.min( begin + 2, vertexList.size() );
-			for ( int x = begin; x < end; ++x )
-			{
-				vertexList.get( x, ref );
-				final double diffx = ( lx - ref.getLayoutX() );
-				final double d2 = diffx * diffx + diffy * diffy;
-				if ( d2 < closestVertexSquareDist )
-				{
-					closestVertexSquareDist = d2;
-					closestVertexIndex = ref.getInternalPoolIndex();
-				}
-			}
-		}
-
+		final int closestVertexIndex = getVertexIndex().nearest( lx, ly, aspectRatioXtoY );
 		if ( closestVertexIndex < 0 )
 			return null;
 
@@ -545,47 +730,7 @@ public class LineageTreeLayout
 	 */
 	public TrackSchemeVertex getClosestActiveVertexWithin( final double lx1, final double ly1, final double lx2, final double ly2, final double aspectRatioXtoY, final TrackSchemeVertex ref )
 	{
-		final int tStart = ( int ) Math.ceil( Math.min( ly1, ly2 ) );
-		final int tEnd = ( int ) Math.floor( Math.max( ly1, ly2 ) ) + 1;
-		final double x1 = Math.min( lx1, lx2 );
-		final double x2 = Math.max( lx1, lx2 );
-
-		double closestVertexSquareDist = Double.POSITIVE_INFINITY;
-		int closestVertexIndex = -1;
-
-		int start = timepoints.binarySearch( tStart );
-		if ( start < 0 )
-			start = -start - 1;
-		int end = timepoints.binarySearch( tEnd );
-		if ( end < 0 )
-			end = -end - 1;
-
-		final int tpIndexFirst = ly1 < ly2 ? end - 1 : start;
-		final int tpIndexLast = ly1 < ly2 ? start - 1 : end;
-		final int tpIndexInc = ly1 < ly2 ? -1 : 1;
-		for ( int tpIndex = tpIndexFirst; tpIndex != tpIndexLast; tpIndex += tpIndexInc )
-		{
-			final double diffy = ( ly2 - tpIndex ) * aspectRatioXtoY;
-			if ( diffy * diffy >= closestVertexSquareDist )
-				break;
-
-			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoints.get( tpIndex ) );
-			final int left = vertexList.binarySearch( x1 ) + 1;
-			final int right = vertexList.binarySearch( x2, left, vertexList.size() );
-			if ( right > left )
-			{
-				final int candidate = lx1 < lx2 ? right : left;
-				final TrackSchemeVertex v = vertexList.get( candidate, ref );
-				final double diffx = ( lx2 - v.getLayoutX() );
-				final double d2 = diffx * diffx + diffy * diffy;
-				if ( d2 < closestVertexSquareDist )
-				{
-					closestVertexSquareDist = d2;
-					closestVertexIndex = v.getInternalPoolIndex();
-				}
-			}
-		}
-
+		final int closestVertexIndex = getVertexIndex().nearestWithin( lx1, ly1, lx2, ly2, aspectRatioXtoY );
 		if ( closestVertexIndex < 0 )
 			return null;
 
@@ -609,28 +754,32 @@ public class LineageTreeLayout
 	 */
 	public RefSet< TrackSchemeVertex > getActiveVerticesWithin( final double lx1, final double ly1, final double lx2, final double ly2 )
 	{
-		final int tStart = ( int ) Math.ceil( Math.min( ly1, ly2 ) );
-		final int tEnd = ( int ) Math.floor( Math.max( ly1, ly2 ) ) + 1;
-		final double x1 = Math.min( lx1, lx2 );
-		final double x2 = Math.max( lx1, lx2 );
+		final TIntArrayList ids = new TIntArrayList();
+		getVertexIndex().within( lx1, ly1, lx2, ly2, ids );
 
 		final RefSet< TrackSchemeVertex > vertexSet = RefCollections.createRefSet( graph.vertices() );
-		int start = timepoints.binarySearch( tStart );
-		if ( start < 0 )
-			start = -start - 1;
-		int end = timepoints.binarySearch( tEnd );
-		if ( end < 0 )
-			end = -end - 1;
-		for ( int tpIndex = start; tpIndex < end; ++tpIndex )
-		{
-			final TrackSchemeVertexList vertexList = timepointToOrderedVertices.get( timepoints.get( tpIndex ) );
-			final int left = vertexList.binarySearch( x1 ) + 1;
-			final int right = vertexList.binarySearch( x2, left, vertexList.size() );
-			vertexSet.addAll( vertexList.subList( left, right + 1 ) );
-		}
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int i = 0; i < ids.size(); ++i )
+			vertexSet.add( graph.getVertexPool().getObject( ids.getQuick( i ), ref ) );
+		graph.releaseRef( ref );
 		return vertexSet;
 	}
 
+	/**
+	 * Returns the spatial index of the vertices of the current layout,
+	 * building it if needed.
+	 */
+	private LayoutVertexIndex getVertexIndex()
+	{
+		LayoutVertexIndex index = vertexIndex;
+		if ( index == null )
+		{
+			index = new LayoutVertexIndex( attributes, timepoints, timepointToOrderedVertices );
+			vertexIndex = index;
+		}
+		return index;
+	}
+
 	/**
 	 * Get the first active child of {@code vertex}.
 	 *
@@ -647,7 +796,7 @@ public class LineageTreeLayout
 		for ( final TrackSchemeEdge edge : edges )
 		{
 			final TrackSchemeVertex child = edge.getTarget( ref );
-			final boolean active = child.getLayoutTimestamp() == timestamp;
+			final boolean active = attributes.getLayoutTimestamp( child ) == timestamp;
 			if ( active )
 				return child;
 		}
@@ -670,7 +819,7 @@ public class LineageTreeLayout
 		for ( final TrackSchemeEdge edge : edges )
 		{
 			final TrackSchemeVertex parent = edge.getSource( ref );
-			final boolean active = parent.getLayoutTimestamp() == timestamp;
+			final boolean active = attributes.getLayoutTimestamp( parent ) == timestamp;
 			if ( active )
 				return parent;
 		}
@@ -690,7 +839,7 @@ public class LineageTreeLayout
 	public TrackSchemeVertex getLeftSibling( final TrackSchemeVertex vertex, final TrackSchemeVertex ref )
 	{
 		final TrackSchemeVertexList vertices = timepointToOrderedVertices.get( vertex.getTimepoint() );
-		final int index = vertices.binarySearch( vertex.getLayoutX() );
+		final int index = vertices.binarySearch( attributes.getLayoutX( vertex ) );
 		return ( index > 0 )
 				? vertices.get( index - 1, ref )
 				: null;
@@ -709,7 +858,7 @@ public class LineageTreeLayout
 	public TrackSchemeVertex getRightSibling( final TrackSchemeVertex vertex, final TrackSchemeVertex ref )
 	{
 		final TrackSchemeVertexList vertices = timepointToOrderedVertices.get( vertex.getTimepoint() );
-		final int index = vertices.binarySearch( vertex.getLayoutX() );
+		final int index = vertices.binarySearch( attributes.getLayoutX( vertex ) );
 		return ( index < vertices.size() - 1 )
 				? vertices.get( index + 1, ref )
 				: null;
@@ -797,10 +946,10 @@ A:		while ( true )
 			if ( f.done )
 			{
 				f.numLaidOutChildren = 0;
-				final boolean ghost = v.getLayoutTimestamp() < mark;
-				final boolean terminate = v.getLayoutTimestamp() < mark - 1;
-				v.setGhost( ghost );
-				v.setLayoutTimestamp( timestamp );
+				final boolean ghost = attributes.getLayoutTimestamp( v ) < mark;
+				final boolean terminate = attributes.getLayoutTimestamp( v ) < mark - 1;
+				attributes.setGhost( v, ghost );
+				attributes.setLayoutTimestamp( v, timestamp );
 
 				if ( !terminate )
 				{
@@ -816,7 +965,7 @@ A:		while ( true )
 				{
 					final TrackSchemeEdge edge = f.edges.next();
 					edge.getTarget( f.child );
-					if ( f.child.getLayoutTimestamp() < timestamp )
+					if ( attributes.getLayoutTimestamp( f.child ) < timestamp )
 					{
 						// unused currently...
 //						f.child.setLayoutInEdgeIndex( edge.getInternalPoolIndex() );
@@ -841,7 +990,7 @@ A:		while ( true )
 			default:
 				layoutX = ( f.firstChildX + f.lastChildX ) / 2;
 			}
-			v.setLayoutX( layoutX );
+			attributes.setLayoutX( v, layoutX );
 
 			appendToOrderedVertices( v );
 
@@ -883,10 +1032,10 @@ A:		while ( true )
 		double firstChildX = 0;
 		double lastChildX = 0;
 
-		final boolean ghost = v.getLayoutTimestamp() < mark;
-		final boolean terminate = v.getLayoutTimestamp() < mark - 1;
-		v.setGhost( ghost );
-		v.setLayoutTimestamp( timestamp );
+		final boolean ghost = attributes.getLayoutTimestamp( v ) < mark;
+		final boolean terminate = attributes.getLayoutTimestamp( v ) < mark - 1;
+		attributes.setGhost( v, ghost );
+		attributes.setLayoutTimestamp( v, timestamp );
 
 		if ( !terminate )
 		{
@@ -894,15 +1043,15 @@ A:		while ( true )
 			for ( final TrackSchemeEdge edge : v.outgoingEdges() )
 			{
 				edge.getTarget( child );
-				if ( child.getLayoutTimestamp() < timestamp )
+				if ( attributes.getLayoutTimestamp( child ) < timestamp )
 				{
 					// unused currently...
 //					child.setLayoutInEdgeIndex( edge.getInternalPoolIndex() );
 					layoutX( child );
 					if ( ++numLaidOutChildren == 1 )
-						firstChildX = child.getLayoutX();
+						firstChildX = attributes.getLayoutX( child );
 					else
-						lastChildX = child.getLayoutX();
+						lastChildX = attributes.getLayoutX( child );
 				}
 			}
 			graph.releaseRef( child );
@@ -911,14 +1060,14 @@ A:		while ( true )
 		switch( numLaidOutChildren )
 		{
 		case 0:
-			v.setLayoutX( rightmost );
+			attributes.setLayoutX( v, rightmost );
 			rightmost += 1;
 			break;
 		case 1:
-			v.setLayoutX( firstChildX );
+			attributes.setLayoutX( v, firstChildX );
 			break;
 		default:
-			v.setLayoutX( ( firstChildX + lastChildX ) / 2 );
+			attributes.setLayoutX( v, ( firstChildX + lastChildX ) / 2 );
 		}
 
 		appendToOrderedVertices( v );
@@ -927,16 +1076,810 @@ A:		while ( true )
 	private void appendToOrderedVertices( final TrackSchemeVertex v )
 	{
 		final int tp = v.getTimepoint();
-		TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+		TrackSchemeVertexList vlist = orderedVertices.get( tp );
 		if ( vlist == null )
 		{
-			vlist = new TrackSchemeVertexList( graph );
-			timepointToOrderedVertices.put( tp, vlist );
-			timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+			vlist = new TrackSchemeVertexList( graph, attributes );
+			orderedVertices.put( tp, vlist );
+			if ( orderedVertices == timepointToOrderedVertices )
+				timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
 		}
 		vlist.add( v );
 	}
 
+	/**
+	 * Lays out the trees of the specified graph roots in parallel, with the
+	 * current {@link #timestamp}.
+	 * <p>
+	 * The trees are first laid out independently, each starting at layout X
+	 * 0. Their offsets are then given by the prefix sum of their widths, and
+	 * their vertices are shifted by these offsets. Finally the ordered vertex
+	 * lists of each timepoint are concatenated from the lists of the trees, in
+	 * root order.
+	 * <p>
+	 * Trees are only independent if none of them contains vertices with
+	 * several parents: such vertices are laid out in the first tree that
+	 * reaches them.
+	 * <p>
+	 * Trees are distributed over a fixed number of {@link TreeWorker}s, whose
+	 * vertex references are created on the calling thread before the parallel
+	 * section. The depth of their stacks is bounded by the number of
+	 * timepoints.
+	 *
+	 * @param layoutRoots
+	 *            the roots to lay out.
+	 * @return {@code false} if some layout roots are not graph roots, if the
+	 *         trees are not independent, or if a tree is deeper than the
+	 *         number of timepoints. Vertices may then have been assigned the
+	 *         current {@link #timestamp}, but the layout state was not
+	 *         modified.
+	 */
+	private boolean layoutParallel( final Collection< TrackSchemeVertex > layoutRoots )
+	{
+		final int n = layoutRoots.size();
+		final int[] rootIds = new int[ n ];
+		int r = 0;
+		for ( final TrackSchemeVertex root : layoutRoots )
+		{
+			if ( !root.incomingEdges().isEmpty() )
+				return false;
+			rootIds[ r++ ] = root.getInternalPoolIndex();
+		}
+
+		// Bound the depth of trees by the number of timepoints.
+		int minTimepoint = Integer.MAX_VALUE;
+		int maxTimepoint = Integer.MIN_VALUE;
+		for ( final TrackSchemeVertex v : graph.vertices() )
+		{
+			final int tp = v.getTimepoint();
+			minTimepoint = Math.min( minTimepoint, tp );
+			maxTimepoint = Math.max( maxTimepoint, tp );
+		}
+		final int maxDepth = maxTimepoint - minTimepoint + 1;
+
+		final int numWorkers = Math.min( n, ForkJoinPool.getCommonPoolParallelism() + 1 );
+		final TreeWorker[] workers = new TreeWorker[ numWorkers ];
+		for ( int w = 0; w < numWorkers; w++ )
+			workers[ w ] = new TreeWorker( maxDepth );
+
+		// Lay out trees independently.
+		final TreeLayout[] trees = new TreeLayout[ n ];
+		final AtomicInteger nextTree = new AtomicInteger();
+		IntStream.range( 0, numWorkers ).parallel().forEach( w -> {
+			for ( int i = nextTree.getAndIncrement(); i < n; i = nextTree.getAndIncrement() )
+			{
+				trees[ i ] = new TreeLayout();
+				trees[ i ].layout( rootIds[ i ], workers[ w ] );
+			}
+		} );
+		for ( final TreeLayout tree : trees )
+			if ( tree.merge )
+				return false;
+
+		// Place trees.
+		final double[] offsets = new double[ n ];
+		double x = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			offsets[ i ] = x;
+			x += trees[ i ].width;
+		}
+		final AtomicInteger nextShift = new AtomicInteger();
+		IntStream.range( 0, numWorkers ).parallel().forEach( w -> {
+			for ( int i = nextShift.getAndIncrement(); i < n; i = nextShift.getAndIncrement() )
+				trees[ i ].shift( offsets[ i ], workers[ w ].ref );
+		} );
+		for ( final TreeWorker worker : workers )
+			worker.release();
+
+		// Concatenate the ordered vertex lists of each timepoint.
+		final TIntHashSet tpSet = new TIntHashSet();
+		for ( final TreeLayout tree : trees )
+			tpSet.addAll( tree.orderedVertices.keys() );
+		final int[] tps = tpSet.toArray();
+		Arrays.sort( tps );
+		final TrackSchemeVertexList[] lists = new TrackSchemeVertexList[ tps.length ];
+		IntStream.range( 0, tps.length ).parallel().forEach( t -> {
+			int size = 0;
+			for ( final TreeLayout tree : trees )
+			{
+				final TIntArrayList run = tree.orderedVertices.get( tps[ t ] );
+				if ( run != null )
+					size += run.size();
+			}
+			final TrackSchemeVertexList vlist = new TrackSchemeVertexList( graph, attributes, size );
+			for ( final TreeLayout tree : trees )
+			{
+				final TIntArrayList run = tree.orderedVertices.get( tps[ t ] );
+				if ( run != null )
+					vlist.getIndexCollection().addAll( run );
+			}
+			lists[ t ] = vlist;
+		} );
+
+		timepoints.add( tps );
+		for ( int t = 0; t < tps.length; t++ )
+			timepointToOrderedVertices.put( tps[ t ], lists[ t ] );
+		final TrackSchemeVertex ref = graph.vertexRef();
+		currentLayoutColumnX.add( 0 );
+		for ( int i = 0; i < n; i++ )
+		{
+			currentLayoutColumnRoot.add( graph.getVertexPool().getObject( rootIds[ i ], ref ) );
+			currentLayoutColumnX.add( offsets[ i ] + trees[ i ].width );
+		}
+		graph.releaseRef( ref );
+		rightmost = x;
+		currentLayoutMinX = 0;
+		currentLayoutMaxX = rightmost - 1;
+		return true;
+	}
+
+	/**
+	 * Vertex references used by one thread of
+	 * {@link #layoutParallel(Collection)}: a stack of frames of fixed depth,
+	 * and a reference for shifting trees.
+	 */
+	private class TreeWorker
+	{
+		final ArrayList< StackFrame > frames;
+
+		final TrackSchemeVertex root;
+
+		final TrackSchemeVertex ref;
+
+		TreeWorker( final int maxDepth )
+		{
+			frames = new ArrayList<>( maxDepth );
+			root = graph.vertexRef();
+			ref = graph.vertexRef();
+			TrackSchemeVertex current = root;
+			for ( int d = 0; d < maxDepth; d++ )
+			{
+				final StackFrame f = new StackFrame( current );
+				frames.add( f );
+				current = f.child;
+			}
+		}
+
+		void release()
+		{
+			graph.releaseRef( root );
+			graph.releaseRef( ref );
+			for ( final StackFrame f : frames )
+				graph.releaseRef( f.child );
+		}
+	}
+
+	/**
+	 * Layout of a single tree for {@link #layoutParallel(Collection)}, with
+	 * layout X coordinates starting from 0. This follows
+	 * {@link #layoutX_iterative(TrackSchemeVertex)} without ghosts, on its own
+	 * stack so that trees can be laid out concurrently.
+	 */
+	private class TreeLayout
+	{
+		/**
+		 * Pool indices of the vertices of the tree, by timepoint, ordered by
+		 * layout X.
+		 */
+		final TIntObjectMap< TIntArrayList > orderedVertices = new TIntObjectHashMap<>();
+
+		/**
+		 * Number of leaves in the tree.
+		 */
+		int width;
+
+		/**
+		 * Whether the tree contains a vertex with several parents, or is
+		 * deeper than the stack of its worker. The layout is then aborted.
+		 */
+		boolean merge;
+
+		void layout( final int rootId, final TreeWorker worker )
+		{
+			final ArrayList< StackFrame > frames = worker.frames;
+			graph.getVertexPool().getObject( rootId, worker.root );
+			frames.get( 0 ).done = true;
+			int depth = 0;
+
+A:			while ( true )
+			{
+				final StackFrame f = frames.get( depth );
+				final TrackSchemeVertex v = f.current;
+
+				if ( f.done )
+				{
+					if ( v.incomingEdges().size() > 1 )
+					{
+						merge = true;
+						break;
+					}
+					f.numLaidOutChildren = 0;
+					attributes.setGhost( v, false );
+					attributes.setLayoutTimestamp( v, timestamp );
+					f.edges = v.outgoingEdges().iterator();
+					f.done = false;
+				}
+
+				while ( f.edges.hasNext() )
+				{
+					f.edges.next().getTarget( f.child );
+					if ( attributes.getLayoutTimestamp( f.child ) < timestamp )
+					{
+						if ( frames.size() == ++depth )
+						{
+							merge = true;
+							break A;
+						}
+						frames.get( depth ).done = true;
+						continue A;
+					}
+				}
+
+				f.done = true;
+				final double layoutX;
+				switch ( f.numLaidOutChildren )
+				{
+				case 0:
+					layoutX = width++;
+					break;
+				case 1:
+					layoutX = f.firstChildX;
+					break;
+				default:
+					layoutX = ( f.firstChildX + f.lastChildX ) / 2;
+				}
+				attributes.setLayoutX( v, layoutX );
+
+				final int tp = v.getTimepoint();
+				TIntArrayList run = orderedVertices.get( tp );
+				if ( run == null )
+				{
+					run = new TIntArrayList();
+					orderedVertices.put( tp, run );
+				}
+				run.add( v.getInternalPoolIndex() );
+
+				if ( depth == 0 )
+					break;
+
+				final StackFrame p = frames.get( --depth );
+				if ( ++p.numLaidOutChildren == 1 )
+					p.firstChildX = layoutX;
+				else
+					p.lastChildX = layoutX;
+			}
+		}
+
+		void shift( final double offset, final TrackSchemeVertex ref )
+		{
+			if ( offset == 0 )
+				return;
+			for ( final TIntArrayList run : orderedVertices.valueCollection() )
+			{
+				final TIntIterator it = run.iterator();
+				while ( it.hasNext() )
+				{
+					final TrackSchemeVertex v = graph.getVertexPool().getObject( it.next(), ref );
+					attributes.setLayoutX( v, attributes.getLayoutX( v ) + offset );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the current layout of the graph roots, laying out again only
+	 * the trees in {@link #dirtyColumns} and the trees of new roots.
+	 *
+	 * @return {@code false} if the layout could not be updated incrementally,
+	 *         in which case it was not modified.
+	 */
+	private boolean layoutIncremental()
+	{
+		if ( !incremental || fullLayoutRequired )
+			return false;
+
+		final int numColumns = currentLayoutColumnRoot.size();
+		final TrackSchemeVertex ref = graph.vertexRef();
+
+		// Old column of each root of an untouched column.
+		final TIntIntMap cleanColumns = new TIntIntHashMap( 2 * numColumns, 0.5f, -1, -1 );
+		for ( int c = 0; c < numColumns; c++ )
+			if ( !dirtyColumns.get( c ) )
+				cleanColumns.put( currentLayoutColumnRoot.get( c, ref ).getInternalPoolIndex(), c );
+
+		// Untouched columns must keep their order.
+		final RefList< TrackSchemeVertex > roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		int numFresh = 0;
+		int previous = -1;
+		for ( final TrackSchemeVertex root : roots )
+		{
+			final int c = cleanColumns.get( root.getInternalPoolIndex() );
+			if ( c < 0 )
+				++numFresh;
+			else if ( c < previous )
+			{
+				graph.releaseRef( ref );
+				return false;
+			}
+			else
+				previous = c;
+		}
+		if ( numFresh > Math.max( 1, numColumns / 2 ) )
+		{
+			graph.releaseRef( ref );
+			return false;
+		}
+
+		// Vertices of touched columns must not have several parents.
+		final TIntIterator tpIter = timepoints.iterator();
+		while ( tpIter.hasNext() )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tpIter.next() );
+			for ( int c = dirtyColumns.nextSetBit( 0 ); c >= 0; c = dirtyColumns.nextSetBit( c + 1 ) )
+			{
+				final int end = columnEnd( vlist, c );
+				for ( int i = columnStart( vlist, c ); i < end; i++ )
+				{
+					if ( vlist.get( i, ref ).incomingEdges().size() > 1 )
+					{
+						graph.releaseRef( ref );
+						return false;
+					}
+				}
+			}
+		}
+
+		// Remove the vertices of touched columns.
+		for ( int t = 0; t < timepoints.size(); t++ )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoints.get( t ) );
+			for ( int c = dirtyColumns.previousSetBit( numColumns - 1 ); c >= 0; c = dirtyColumns.previousSetBit( c - 1 ) )
+			{
+				final int start = columnStart( vlist, c );
+				final int end = columnEnd( vlist, c );
+				for ( int i = start; i < end; i++ )
+					attributes.setLayoutTimestamp( vlist.get( i, ref ), -1 );
+				vlist.getIndexCollection().remove( start, end - start );
+			}
+		}
+
+		// Assign columns in root order: untouched columns are shifted, other
+		// trees are laid out.
+		final double[] shifts = new double[ numColumns ];
+		final TDoubleArrayList columnX = new TDoubleArrayList();
+		final RefList< TrackSchemeVertex > columnRoot = RefCollections.createRefList( graph.vertices() );
+		final ArrayList< TIntObjectMap< TrackSchemeVertexList > > freshTrees = new ArrayList<>();
+		rightmost = 0;
+		columnX.add( rightmost );
+		for ( final TrackSchemeVertex root : roots )
+		{
+			final int c = cleanColumns.get( root.getInternalPoolIndex() );
+			if ( c < 0 )
+			{
+				orderedVertices = new TIntObjectArrayMap<>();
+				layoutX_iterative( root );
+				freshTrees.add( orderedVertices );
+			}
+			else
+			{
+				final double left = currentLayoutColumnX.get( c );
+				shifts[ c ] = rightmost - left;
+				rightmost += currentLayoutColumnX.get( c + 1 ) - left;
+			}
+			columnRoot.add( root );
+			columnX.add( rightmost );
+		}
+		orderedVertices = timepointToOrderedVertices;
+
+		spliceColumns( shifts, freshTrees, columnX, columnRoot, ref );
+		dirtyColumns.clear();
+		graph.releaseRef( ref );
+		notifyListeners();
+		return true;
+	}
+
+	/**
+	 * Updates the current context layout, laying out again only the trees of
+	 * the specified graph roots.
+	 * <p>
+	 * This is used by {@link ContextLayout} when the vertices in context
+	 * change, but the time-point range does not. The vertices of the trees to
+	 * lay out again must have been marked as for
+	 * {@link #layout(Collection, int)}. The columns of the other trees are
+	 * shifted in X to make room, and the trees laid out are spliced into the
+	 * {@link TrackSchemeVertexList}s of their timepoints. The result is the
+	 * same as that of {@link #layout(Collection, int)}.
+	 *
+	 * @param layoutRoots
+	 *            all the root vertices of the layout, ordered.
+	 * @param mark
+	 *            timestamp value that was used to mark vertices to be laid out.
+	 *            (Ghost vertices were marked with {@code mark-1}.)
+	 * @param dirtyGraphRoots
+	 *            the internal pool indices of the graph roots of the trees to
+	 *            lay out again.
+	 * @return {@code false} if the current layout could not be updated
+	 *         incrementally. The layout must then be done again with
+	 *         {@link #layout(Collection, int)}, with new marks.
+	 */
+	boolean layoutContextIncremental( final RefList< TrackSchemeVertex > layoutRoots, final int mark, final TIntSet dirtyGraphRoots )
+	{
+		if ( !contextIncremental )
+			return false;
+		contextIncremental = false;
+
+		final int numColumns = currentLayoutColumnRoot.size();
+		final TrackSchemeVertex ref = graph.vertexRef();
+
+		// Old column of each graph root of an untouched column.
+		final BitSet dirty = new BitSet( numColumns );
+		final TIntIntMap cleanColumns = new TIntIntHashMap( 2 * numColumns, 0.5f, -1, -1 );
+		for ( int c = 0; c < numColumns; c++ )
+		{
+			final int id = currentLayoutColumnRoot.get( c, ref ).getInternalPoolIndex();
+			if ( dirtyGraphRoots.contains( id ) )
+				dirty.set( c );
+			else if ( cleanColumns.put( id, c ) >= 0 )
+			{
+				graph.releaseRef( ref );
+				return false;
+			}
+		}
+
+		// Group layout roots by graph root. Untouched columns must keep their
+		// order.
+		final TIntArrayList groupStarts = new TIntArrayList();
+		final TIntArrayList groupRoots = new TIntArrayList();
+		int previous = -1;
+		int numClean = 0;
+		for ( int i = 0; i < layoutRoots.size(); i++ )
+		{
+			getGraphRoot( layoutRoots.get( i, ref ), ref );
+			final int id = ref.getInternalPoolIndex();
+			if ( !groupRoots.isEmpty() && groupRoots.get( groupRoots.size() - 1 ) == id )
+				continue;
+			groupStarts.add( i );
+			groupRoots.add( id );
+			if ( dirtyGraphRoots.contains( id ) )
+				continue;
+			final int c = cleanColumns.get( id );
+			if ( c <= previous )
+			{
+				graph.releaseRef( ref );
+				return false;
+			}
+			previous = c;
+			++numClean;
+		}
+		groupStarts.add( layoutRoots.size() );
+		if ( numClean != cleanColumns.size() )
+		{
+			graph.releaseRef( ref );
+			return false;
+		}
+
+		// Vertices of touched columns must not have several parents.
+		for ( int t = 0; t < timepoints.size(); t++ )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoints.get( t ) );
+			for ( int i = 0; i < vlist.size(); i++ )
+			{
+				final TrackSchemeVertex v = vlist.get( i, ref );
+				if ( dirty.get( columnOf( attributes.getLayoutX( v ) ) ) && v.incomingEdges().size() > 1 )
+				{
+					graph.releaseRef( ref );
+					return false;
+				}
+			}
+		}
+
+		// Keep the vertices of untouched columns with the new timestamp, so
+		// that they are not laid out again, and remove the others.
+		++timestamp;
+		this.mark = mark;
+		for ( int t = 0; t < timepoints.size(); t++ )
+		{
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoints.get( t ) );
+			final TIntArrayList indices = vlist.getIndexCollection();
+			int kept = 0;
+			for ( int i = 0; i < indices.size(); i++ )
+			{
+				final TrackSchemeVertex v = vlist.get( i, ref );
+				if ( !dirty.get( columnOf( attributes.getLayoutX( v ) ) ) )
+				{
+					attributes.setLayoutTimestamp( v, timestamp );
+					indices.set( kept++, indices.get( i ) );
+				}
+			}
+			indices.remove( kept, indices.size() - kept );
+		}
+
+		// Assign columns in root order: untouched columns are shifted, other
+		// trees are laid out.
+		final double[] shifts = new double[ numColumns ];
+		final TDoubleArrayList columnX = new TDoubleArrayList();
+		final RefList< TrackSchemeVertex > columnRoot = RefCollections.createRefList( graph.vertices() );
+		final ArrayList< TIntObjectMap< TrackSchemeVertexList > > freshTrees = new ArrayList<>();
+		rightmost = 0;
+		columnX.add( rightmost );
+		for ( int g = 0; g < groupRoots.size(); g++ )
+		{
+			final int id = groupRoots.get( g );
+			if ( dirtyGraphRoots.contains( id ) )
+			{
+				orderedVertices = new TIntObjectArrayMap<>();
+				for ( int i = groupStarts.get( g ); i < groupStarts.get( g + 1 ); i++ )
+					layoutX_iterative( layoutRoots.get( i, ref ) );
+				freshTrees.add( orderedVertices );
+			}
+			else
+			{
+				final int c = cleanColumns.get( id );
+				final double left = currentLayoutColumnX.get( c );
+				shifts[ c ] = rightmost - left;
+				rightmost += currentLayoutColumnX.get( c + 1 ) - left;
+			}
+			columnRoot.add( graph.getVertexPool().getObject( id, ref ) );
+			columnX.add( rightmost );
+		}
+		orderedVertices = timepointToOrderedVertices;
+
+		// Trees laid out must not share vertices with other trees.
+		final TrackSchemeVertex target = graph.vertexRef();
+		for ( final TIntObjectMap< TrackSchemeVertexList > tree : freshTrees )
+		{
+			for ( final TrackSchemeVertexList run : tree.valueCollection() )
+			{
+				for ( int i = 0; i < run.size(); i++ )
+				{
+					final TrackSchemeVertex v = run.get( i, ref );
+					boolean merge = v.incomingEdges().size() > 1;
+					for ( final TrackSchemeEdge e : v.outgoingEdges() )
+						merge |= e.getTarget( target ).incomingEdges().size() > 1;
+					if ( merge )
+					{
+						graph.releaseRef( target );
+						graph.releaseRef( ref );
+						return false;
+					}
+				}
+			}
+		}
+		graph.releaseRef( target );
+
+		spliceColumns( shifts, freshTrees, columnX, columnRoot, ref );
+		contextIncremental = true;
+		graph.releaseRef( ref );
+		notifyListeners();
+		return true;
+	}
+
+	/**
+	 * Completes an incremental layout: shifts the vertices of the untouched
+	 * columns, splices the vertices of the trees laid out into the ordered
+	 * vertex lists of their timepoints, and sets the new columns.
+	 *
+	 * @param shifts
+	 *            the X shift of each column of the current layout.
+	 * @param freshTrees
+	 *            the ordered vertices of the trees laid out, by timepoint.
+	 * @param columnX
+	 *            the column layout X coordinates of the new layout.
+	 * @param columnRoot
+	 *            the column roots of the new layout.
+	 * @param ref
+	 *            a vertex ref.
+	 */
+	private void spliceColumns(
+			final double[] shifts,
+			final ArrayList< TIntObjectMap< TrackSchemeVertexList > > freshTrees,
+			final TDoubleArrayList columnX,
+			final RefList< TrackSchemeVertex > columnRoot,
+			final TrackSchemeVertex ref )
+	{
+		// Shift untouched columns, right of the first shifted one.
+		final int numColumns = shifts.length;
+		int firstShifted = 0;
+		while ( firstShifted < numColumns && shifts[ firstShifted ] == 0 )
+			++firstShifted;
+		if ( firstShifted < numColumns )
+		{
+			final double shiftFromX = currentLayoutColumnX.get( firstShifted );
+			for ( int t = 0; t < timepoints.size(); t++ )
+			{
+				final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( timepoints.get( t ) );
+				for ( int i = vlist.binarySearch( shiftFromX - 0.5 ) + 1; i < vlist.size(); i++ )
+				{
+					final TrackSchemeVertex v = vlist.get( i, ref );
+					final double x = attributes.getLayoutX( v );
+					attributes.setLayoutX( v, x + shifts[ columnOf( x ) ] );
+				}
+			}
+		}
+
+		// Splice the vertices of the trees laid out.
+		for ( final TIntObjectMap< TrackSchemeVertexList > tree : freshTrees )
+		{
+			for ( final int tp : tree.keys() )
+			{
+				final TrackSchemeVertexList run = tree.get( tp );
+				TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+				if ( vlist == null )
+				{
+					vlist = new TrackSchemeVertexList( graph, attributes );
+					timepointToOrderedVertices.put( tp, vlist );
+					timepoints.insert( -( 1 + timepoints.binarySearch( tp ) ), tp );
+				}
+				final int at = vlist.binarySearch( attributes.getLayoutX( run.get( 0, ref ) ) ) + 1;
+				vlist.getIndexCollection().insert( at, run.getIndexCollection().toArray() );
+			}
+		}
+
+		// Drop emptied timepoints.
+		for ( int t = timepoints.size() - 1; t >= 0; t-- )
+		{
+			final int tp = timepoints.get( t );
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( tp );
+			if ( vlist.isEmpty() )
+			{
+				timepointToOrderedVertices.remove( tp );
+				timepoints.removeAt( t );
+			}
+			else
+				vlist.invalidateMinLayoutXDistance();
+		}
+
+		currentLayoutColumnX.clear();
+		currentLayoutColumnX.addAll( columnX );
+		currentLayoutColumnRoot.clear();
+		currentLayoutColumnRoot.addAll( columnRoot );
+		currentLayoutMinX = 0;
+		currentLayoutMaxX = rightmost - 1;
+	}
+
+	/**
+	 * Returns the graph root of the column of the current layout that
+	 * contains the specified active vertex.
+	 *
+	 * @param v
+	 *            an active vertex.
+	 * @param ref
+	 *            ref to store the result.
+	 * @return the column root, or {@code null} if the current layout has no
+	 *         columns.
+	 */
+	TrackSchemeVertex getColumnRoot( final TrackSchemeVertex v, final TrackSchemeVertex ref )
+	{
+		if ( currentLayoutColumnRoot.isEmpty() )
+			return null;
+		return currentLayoutColumnRoot.get( columnOf( attributes.getLayoutX( v ) ), ref );
+	}
+
+	/**
+	 * Returns whether the current layout is a context layout that can be
+	 * updated by {@link #layoutContextIncremental(RefList, int, TIntSet)}.
+	 *
+	 * @return whether the context layout can be updated incrementally.
+	 */
+	boolean isContextIncremental()
+	{
+		return contextIncremental;
+	}
+
+	/**
+	 * Returns the column of the current layout that contains the specified
+	 * layout X coordinate.
+	 */
+	private int columnOf( final double layoutX )
+	{
+		final int i = currentLayoutColumnX.binarySearch( layoutX );
+		final int c = ( i >= 0 ) ? i : -i - 2;
+		return Math.max( 0, Math.min( c, currentLayoutColumnRoot.size() - 1 ) );
+	}
+
+	/**
+	 * Returns the index of the first vertex of the specified list in the
+	 * specified column of the current layout.
+	 */
+	private int columnStart( final TrackSchemeVertexList vlist, final int column )
+	{
+		return vlist.binarySearch( currentLayoutColumnX.get( column ) - 0.5 ) + 1;
+	}
+
+	/**
+	 * Returns the index after the last vertex of the specified list in the
+	 * specified column of the current layout.
+	 */
+	private int columnEnd( final TrackSchemeVertexList vlist, final int column )
+	{
+		return vlist.binarySearch( currentLayoutColumnX.get( column + 1 ) - 0.5 ) + 1;
+	}
+
+	/**
+	 * Records the columns of the current layout touched by graph changes, and
+	 * removes removed vertices from the ordered vertex lists. Any graph change
+	 * prevents incremental updates of a context layout.
+	 */
+	private class GraphChangeTracker implements GraphListener< TrackSchemeVertex, TrackSchemeEdge >
+	{
+		private final TrackSchemeVertex ref = graph.vertexRef();
+
+		private final TrackSchemeVertex ref2 = graph.vertexRef();
+
+		private boolean isTracked( final TrackSchemeVertex v )
+		{
+			return incremental && !fullLayoutRequired && attributes.getLayoutTimestamp( v ) == timestamp;
+		}
+
+		private void touch( final TrackSchemeVertex v )
+		{
+			if ( isTracked( v ) )
+				dirtyColumns.set( columnOf( attributes.getLayoutX( v ) ) );
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			fullLayoutRequired = true;
+			contextIncremental = false;
+			densitySummary = null;
+			vertexIndex = null;
+		}
+
+		@Override
+		public void vertexAdded( final TrackSchemeVertex vertex )
+		{
+			contextIncremental = false;
+		}
+
+		@Override
+		public void vertexRemoved( final TrackSchemeVertex vertex )
+		{
+			contextIncremental = false;
+			// The caches hold pool indices, which may now be reused.
+			densitySummary = null;
+			vertexIndex = null;
+			if ( !isTracked( vertex ) )
+				return;
+			touch( vertex );
+			final TrackSchemeVertexList vlist = timepointToOrderedVertices.get( vertex.getTimepoint() );
+			if ( vlist == null )
+				return;
+			final int id = vertex.getInternalPoolIndex();
+			final TIntArrayList indices = vlist.getIndexCollection();
+			int i = vlist.binarySearch( attributes.getLayoutX( vertex ) );
+			while ( i >= 0 && indices.get( i ) != id && attributes.getLayoutX( vlist.get( i, ref ) ) == attributes.getLayoutX( vertex ) )
+				--i;
+			if ( i >= 0 && indices.get( i ) == id )
+				indices.removeAt( i );
+			else
+				indices.remove( id );
+		}
+
+		@Override
+		public void edgeAdded( final TrackSchemeEdge edge )
+		{
+			contextIncremental = false;
+			final TrackSchemeVertex target = edge.getTarget( ref2 );
+			if ( target.incomingEdges().size() > 1 )
+				fullLayoutRequired = true;
+			touch( edge.getSource( ref ) );
+			touch( target );
+		}
+
+		@Override
+		public void edgeRemoved( final TrackSchemeEdge edge )
+		{
+			contextIncremental = false;
+			final TrackSchemeVertex target = edge.getTarget( ref2 );
+			if ( target.incomingEdges().size() > 1 )
+				fullLayoutRequired = true;
+			touch( edge.getSource( ref ) );
+			touch( target );
+		}
+	}
+
 	/**
 	 * Layout roots are not graph roots necessarily. This helper finds the
 	 * <em>graph</em> root of a given vertex.
@@ -950,6 +1893,8 @@ A:		while ( true )
 
 	private void notifyListeners()
 	{
+		densitySummary = null;
+		vertexIndex = null;
 		for ( final LayoutListener l : listeners.list )
 			l.layoutChanged( this );
 	}
@@ -3,8 +3,11 @@ package org.mastodon.revised.trackscheme;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.mastodon.RefPool;
 import org.mastodon.collection.RefList;
+import org.mastodon.collection.RefSet;
 import org.mastodon.collection.ref.RefArrayList;
+import org.mastodon.model.SelectionDelta;
 import org.mastodon.revised.trackscheme.ScreenEdge.ScreenEdgePool;
 import org.mastodon.revised.trackscheme.ScreenVertex.ScreenVertexPool;
 import org.mastodon.revised.trackscheme.ScreenVertexRange.ScreenVertexRangePool;
@@ -22,6 +25,8 @@ public class ScreenEntities
 	 */
 	private static final int DEFAULT_CAPACITY = 1000;
 
+	private final TrackSchemeGraph< ?, ? > graph;
+
 	private final ScreenVertexPool vertexPool;
 
 	private final ScreenEdgePool edgePool;
@@ -41,6 +46,17 @@ public class ScreenEntities
 	 */
 	private final ScreenTransform screenTransform;
 
+	/**
+	 * Scratch references to the entities of this {@link ScreenEntities}, used
+	 * by {@link ScreenEntitiesInterpolator} so that animation frames do not
+	 * create references.
+	 */
+	final ScreenVertex vertexRef;
+
+	final ScreenEdge edgeRef;
+
+	final ScreenVertexRange rangeRef;
+
 	public ScreenEntities( final TrackSchemeGraph< ?, ? > graph )
 	{
 		this( graph, DEFAULT_CAPACITY );
@@ -48,6 +64,7 @@ public class ScreenEntities
 
 	public ScreenEntities( final TrackSchemeGraph< ?, ? > graph, final int initialCapacity )
 	{
+		this.graph = graph;
 		vertexPool = new ScreenVertexPool( initialCapacity, graph.getVertexPool() );
 		vertices = new RefArrayList< ScreenVertex >( vertexPool, initialCapacity );
 		edgePool = new ScreenEdgePool( initialCapacity );
@@ -56,6 +73,9 @@ public class ScreenEntities
 		ranges = new RefArrayList< ScreenVertexRange >( rangePool, initialCapacity );
 		columns = new ArrayList<>( initialCapacity );
 		screenTransform = new ScreenTransform();
+		vertexRef = vertexPool.createRef();
+		edgeRef = edgePool.createRef();
+		rangeRef = rangePool.createRef();
 	}
 
 	public RefList< ScreenVertex > getVertices()
@@ -137,4 +157,49 @@ public class ScreenEntities
 
 		screenTransform().set( ent.screenTransform );
 	}
+
+	/**
+	 * Updates the selected state of the screen vertices and edges whose
+	 * {@link TrackSchemeVertex} or {@link TrackSchemeEdge} is in the specified
+	 * selection delta. Other entities are left untouched.
+	 *
+	 * @param delta
+	 *            the selection changes.
+	 */
+	public void updateSelection( final SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > delta )
+	{
+		final RefPool< TrackSchemeVertex > tsVertexPool = graph.getVertexPool();
+		final TrackSchemeVertex vRef = tsVertexPool.createRef();
+		final RefSet< TrackSchemeVertex > addedVertices = delta.getAddedVertices();
+		final RefSet< TrackSchemeVertex > removedVertices = delta.getRemovedVertices();
+		if ( !addedVertices.isEmpty() || !removedVertices.isEmpty() )
+		{
+			for ( final ScreenVertex sv : vertices )
+			{
+				final TrackSchemeVertex v = tsVertexPool.getObject( sv.getTrackSchemeVertexId(), vRef );
+				if ( addedVertices.contains( v ) )
+					sv.setSelected( true );
+				else if ( removedVertices.contains( v ) )
+					sv.setSelected( false );
+			}
+		}
+		tsVertexPool.releaseRef( vRef );
+
+		final RefPool< TrackSchemeEdge > tsEdgePool = graph.getEdgePool();
+		final TrackSchemeEdge eRef = tsEdgePool.createRef();
+		final RefSet< TrackSchemeEdge > addedEdges = delta.getAddedEdges();
+		final RefSet< TrackSchemeEdge > removedEdges = delta.getRemovedEdges();
+		if ( !addedEdges.isEmpty() || !removedEdges.isEmpty() )
+		{
+			for ( final ScreenEdge se : edges )
+			{
+				final TrackSchemeEdge e = tsEdgePool.getObject( se.getTrackSchemeEdgeId(), eRef );
+				if ( addedEdges.contains( e ) )
+					se.setSelected( true );
+				else if ( removedEdges.contains( e ) )
+					se.setSelected( false );
+			}
+		}
+		tsEdgePool.releaseRef( eRef );
+	}
 }
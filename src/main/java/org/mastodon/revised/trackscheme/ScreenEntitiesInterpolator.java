@@ -6,21 +6,92 @@ import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.DISAPPEAR
 import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.NONE;
 import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.SELECTING;
 
-import org.mastodon.collection.ref.IntRefHashMap;
+import java.util.Arrays;
 
+import org.mastodon.collection.RefList;
+
+/**
+ * Interpolates between two sets of {@link ScreenEntities}, to animate
+ * TrackScheme transitions.
+ * <p>
+ * An interpolator can be reused for successive transitions, by
+ * {@link #set(ScreenEntities, ScreenEntities, ScreenTransform) setting} new
+ * start and end entities. Vertices and edges of the start and end entities are
+ * matched by sorting their ids, and the start and end vertex positions are
+ * copied to primitive arrays. The arrays are kept across transitions, so that
+ * once they have grown to the number of entities,
+ * {@link #interpolate(double, ScreenEntities)} does not allocate.
+ */
 public class ScreenEntitiesInterpolator
 {
-	private final ScreenEntities start;
+	private ScreenEntities start;
+
+	private ScreenEntities end;
+
+	/**
+	 * Whether an incremental transform is applied to the start entities.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Transform of the start entities, including the incremental transform.
+	 */
+	private final ScreenTransform startTransform;
+
+	/**
+	 * Index of the end vertex with the same id as each start vertex, or -1.
+	 */
+	private int[] startToEndVertex;
+
+	/**
+	 * Index of the start vertex with the same id as each end vertex, or -1.
+	 */
+	private int[] endToStartVertex;
+
+	/**
+	 * Index of the start edge with the same id as each end edge, or -1.
+	 */
+	private int[] endToStartEdge;
+
+	/**
+	 * Screen coordinates of the start vertices, in the incremental transform.
+	 */
+	private double[] startX;
+
+	private double[] startY;
 
-	private final ScreenEntities end;
+	/**
+	 * Screen coordinates of the end vertices.
+	 */
+	private double[] endX;
 
-	private final IntRefHashMap< ScreenVertex > idToStartVertex;
+	private double[] endY;
 
-	private final IntRefHashMap< ScreenVertex > idToEndVertex;
+	/**
+	 * Sorted {@code (id << 32 | index)} keys of start and end entities.
+	 */
+	private long[] startKeys;
 
-	private final IntRefHashMap< ScreenEdge > idToStartEdge;
+	private long[] endKeys;
 
-	private final ScreenTransform incrementalStartTransform;
+	/**
+	 * Create an interpolator, without start and end entities. These must be
+	 * {@link #set(ScreenEntities, ScreenEntities, ScreenTransform) set} before
+	 * interpolating.
+	 */
+	public ScreenEntitiesInterpolator()
+	{
+		startTransform = new ScreenTransform();
+		startToEndVertex = new int[ 0 ];
+		endToStartVertex = new int[ 0 ];
+		endToStartEdge = new int[ 0 ];
+		startX = new double[ 0 ];
+		startY = new double[ 0 ];
+		endX = new double[ 0 ];
+		endY = new double[ 0 ];
+		startKeys = new long[ 0 ];
+		endKeys = new long[ 0 ];
+	}
 
 	/**
 	 * Create an interpolator between two sets of {@link ScreenEntities}.
@@ -49,23 +120,111 @@ public class ScreenEntitiesInterpolator
 	 *            optional incremental transform of start entities.
 	 */
 	public ScreenEntitiesInterpolator( final ScreenEntities start, final ScreenEntities end, final ScreenTransform incrementalStartTransform )
+	{
+		this();
+		set( start, end, incrementalStartTransform );
+	}
+
+	/**
+	 * Sets the two sets of {@link ScreenEntities} to interpolate between.
+	 * Optionally, an incremental {@link ScreenTransform} can be specified, that
+	 * is applied to the {@code start} {@link ScreenEntities} (on top of the
+	 * transform that was used to create them).
+	 * <p>
+	 * The positions of the start and end entities must not change until the
+	 * next call to this method. Their selection state may change.
+	 *
+	 * @param start
+	 *            start of the interpolation.
+	 * @param end
+	 *            end of the interpolation.
+	 * @param incrementalStartTransform
+	 *            optional incremental transform of start entities.
+	 */
+	public void set( final ScreenEntities start, final ScreenEntities end, final ScreenTransform incrementalStartTransform )
 	{
 		this.start = start;
 		this.end = end;
+		incremental = incrementalStartTransform != null;
+		if ( incremental )
+			startTransform.set( incrementalStartTransform.concatenate( start.screenTransform() ) );
+		else
+			startTransform.set( start.screenTransform() );
 
-		idToStartVertex = new IntRefHashMap< ScreenVertex >( start.getVertexPool(), -1, start.getVertices().size() );
-		for ( final ScreenVertex v : start.getVertices() )
-			idToStartVertex.put( v.getTrackSchemeVertexId(), v );
+		// Match vertices.
+		final RefList< ScreenVertex > startVertices = start.getVertices();
+		final RefList< ScreenVertex > endVertices = end.getVertices();
+		final int numStartVertices = startVertices.size();
+		final int numEndVertices = endVertices.size();
+		startToEndVertex = ensureCapacity( startToEndVertex, numStartVertices );
+		endToStartVertex = ensureCapacity( endToStartVertex, numEndVertices );
+		startX = ensureCapacity( startX, numStartVertices );
+		startY = ensureCapacity( startY, numStartVertices );
+		endX = ensureCapacity( endX, numEndVertices );
+		endY = ensureCapacity( endY, numEndVertices );
+		startKeys = ensureCapacity( startKeys, numStartVertices );
+		endKeys = ensureCapacity( endKeys, numEndVertices );
 
-		idToEndVertex = new IntRefHashMap< ScreenVertex >( end.getVertexPool(), -1, end.getVertices().size() );
-		for ( final ScreenVertex v : end.getVertices() )
-			idToEndVertex.put( v.getTrackSchemeVertexId(), v );
+		final ScreenVertex vStart = start.vertexRef;
+		int numStartKeys = 0;
+		for ( int i = 0; i < numStartVertices; ++i )
+		{
+			startVertices.get( i, vStart );
+			double x = vStart.getX();
+			double y = vStart.getY();
+			if ( incremental )
+			{
+				x = incrementalStartTransform.layoutToScreenX( x );
+				y = incrementalStartTransform.layoutToScreenY( y );
+			}
+			startX[ i ] = x;
+			startY[ i ] = y;
+			final int id = vStart.getTrackSchemeVertexId();
+			if ( id >= 0 )
+				startKeys[ numStartKeys++ ] = key( id, i );
+		}
+		final ScreenVertex vEnd = end.vertexRef;
+		int numEndKeys = 0;
+		for ( int i = 0; i < numEndVertices; ++i )
+		{
+			endVertices.get( i, vEnd );
+			endX[ i ] = vEnd.getX();
+			endY[ i ] = vEnd.getY();
+			final int id = vEnd.getTrackSchemeVertexId();
+			if ( id >= 0 )
+				endKeys[ numEndKeys++ ] = key( id, i );
+		}
+		Arrays.fill( startToEndVertex, 0, numStartVertices, -1 );
+		Arrays.fill( endToStartVertex, 0, numEndVertices, -1 );
+		match( startKeys, numStartKeys, endKeys, numEndKeys, startToEndVertex, endToStartVertex );
 
-		idToStartEdge = new IntRefHashMap< ScreenEdge >( start.getEdgePool(), -1, start.getEdges().size() );
-		for ( final ScreenEdge e : start.getEdges() )
-			idToStartEdge.put( e.getTrackSchemeEdgeId(), e );
+		// Match edges.
+		final RefList< ScreenEdge > startEdges = start.getEdges();
+		final RefList< ScreenEdge > endEdges = end.getEdges();
+		final int numStartEdges = startEdges.size();
+		final int numEndEdges = endEdges.size();
+		endToStartEdge = ensureCapacity( endToStartEdge, numEndEdges );
+		startKeys = ensureCapacity( startKeys, numStartEdges );
+		endKeys = ensureCapacity( endKeys, numEndEdges );
 
-		this.incrementalStartTransform = incrementalStartTransform;
+		final ScreenEdge eStart = start.edgeRef;
+		numStartKeys = 0;
+		for ( int i = 0; i < numStartEdges; ++i )
+		{
+			final int id = startEdges.get( i, eStart ).getTrackSchemeEdgeId();
+			if ( id >= 0 )
+				startKeys[ numStartKeys++ ] = key( id, i );
+		}
+		final ScreenEdge eEnd = end.edgeRef;
+		numEndKeys = 0;
+		for ( int i = 0; i < numEndEdges; ++i )
+		{
+			final int id = endEdges.get( i, eEnd ).getTrackSchemeEdgeId();
+			if ( id >= 0 )
+				endKeys[ numEndKeys++ ] = key( id, i );
+		}
+		Arrays.fill( endToStartEdge, 0, numEndEdges, -1 );
+		match( startKeys, numStartKeys, endKeys, numEndKeys, null, endToStartEdge );
 	}
 
 	public static ScreenTransform getIncrementalY( final ScreenEntities start, final ScreenEntities end )
@@ -80,6 +239,15 @@ public class ScreenEntitiesInterpolator
 		return end.screenTransform().concatenate( start.screenTransform().inverse() );
 	}
 
+	/**
+	 * Interpolates between the start and end entities.
+	 *
+	 * @param currentRatio
+	 *            the interpolation ratio, from 0 (start) to 1 (end).
+	 * @param current
+	 *            the {@link ScreenEntities} to add interpolated entities to.
+	 *            Must be distinct from the start and end entities.
+	 */
 	public void interpolate( final double currentRatio, final ScreenEntities current )
 	{
 		final double accelRatio = Math.sin( Math.PI * Math.sin( Math.PI * currentRatio / 2 ) / 2 );
@@ -87,27 +255,33 @@ public class ScreenEntitiesInterpolator
 		// Interpolate vertices
 		// ====================
 		// Each interpolated vertex either moves, appears, disappears, gets selected or gets de-selected.
-		final ScreenVertex vCurrent = current.getVertexPool().createRef();
-		final ScreenVertex vStart = start.getVertexPool().createRef();
-		final ScreenVertex vEnd = end.getVertexPool().createRef();
-		for ( final ScreenVertex v : start.getVertices() )
+		final RefList< ScreenVertex > startVertices = start.getVertices();
+		final RefList< ScreenVertex > endVertices = end.getVertices();
+		final RefList< ScreenVertex > currentVertices = current.getVertices();
+		final ScreenVertex vCurrent = current.vertexRef;
+		final ScreenVertex vStart = start.vertexRef;
+		final ScreenVertex vEnd = end.vertexRef;
+		final int numStartVertices = startVertices.size();
+		for ( int i = 0; i < numStartVertices; ++i )
 		{
-			final int vId = v.getTrackSchemeVertexId();
-			if ( vId < 0 )
+			startVertices.get( i, vStart );
+			if ( vStart.getTrackSchemeVertexId() < 0 )
 				continue;
 
-			current.getVertices().add( current.getVertexPool().create( vCurrent ) );
-			if ( idToEndVertex.get( vId, vEnd ) != null )
-				interpolate( v, vEnd, accelRatio, vCurrent );
+			currentVertices.add( current.getVertexPool().create( vCurrent ) );
+			final int j = startToEndVertex[ i ];
+			if ( j >= 0 )
+				interpolate( vStart, startX[ i ], startY[ i ], endVertices.get( j, vEnd ), endX[ j ], endY[ j ], accelRatio, vCurrent );
 			else
-				disappear( v, accelRatio, vCurrent );
+				disappear( vStart, startX[ i ], startY[ i ], accelRatio, vCurrent );
 		}
-		for ( final ScreenVertex v : end.getVertices() )
+		final int numEndVertices = endVertices.size();
+		for ( int j = 0; j < numEndVertices; ++j )
 		{
-			if ( idToStartVertex.get( v.getTrackSchemeVertexId(), vStart ) == null )
+			if ( endToStartVertex[ j ] < 0 )
 			{
-				current.getVertices().add( current.getVertexPool().create( vCurrent ) );
-				appear( v, accelRatio, vCurrent );
+				currentVertices.add( current.getVertexPool().create( vCurrent ) );
+				appear( endVertices.get( j, vEnd ), endX[ j ], endY[ j ], accelRatio, vCurrent );
 			}
 		}
 
@@ -115,12 +289,17 @@ public class ScreenEntitiesInterpolator
 		// =================
 		// For now, only edges between non-disappearing interpolated vertices
 		// are added.
-		final ScreenEdge eCurrent = current.getEdgePool().createRef();
-		final ScreenEdge eStart = start.getEdgePool().createRef();
-		for ( final ScreenEdge e : end.getEdges() )
+		final RefList< ScreenEdge > startEdges = start.getEdges();
+		final RefList< ScreenEdge > endEdges = end.getEdges();
+		final ScreenEdge eCurrent = current.edgeRef;
+		final ScreenEdge eStart = start.edgeRef;
+		final ScreenEdge e = end.edgeRef;
+		final int numEndEdges = endEdges.size();
+		for ( int j = 0; j < numEndEdges; ++j )
 		{
-			final int sourceIndex = end.getVertices().get( e.getSourceScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
-			final int targetIndex = end.getVertices().get( e.getTargetScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
+			endEdges.get( j, e );
+			final int sourceIndex = endVertices.get( e.getSourceScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
+			final int targetIndex = endVertices.get( e.getTargetScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
 			final boolean endSelected = e.isSelected();
 			current.getEdges().add( current.getEdgePool().create( eCurrent ).init(
 					e.getTrackSchemeEdgeId(),
@@ -128,10 +307,11 @@ public class ScreenEntitiesInterpolator
 					targetIndex,
 					endSelected,
 					e.getColor() ) );
-			if ( idToStartEdge.get( e.getTrackSchemeEdgeId(), eStart ) != null )
+			final int i = endToStartEdge[ j ];
+			if ( i >= 0 )
 			{
 				// changing selection state?
-				if ( endSelected != eStart.isSelected() )
+				if ( endSelected != startEdges.get( i, eStart ).isSelected() )
 				{
 					eCurrent.setTransition( endSelected ? SELECTING : DESELECTING );
 					eCurrent.setInterpolationCompletionRatio( accelRatio );
@@ -142,48 +322,42 @@ public class ScreenEntitiesInterpolator
 		// Interpolate dense vertex ranges
 		// ===============================
 		// For now, simply use the dense ranges of the interpolation target.
-		final ScreenVertexRange rRef = current.getRangePool().createRef();
-		for ( final ScreenVertexRange r : end.getRanges() )
-			current.getRanges().add( current.getRangePool().create( rRef ).cloneFrom( r ) );
-		current.getRangePool().releaseRef( rRef );
+		final RefList< ScreenVertexRange > endRanges = end.getRanges();
+		final ScreenVertexRange rCurrent = current.rangeRef;
+		final ScreenVertexRange r = end.rangeRef;
+		final int numEndRanges = endRanges.size();
+		for ( int j = 0; j < numEndRanges; ++j )
+			current.getRanges().add( current.getRangePool().create( rCurrent ).cloneFrom( endRanges.get( j, r ) ) );
 
 		// Interpolate columns
 		// ===================
 		// For now, do not interpolate, just copy the end columns.
-		current.getColumns().addAll( end.getColumns() );
+		final int numEndColumns = end.getColumns().size();
+		for ( int j = 0; j < numEndColumns; ++j )
+			current.getColumns().add( end.getColumns().get( j ) );
 
 		// Interpolate screenTransform
 		// ===========================
-		ScreenTransform startTransform = start.screenTransform();
-		if ( incrementalStartTransform != null )
-			startTransform = incrementalStartTransform.concatenate( start.screenTransform() );
 		current.screenTransform().interpolate( startTransform, end.screenTransform(), accelRatio );
-
-		// clean up
-		current.getVertexPool().releaseRef( vCurrent );
-		start.getVertexPool().releaseRef( vStart );
-		end.getVertexPool().releaseRef( vEnd );
-		current.getEdgePool().releaseRef( eCurrent );
-		current.getEdgePool().releaseRef( eStart );
 	}
 
-	private void interpolate( final ScreenVertex vStart, final ScreenVertex vEnd, final double ratio, final ScreenVertex vCurrent )
+	private void interpolate(
+			final ScreenVertex vStart,
+			final double startX,
+			final double startY,
+			final ScreenVertex vEnd,
+			final double endX,
+			final double endY,
+			final double ratio,
+			final ScreenVertex vCurrent )
 	{
 		vCurrent.setTrackSchemeVertexId( vEnd.getTrackSchemeVertexId() );
-		vCurrent.setLabel( vEnd.getLabel() );
 		final boolean endSelected = vEnd.isSelected();
 		vCurrent.setSelected( endSelected );
 		vCurrent.setGhost( vEnd.isGhost() );
 		vCurrent.setVertexDist( vEnd.getVertexDist() );
-		double startX = vStart.getX();
-		double startY = vStart.getY();
-		if ( incrementalStartTransform != null )
-		{
-			startX = incrementalStartTransform.layoutToScreenX( startX );
-			startY = incrementalStartTransform.layoutToScreenY( startY );
-		}
-		vCurrent.setX( ratio * vEnd.getX() + ( 1 - ratio ) * startX );
-		vCurrent.setY( ratio * vEnd.getY() + ( 1 - ratio ) * startY );
+		vCurrent.setX( ratio * endX + ( 1 - ratio ) * startX );
+		vCurrent.setY( ratio * endY + ( 1 - ratio ) * startY );
 		vCurrent.setTransition(
 				( vStart.isSelected() == endSelected )
 						? NONE
@@ -195,20 +369,12 @@ public class ScreenEntitiesInterpolator
 		vEnd.setInterpolatedScreenVertexIndex( vCurrent.getInternalPoolIndex() );
 	}
 
-	private void disappear( final ScreenVertex vStart, final double ratio, final ScreenVertex vCurrent )
+	private void disappear( final ScreenVertex vStart, final double startX, final double startY, final double ratio, final ScreenVertex vCurrent )
 	{
 		vCurrent.setTrackSchemeVertexId( -1 );
-		vCurrent.setLabel( vStart.getLabel() );
 		vCurrent.setSelected( vStart.isSelected() );
 		vCurrent.setGhost( vStart.isGhost() );
 		vCurrent.setVertexDist( vStart.getVertexDist() );
-		double startX = vStart.getX();
-		double startY = vStart.getY();
-		if ( incrementalStartTransform != null )
-		{
-			startX = incrementalStartTransform.layoutToScreenX( startX );
-			startY = incrementalStartTransform.layoutToScreenY( startY );
-		}
 		vCurrent.setX( startX );
 		vCurrent.setY( startY );
 		vCurrent.setTransition( DISAPPEAR );
@@ -216,18 +382,72 @@ public class ScreenEntitiesInterpolator
 		vCurrent.setColor( vStart.getColor() );
 	}
 
-	private void appear( final ScreenVertex vEnd, final double ratio, final ScreenVertex vCurrent )
+	private void appear( final ScreenVertex vEnd, final double endX, final double endY, final double ratio, final ScreenVertex vCurrent )
 	{
 		vCurrent.setTrackSchemeVertexId( vEnd.getTrackSchemeVertexId() );
-		vCurrent.setLabel( vEnd.getLabel() );
 		vCurrent.setSelected( vEnd.isSelected() );
 		vCurrent.setGhost( vEnd.isGhost() );
 		vCurrent.setVertexDist( vEnd.getVertexDist() );
-		vCurrent.setX( vEnd.getX() );
-		vCurrent.setY( vEnd.getY() );
+		vCurrent.setX( endX );
+		vCurrent.setY( endY );
 		vCurrent.setTransition( APPEAR );
 		vCurrent.setInterpolationCompletionRatio( ratio );
 		vCurrent.setColor( vEnd.getColor() );
 		vEnd.setInterpolatedScreenVertexIndex( vCurrent.getInternalPoolIndex() );
 	}
+
+	private static long key( final int id, final int index )
+	{
+		return ( ( long ) id << 32 ) | index;
+	}
+
+	/**
+	 * Sorts start and end keys, and records the indices of entities with the
+	 * same id in the start and end lists.
+	 */
+	private static void match(
+			final long[] startKeys,
+			final int numStartKeys,
+			final long[] endKeys,
+			final int numEndKeys,
+			final int[] startToEnd,
+			final int[] endToStart )
+	{
+		Arrays.sort( startKeys, 0, numStartKeys );
+		Arrays.sort( endKeys, 0, numEndKeys );
+		int i = 0;
+		int j = 0;
+		while ( i < numStartKeys && j < numEndKeys )
+		{
+			final int startId = ( int ) ( startKeys[ i ] >>> 32 );
+			final int endId = ( int ) ( endKeys[ j ] >>> 32 );
+			if ( startId < endId )
+				++i;
+			else if ( startId > endId )
+				++j;
+			else
+			{
+				final int startIndex = ( int ) startKeys[ i++ ];
+				final int endIndex = ( int ) endKeys[ j++ ];
+				if ( startToEnd != null )
+					startToEnd[ startIndex ] = endIndex;
+				endToStart[ endIndex ] = startIndex;
+			}
+		}
+	}
+
+	private static int[] ensureCapacity( final int[] array, final int size )
+	{
+		return array.length >= size ? array : new int[ Math.max( size, 2 * array.length ) ];
+	}
+
+	private static long[] ensureCapacity( final long[] array, final int size )
+	{
+		return array.length >= size ? array : new long[ Math.max( size, 2 * array.length ) ];
+	}
+
+	private static double[] ensureCapacity( final double[] array, final int size )
+	{
+		return array.length >= size ? array : new double[ Math.max( size, 2 * array.length ) ];
+	}
 }
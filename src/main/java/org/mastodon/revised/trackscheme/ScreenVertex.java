@@ -14,7 +14,6 @@ import org.mastodon.pool.attributes.ByteAttribute;
 import org.mastodon.pool.attributes.DoubleAttribute;
 import org.mastodon.pool.attributes.IndexAttribute;
 import org.mastodon.pool.attributes.IntAttribute;
-import org.mastodon.properties.ObjPropertyMap;
 import org.mastodon.revised.trackscheme.ScreenVertex.ScreenVertexPool;
 
 /**
@@ -53,7 +52,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 		final ByteAttribute< ScreenVertex > transition = new ByteAttribute<>( layout.transition, this );
 		final IndexAttribute< ScreenVertex > ipScreenVertex = new IndexAttribute<>( layout.ipScreenVertex, this );
 		final DoubleAttribute< ScreenVertex > ipRatio = new DoubleAttribute<>( layout.ipRatio, this );
-		final ObjPropertyMap< ScreenVertex, String > label = new ObjPropertyMap<>( this );
 		final IntAttribute< ScreenVertex > color = new IntAttribute<>( layout.color, this );
 
 		public ScreenVertexPool( final int initialCapacity, final RefPool< TrackSchemeVertex > trackSchemeVertexPool )
@@ -109,7 +107,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 
 	public ScreenVertex init(
 			final int id,
-			final String label,
 			final double x,
 			final double y,
 			final boolean selected,
@@ -117,7 +114,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 			final int color )
 	{
 		setTrackSchemeVertexId( id );
-		setLabel( label );
 		setX( x );
 		setY( y );
 		setSelected( selected );
@@ -190,23 +186,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 		pool.vertexDist.setQuiet( this, minVertexScreenDist );
 	}
 
-	/**
-	 * Get the label of the vertex. This calls
-	 * {@link TrackSchemeVertex#getLabel()} of the associated
-	 * {@link TrackSchemeVertex}.
-	 *
-	 * @return label of the vertex.
-	 */
-	public String getLabel()
-	{
-		return pool.label.get( this );
-	}
-
-	protected void setLabel( final String label )
-	{
-		pool.label.set( this, label );
-	}
-
 	/**
 	 * Get the selected state of the vertex.
 	 *
@@ -329,7 +308,6 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 	ScreenVertex cloneFrom( final ScreenVertex v )
 	{
 		setTrackSchemeVertexId( v.getTrackSchemeVertexId() );
-		setLabel( v.getLabel() );
 		setX( v.getX() );
 		setY( v.getY() );
 		setVertexDist( v.getVertexDist() );
@@ -359,10 +337,9 @@ public class ScreenVertex extends PoolObject< ScreenVertex, ScreenVertexPool, By
 	@Override
 	public String toString()
 	{
-		return String.format( "ScreenVertex(%d, sv=%d, \"%s\", (%.2f, %.2f), %s, isv=%d%s)",
+		return String.format( "ScreenVertex(%d, sv=%d, (%.2f, %.2f), %s, isv=%d%s)",
 				getInternalPoolIndex(),
 				getTrackSchemeVertexId(),
-				getLabel(),
 				getX(),
 				getY(),
 				getTransition().toString(),
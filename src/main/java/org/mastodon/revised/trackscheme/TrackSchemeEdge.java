@@ -37,13 +37,6 @@ public class TrackSchemeEdge extends AbstractEdge< TrackSchemeEdge, TrackSchemeV
 		return this;
 	}
 
-	@Override
-	protected void setToUninitializedState()
-	{
-		super.setToUninitializedState();
-		setScreenEdgeIndex( -1 );
-	}
-
 	TrackSchemeEdge initModelId( final int modelEdgeId )
 	{
 		setModelEdgeId( modelEdgeId );
@@ -66,14 +59,4 @@ public class TrackSchemeEdge extends AbstractEdge< TrackSchemeEdge, TrackSchemeV
 	{
 		pool.origEdgeIndex.setQuiet( this, id );
 	}
-
-	public int getScreenEdgeIndex()
-	{
-		return pool.screenEdgeIndex.get( this );
-	}
-
-	public void setScreenEdgeIndex( final int screenEdgeIndex )
-	{
-		pool.screenEdgeIndex.setQuiet( this, screenEdgeIndex );
-	}
 }
@@ -24,8 +24,6 @@ import org.mastodon.graph.ref.GraphImp;
 import org.mastodon.pool.ByteMappedElement;
 import org.mastodon.pool.ByteMappedElementArray;
 import org.mastodon.pool.SingleArrayMemPool;
-import org.mastodon.pool.attributes.BooleanAttribute;
-import org.mastodon.pool.attributes.DoubleAttribute;
 import org.mastodon.pool.attributes.IndexAttribute;
 import org.mastodon.pool.attributes.IntAttribute;
 import org.mastodon.revised.trackscheme.wrap.DefaultModelGraphProperties;
@@ -45,11 +43,13 @@ import org.mastodon.util.Listeners;
  * {@link GraphListener}.
  * <p>
  * The vertices and edges of the {@link TrackSchemeGraph} expose properties
- * related to graph {@link LineageTreeLayout layout} (such as layout
- * coordinates) and painting (such as whether the vertex is selected). Some of
- * these (layout coordinates) are stored in the {@link TrackSchemeGraph}
- * entities, while others (label, selected state) are backed by the model
- * entities.
+ * related to painting (such as label or whether the vertex is selected). These
+ * are backed by the model entities. Properties related to graph
+ * {@link LineageTreeLayout layout} (such as layout coordinates) are not stored
+ * in the {@link TrackSchemeGraph} entities, but in {@link LayoutAttributes}
+ * owned by each layout, so that several TrackScheme views can share one
+ * {@link TrackSchemeGraph}. {@link #close()} must be called when the graph is
+ * not used anymore, to stop mirroring the model graph.
  * <p>
  * A mapping between vertices of the model graph and {@link TrackSchemeVertex
  * vertices} of the {@link TrackSchemeGraph} is established through unique IDs
@@ -117,6 +117,8 @@ public class TrackSchemeGraph<
 
 	private final Listeners.List< GraphChangeListener > listeners;
 
+	private final Listeners.List< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners;
+
 	private final RefBimap< V, TrackSchemeVertex > vertexMap;
 
 	private final RefBimap< E, TrackSchemeEdge > edgeMap;
@@ -200,6 +202,7 @@ public class TrackSchemeGraph<
 		tsv2 = vertexRef();
 		tse = edgeRef();
 		listeners = new Listeners.SynchronizedList<>();
+		graphListeners = new Listeners.SynchronizedList<>();
 		vertexMap = new TrackSchemeVertexBimap<>( this );
 		edgeMap = new TrackSchemeEdgeBimap<>( this );
 
@@ -311,11 +314,36 @@ public class TrackSchemeGraph<
 		return listeners;
 	}
 
+	/**
+	 * Get the list of GraphListeners. This can be used to add (or remove) a
+	 * GraphListener that will be notified of the vertices and edges added to
+	 * or removed from this TrackSchemeGraph, as they are mirrored from the
+	 * model graph. Removals are notified before the vertex or edge is
+	 * removed, additions after it was added.
+	 *
+	 * @return list of GraphListeners
+	 */
+	public Listeners< GraphListener< TrackSchemeVertex, TrackSchemeEdge > > graphListeners()
+	{
+		return graphListeners;
+	}
+
 	public ReentrantReadWriteLock getLock()
 	{
 		return lock;
 	}
 
+	/**
+	 * Unregisters this {@link TrackSchemeGraph} from the model graph. After
+	 * this call, the {@link TrackSchemeGraph} does not mirror the model graph
+	 * anymore.
+	 */
+	public void close()
+	{
+		modelGraph.removeGraphListener( this );
+		modelGraph.removeGraphChangeListener( this );
+	}
+
 	@Override
 	public TrackSchemeVertex addVertex()
 	{
@@ -435,6 +463,8 @@ public class TrackSchemeGraph<
 			super.insertEdge( tsv, e.getSourceOutIndex(), tsv2, e.getTargetInIndex(), tse ).initModelId( id );
 			idToTrackSchemeEdge.put( id, tse );
 		}
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.graphRebuilt();
 	}
 
 	@Override
@@ -444,6 +474,8 @@ public class TrackSchemeGraph<
 		super.addVertex( tsv ).initModelId( id );
 		idToTrackSchemeVertex.put( id, tsv );
 		roots.add( tsv );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.vertexAdded( tsv );
 	}
 
 	@Override
@@ -452,6 +484,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getVertexId( vertex );
 		if ( idToTrackSchemeVertex.remove( id, tsv ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.vertexRemoved( tsv );
 			if ( tsv.incomingEdges().isEmpty() )
 				roots.remove( tsv );
 			super.remove( tsv );
@@ -468,6 +502,8 @@ public class TrackSchemeGraph<
 			roots.remove( tsv2 );
 		super.insertEdge( tsv, edge.getSourceOutIndex(), tsv2, edge.getTargetInIndex(), tse ).initModelId( id );
 		idToTrackSchemeEdge.put( id, tse );
+		for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+			l.edgeAdded( tse );
 	}
 
 	@Override
@@ -476,6 +512,8 @@ public class TrackSchemeGraph<
 		final int id = idmap.getEdgeId( edge );
 		if ( idToTrackSchemeEdge.remove( id, tse ) != null )
 		{
+			for ( final GraphListener< TrackSchemeVertex, TrackSchemeEdge > l : graphListeners.list )
+				l.edgeRemoved( tse );
 			if ( tse.getTarget( tsv ).incomingEdges().size() == 1 )
 				roots.add( tsv );
 			super.remove( tse );
@@ -517,12 +555,7 @@ public class TrackSchemeGraph<
 	static class TrackSchemeVertexLayout extends AbstractVertexLayout
 	{
 		final IndexField origVertexIndex = indexField();
-		final IntField layoutTimeStamp = intField();
-		final IndexField layoutInEdgeIndex = indexField();
-		final DoubleField layoutX = doubleField();
 		final IntField timepoint = intField();
-		final IndexField screenVertexIndex = indexField();
-		final BooleanField ghost = booleanField();
 	}
 
 	static TrackSchemeVertexLayout vertexLayout = new TrackSchemeVertexLayout();
@@ -532,12 +565,7 @@ public class TrackSchemeGraph<
 		final ModelGraphWrapper< ?, ? > modelGraphWrapper;
 
 		final IndexAttribute< TrackSchemeVertex > origVertexIndex = new IndexAttribute<>( vertexLayout.origVertexIndex, this );
-		final IntAttribute< TrackSchemeVertex > layoutTimeStamp = new IntAttribute<>( vertexLayout.layoutTimeStamp, this );
-		final IndexAttribute< TrackSchemeVertex > layoutInEdgeIndex = new IndexAttribute<>( vertexLayout.layoutInEdgeIndex, this );
-		final DoubleAttribute< TrackSchemeVertex > layoutX = new DoubleAttribute<>( vertexLayout.layoutX, this );
 		final IntAttribute< TrackSchemeVertex > timepoint = new IntAttribute<>( vertexLayout.timepoint, this );
-		final IndexAttribute< TrackSchemeVertex > screenVertexIndex = new IndexAttribute<>( vertexLayout.screenVertexIndex, this );
-		final BooleanAttribute< TrackSchemeVertex > ghost = new BooleanAttribute<>( vertexLayout.ghost, this );
 
 		private TrackSchemeVertexPool( final int initialCapacity, final ModelGraphWrapper< ?, ? > modelGraphWrapper )
 		{
@@ -555,7 +583,6 @@ public class TrackSchemeGraph<
 	static class TrackSchemeEdgeLayout extends AbstractEdgeLayout
 	{
 		final IndexField origEdgeIndex = indexField();
-		final IndexField screenEdgeIndex = indexField();
 	}
 
 	static TrackSchemeEdgeLayout edgeLayout = new TrackSchemeEdgeLayout();
@@ -565,7 +592,6 @@ public class TrackSchemeGraph<
 		final ModelGraphWrapper< ?, ? > modelGraphWrapper;
 
 		final IndexAttribute< TrackSchemeEdge > origEdgeIndex = new IndexAttribute<>( edgeLayout.origEdgeIndex, this );
-		final IndexAttribute< TrackSchemeEdge > screenEdgeIndex = new IndexAttribute<>( edgeLayout.screenEdgeIndex, this );
 
 		private TrackSchemeEdgePool( final int initialCapacity, final TrackSchemeVertexPool vertexPool )
 		{
@@ -6,34 +6,42 @@ import gnu.trove.list.array.TIntArrayList;
 
 /**
  * A list of {@link TrackSchemeVertex}. The vertices are assumed to be ordered
- * by {@link TrackSchemeVertex#getLayoutX() layoutX} and belong to the same
+ * by {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX} and belong to the same
  * timepoint. {@link TrackSchemeVertexList} provides binary search (by
- * {@link TrackSchemeVertex#getLayoutX() layoutX}), computation of
+ * {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX}), computation of
  * {@code layoutX} range and density, and computation of dense vertex ranges.
  *
+ * <p>
+ * Layout X coordinates are read from the {@link LayoutAttributes} of the
+ * layout that built the list.
+ *
  * @author Tobias Pietzsch &lt;tobias.pietzsch@gmail.com&gt;
  */
 public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 {
 	private final TrackSchemeGraph< ?, ? > graph;
 
+	private final LayoutAttributes attributes;
+
 	private double cachedMinLayoutXDistance;
 
 	// TODO: needs to be reset to false when the graph is laid out again.
 	// TODO: needs to be reset when the list is modified.
 	private boolean cachedMinLayoutXDistanceValid;
 
-	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph )
+	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph, final LayoutAttributes attributes )
 	{
 		super( graph.getVertexPool() );
 		this.graph = graph;
+		this.attributes = attributes;
 		cachedMinLayoutXDistanceValid = false;
 	}
 
-	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph, final int initialCapacity )
+	public TrackSchemeVertexList( final TrackSchemeGraph< ?, ? > graph, final LayoutAttributes attributes, final int initialCapacity )
 	{
 		super( graph.getVertexPool(), initialCapacity );
 		this.graph = graph;
+		this.attributes = attributes;
 		cachedMinLayoutXDistanceValid = false;
 	}
 
@@ -41,6 +49,7 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 	{
 		super( list, indexSubList );
 		this.graph = list.graph;
+		this.attributes = list.attributes;
 		cachedMinLayoutXDistanceValid = false;
 	}
 
@@ -52,10 +61,10 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 
 	/**
 	 * Performs a binary search for {@code value} in the entire list. Finds the
-	 * largest index of vertex with {@link TrackSchemeVertex#getLayoutX()
+	 * largest index of vertex with {@link LayoutAttributes#getLayoutX(TrackSchemeVertex)
 	 * layoutX} {@code <= value}. This assumes that the
 	 * {@link TrackSchemeVertexList} is ordered by
-	 * {@link TrackSchemeVertex#getLayoutX() layoutX}.
+	 * {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX}.
 	 * <p>
 	 * For the returned index <em>i</em>, it holds that <em>-1 &le; i &lt;</em>
 	 * {@code size()}.
@@ -72,10 +81,10 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 
 	/**
 	 * Performs a binary search for {@code value} in the specified range. Finds
-	 * the largest index of vertex with {@link TrackSchemeVertex#getLayoutX()
+	 * the largest index of vertex with {@link LayoutAttributes#getLayoutX(TrackSchemeVertex)
 	 * layoutX} {@code <= value}. This assumes that the
 	 * {@link TrackSchemeVertexList} is ordered by
-	 * {@link TrackSchemeVertex#getLayoutX() layoutX}.
+	 * {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX}.
 	 * <p>
 	 * For the returned index <em>i</em>, it holds that {@code fromIndex}
 	 * <em>- 1 &le; i &lt;</em> {@code toIndex}.
@@ -103,7 +112,7 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		while ( low <= high )
 		{
 			final int mid = ( low + high ) >>> 1;
-			final double midX = get( mid, vertex ).getLayoutX();
+			final double midX = attributes.getLayoutX( get( mid, vertex ) );
 
 			if ( midX <= value )
 				low = mid + 1;
@@ -130,8 +139,8 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		final int i = fromIndex;
 		final int j = toIndex - 1;
 
-		final double xi = get( i, vref ).getLayoutX();
-		final double xj = get( j, vref ).getLayoutX();
+		final double xi = attributes.getLayoutX( get( i, vref ) );
+		final double xj = attributes.getLayoutX( get( j, vref ) );
 
 		if ( ( xj - xi ) - minLayoutX * ( j - i - 1 ) < allowedMinD )
 		{
@@ -175,7 +184,7 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		else
 		{
 			final TrackSchemeVertex vertex = get( 0, graph.vertexRef() );
-			final double min = vertex.getLayoutX();
+			final double min = attributes.getLayoutX( vertex );
 			graph.releaseRef( vertex );
 			return min;
 		}
@@ -188,17 +197,17 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 		else
 		{
 			final TrackSchemeVertex vertex = graph.vertexRef();
-			final double max = get( size() - 1, vertex ).getLayoutX();
+			final double max = attributes.getLayoutX( get( size() - 1, vertex ) );
 			graph.releaseRef( vertex );
 			return max;
 		}
 	}
 
 	/**
-	 * Get minimal {@link TrackSchemeVertex#getLayoutX() layoutX} distance
+	 * Get minimal {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX} distance
 	 * between two neighboring vertices in the entire list. This assumes
 	 * that the {@link TrackSchemeVertexList} is ordered by
-	 * {@link TrackSchemeVertex#getLayoutX() layoutX}.
+	 * {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX}.
 	 *
 	 * @return minimal layoutX distance between neighboring vertices.
 	 */
@@ -213,10 +222,20 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 	}
 
 	/**
-	 * Get minimal {@link TrackSchemeVertex#getLayoutX() layoutX} distance
+	 * Invalidates the cached minimal {@link LayoutAttributes#getLayoutX(TrackSchemeVertex)
+	 * layoutX} distance. Must be called when vertices are inserted or removed,
+	 * or when their {@code layoutX} changes.
+	 */
+	void invalidateMinLayoutXDistance()
+	{
+		cachedMinLayoutXDistanceValid = false;
+	}
+
+	/**
+	 * Get minimal {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX} distance
 	 * between two neighboring vertices in the specified range. This assumes
 	 * that the {@link TrackSchemeVertexList} is ordered by
-	 * {@link TrackSchemeVertex#getLayoutX() layoutX}.
+	 * {@link LayoutAttributes#getLayoutX(TrackSchemeVertex) layoutX}.
 	 *
 	 * @param fromIndex
 	 *            the lower boundary of the range (inclusive)
@@ -232,11 +251,11 @@ public class TrackSchemeVertexList extends RefArrayList< TrackSchemeVertex >
 			throw new ArrayIndexOutOfBoundsException( toIndex );
 
 		final TrackSchemeVertex vertex = graph.vertexRef();
-		double prevLayoutX = get( fromIndex, vertex ).getLayoutX();
+		double prevLayoutX = attributes.getLayoutX( get( fromIndex, vertex ) );
 		double d = Double.POSITIVE_INFINITY;
 		for ( int i = fromIndex + 1; i < toIndex; ++i )
 		{
-			final double x = get( i, vertex ).getLayoutX();
+			final double x = attributes.getLayoutX( get( i, vertex ) );
 			d = Math.min( d, x - prevLayoutX );
 			prevLayoutX = x;
 		}
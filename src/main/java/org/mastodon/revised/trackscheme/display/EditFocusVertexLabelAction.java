@@ -281,7 +281,7 @@ public class EditFocusVertexLabelAction extends AbstractNamedAction implements T
 		private void reposition()
 		{
 			final int ly = vertex.getTimepoint();
-			final double lx = vertex.getLayoutX();
+			final double lx = panel.getLineageTreeLayout().getLayoutAttributes().getLayoutX( vertex );
 
 			final double[] screenPos = new double[ 2 ];
 			screenTransform.apply( new double[] { lx, ly }, screenPos );
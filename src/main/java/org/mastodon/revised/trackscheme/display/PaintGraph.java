@@ -85,6 +85,23 @@ public class PaintGraph
 
 	protected TrackSchemeStyle style;
 
+	/**
+	 * Resolves the labels of vertices painted in full. If {@code null}, no
+	 * labels are painted.
+	 */
+	protected VertexLabelCache labels;
+
+	/**
+	 * Sets the cache used to resolve the labels of vertices painted in full.
+	 *
+	 * @param labels
+	 *            the label cache. If {@code null}, no labels are painted.
+	 */
+	public void setVertexLabelCache( final VertexLabelCache labels )
+	{
+		this.labels = labels;
+	}
+
 	public void paintGraph(
 			final Graphics2D g2,
 			final ScreenEntities entities,
@@ -130,6 +147,72 @@ public class PaintGraph
 		vertices.releaseRef( vt );
 	}
 
+	/**
+	 * Paints only the highlighted and focused vertices and edge of the
+	 * specified entities, over a graph painted without highlight and focus.
+	 *
+	 * @param g2
+	 *            the graphics to paint to.
+	 * @param entities
+	 *            the entities to paint.
+	 * @param highlightedVertexId
+	 *            the id of the highlighted vertex, or -1.
+	 * @param highlightedEdgeId
+	 *            the id of the highlighted edge, or -1.
+	 * @param focusedVertexId
+	 *            the id of the focused vertex, or -1.
+	 * @param style
+	 *            the style to paint with.
+	 */
+	public void paintHighlightedAndFocused(
+			final Graphics2D g2,
+			final ScreenEntities entities,
+			final int highlightedVertexId,
+			final int highlightedEdgeId,
+			final int focusedVertexId,
+			final TrackSchemeStyle style )
+	{
+		if ( highlightedVertexId < 0 && highlightedEdgeId < 0 && focusedVertexId < 0 )
+			return;
+
+		this.g2 = g2;
+		this.highlightedVertexId = highlightedVertexId;
+		this.highlightedEdgeId = highlightedEdgeId;
+		this.focusedVertexId = focusedVertexId;
+		this.style = style;
+
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenVertex vs = vertices.createRef();
+
+		if ( highlightedEdgeId >= 0 )
+		{
+			beforeDrawEdges();
+			for ( final ScreenEdge edge : edges )
+			{
+				if ( edge.getTrackSchemeEdgeId() == highlightedEdgeId )
+				{
+					vertices.get( edge.getSourceScreenVertexIndex(), vs );
+					vertices.get( edge.getTargetScreenVertexIndex(), vt );
+					drawEdge( edge, vs, vt );
+				}
+			}
+		}
+
+		beforeDrawVertices();
+		for ( final ScreenVertex vertex : vertices )
+		{
+			final int id = vertex.getTrackSchemeVertexId();
+			if ( id >= 0 && ( id == highlightedVertexId || id == focusedVertexId ) )
+				drawVertex( vertex );
+		}
+
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+	}
+
 	/**
 	 * Returns the distance from a <b>screen</b> position to a specified edge.
 	 *
@@ -407,9 +490,9 @@ public class PaintGraph
 			g2.setStroke( style.getVertexStroke() );
 
 		final int maxLabelLength = ( int ) ( spotdiameter / avgLabelLetterWidth );
-		if ( maxLabelLength > 2 && !disappear )
+		if ( maxLabelLength > 2 && !disappear && labels != null && vertex.getTrackSchemeVertexId() >= 0 )
 		{
-			String label = vertex.getLabel();
+			String label = labels.getLabel( vertex.getTrackSchemeVertexId() );
 			if ( label.length() > maxLabelLength )
 				label = label.substring( 0, maxLabelLength - 2 ) + "...";
 
@@ -0,0 +1,200 @@
+package org.mastodon.revised.trackscheme.display;
+
+import java.util.Arrays;
+
+import org.mastodon.collection.RefList;
+import org.mastodon.revised.trackscheme.ScreenEdge;
+import org.mastodon.revised.trackscheme.ScreenEntities;
+import org.mastodon.revised.trackscheme.ScreenVertex;
+
+/**
+ * A uniform grid over the screen, that stores for each cell the edges of a
+ * {@link ScreenEntities} whose bounding box overlaps the cell. Used to find the
+ * painted edge under the mouse without testing every edge.
+ * <p>
+ * The bounding box of an edge is the bounding box of its source and target
+ * screen vertices, which is where {@link PaintGraph} paints it. Cells are
+ * stored in compressed rows: the edges of cell {@code c} are
+ * {@code cellEdges[cellStart[c]]} to {@code cellEdges[cellStart[c+1]-1]}.
+ * Edges and queries outside of the screen are clamped to the border cells, so
+ * that no edge is missed.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class ScreenEdgeIndex
+{
+	/**
+	 * The width and height of grid cells, in pixels.
+	 */
+	private static final int CELL_SIZE = 64;
+
+	private int nx;
+
+	private int ny;
+
+	private int[] cellStart;
+
+	private int[] cellEdges;
+
+	/**
+	 * Bounding boxes of the edges, 4 ints (min cell x, min cell y, max cell x,
+	 * max cell y) per edge.
+	 */
+	private int[] edgeCells;
+
+	ScreenEdgeIndex()
+	{
+		cellStart = new int[ 1 ];
+		cellEdges = new int[ 0 ];
+		edgeCells = new int[ 0 ];
+	}
+
+	/**
+	 * Rebuilds this index for the edges of the specified
+	 * {@link ScreenEntities}.
+	 *
+	 * @param entities
+	 *            the entities to index.
+	 * @param width
+	 *            the width of the screen.
+	 * @param height
+	 *            the height of the screen.
+	 */
+	void build( final ScreenEntities entities, final int width, final int height )
+	{
+		nx = Math.max( 1, ( width + CELL_SIZE - 1 ) / CELL_SIZE );
+		ny = Math.max( 1, ( height + CELL_SIZE - 1 ) / CELL_SIZE );
+		final int nCells = nx * ny;
+		if ( cellStart.length < nCells + 1 )
+			cellStart = new int[ nCells + 1 ];
+		Arrays.fill( cellStart, 0, nCells + 1, 0 );
+
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final int nEdges = edges.size();
+		if ( edgeCells.length < 4 * nEdges )
+			edgeCells = new int[ 4 * nEdges ];
+
+		final ScreenVertex vs = vertices.createRef();
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenEdge e = edges.createRef();
+
+		// Count edges per cell, shifted by one for the prefix sum.
+		for ( int i = 0; i < nEdges; ++i )
+		{
+			edges.get( i, e );
+			vertices.get( e.getSourceScreenVertexIndex(), vs );
+			vertices.get( e.getTargetScreenVertexIndex(), vt );
+			final int cx1 = cellX( Math.min( vs.getX(), vt.getX() ) );
+			final int cy1 = cellY( Math.min( vs.getY(), vt.getY() ) );
+			final int cx2 = cellX( Math.max( vs.getX(), vt.getX() ) );
+			final int cy2 = cellY( Math.max( vs.getY(), vt.getY() ) );
+			final int o = 4 * i;
+			edgeCells[ o ] = cx1;
+			edgeCells[ o + 1 ] = cy1;
+			edgeCells[ o + 2 ] = cx2;
+			edgeCells[ o + 3 ] = cy2;
+			for ( int cy = cy1; cy <= cy2; ++cy )
+				for ( int cx = cx1; cx <= cx2; ++cx )
+					++cellStart[ cy * nx + cx + 1 ];
+		}
+
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+		edges.releaseRef( e );
+
+		for ( int c = 0; c < nCells; ++c )
+			cellStart[ c + 1 ] += cellStart[ c ];
+
+		final int nEntries = cellStart[ nCells ];
+		if ( cellEdges.length < nEntries )
+			cellEdges = new int[ nEntries ];
+
+		// Fill cells, using the start of each cell as insertion point.
+		for ( int i = 0; i < nEdges; ++i )
+		{
+			final int o = 4 * i;
+			for ( int cy = edgeCells[ o + 1 ]; cy <= edgeCells[ o + 3 ]; ++cy )
+				for ( int cx = edgeCells[ o ]; cx <= edgeCells[ o + 2 ]; ++cx )
+					cellEdges[ cellStart[ cy * nx + cx ]++ ] = i;
+		}
+
+		// Shift insertion points back to the start of each cell.
+		for ( int c = nCells; c > 0; --c )
+			cellStart[ c ] = cellStart[ c - 1 ];
+		cellStart[ 0 ] = 0;
+	}
+
+	/**
+	 * Returns the TrackScheme edge id of the edge of the specified
+	 * {@link ScreenEntities} painted closest to {@code (x, y)}, within a
+	 * distance tolerance. The entities must be the ones this index was last
+	 * built for.
+	 *
+	 * @param x
+	 *            the x screen coordinate.
+	 * @param y
+	 *            the y screen coordinate.
+	 * @param tolerance
+	 *            the maximal distance to the edge.
+	 * @param entities
+	 *            the entities this index was built for.
+	 * @param paintGraph
+	 *            computes the distance to painted edges.
+	 * @return the TrackScheme edge id of the closest edge, or -1 if there is
+	 *         no edge within the distance tolerance.
+	 */
+	int getClosestEdge( final double x, final double y, final double tolerance, final ScreenEntities entities, final PaintGraph paintGraph )
+	{
+		final int cx1 = cellX( x - tolerance );
+		final int cy1 = cellY( y - tolerance );
+		final int cx2 = cellX( x + tolerance );
+		final int cy2 = cellY( y + tolerance );
+
+		final RefList< ScreenVertex > vertices = entities.getVertices();
+		final RefList< ScreenEdge > edges = entities.getEdges();
+		final ScreenVertex vs = vertices.createRef();
+		final ScreenVertex vt = vertices.createRef();
+		final ScreenEdge e = edges.createRef();
+
+		double bestDist = tolerance;
+		int best = -1;
+		int bestId = -1;
+		for ( int cy = cy1; cy <= cy2; ++cy )
+		{
+			for ( int cx = cx1; cx <= cx2; ++cx )
+			{
+				final int c = cy * nx + cx;
+				for ( int k = cellStart[ c ]; k < cellStart[ c + 1 ]; ++k )
+				{
+					final int i = cellEdges[ k ];
+					edges.get( i, e );
+					vertices.get( e.getSourceScreenVertexIndex(), vs );
+					vertices.get( e.getTargetScreenVertexIndex(), vt );
+					final double d = paintGraph.distanceToPaintedEdge( x, y, e, vs, vt );
+					if ( d <= bestDist && ( best < 0 || d < bestDist ) )
+					{
+						bestDist = d;
+						best = i;
+						bestId = e.getTrackSchemeEdgeId();
+					}
+				}
+			}
+		}
+
+		vertices.releaseRef( vs );
+		vertices.releaseRef( vt );
+		edges.releaseRef( e );
+		return bestId;
+	}
+
+	private int cellX( final double x )
+	{
+		return Math.max( 0, Math.min( nx - 1, ( int ) Math.floor( x / CELL_SIZE ) ) );
+	}
+
+	private int cellY( final double y )
+	{
+		return Math.max( 0, Math.min( ny - 1, ( int ) Math.floor( y / CELL_SIZE ) ) );
+	}
+}
@@ -137,7 +137,7 @@ public class ToggleLinkBehaviour< V extends Vertex< E > & HasTimepoint, E extend
 		// Get vertex we clicked inside.
 		if ( renderer.getVertexAt( x, y, startVertex ) != null )
 		{
-			overlay.from[ 0 ] = startVertex.getLayoutX();
+			overlay.from[ 0 ] = panel.getLineageTreeLayout().getLayoutAttributes().getLayoutX( startVertex );
 			overlay.from[ 1 ] = startVertex.getTimepoint();
 			overlay.to[ 0 ] = overlay.from[ 0 ];
 			overlay.to[ 1 ] = overlay.to[ 0 ];
@@ -153,7 +153,7 @@ public class ToggleLinkBehaviour< V extends Vertex< E > & HasTimepoint, E extend
 		{
 			if ( renderer.getVertexAt( x, y, endVertex ) != null && startVertex.getTimepoint() != endVertex.getTimepoint() )
 			{
-				overlay.to[ 0 ] = endVertex.getLayoutX();
+				overlay.to[ 0 ] = panel.getLineageTreeLayout().getLayoutAttributes().getLayoutX( endVertex );
 				overlay.to[ 1 ] = endVertex.getTimepoint();
 				overlay.strongEdge = true;
 			}
@@ -181,7 +181,7 @@ public class ToggleLinkBehaviour< V extends Vertex< E > & HasTimepoint, E extend
 			{
 				if ( renderer.getVertexAt( x, y, endVertex ) != null )
 				{
-					overlay.to[ 0 ] = endVertex.getLayoutX();
+					overlay.to[ 0 ] = panel.getLineageTreeLayout().getLayoutAttributes().getLayoutX( endVertex );
 					overlay.to[ 1 ] = endVertex.getTimepoint();
 
 					/*
@@ -167,6 +167,20 @@ public class TrackSchemeOptions
 		return this;
 	}
 
+	/**
+	 * Sets whether the graph is painted from a cache of rendered tiles, so that
+	 * panning only renders the newly exposed parts of the graph.
+	 *
+	 * @param tiled
+	 *            whether to use tiled rendering.
+	 * @return this instance.
+	 */
+	public TrackSchemeOptions tiledRendering( final boolean tiled )
+	{
+		values.tiledRendering = tiled;
+		return this;
+	}
+
 	/**
 	 * Read-only {@link TrackSchemeOptions} values.
 	 */
@@ -188,6 +202,8 @@ public class TrackSchemeOptions
 
 		private GraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > graphColorGenerator = new DefaultGraphColorGenerator<>();
 
+		private boolean tiledRendering = false;
+
 		public TrackSchemeOptions optionsFromValues()
 		{
 			return new TrackSchemeOptions().
@@ -197,7 +213,8 @@ public class TrackSchemeOptions
 				navigationEtiquette( navigationEtiquette ).
 				style( style ).
 				trackSchemeOverlayFactory( trackSchemeOverlayFactory ).
-				graphColorGenerator( graphColorGenerator );
+				graphColorGenerator( graphColorGenerator ).
+				tiledRendering( tiledRendering );
 		}
 
 		public int getWidth()
@@ -239,5 +256,10 @@ public class TrackSchemeOptions
 		{
 			return graphColorGenerator;
 		}
+
+		public boolean isTiledRendering()
+		{
+			return tiledRendering;
+		}
 	}
 }
@@ -5,10 +5,8 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.mastodon.collection.RefList;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
-import org.mastodon.revised.trackscheme.ScreenEdge;
 import org.mastodon.revised.trackscheme.ScreenEntities;
 import org.mastodon.revised.trackscheme.ScreenVertex;
 import org.mastodon.revised.trackscheme.ScreenVertexRange;
@@ -97,6 +95,52 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 
 	private final PaintGraph paintGraph;
 
+	private final VertexLabelCache labels;
+
+	/**
+	 * Cache of rendered graph tiles. {@code null} if tiled rendering is
+	 * disabled.
+	 */
+	private final TrackSchemeTileCache tiles;
+
+	/**
+	 * Incremented by {@link #invalidateTiles()}. Entities set for painting
+	 * take the current generation, and tiles are only reused between entities
+	 * of the same generation. Accessed when synchronized on this overlay.
+	 */
+	private int tilesGeneration;
+
+	/**
+	 * The generation of {@link #pendingEntities}. Accessed when synchronized on
+	 * this overlay.
+	 */
+	private int pendingEntitiesGeneration;
+
+	/**
+	 * The generation of {@link #entities}. Written when synchronized on this
+	 * overlay, by the painting thread, which is the only one to read it.
+	 */
+	private int entitiesGeneration;
+
+	/**
+	 * Spatial index of the edges of {@link #entities}, used to find the edge
+	 * under the mouse.
+	 */
+	private final ScreenEdgeIndex edgeIndex;
+
+	/**
+	 * Whether {@link #edgeIndex} must be rebuilt, because {@link #entities}
+	 * changed since it was last built. Accessed when synchronized on
+	 * {@link #entities}.
+	 */
+	private boolean edgeIndexStale;
+
+	/**
+	 * Whether tiles must be discarded before the next paint. Accessed when
+	 * synchronized on this overlay.
+	 */
+	private boolean clearTiles;
+
 	/**
 	 * The {@link OverlayRenderer}s that draw above the background
 	 */
@@ -132,10 +176,15 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		this.focus = focus;
 		this.paintDecorations = paintDecorations;
 		this.paintGraph = paintGraph;
+		labels = new VertexLabelCache( graph );
+		paintGraph.setVertexLabelCache( labels );
 		style = options.values.getStyle();
 		width = options.values.getWidth();
 		height = options.values.getHeight();
 		entities = new ScreenEntities( graph );
+		edgeIndex = new ScreenEdgeIndex();
+		edgeIndexStale = true;
+		tiles = options.values.isTiledRendering() ? new TrackSchemeTileCache() : null;
 		overlayRenderers = new CopyOnWriteArrayList<>();
 	}
 
@@ -167,7 +216,13 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		for ( final OverlayRenderer or : overlayRenderers )
 			or.drawOverlays( g );
 
-		paintGraph.paintGraph( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
+		if ( tiles == null )
+			paintGraph.paintGraph( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
+		else
+		{
+			tiles.paint( g2, paintGraph, entities, entitiesGeneration, width, height, headerWidth, headerHeight, style );
+			paintGraph.paintHighlightedAndFocused( g2, entities, highlightedVertexId, highlightedEdgeId, focusedVertexId, style );
+		}
 
 		paintDecorations.paintHeaders( g2, width, height, headerWidth, headerHeight, entities, currentTimepoint, style );
 	}
@@ -180,7 +235,8 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	 * This method exists to facilitate writing mouse handlers.
 	 * <p>
 	 * Note that this really only looks at edges that are individually painted
-	 * on the screen. Edges inside dense ranges are ignored.
+	 * on the screen. Edges inside dense ranges are ignored. If several edges
+	 * are within the distance tolerance, the closest one is returned.
 	 *
 	 * @param x
 	 *            the x screen coordinate
@@ -197,25 +253,13 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	{
 		synchronized ( entities )
 		{
-			final RefList< ScreenVertex > vertices = entities.getVertices();
-			final ScreenVertex vt = vertices.createRef();
-			final ScreenVertex vs = vertices.createRef();
-
-			int i = -1;
-			for ( final ScreenEdge e : entities.getEdges() )
+			if ( edgeIndexStale )
 			{
-				vertices.get( e.getSourceScreenVertexIndex(), vs );
-				vertices.get( e.getTargetScreenVertexIndex(), vt );
-				if ( paintGraph.distanceToPaintedEdge( x, y, e, vs, vt ) <= tolerance )
-				{
-					i = e.getTrackSchemeEdgeId();
-					break;
-				}
+				edgeIndex.build( entities, width, height );
+				edgeIndexStale = false;
 			}
 
-			vertices.releaseRef( vs );
-			vertices.releaseRef( vt );
-
+			final int i = edgeIndex.getClosestEdge( x, y, tolerance, entities, paintGraph );
 			return ( i >= 0 )
 					? graph.getEdgePool().getObjectIfExists( i, ref )
 					: null;
@@ -307,6 +351,27 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 		return height;
 	}
 
+	/**
+	 * Discards the cached vertex labels. Must be called when the graph or
+	 * vertex labels change.
+	 */
+	public void invalidateLabels()
+	{
+		labels.invalidate();
+	}
+
+	/**
+	 * Discards the rendered graph tiles, if tiled rendering is enabled. Must be
+	 * called before {@link #setScreenEntities(ScreenEntities) setting}
+	 * entities that are not a pure translation of the previous ones, and when
+	 * the style changes.
+	 */
+	public synchronized void invalidateTiles()
+	{
+		++tilesGeneration;
+		clearTiles = true;
+	}
+
 	/**
 	 * Sets the current timepoint.
 	 *
@@ -339,6 +404,7 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 	{
 		final ScreenEntities tmp = pendingEntities;
 		pendingEntities = entities;
+		pendingEntitiesGeneration = tilesGeneration;
 		pending = true;
 		return tmp;
 	}
@@ -356,9 +422,17 @@ public class TrackSchemeOverlay implements OverlayRenderer, OffsetHeadersListene
 			synchronized ( entities )
 			{
 				entities.set( pendingEntities );
+				entitiesGeneration = pendingEntitiesGeneration;
+				edgeIndexStale = true;
 				pending = false;
 			}
 		}
+		if ( clearTiles )
+		{
+			if ( tiles != null )
+				tiles.clear();
+			clearTiles = false;
+		}
 		return entities;
 	}
 
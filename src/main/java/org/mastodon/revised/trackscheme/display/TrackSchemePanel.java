@@ -5,6 +5,10 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.Box;
@@ -19,11 +23,13 @@ import org.mastodon.model.HighlightListener;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.NavigationHandler;
 import org.mastodon.model.NavigationListener;
-import org.mastodon.model.SelectionListener;
+import org.mastodon.model.SelectionDelta;
+import org.mastodon.model.SelectionDeltaListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.model.TimepointListener;
 import org.mastodon.model.TimepointModel;
 import org.mastodon.revised.trackscheme.ContextLayout;
+import org.mastodon.revised.trackscheme.LayoutAttributes;
 import org.mastodon.revised.trackscheme.LineageTreeLayout;
 import org.mastodon.revised.trackscheme.ScreenEntities;
 import org.mastodon.revised.trackscheme.ScreenEntitiesInterpolator;
@@ -51,7 +57,7 @@ public class TrackSchemePanel extends JPanel implements
 		FocusListener,
 		TimepointListener,
 		GraphChangeListener,
-		SelectionListener,
+		SelectionDeltaListener< TrackSchemeVertex, TrackSchemeEdge >,
 		NavigationListener< TrackSchemeVertex, TrackSchemeEdge >,
 		ContextListener< TrackSchemeVertex >
 {
@@ -59,6 +65,13 @@ public class TrackSchemePanel extends JPanel implements
 
 	private final long ANIMATION_MILLISECONDS;
 
+	/**
+	 * Minimal interval between two updates of the context layout, in
+	 * milliseconds. Context changes that arrive faster, for instance while
+	 * zooming in a BDV window, are coalesced.
+	 */
+	private static final long CONTEXT_UPDATE_MILLISECONDS = 40;
+
 	private final TrackSchemeGraph< ?, ? > graph;
 
 	/**
@@ -107,6 +120,28 @@ public class TrackSchemePanel extends JPanel implements
 	// TODO rename
 	private final Flags flags;
 
+	/**
+	 * Selection changes received since the last paint. Guarded by itself.
+	 */
+	private final ArrayList< SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > > pendingSelectionDeltas = new ArrayList<>();
+
+	/**
+	 * Timer that requests the repaint for coalesced context changes.
+	 */
+	private final Timer contextUpdateTimer;
+
+	/**
+	 * Time of the last context update request. Guarded by
+	 * {@link #contextUpdateTimer}.
+	 */
+	private long lastContextUpdateTime;
+
+	/**
+	 * Whether a context update request is scheduled on
+	 * {@link #contextUpdateTimer}. Guarded by {@link #contextUpdateTimer}.
+	 */
+	private boolean contextUpdateScheduled;
+
 	/**
 	 * Minimum timepoint in dataset.
 	 */
@@ -191,7 +226,7 @@ public class TrackSchemePanel extends JPanel implements
 		highlight.listeners().add( this );
 		focus.listeners().add( this );
 		timepoint.listeners().add( this );
-		selection.listeners().add( this );
+		selection.deltaListeners().add( this );
 
 		graphOverlay = options.getTrackSchemeOverlayFactory().create( graph, highlight, focus, optional );
 
@@ -213,13 +248,14 @@ public class TrackSchemePanel extends JPanel implements
 		} );
 
 		screenTransform = new ScreenTransform();
-		layout = new LineageTreeLayout( graph, selection );
+		layout = new LineageTreeLayout( graph, selection, focus );
 		contextLayout = new ContextLayout( graph, layout );
 		colorGenerator = options.getGraphColorGenerator();
 		layout.layoutListeners().add( transformEventHandler );
 		entityAnimator = new ScreenEntityAnimator();
 		painterThread = new PainterThread( this );
 		flags = new Flags();
+		contextUpdateTimer = new Timer( "TrackScheme context update", true );
 
 		final MouseHighlightHandler highlightHandler = new MouseHighlightHandler( graphOverlay, highlight, graph );
 		display.addMouseMotionListener( highlightHandler );
@@ -296,11 +332,15 @@ public class TrackSchemePanel extends JPanel implements
 	}
 
 	/**
-	 * Stop the painter thread.
+	 * Stop the painter thread, and unregister from the graph. The panel cannot
+	 * be used anymore after this call.
 	 */
 	public void stop()
 	{
 		painterThread.interrupt();
+		contextUpdateTimer.cancel();
+		graph.graphChangeListeners().remove( this );
+		layout.close();
 	}
 
 	/**
@@ -341,6 +381,18 @@ public class TrackSchemePanel extends JPanel implements
 			}
 
 			final Flags flags = this.flags.clear();
+			final List< SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > > selectionDeltas;
+			synchronized ( pendingSelectionDeltas )
+			{
+				selectionDeltas = new ArrayList<>( pendingSelectionDeltas );
+				pendingSelectionDeltas.clear();
+			}
+			// Rendered tiles can be kept for pure pans of final entities.
+			boolean keepTiles = entityAnimator.isComplete()
+					&& !flags.graphChanged
+					&& !flags.selectionChanged
+					&& !flags.contextChanged
+					&& !flags.entitiesAttributesChanged;
 			if ( flags.graphChanged )
 			{
 //				System.out.println( "paint: graphChanged" );
@@ -355,6 +407,7 @@ public class TrackSchemePanel extends JPanel implements
 //				entityAnimator.startAnimation( transform, 0 );
 				if ( context != null && contextLayout.buildContext( context, transform, false ) )
 				{
+					keepTiles = false;
 					layoutMinX = layout.getCurrentLayoutMinX();
 					layoutMaxX = layout.getCurrentLayoutMaxX();
 					entityAnimator.continueAnimation( transform, ANIMATION_MILLISECONDS );
@@ -364,10 +417,19 @@ public class TrackSchemePanel extends JPanel implements
 //					entityAnimator.startAnimation( transform, 0 );
 //				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
 			}
+			else if ( flags.selectionChanged && flags.entitiesAttributesChanged )
+			{
+				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+			}
+			else if ( flags.selectionChanged && layout.isSummarized( transform ) )
+			{
+				// Newly selected vertices may not have screen vertices yet.
+				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+			}
 			else if ( flags.selectionChanged )
 			{
 //				System.out.println( "paint: selectionChanged" );
-				entityAnimator.startAnimation( transform, ANIMATION_MILLISECONDS );
+				entityAnimator.updateSelection( selectionDeltas, ANIMATION_MILLISECONDS );
 			}
 			else if ( flags.contextChanged )
 			{
@@ -392,6 +454,8 @@ public class TrackSchemePanel extends JPanel implements
 			}
 
 			entityAnimator.setTime( System.currentTimeMillis() );
+			if ( !keepTiles || !entityAnimator.isComplete() )
+				graphOverlay.invalidateTiles();
 			entityAnimator.setPaintEntities( graphOverlay );
 			display.repaint();
 
@@ -447,6 +511,7 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void graphChanged()
 	{
+		graphOverlay.invalidateLabels();
 		flags.setGraphChanged();
 		painterThread.requestRepaint();
 	}
@@ -460,18 +525,35 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void focusChanged()
 	{
-		display.repaint();
+		final boolean summarized;
+		synchronized ( screenTransform )
+		{
+			summarized = layout.isSummarized( screenTransform );
+		}
+		if ( summarized )
+		{
+			// The focused vertex may not have a screen vertex yet.
+			flags.setEntitiesAttributesChanged();
+			painterThread.requestRepaint();
+		}
+		else
+			display.repaint();
 	}
 
 	@Override
-	public void selectionChanged()
+	public void selectionChanged( final SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > delta )
 	{
+		synchronized ( pendingSelectionDeltas )
+		{
+			pendingSelectionDeltas.add( delta );
+		}
 		flags.setSelectionChanged();
 		painterThread.requestRepaint();
 	}
 
 	public void entitiesAttributesChanged()
 	{
+		graphOverlay.invalidateLabels();
 		flags.setEntitiesAttributesChanged();
 		painterThread.requestRepaint();
 	}
@@ -487,6 +569,43 @@ public class TrackSchemePanel extends JPanel implements
 			return;
 
 		this.context = context;
+		requestContextUpdate();
+	}
+
+	/**
+	 * Requests a repaint that updates the context layout, at most once every
+	 * {@link #CONTEXT_UPDATE_MILLISECONDS}. Requests that arrive earlier are
+	 * postponed, and coalesced into one.
+	 */
+	private void requestContextUpdate()
+	{
+		synchronized ( contextUpdateTimer )
+		{
+			if ( contextUpdateScheduled )
+				return;
+
+			final long delay = lastContextUpdateTime + CONTEXT_UPDATE_MILLISECONDS - System.currentTimeMillis();
+			if ( delay > 0 )
+			{
+				contextUpdateScheduled = true;
+				contextUpdateTimer.schedule( new TimerTask()
+				{
+					@Override
+					public void run()
+					{
+						synchronized ( contextUpdateTimer )
+						{
+							contextUpdateScheduled = false;
+							lastContextUpdateTime = System.currentTimeMillis();
+						}
+						flags.setContextChanged();
+						painterThread.requestRepaint();
+					}
+				}, delay );
+				return;
+			}
+			lastContextUpdateTime = System.currentTimeMillis();
+		}
 		flags.setContextChanged();
 		painterThread.requestRepaint();
 	}
@@ -502,14 +621,14 @@ public class TrackSchemePanel extends JPanel implements
 		switch( navigationEtiquette )
 		{
 		case MINIMAL:
-			navigationBehaviour = new MinimalNavigationBehaviour( transformEventHandler, 100, 100 );
+			navigationBehaviour = new MinimalNavigationBehaviour( transformEventHandler, layout.getLayoutAttributes(), 100, 100 );
 			break;
 		case CENTER_IF_INVISIBLE:
-			navigationBehaviour = new CenterIfInvisibleNavigationBehaviour( transformEventHandler );
+			navigationBehaviour = new CenterIfInvisibleNavigationBehaviour( transformEventHandler, layout.getLayoutAttributes() );
 			break;
 		case CENTERING:
 		default:
-			navigationBehaviour = new CenteringNavigationBehaviour( transformEventHandler );
+			navigationBehaviour = new CenteringNavigationBehaviour( transformEventHandler, layout.getLayoutAttributes() );
 			break;
 		}
 	}
@@ -517,7 +636,7 @@ public class TrackSchemePanel extends JPanel implements
 	@Override
 	public void navigateToVertex( final TrackSchemeVertex v )
 	{
-		if ( v.getLayoutTimestamp() == layout.getCurrentLayoutTimestamp() )
+		if ( layout.getLayoutAttributes().getLayoutTimestamp( v ) == layout.getCurrentLayoutTimestamp() )
 		{
 			timepoint.setTimepoint( v.getTimepoint() );
 
@@ -537,8 +656,9 @@ public class TrackSchemePanel extends JPanel implements
 
 		final TrackSchemeVertex source = edge.getSource( graph.vertexRef() );
 		final TrackSchemeVertex target = edge.getTarget( graph.vertexRef() );
+		final LayoutAttributes attributes = layout.getLayoutAttributes();
 		final int clts = layout.getCurrentLayoutTimestamp();
-		if ( target.getLayoutTimestamp() == clts && source.getLayoutTimestamp() == clts )
+		if ( attributes.getLayoutTimestamp( target ) == clts && attributes.getLayoutTimestamp( source ) == clts )
 		{
 			timepoint.setTimepoint( target.getTimepoint() );
 
@@ -568,15 +688,18 @@ public class TrackSchemePanel extends JPanel implements
 	{
 		private final InertialScreenTransformEventHandler transformEventHandler;
 
-		public CenteringNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler )
+		private final LayoutAttributes attributes;
+
+		public CenteringNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler, final LayoutAttributes attributes )
 		{
 			this.transformEventHandler = transformEventHandler;
+			this.attributes = attributes;
 		}
 
 		@Override
 		public void navigateToVertex( final TrackSchemeVertex v, final ScreenTransform currentTransform )
 		{
-			final double lx = v.getLayoutX();
+			final double lx = attributes.getLayoutX( v );
 			final double ly = v.getTimepoint();
 			transformEventHandler.centerOn( lx, ly );
 		}
@@ -594,9 +717,12 @@ public class TrackSchemePanel extends JPanel implements
 	{
 		private final InertialScreenTransformEventHandler transformEventHandler;
 
-		public CenterIfInvisibleNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler )
+		private final LayoutAttributes attributes;
+
+		public CenterIfInvisibleNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler, final LayoutAttributes attributes )
 		{
 			this.transformEventHandler = transformEventHandler;
+			this.attributes = attributes;
 		}
 
 		// With CENTER_IF_INVISIBLE etiquette, only navigate to the specified vertex if not
@@ -604,7 +730,7 @@ public class TrackSchemePanel extends JPanel implements
 		@Override
 		public void navigateToVertex( final TrackSchemeVertex v, final ScreenTransform currentTransform )
 		{
-			final double lx = v.getLayoutX();
+			final double lx = attributes.getLayoutX( v );
 			final double ly = v.getTimepoint();
 			if ( currentTransform.getMaxX() < lx || currentTransform.getMinX() > lx
 					|| currentTransform.getMaxY() < ly || currentTransform.getMinY() > ly )
@@ -626,13 +752,16 @@ public class TrackSchemePanel extends JPanel implements
 	{
 		private final InertialScreenTransformEventHandler transformEventHandler;
 
+		private final LayoutAttributes attributes;
+
 		private final int screenBorderX;
 
 		private final int screenBorderY;
 
-		public MinimalNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler, final int screenBorderX, final int screenBorderY )
+		public MinimalNavigationBehaviour( final InertialScreenTransformEventHandler transformEventHandler, final LayoutAttributes attributes, final int screenBorderX, final int screenBorderY )
 		{
 			this.transformEventHandler = transformEventHandler;
+			this.attributes = attributes;
 			this.screenBorderX = screenBorderX;
 			this.screenBorderY = screenBorderY;
 		}
@@ -640,7 +769,7 @@ public class TrackSchemePanel extends JPanel implements
 		@Override
 		public void navigateToVertex( final TrackSchemeVertex v, final ScreenTransform currentTransform )
 		{
-			final double lx = v.getLayoutX();
+			final double lx = attributes.getLayoutX( v );
 			final double ly = v.getTimepoint();
 
 			/*
@@ -695,8 +824,8 @@ public class TrackSchemePanel extends JPanel implements
 			final double bx = screenBorderX / currentTransform.getScaleX();
 			final double by = screenBorderY / currentTransform.getScaleY();
 
-			final double sourceX = source.getLayoutX();
-			final double targetX = target.getLayoutX();
+			final double sourceX = attributes.getLayoutX( source );
+			final double targetX = attributes.getLayoutX( target );
 			final double eMinX = Math.min( sourceX, targetX );
 			final double eMaxX = Math.max( sourceX, targetX );
 			final double eMinY = source.getTimepoint();
@@ -794,7 +923,16 @@ public class TrackSchemePanel extends JPanel implements
 
 		private ScreenEntities screenEntitiesIpEnd;
 
-		private ScreenEntitiesInterpolator interpolator;
+		/**
+		 * Interpolator of the running animation, reused across animations.
+		 */
+		private final ScreenEntitiesInterpolator interpolator;
+
+		/**
+		 * Whether an animation between {@link #screenEntitiesIpStart} and
+		 * {@link #screenEntitiesIpEnd} is running.
+		 */
+		private boolean interpolating;
 
 		private ScreenEntities lastComputedScreenEntities;
 
@@ -807,7 +945,8 @@ public class TrackSchemePanel extends JPanel implements
 			screenEntities2 = new ScreenEntities( graph, capacity );
 			screenEntitiesIpStart = new ScreenEntities( graph, capacity );
 			screenEntitiesIpEnd = new ScreenEntities( graph, capacity );
-			interpolator = null;
+			interpolator = new ScreenEntitiesInterpolator();
+			interpolating = false;
 			lastComputedScreenEntities = screenEntities;
 		}
 
@@ -855,24 +994,53 @@ public class TrackSchemePanel extends JPanel implements
 				copyIpStart();
 				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
 				swapIpEnd();
-				interpolator = new ScreenEntitiesInterpolator( screenEntitiesIpStart, screenEntitiesIpEnd );
+				interpolator.set( screenEntitiesIpStart, screenEntitiesIpEnd, null );
+				interpolating = true;
 			}
 			else
 			{
-				interpolator = null;
+				interpolating = false;
 				swapPools();
 				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
 				lastComputedScreenEntities = screenEntities;
 			}
 		}
 
+		/**
+		 * Applies selection changes to the current screen entities, without
+		 * laying them out again. If no animation is running, one is started
+		 * to fade the selection changes in. Otherwise the changes are applied
+		 * to the end of the running animation, which is not restarted.
+		 *
+		 * @param deltas
+		 *            the selection changes.
+		 * @param duration
+		 *            animation duration (in time units), may be 0.
+		 */
+		public void updateSelection( final List< SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > > deltas, final long duration )
+		{
+			if ( deltas.isEmpty() )
+				return;
+			if ( !interpolating )
+			{
+				reset( duration );
+				copyIpStart();
+				screenEntities.set( screenEntitiesIpStart );
+				swapIpEnd();
+				interpolator.set( screenEntitiesIpStart, screenEntitiesIpEnd, null );
+				interpolating = true;
+			}
+			for ( final SelectionDelta< TrackSchemeVertex, TrackSchemeEdge > delta : deltas )
+				screenEntitiesIpEnd.updateSelection( delta );
+		}
+
 		public void continueAnimation( final ScreenTransform transform, final long duration )
 		{
-			if ( interpolator != null )
+			if ( interpolating )
 			{
 				layout.cropAndScale( transform, screenEntities, offsetHeaders.getWidth(), offsetHeaders.getHeight(), colorGenerator );
 				swapIpEnd();
-				interpolator = new ScreenEntitiesInterpolator(
+				interpolator.set(
 						screenEntitiesIpStart,
 						screenEntitiesIpEnd,
 						ScreenEntitiesInterpolator.getIncrementalY( screenEntitiesIpStart, screenEntitiesIpEnd ) );
@@ -890,12 +1058,12 @@ public class TrackSchemePanel extends JPanel implements
 		public void setTime( final long time )
 		{
 			super.setTime( time );
-			if ( interpolator != null )
+			if ( interpolating )
 			{
 				swapPools();
 				interpolator.interpolate( ratioComplete(), screenEntities );
 				if ( isComplete() )
-					interpolator = null;
+					interpolating = false;
 				lastComputedScreenEntities = screenEntities;
 			}
 		}
@@ -0,0 +1,222 @@
+package org.mastodon.revised.trackscheme.display;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mastodon.revised.trackscheme.ScreenEntities;
+import org.mastodon.revised.trackscheme.ScreenTransform;
+import org.mastodon.revised.trackscheme.display.style.TrackSchemeStyle;
+
+/**
+ * Backing store of rendered TrackScheme graph tiles, used to paint pans
+ * without redrawing the whole graph.
+ * <p>
+ * Tiles are square images of the graph, without background, highlight and
+ * focus, aligned on a pixel grid attached to layout coordinates. They are
+ * only valid for the scale, the decorations offsets and the
+ * {@link ScreenEntities} generation they were rendered with. When painting,
+ * cached tiles are copied to the screen, and missing tiles are rendered in a
+ * single pass of {@link PaintGraph} clipped to their area. Missing tiles that
+ * are entirely visible are then kept, in a least-recently-used cache.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class TrackSchemeTileCache
+{
+	/**
+	 * Width and height of tiles, in pixels.
+	 */
+	static final int TILE_SIZE = 256;
+
+	/**
+	 * Default maximal number of cached tiles.
+	 */
+	static final int DEFAULT_CAPACITY = 64;
+
+	private final LinkedHashMap< Long, BufferedImage > tiles;
+
+	/**
+	 * Image missing tiles are rendered to, the size of the screen.
+	 */
+	private BufferedImage scratch;
+
+	private int generation;
+
+	private double scaleX;
+
+	private double scaleY;
+
+	private int offsetX;
+
+	private int offsetY;
+
+	TrackSchemeTileCache()
+	{
+		this( DEFAULT_CAPACITY );
+	}
+
+	TrackSchemeTileCache( final int capacity )
+	{
+		tiles = new LinkedHashMap< Long, BufferedImage >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Long, BufferedImage > eldest )
+			{
+				return size() > capacity;
+			}
+		};
+		generation = -1;
+	}
+
+	/**
+	 * Paints the graph of the specified entities, from cached tiles where
+	 * possible.
+	 *
+	 * @param g2
+	 *            the graphics to paint to.
+	 * @param paintGraph
+	 *            the painter used to render missing tiles.
+	 * @param entities
+	 *            the entities to paint.
+	 * @param entitiesGeneration
+	 *            the generation of the entities. Tiles rendered from another
+	 *            generation are discarded.
+	 * @param width
+	 *            the width of the screen.
+	 * @param height
+	 *            the height of the screen.
+	 * @param headerWidth
+	 *            the decorations offset in X.
+	 * @param headerHeight
+	 *            the decorations offset in Y.
+	 * @param style
+	 *            the style to paint with.
+	 */
+	void paint(
+			final Graphics2D g2,
+			final PaintGraph paintGraph,
+			final ScreenEntities entities,
+			final int entitiesGeneration,
+			final int width,
+			final int height,
+			final int headerWidth,
+			final int headerHeight,
+			final TrackSchemeStyle style )
+	{
+		final ScreenTransform transform = new ScreenTransform();
+		entities.getScreenTransform( transform );
+		validate( entitiesGeneration, transform.getScaleX(), transform.getScaleY(), headerWidth, headerHeight );
+
+		// Global pixel coordinates = screen coordinates + origin.
+		final long originX = Math.round( transform.getMinX() * scaleX ) - headerWidth;
+		final long originY = Math.round( transform.getMinY() * scaleY ) - headerHeight;
+		final long minI = Math.floorDiv( originX + headerWidth, TILE_SIZE );
+		final long maxI = Math.floorDiv( originX + width - 1, TILE_SIZE );
+		final long minJ = Math.floorDiv( originY + headerHeight, TILE_SIZE );
+		final long maxJ = Math.floorDiv( originY + height - 1, TILE_SIZE );
+
+		// Copy cached tiles, and collect missing ones.
+		final ArrayList< long[] > missing = new ArrayList<>();
+		final Area missingArea = new Area();
+		for ( long j = minJ; j <= maxJ; ++j )
+		{
+			for ( long i = minI; i <= maxI; ++i )
+			{
+				final int sx = ( int ) ( i * TILE_SIZE - originX );
+				final int sy = ( int ) ( j * TILE_SIZE - originY );
+				final BufferedImage tile = tiles.get( key( i, j ) );
+				if ( tile != null )
+					g2.drawImage( tile, sx, sy, null );
+				else
+				{
+					missing.add( new long[] { i, j } );
+					missingArea.add( new Area( new Rectangle( sx, sy, TILE_SIZE, TILE_SIZE ) ) );
+				}
+			}
+		}
+		if ( missing.isEmpty() )
+			return;
+
+		// Render missing tiles in one pass.
+		if ( scratch == null || scratch.getWidth() != width || scratch.getHeight() != height )
+			scratch = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D sg = scratch.createGraphics();
+		sg.setRenderingHints( g2.getRenderingHints() );
+		sg.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		sg.setClip( missingArea );
+		sg.setComposite( AlphaComposite.Clear );
+		sg.fillRect( 0, 0, width, height );
+		sg.setComposite( AlphaComposite.SrcOver );
+		paintGraph.paintGraph( sg, entities, -1, -1, -1, style );
+		sg.dispose();
+
+		// Keep missing tiles that are entirely visible.
+		for ( final long[] ij : missing )
+		{
+			final int sx = ( int ) ( ij[ 0 ] * TILE_SIZE - originX );
+			final int sy = ( int ) ( ij[ 1 ] * TILE_SIZE - originY );
+			if ( sx < headerWidth || sy < headerHeight || sx + TILE_SIZE > width || sy + TILE_SIZE > height )
+				continue;
+			final BufferedImage tile = new BufferedImage( TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB );
+			final Graphics2D tg = tile.createGraphics();
+			tg.setComposite( AlphaComposite.Src );
+			tg.drawImage( scratch, -sx, -sy, null );
+			tg.dispose();
+			tiles.put( key( ij[ 0 ], ij[ 1 ] ), tile );
+		}
+
+		final Shape clip = g2.getClip();
+		g2.clip( missingArea );
+		g2.drawImage( scratch, 0, 0, null );
+		g2.setClip( clip );
+	}
+
+	/**
+	 * Discards all tiles.
+	 */
+	void clear()
+	{
+		tiles.clear();
+	}
+
+	private void validate( final int entitiesGeneration, final double sx, final double sy, final int ox, final int oy )
+	{
+		if ( entitiesGeneration != generation
+				|| !sameScale( sx, scaleX )
+				|| !sameScale( sy, scaleY )
+				|| ox != offsetX
+				|| oy != offsetY )
+		{
+			tiles.clear();
+			generation = entitiesGeneration;
+			scaleX = sx;
+			scaleY = sy;
+			offsetX = ox;
+			offsetY = oy;
+		}
+	}
+
+	/**
+	 * Pans recompute the scale from the visible layout range, so that it may
+	 * differ by rounding errors.
+	 */
+	private static boolean sameScale( final double a, final double b )
+	{
+		return Math.abs( a - b ) <= 1e-9 * Math.abs( b );
+	}
+
+	private static Long key( final long i, final long j )
+	{
+		return Long.valueOf( ( i << 32 ) ^ ( j & 0xffffffffL ) );
+	}
+}
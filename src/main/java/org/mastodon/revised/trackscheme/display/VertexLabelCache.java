@@ -0,0 +1,87 @@
+package org.mastodon.revised.trackscheme.display;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mastodon.RefPool;
+import org.mastodon.revised.trackscheme.ScreenVertex;
+import org.mastodon.revised.trackscheme.TrackSchemeGraph;
+import org.mastodon.revised.trackscheme.TrackSchemeVertex;
+
+/**
+ * Least-recently-used cache of the labels of {@link TrackSchemeVertex}
+ * vertices, by internal pool index.
+ * <p>
+ * {@link ScreenVertex ScreenVertices} only store the id of their
+ * {@link TrackSchemeVertex}. Labels are resolved by {@link PaintGraph} for the
+ * vertices it paints in full, so that frames painted zoomed out do not
+ * retrieve labels at all, and labels of vertices painted repeatedly are not
+ * rebuilt for each frame.
+ * <p>
+ * The cache does not track label changes. It must be invalidated when the
+ * graph or vertex labels change.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class VertexLabelCache
+{
+	/**
+	 * Default maximal number of labels in the cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final RefPool< TrackSchemeVertex > vertexPool;
+
+	private final TrackSchemeVertex ref;
+
+	private final LinkedHashMap< Integer, String > labels;
+
+	public VertexLabelCache( final TrackSchemeGraph< ?, ? > graph )
+	{
+		this( graph, DEFAULT_CAPACITY );
+	}
+
+	public VertexLabelCache( final TrackSchemeGraph< ?, ? > graph, final int capacity )
+	{
+		this.vertexPool = graph.getVertexPool();
+		this.ref = graph.vertexRef();
+		this.labels = new LinkedHashMap< Integer, String >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Integer, String > eldest )
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the label of the {@link TrackSchemeVertex} with the specified
+	 * internal pool index.
+	 *
+	 * @param trackSchemeVertexId
+	 *            the internal pool index of the vertex.
+	 * @return the label of the vertex.
+	 */
+	public synchronized String getLabel( final int trackSchemeVertexId )
+	{
+		final Integer key = Integer.valueOf( trackSchemeVertexId );
+		String label = labels.get( key );
+		if ( label == null )
+		{
+			label = vertexPool.getObject( trackSchemeVertexId, ref ).getLabel();
+			labels.put( key, label );
+		}
+		return label;
+	}
+
+	/**
+	 * Removes all labels from the cache.
+	 */
+	public synchronized void invalidate()
+	{
+		labels.clear();
+	}
+}
@@ -304,7 +304,7 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 		if ( null == tagSet )
 			return;
 
-		setTag( selectionModel.getSelectedVertices(), selectionModel.getSelectedEdges(), null );
+		setTag( selectionModel.getSelectedVerticesView(), selectionModel.getSelectedEdgesView(), null );
 
 		undo.setUndoPoint();
 		done();
@@ -315,7 +315,7 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 		if ( null == tagSet || !tagSet.getTags().contains( tag ) )
 			return;
 
-		setTag( selectionModel.getSelectedVertices(), selectionModel.getSelectedEdges(), tag );
+		setTag( selectionModel.getSelectedVerticesView(), selectionModel.getSelectedEdgesView(), tag );
 
 		undo.setUndoPoint();
 		done();
@@ -325,8 +325,8 @@ public class EditTagActions< V extends Vertex< E >, E extends Edge< V > >
 	{
 		final ObjTagMap< V, Tag > vertexTags = tagModel.getVertexTags().tags( tagSet );
 		final ObjTagMap< E, Tag > edgeTags = tagModel.getEdgeTags().tags( tagSet );
-		vertices.forEach( v -> vertexTags.set( v, tag ) );
-		edges.forEach( e -> edgeTags.set( e, tag ) );
+		vertexTags.set( vertices, tag );
+		edgeTags.set( edges, tag );
 	}
 
 	private final static Color BACKGROUND_COLOR = new Color( 255, 255, 255, 230 );
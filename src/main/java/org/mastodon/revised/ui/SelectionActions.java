@@ -14,6 +14,9 @@ import org.mastodon.graph.algorithm.traversal.GraphSearch.SearchDirection;
 import org.mastodon.graph.algorithm.traversal.SearchListener;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.revised.mamut.KeyConfigContexts;
+import org.mastodon.revised.model.BranchGraph;
+import org.mastodon.revised.model.LineageIndex;
+import org.mastodon.revised.model.TrackMembership;
 import org.mastodon.revised.ui.keymap.CommandDescriptionProvider;
 import org.mastodon.revised.ui.keymap.CommandDescriptions;
 import org.mastodon.undo.UndoPointMarker;
@@ -38,11 +41,13 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 	public static final String SELECT_WHOLE_TRACK = "select whole track";
 	public static final String SELECT_TRACK_DOWNWARD = "select track downward";
 	public static final String SELECT_TRACK_UPWARD = "select track upward";
+	public static final String SELECT_BRANCH = "select branch";
 
 	public static final String[] DELETE_SELECTION_KEYS = new String[] { "shift DELETE" };
 	public static final String[] SELECT_WHOLE_TRACK_KEYS = new String[] { "shift SPACE" };
 	public static final String[] SELECT_TRACK_DOWNWARD_KEYS = new String[] { "shift PAGE_DOWN" };
 	public static final String[] SELECT_TRACK_UPWARD_KEYS = new String[] { "shift PAGE_UP" };
+	public static final String[] SELECT_BRANCH_KEYS = new String[] { "ctrl SPACE" };
 
 	/*
 	 * Command descriptions for all provided commands
@@ -62,6 +67,7 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 			descriptions.add( SELECT_WHOLE_TRACK, SELECT_WHOLE_TRACK_KEYS, "Select the whole track of the current spot." );
 			descriptions.add( SELECT_TRACK_DOWNWARD, SELECT_TRACK_DOWNWARD_KEYS, "Select the track downward from the current spot." );
 			descriptions.add( SELECT_TRACK_UPWARD, SELECT_TRACK_UPWARD_KEYS, "Select the track upward form the current spot." );
+			descriptions.add( SELECT_BRANCH, SELECT_BRANCH_KEYS, "Select the branch of the current spot, up to the previous and next divisions." );
 		}
 	}
 
@@ -75,6 +81,15 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 	 * @param lock
 	 * @param notify
 	 * @param selection
+	 * @param tracks
+	 *            the track index of the graph, used to select whole tracks
+	 *            without a graph search. May be {@code null}.
+	 * @param lineages
+	 *            the lineage index of the graph, used to select tracks
+	 *            downward without a graph search. May be {@code null}.
+	 * @param branches
+	 *            the branch graph of the graph, used to select branches. If
+	 *            {@code null}, the branch selection action is not installed.
 	 * @param undo
 	 */
 	public static < V extends Vertex< E >, E extends Edge< V > > void install(
@@ -83,13 +98,18 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 			final ReentrantReadWriteLock lock,
 			final GraphChangeNotifier notify,
 			final SelectionModel< V, E > selection,
+			final TrackMembership< V, E > tracks,
+			final LineageIndex< V, E > lineages,
+			final BranchGraph< V, E > branches,
 			final UndoPointMarker undo )
 	{
-		final SelectionActions< V, E > sa = new SelectionActions<>( graph, lock, notify, selection, undo );
+		final SelectionActions< V, E > sa = new SelectionActions<>( graph, lock, notify, selection, tracks, lineages, branches, undo );
 		actions.namedAction( sa.deleteSelectionAction, DELETE_SELECTION_KEYS );
 		actions.namedAction( sa.selectWholeTrackAction, SELECT_WHOLE_TRACK_KEYS );
 		actions.namedAction( sa.selectTrackDownwardAction, SELECT_TRACK_DOWNWARD_KEYS );
 		actions.namedAction( sa.selectTrackUpwardAction, SELECT_TRACK_UPWARD_KEYS );
+		if ( branches != null )
+			actions.namedAction( sa.selectBranchAction, SELECT_BRANCH_KEYS );
 	}
 
 	private final Graph< V, E > graph;
@@ -100,6 +120,12 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 
 	private final SelectionModel< V, E > selection;
 
+	private final TrackMembership< V, E > tracks;
+
+	private final LineageIndex< V, E > lineages;
+
+	private final BranchGraph< V, E > branches;
+
 	private final UndoPointMarker undo;
 
 	private final DeleteSelectionAction deleteSelectionAction;
@@ -110,22 +136,31 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 
 	private final TrackSelectionAction selectTrackUpwardAction;
 
+	private final BranchSelectionAction selectBranchAction;
+
 	private SelectionActions(
 			final Graph< V, E > graph,
 			final ReentrantReadWriteLock lock,
 			final GraphChangeNotifier notify,
 			final SelectionModel< V, E > selection,
+			final TrackMembership< V, E > tracks,
+			final LineageIndex< V, E > lineages,
+			final BranchGraph< V, E > branches,
 			final UndoPointMarker undo )
 	{
 		this.graph = graph;
 		this.lock = lock;
 		this.notify = notify;
 		this.selection = selection;
+		this.tracks = tracks;
+		this.lineages = lineages;
+		this.branches = branches;
 		this.undo = undo;
 		deleteSelectionAction = new DeleteSelectionAction( DELETE_SELECTION );
 		selectWholeTrackAction = new TrackSelectionAction( SELECT_WHOLE_TRACK, SearchDirection.UNDIRECTED );
 		selectTrackDownwardAction = new TrackSelectionAction( SELECT_TRACK_DOWNWARD, SearchDirection.DIRECTED );
 		selectTrackUpwardAction = new TrackSelectionAction( SELECT_TRACK_UPWARD, SearchDirection.REVERSED );
+		selectBranchAction = new BranchSelectionAction( SELECT_BRANCH );
 	}
 
 	class DeleteSelectionAction	extends AbstractNamedAction
@@ -196,46 +231,116 @@ public class SelectionActions< V extends Vertex< E >, E extends Edge< V > >
 				selection.pauseListeners();
 
 				final RefSet< V > vertices = RefCollections.createRefSet( graph.vertices() );
-				vertices.addAll( selection.getSelectedVertices() );
+				vertices.addAll( selection.getSelectedVerticesView() );
 				final V ref = graph.vertexRef();
-				for ( final E e : selection.getSelectedEdges() )
+				for ( final E e : selection.getSelectedEdgesView() )
 				{
 					vertices.add( e.getSource( ref ) );
 					vertices.add( e.getTarget( ref ) );
 				}
 				graph.releaseRef( ref );
 
+				// Collect the vertices and edges to select.
+				final RefSet< V > trackVertices = RefCollections.createRefSet( graph.vertices() );
+				final RefSet< E > trackEdges = RefCollections.createRefSet( graph.edges() );
+				if ( directivity == SearchDirection.UNDIRECTED && tracks != null )
+				{
+					for ( final V v : vertices )
+						if ( !trackVertices.contains( v ) )
+							tracks.getTrack( v, trackVertices, trackEdges );
+				}
+				else if ( directivity == SearchDirection.DIRECTED && lineages != null )
+				{
+					for ( final V v : vertices )
+						if ( !trackVertices.contains( v ) )
+							lineages.getDescendants( v, trackVertices, trackEdges );
+				}
+				else
+				{
+					final DepthFirstSearch< V, E > search = new DepthFirstSearch<>( graph, directivity );
+					search.setTraversalListener( new SearchListener< V, E, DepthFirstSearch< V, E > >()
+					{
+						@Override
+						public void processVertexLate( final V vertex, final DepthFirstSearch< V, E > search )
+						{}
+
+						@Override
+						public void processVertexEarly( final V vertex, final DepthFirstSearch< V, E > search )
+						{
+							trackVertices.add( vertex );
+						}
+
+						@Override
+						public void processEdge( final E edge, final V from, final V to, final DepthFirstSearch< V, E > search )
+						{
+							trackEdges.add( edge );
+						}
+
+						@Override
+						public void crossComponent( final V from, final V to, final DepthFirstSearch< V, E > search )
+						{}
+					} );
+
+					// Iterate from all vertices that were in the selection.
+					for ( final V v : vertices )
+						if ( !trackVertices.contains( v ) )
+							search.start( v );
+				}
+
 				selection.clearSelection();
+				selection.setVerticesSelected( trackVertices, true );
+				selection.setEdgesSelected( trackEdges, true );
 
-				// Prepare the iterator.
-				final DepthFirstSearch< V, E > search = new DepthFirstSearch<>( graph, directivity );
-				search.setTraversalListener( new SearchListener< V, E, DepthFirstSearch< V, E > >()
-				{
-					@Override
-					public void processVertexLate( final V vertex, final DepthFirstSearch< V, E > search )
-					{}
+				selection.resumeListeners();
+			}
+			finally
+			{
+				lock.writeLock().unlock();
+			}
+		}
+	}
 
-					@Override
-					public void processVertexEarly( final V vertex, final DepthFirstSearch< V, E > search )
-					{
-						selection.setSelected( vertex, true );
-					}
+	class BranchSelectionAction extends AbstractNamedAction
+	{
+		private static final long serialVersionUID = 1L;
 
-					@Override
-					public void processEdge( final E edge, final V from, final V to, final DepthFirstSearch< V, E > search )
-					{
-						selection.setSelected( edge, true );
-					}
+		BranchSelectionAction( final String name )
+		{
+			super( name );
+			setEnabled( !selection.isEmpty() );
+			selection.listeners().add( () -> setEnabled( !selection.isEmpty() ) );
+		}
 
-					@Override
-					public void crossComponent( final V from, final V to, final DepthFirstSearch< V, E > search )
-					{}
-				} );
+		@Override
+		public void actionPerformed( final ActionEvent event )
+		{
+			if ( selection.isEmpty() )
+				return;
 
-				// Iterate from all vertices that were in the selection.
+			lock.writeLock().lock();
+			try
+			{
+				selection.pauseListeners();
+
+				final RefSet< V > vertices = RefCollections.createRefSet( graph.vertices() );
+				vertices.addAll( selection.getSelectedVerticesView() );
+				final V ref = graph.vertexRef();
+				for ( final E e : selection.getSelectedEdgesView() )
+				{
+					vertices.add( e.getSource( ref ) );
+					vertices.add( e.getTarget( ref ) );
+				}
+				graph.releaseRef( ref );
+
+				final RefSet< V > branchVertices = RefCollections.createRefSet( graph.vertices() );
+				final RefSet< E > branchEdges = RefCollections.createRefSet( graph.edges() );
 				for ( final V v : vertices )
-					if ( !selection.isSelected( v ) )
-						search.start( v );
+					if ( !branchVertices.contains( v ) )
+						branches.getBranch( v, branchVertices, branchEdges );
+
+				selection.clearSelection();
+				selection.setVerticesSelected( branchVertices, true );
+				selection.setEdgesSelected( branchEdges, true );
 
 				selection.resumeListeners();
 			}
@@ -0,0 +1,100 @@
+package org.mastodon.revised.ui.coloring;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lookup table mapping values in <code>[0, 1]</code> to colors.
+ * <p>
+ * Color maps are defined by a few control colors, linearly interpolated in a
+ * table of {@value #N_COLORS} ARGB colors.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class ColorMap
+{
+
+	private static final int N_COLORS = 256;
+
+	public static final ColorMap JET = new ColorMap( "Jet",
+			0xFF00007F, 0xFF0000FF, 0xFF007FFF, 0xFF00FFFF, 0xFF7FFF7F, 0xFFFFFF00, 0xFFFF7F00, 0xFFFF0000, 0xFF7F0000 );
+
+	public static final ColorMap VIRIDIS = new ColorMap( "Viridis",
+			0xFF440154, 0xFF482878, 0xFF3E4989, 0xFF31688E, 0xFF26828E, 0xFF1F9E89, 0xFF35B779, 0xFF6DCD59, 0xFFB4DE2C, 0xFFFDE725 );
+
+	public static final ColorMap FIRE = new ColorMap( "Fire",
+			0xFF000000, 0xFF5F00A0, 0xFFC0004F, 0xFFFF4000, 0xFFFFA000, 0xFFFFFF60, 0xFFFFFFFF );
+
+	public static final ColorMap GRAYS = new ColorMap( "Grays",
+			0xFF202020, 0xFFFFFFFF );
+
+	private static final List< ColorMap > COLOR_MAPS = Collections.unmodifiableList( Arrays.asList( JET, VIRIDIS, FIRE, GRAYS ) );
+
+	private final String name;
+
+	private final int[] lut;
+
+	private ColorMap( final String name, final int... controlColors )
+	{
+		this.name = name;
+		this.lut = new int[ N_COLORS ];
+		final int nSegments = controlColors.length - 1;
+		for ( int i = 0; i < N_COLORS; i++ )
+		{
+			final double pos = ( double ) i / ( N_COLORS - 1 ) * nSegments;
+			final int segment = Math.min( nSegments - 1, ( int ) pos );
+			lut[ i ] = interpolate( controlColors[ segment ], controlColors[ segment + 1 ], pos - segment );
+		}
+	}
+
+	/**
+	 * Returns the color for the specified value. Values are clamped to
+	 * <code>[0, 1]</code>. <code>NaN</code> values have no color.
+	 *
+	 * @param alpha
+	 *            the value, in <code>[0, 1]</code>.
+	 * @return a color (as ARGB bytes packed into {@code int}), or
+	 *         <code>0</code> if the value is <code>NaN</code>.
+	 */
+	public int get( final double alpha )
+	{
+		if ( Double.isNaN( alpha ) )
+			return 0;
+		final int i = ( int ) Math.round( alpha * ( N_COLORS - 1 ) );
+		return lut[ Math.max( 0, Math.min( N_COLORS - 1, i ) ) ];
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the available color maps.
+	 *
+	 * @return an unmodifiable list of color maps.
+	 */
+	public static List< ColorMap > getColorMaps()
+	{
+		return COLOR_MAPS;
+	}
+
+	private static int interpolate( final int c0, final int c1, final double t )
+	{
+		int c = 0;
+		for ( int shift = 0; shift < 32; shift += 8 )
+		{
+			final int a = ( c0 >>> shift ) & 0xFF;
+			final int b = ( c1 >>> shift ) & 0xFF;
+			c |= ( ( int ) Math.round( a + t * ( b - a ) ) & 0xFF ) << shift;
+		}
+		return c;
+	}
+}
@@ -2,6 +2,7 @@ package org.mastodon.revised.ui.coloring;
 
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.function.BooleanSupplier;
 
@@ -9,14 +10,17 @@ import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JSeparator;
+import javax.swing.SwingUtilities;
 
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureModel.FeatureModelListener;
 import org.mastodon.revised.model.tag.TagSetModel;
 import org.mastodon.revised.model.tag.TagSetStructure;
 import org.mastodon.revised.util.HasSelectedState;
 import org.mastodon.util.Listeners;
 import org.scijava.ui.behaviour.util.AbstractNamedAction;
 
-public class ColoringMenu implements TagSetModel.TagSetModelListener
+public class ColoringMenu implements TagSetModel.TagSetModelListener, FeatureModelListener
 {
 	private final JMenu menu;
 
@@ -51,6 +55,34 @@ public class ColoringMenu implements TagSetModel.TagSetModelListener
 		if ( !tagSets.isEmpty() )
 			menu.add( new JSeparator() );
 
+		final List< Feature< ?, ? > > features = coloringModel.getFeatures();
+		for ( final Feature< ?, ? > feature : features )
+		{
+			// One sub-menu per feature, since projection keys can be shared.
+			final String fk = feature.getKey();
+			final JMenu featureMenu = new JMenu( fk );
+			final List< String > projectionKeys = new ArrayList<>( feature.getProjections().keySet() );
+			Collections.sort( projectionKeys );
+			for ( final String pk : projectionKeys )
+				addColorAction( featureMenu, new ColorAction(
+						pk,
+						() -> coloringModel.isColoringByFeature( fk, pk ),
+						() -> coloringModel.colorByFeature( fk, pk ) ) );
+			menu.add( featureMenu );
+		}
+
+		if ( !features.isEmpty() )
+		{
+			final JMenu colorMapMenu = new JMenu( "Feature color map" );
+			for ( final ColorMap cm : ColorMap.getColorMaps() )
+				addColorAction( colorMapMenu, new ColorAction(
+						cm.getName(),
+						() -> coloringModel.getColorMap() == cm,
+						() -> coloringModel.setColorMap( cm ) ) );
+			menu.add( colorMapMenu );
+			menu.add( new JSeparator() );
+		}
+
 		addColorAction( new ColorAction(
 				"None",
 				() -> coloringModel.noColoring(),
@@ -59,6 +91,11 @@ public class ColoringMenu implements TagSetModel.TagSetModelListener
 	}
 
 	private void addColorAction( final ColorAction action )
+	{
+		addColorAction( menu, action );
+	}
+
+	private void addColorAction( final JMenu target, final ColorAction action )
 	{
 		coloringModel.listeners().add( action );
 		cleanup.add( () -> coloringModel.listeners().remove( action ) );
@@ -66,7 +103,7 @@ public class ColoringMenu implements TagSetModel.TagSetModelListener
 		item.setText( action.name() );
 		item.setSelected( action.isSelected() );
 		action.selectListeners().add( item::setSelected );
-		menu.add( item );
+		target.add( item );
 	}
 
 	@Override
@@ -75,6 +112,13 @@ public class ColoringMenu implements TagSetModel.TagSetModelListener
 		rebuild();
 	}
 
+	@Override
+	public void featureModelChanged()
+	{
+		// Features may be computed outside of the EDT.
+		SwingUtilities.invokeLater( this::rebuild );
+	}
+
 	public static class ColorAction extends AbstractNamedAction implements HasSelectedState, ColoringModel.ColoringChangedListener
 	{
 		private final Listeners.List< Listener > selectListeners;
@@ -1,14 +1,24 @@
 package org.mastodon.revised.ui.coloring;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import javax.swing.SwingUtilities;
+
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureModel;
+import org.mastodon.revised.model.feature.FeatureModel.FeatureModelListener;
 import org.mastodon.revised.model.tag.TagSetModel;
 import org.mastodon.revised.model.tag.TagSetStructure;
 import org.mastodon.util.Listeners;
 
 /**
  * ColoringModel knows which coloring scheme is currently active.
- * Possible options are: none, by a tag set, by a feature (not implemented yet).
+ * Possible options are: none, by a tag set, by a feature projection.
  * <p>
  * Notifies listeners when coloring is changed.
  * <p>
@@ -16,7 +26,7 @@ import org.mastodon.util.Listeners;
  *
  * @author Tobias Pietzsch
  */
-public class ColoringModel implements TagSetModel.TagSetModelListener
+public class ColoringModel implements TagSetModel.TagSetModelListener, FeatureModelListener
 {
 	public interface ColoringChangedListener
 	{
@@ -27,11 +37,45 @@ public class ColoringModel implements TagSetModel.TagSetModelListener
 
 	private final Listeners.List< ColoringChangedListener > listeners;
 
+	private final FeatureModel featureModel;
+
+	private final Class< ? > vertexClass;
+
+	private final Class< ? > edgeClass;
+
 	private TagSetStructure.TagSet tagSet;
 
-	public ColoringModel( final TagSetModel< ?, ? > tagSetModel )
+	private String featureKey;
+
+	private String projectionKey;
+
+	private ColorMap colorMap;
+
+	/**
+	 * Creates a coloring model.
+	 *
+	 * @param tagSetModel
+	 *            the tag set model.
+	 * @param featureModel
+	 *            the feature model.
+	 * @param vertexClass
+	 *            the class of the vertices, used to list the features that
+	 *            can be used for coloring.
+	 * @param edgeClass
+	 *            the class of the edges, used to list the features that can be
+	 *            used for coloring.
+	 */
+	public ColoringModel(
+			final TagSetModel< ?, ? > tagSetModel,
+			final FeatureModel featureModel,
+			final Class< ? > vertexClass,
+			final Class< ? > edgeClass )
 	{
 		this.tagSetModel = tagSetModel;
+		this.featureModel = featureModel;
+		this.vertexClass = vertexClass;
+		this.edgeClass = edgeClass;
+		this.colorMap = ColorMap.JET;
 		this.listeners = new Listeners.SynchronizedList<>();
 	}
 
@@ -43,12 +87,30 @@ public class ColoringModel implements TagSetModel.TagSetModelListener
 	public void colorByNone()
 	{
 		tagSet = null;
+		featureKey = null;
+		projectionKey = null;
 		listeners.list.forEach( ColoringChangedListener::coloringChanged );
 	}
 
 	public void colorByTagSet( final TagSetStructure.TagSet tagSet )
 	{
 		this.tagSet = tagSet;
+		featureKey = null;
+		projectionKey = null;
+		listeners.list.forEach( ColoringChangedListener::coloringChanged );
+	}
+
+	public void colorByFeature( final String featureKey, final String projectionKey )
+	{
+		tagSet = null;
+		this.featureKey = featureKey;
+		this.projectionKey = projectionKey;
+		listeners.list.forEach( ColoringChangedListener::coloringChanged );
+	}
+
+	public void setColorMap( final ColorMap colorMap )
+	{
+		this.colorMap = colorMap;
 		listeners.list.forEach( ColoringChangedListener::coloringChanged );
 	}
 
@@ -57,9 +119,29 @@ public class ColoringModel implements TagSetModel.TagSetModelListener
 		return tagSet;
 	}
 
+	public String getFeatureKey()
+	{
+		return featureKey;
+	}
+
+	public String getProjectionKey()
+	{
+		return projectionKey;
+	}
+
+	public ColorMap getColorMap()
+	{
+		return colorMap;
+	}
+
+	public boolean isColoringByFeature( final String featureKey, final String projectionKey )
+	{
+		return featureKey.equals( this.featureKey ) && projectionKey.equals( this.projectionKey );
+	}
+
 	public boolean noColoring()
 	{
-		return tagSet == null;
+		return tagSet == null && featureKey == null;
 	}
 
 	@Override
@@ -77,8 +159,51 @@ public class ColoringModel implements TagSetModel.TagSetModelListener
 		}
 	}
 
+	@Override
+	public void featureModelChanged()
+	{
+		// Features may be computed outside of the EDT.
+		if ( SwingUtilities.isEventDispatchThread() )
+			checkFeatureProjection();
+		else
+			SwingUtilities.invokeLater( this::checkFeatureProjection );
+	}
+
+	/**
+	 * Falls back to no coloring if the feature projection used for coloring
+	 * is not in the feature model anymore.
+	 */
+	private void checkFeatureProjection()
+	{
+		if ( featureKey != null )
+		{
+			final Feature< ?, ? > feature = featureModel.getFeature( featureKey );
+			if ( feature == null || !feature.getProjections().containsKey( projectionKey ) )
+				colorByNone();
+		}
+	}
+
 	public TagSetStructure getTagSetStructure()
 	{
 		return tagSetModel.getTagSetStructure();
 	}
+
+	/**
+	 * Returns the features of the feature model that target vertices or
+	 * edges, sorted by key.
+	 *
+	 * @return a new list of features.
+	 */
+	public List< Feature< ?, ? > > getFeatures()
+	{
+		final List< Feature< ?, ? > > features = new ArrayList<>();
+		for ( final Class< ? > targetClass : new Class< ? >[] { vertexClass, edgeClass } )
+		{
+			final Set< Feature< ?, ? > > set = featureModel.getFeatureSet( targetClass );
+			if ( set != null )
+				features.addAll( set );
+		}
+		Collections.sort( features, Comparator.comparing( Feature::getKey ) );
+		return features;
+	}
 }
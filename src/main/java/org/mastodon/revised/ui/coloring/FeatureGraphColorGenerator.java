@@ -0,0 +1,474 @@
+package org.mastodon.revised.ui.coloring;
+
+import java.util.Arrays;
+
+import org.mastodon.RefPool;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.properties.PropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureModel;
+import org.mastodon.revised.model.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.feature.FeatureStatistics;
+import org.mastodon.revised.model.feature.ProjectionStatistics;
+
+/**
+ * Colors vertices and edges of a graph by the value of a feature projection,
+ * through a {@link ColorMap}.
+ * <p>
+ * The color of each vertex and edge is precomputed in an <code>int</code>
+ * column indexed by pool index, so that {@link #color(Vertex)} and
+ * {@link #color(Edge, Vertex, Vertex)} are single array lookups. Columns are
+ * refreshed incrementally when feature values change (if the feature property
+ * map is a {@link Property}) and when vertices and edges are added, and fully
+ * when the feature model changes.
+ * <p>
+ * If the feature targets vertices, edges get the color of their target
+ * vertex. If it targets edges, vertices are not colored.
+ * <p>
+ * The value range mapped to the color map is either set explicitly, or taken
+ * from the {@link FeatureStatistics} of the feature projection when the
+ * columns are fully refreshed. Incremental updates do not change the range.
+ * <p>
+ * Instances register as listeners of the graph and of the feature model, and
+ * must be {@link #dispose() disposed} when not used anymore.
+ *
+ * @param <V>
+ *            the type of the vertices.
+ * @param <E>
+ *            the type of the edges.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class FeatureGraphColorGenerator< V extends Vertex< E >, E extends Edge< V > >
+		implements GraphColorGenerator< V, E >, GraphListener< V, E >, FeatureModelListener
+{
+	private final ListenableReadOnlyGraph< V, E > graph;
+
+	private final FeatureModel featureModel;
+
+	private final FeatureStatistics< ?, ? > statistics;
+
+	private final String featureKey;
+
+	private final String projectionKey;
+
+	private final RefPool< V > vertexPool;
+
+	private final RefPool< E > edgePool;
+
+	private final VertexPropertyListener vertexPropertyListener;
+
+	private final EdgePropertyListener edgePropertyListener;
+
+	private ColorMap colorMap;
+
+	private boolean autoRange;
+
+	private double min;
+
+	private double max;
+
+	/**
+	 * The feature currently used for coloring, or <code>null</code>.
+	 */
+	private Feature< ?, ? > feature;
+
+	private FeatureProjection< V > vertexProjection;
+
+	private FeatureProjection< E > edgeProjection;
+
+	/**
+	 * The color columns. Full refreshes build new columns and publish them
+	 * with a single write, so that painters never see partially built
+	 * columns.
+	 */
+	private volatile ColorColumns columns;
+
+	/**
+	 * Creates a color generator for the specified feature projection, with
+	 * a value range taken from the feature statistics.
+	 *
+	 * @param graph
+	 *            the graph.
+	 * @param featureModel
+	 *            the feature model.
+	 * @param statistics
+	 *            the statistics of the features of the feature model. Can be
+	 *            <code>null</code>, in which case the range is computed from
+	 *            the feature values on full refresh.
+	 * @param featureKey
+	 *            the key of the feature.
+	 * @param projectionKey
+	 *            the key of the projection in the feature.
+	 * @param colorMap
+	 *            the color map.
+	 */
+	public FeatureGraphColorGenerator(
+			final ListenableReadOnlyGraph< V, E > graph,
+			final FeatureModel featureModel,
+			final FeatureStatistics< ?, ? > statistics,
+			final String featureKey,
+			final String projectionKey,
+			final ColorMap colorMap )
+	{
+		this.graph = graph;
+		this.featureModel = featureModel;
+		this.statistics = statistics;
+		this.featureKey = featureKey;
+		this.projectionKey = projectionKey;
+		this.colorMap = colorMap;
+		this.vertexPool = RefCollections.tryGetRefPool( graph.vertices() );
+		this.edgePool = RefCollections.tryGetRefPool( graph.edges() );
+		this.vertexPropertyListener = new VertexPropertyListener();
+		this.edgePropertyListener = new EdgePropertyListener();
+		this.autoRange = true;
+		this.columns = new ColorColumns( new int[ 0 ], new int[ 0 ] );
+
+		refresh();
+		graph.addGraphListener( this );
+		featureModel.listeners().add( this );
+	}
+
+	@Override
+	public int color( final V vertex )
+	{
+		final int[] colors = columns.vertexColors;
+		final int i = vertexPool.getId( vertex );
+		return i < colors.length ? colors[ i ] : 0;
+	}
+
+	@Override
+	public int color( final E edge, final V source, final V target )
+	{
+		final int[] colors = columns.edgeColors;
+		final int i = edgePool.getId( edge );
+		return i < colors.length ? colors[ i ] : 0;
+	}
+
+	/**
+	 * Sets the range of values mapped to the color map, and recomputes all
+	 * colors.
+	 *
+	 * @param min
+	 *            the value mapped to the first color.
+	 * @param max
+	 *            the value mapped to the last color.
+	 */
+	public synchronized void setRange( final double min, final double max )
+	{
+		this.autoRange = false;
+		this.min = min;
+		this.max = max;
+		refresh();
+	}
+
+	/**
+	 * Sets the range of values mapped to the color map to be taken from the
+	 * feature statistics, and recomputes all colors.
+	 */
+	public synchronized void setAutoRange()
+	{
+		this.autoRange = true;
+		refresh();
+	}
+
+	public synchronized void setColorMap( final ColorMap colorMap )
+	{
+		this.colorMap = colorMap;
+		refresh();
+	}
+
+	public double getMin()
+	{
+		return min;
+	}
+
+	public double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * Unregisters this color generator from the graph and the feature model.
+	 */
+	public synchronized void dispose()
+	{
+		graph.removeGraphListener( this );
+		featureModel.listeners().remove( this );
+		unregister();
+		feature = null;
+	}
+
+	/**
+	 * Recomputes the colors of all vertices and edges. If the range is taken
+	 * from the feature statistics, it is updated first.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public synchronized void refresh()
+	{
+		unregister();
+		feature = featureModel.getFeature( featureKey );
+		vertexProjection = null;
+		edgeProjection = null;
+		if ( feature != null )
+		{
+			final FeatureProjection< ? > projection = feature.getProjections().get( projectionKey );
+			if ( projection != null )
+			{
+				if ( feature.getTargetClass() == vertexPool.getRefClass() )
+					vertexProjection = ( FeatureProjection< V > ) projection;
+				else if ( feature.getTargetClass() == edgePool.getRefClass() )
+					edgeProjection = ( FeatureProjection< E > ) projection;
+			}
+		}
+
+		if ( autoRange )
+			updateRange();
+
+		final int[] vc = new int[ vertexCapacity() ];
+		final int[] ec = new int[ edgeCapacity() ];
+		if ( vertexProjection != null )
+		{
+			for ( final V v : graph.vertices() )
+				vc[ vertexPool.getId( v ) ] = map( vertexProjection, v );
+			final V ref = graph.vertexRef();
+			for ( final E e : graph.edges() )
+				ec[ edgePool.getId( e ) ] = vc[ vertexPool.getId( e.getTarget( ref ) ) ];
+			graph.releaseRef( ref );
+		}
+		else if ( edgeProjection != null )
+		{
+			for ( final E e : graph.edges() )
+				ec[ edgePool.getId( e ) ] = map( edgeProjection, e );
+		}
+		columns = new ColorColumns( vc, ec );
+
+		final PropertyMap< ?, ? > pm = feature == null ? null : feature.getPropertyMap();
+		if ( pm instanceof Property )
+		{
+			if ( vertexProjection != null )
+				( ( Property< V > ) pm ).addPropertyChangeListener( vertexPropertyListener );
+			else if ( edgeProjection != null )
+				( ( Property< E > ) pm ).addPropertyChangeListener( edgePropertyListener );
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private void unregister()
+	{
+		final PropertyMap< ?, ? > pm = feature == null ? null : feature.getPropertyMap();
+		if ( pm instanceof Property )
+		{
+			if ( vertexProjection != null )
+				( ( Property< V > ) pm ).removePropertyChangeListener( vertexPropertyListener );
+			else if ( edgeProjection != null )
+				( ( Property< E > ) pm ).removePropertyChangeListener( edgePropertyListener );
+		}
+	}
+
+	private void updateRange()
+	{
+		final ProjectionStatistics stats = statistics == null ? null : statistics.getStatistics( featureKey, projectionKey );
+		if ( stats != null && stats.getN() > 0 )
+		{
+			min = stats.getMin();
+			max = stats.getMax();
+			return;
+		}
+
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+		if ( vertexProjection != null )
+		{
+			for ( final V v : graph.vertices() )
+				if ( vertexProjection.isSet( v ) )
+					include( vertexProjection.value( v ) );
+		}
+		else if ( edgeProjection != null )
+		{
+			for ( final E e : graph.edges() )
+				if ( edgeProjection.isSet( e ) )
+					include( edgeProjection.value( e ) );
+		}
+		if ( min > max )
+		{
+			min = 0.;
+			max = 1.;
+		}
+	}
+
+	private void include( final double value )
+	{
+		if ( value < min )
+			min = value;
+		if ( value > max )
+			max = value;
+	}
+
+	private < O > int map( final FeatureProjection< O > projection, final O o )
+	{
+		if ( !projection.isSet( o ) )
+			return 0;
+		final double range = max - min;
+		final double alpha = range > 0. ? ( projection.value( o ) - min ) / range : 0.5;
+		return colorMap.get( alpha );
+	}
+
+	private int vertexCapacity()
+	{
+		int capacity = 0;
+		for ( final V v : graph.vertices() )
+			capacity = Math.max( capacity, vertexPool.getId( v ) + 1 );
+		return capacity;
+	}
+
+	private int edgeCapacity()
+	{
+		int capacity = 0;
+		for ( final E e : graph.edges() )
+			capacity = Math.max( capacity, edgePool.getId( e ) + 1 );
+		return capacity;
+	}
+
+	private static int[] ensureCapacity( final int[] colors, final int index )
+	{
+		if ( index < colors.length )
+			return colors;
+		return Arrays.copyOf( colors, Math.max( index + 1, 2 * colors.length ) );
+	}
+
+	private void setVertexColor( final V v, final int color )
+	{
+		final int i = vertexPool.getId( v );
+		final ColorColumns c = columns;
+		if ( i < c.vertexColors.length )
+			c.vertexColors[ i ] = color;
+		else
+		{
+			final int[] vc = ensureCapacity( c.vertexColors, i );
+			vc[ i ] = color;
+			columns = new ColorColumns( vc, c.edgeColors );
+		}
+	}
+
+	private void setEdgeColor( final E e, final int color )
+	{
+		final int i = edgePool.getId( e );
+		final ColorColumns c = columns;
+		if ( i < c.edgeColors.length )
+			c.edgeColors[ i ] = color;
+		else
+		{
+			final int[] ec = ensureCapacity( c.edgeColors, i );
+			ec[ i ] = color;
+			columns = new ColorColumns( c.vertexColors, ec );
+		}
+	}
+
+	/**
+	 * Vertex and edge colors, indexed by pool index.
+	 */
+	private static final class ColorColumns
+	{
+		private final int[] vertexColors;
+
+		private final int[] edgeColors;
+
+		private ColorColumns( final int[] vertexColors, final int[] edgeColors )
+		{
+			this.vertexColors = vertexColors;
+			this.edgeColors = edgeColors;
+		}
+	}
+
+	/**
+	 * Recomputes the color of a vertex, and of its incoming edges.
+	 */
+	private void updateVertex( final V v )
+	{
+		final int color = map( vertexProjection, v );
+		setVertexColor( v, color );
+		for ( final E e : v.incomingEdges() )
+			setEdgeColor( e, color );
+	}
+
+	private class VertexPropertyListener implements PropertyChangeListener< V >
+	{
+		@Override
+		public void propertyChanged( final V v )
+		{
+			synchronized ( FeatureGraphColorGenerator.this )
+			{
+				if ( vertexProjection != null )
+					updateVertex( v );
+			}
+		}
+	}
+
+	private class EdgePropertyListener implements PropertyChangeListener< E >
+	{
+		@Override
+		public void propertyChanged( final E e )
+		{
+			synchronized ( FeatureGraphColorGenerator.this )
+			{
+				if ( edgeProjection != null )
+					setEdgeColor( e, map( edgeProjection, e ) );
+			}
+		}
+	}
+
+	@Override
+	public synchronized void featureModelChanged()
+	{
+		refresh();
+	}
+
+	@Override
+	public synchronized void graphRebuilt()
+	{
+		refresh();
+	}
+
+	@Override
+	public synchronized void vertexAdded( final V vertex )
+	{
+		setVertexColor( vertex, vertexProjection == null ? 0 : map( vertexProjection, vertex ) );
+	}
+
+	@Override
+	public synchronized void vertexRemoved( final V vertex )
+	{
+		setVertexColor( vertex, 0 );
+	}
+
+	@Override
+	public synchronized void edgeAdded( final E edge )
+	{
+		final int color;
+		if ( vertexProjection != null )
+		{
+			final V ref = graph.vertexRef();
+			color = color( edge.getTarget( ref ) );
+			graph.releaseRef( ref );
+		}
+		else if ( edgeProjection != null )
+			color = map( edgeProjection, edge );
+		else
+			color = 0;
+		setEdgeColor( edge, color );
+	}
+
+	@Override
+	public synchronized void edgeRemoved( final E edge )
+	{
+		setEdgeColor( edge, 0 );
+	}
+}
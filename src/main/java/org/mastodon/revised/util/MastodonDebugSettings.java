@@ -29,6 +29,15 @@ public interface MastodonDebugSettings
 	 */
 	boolean isUseMenuAccelerators();
 
+	/**
+	 * Paint the TrackScheme graph from a cache of rendered tiles, so that
+	 * panning only renders the newly exposed parts of the graph.
+	 * <p>
+	 * Off by default. Each TrackScheme window then keeps up to 16 MB of
+	 * rendered tiles.
+	 */
+	boolean isUseTiledTrackSchemeRendering();
+
 	static MastodonDebugSettings getInstance()
 	{
 		return IO.getInstance();
@@ -43,6 +52,8 @@ public interface MastodonDebugSettings
 		{
 			private boolean useMenuAccelerators = true;
 
+			private boolean useTiledTrackSchemeRendering = false;
+
 			@Override
 			public boolean isUseMenuAccelerators()
 			{
@@ -53,6 +64,17 @@ public interface MastodonDebugSettings
 			{
 				this.useMenuAccelerators = useMenuAccelerators;
 			}
+
+			@Override
+			public boolean isUseTiledTrackSchemeRendering()
+			{
+				return useTiledTrackSchemeRendering;
+			}
+
+			public void setUseTiledTrackSchemeRendering( final boolean useTiledTrackSchemeRendering )
+			{
+				this.useTiledTrackSchemeRendering = useTiledTrackSchemeRendering;
+			}
 		}
 
 		private static DebugSettingsImpl instance;
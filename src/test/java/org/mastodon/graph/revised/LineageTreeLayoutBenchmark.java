@@ -0,0 +1,62 @@
+package org.mastodon.graph.revised;
+
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.collection.RefList;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.trackscheme.LexicographicalVertexOrder;
+import org.mastodon.revised.trackscheme.LineageTreeLayout;
+import org.mastodon.revised.trackscheme.TrackSchemeEdge;
+import org.mastodon.revised.trackscheme.TrackSchemeGraph;
+import org.mastodon.revised.trackscheme.TrackSchemeVertex;
+
+import net.imglib2.util.BenchmarkHelper;
+
+public class LineageTreeLayoutBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int N_RUNS = 20;
+
+		System.out.println( "Creating model." );
+		final long s = System.currentTimeMillis();
+		// Many small trees, a few million spots.
+		final Model model = new CreateLargeModelExample().run( 4000, 8, 4 );
+		final int size = model.getGraph().vertices().size();
+		final long e = System.currentTimeMillis();
+		System.out.println( String.format( "Created a model with %d spots in %.1f s.", size, ( ( double ) e - s ) / 1000. ) );
+
+		final TrackSchemeGraph< Spot, Link > graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ) );
+		final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		final LineageTreeLayout layout = new LineageTreeLayout( graph, selection );
+		final RefList< TrackSchemeVertex > roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+		System.out.println( String.format( "Laying out %d trees.", roots.size() ) );
+		final double[] maxX = new double[ 2 ];
+
+		System.out.println();
+		layout.setParallelLayout( false );
+		final long s1 = System.currentTimeMillis();
+		BenchmarkHelper.benchmarkAndPrint( N_RUNS, false, () -> layout.layout( roots, -1 ) );
+		final long e1 = System.currentTimeMillis();
+		maxX[ 0 ] = layout.getCurrentLayoutMaxX();
+		System.out.println( String.format( "Sequential layout up to X = %.1f in %.1f ms.", maxX[ 0 ], ( ( double ) e1 - s1 ) / N_RUNS ) );
+
+		System.out.println();
+		layout.setParallelLayout( true );
+		final long s2 = System.currentTimeMillis();
+		BenchmarkHelper.benchmarkAndPrint( N_RUNS, false, () -> layout.layout( roots, -1 ) );
+		final long e2 = System.currentTimeMillis();
+		maxX[ 1 ] = layout.getCurrentLayoutMaxX();
+		System.out.println( String.format( "Parallel layout up to X = %.1f in %.1f ms.", maxX[ 1 ], ( ( double ) e2 - s2 ) / N_RUNS ) );
+	}
+}
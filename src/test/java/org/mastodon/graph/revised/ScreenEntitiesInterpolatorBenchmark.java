@@ -0,0 +1,88 @@
+package org.mastodon.graph.revised;
+
+import java.lang.management.ManagementFactory;
+
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.trackscheme.LineageTreeLayout;
+import org.mastodon.revised.trackscheme.ScreenEntities;
+import org.mastodon.revised.trackscheme.ScreenEntitiesInterpolator;
+import org.mastodon.revised.trackscheme.ScreenTransform;
+import org.mastodon.revised.trackscheme.TrackSchemeEdge;
+import org.mastodon.revised.trackscheme.TrackSchemeGraph;
+import org.mastodon.revised.trackscheme.TrackSchemeVertex;
+import org.mastodon.revised.ui.coloring.DefaultGraphColorGenerator;
+
+import net.imglib2.util.BenchmarkHelper;
+
+public class ScreenEntitiesInterpolatorBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int N_FRAMES = 1000;
+		final int WIDTH = 1600;
+		final int HEIGHT = 1000;
+
+		System.out.println( "Creating model." );
+		final Model model = new CreateLargeModelExample().run( 200, 8, 4 );
+		final TrackSchemeGraph< Spot, Link > graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ) );
+		final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		final LineageTreeLayout layout = new LineageTreeLayout( graph, selection );
+		layout.layout();
+		final DefaultGraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator = new DefaultGraphColorGenerator<>();
+
+		// Animate a pan, so that most entities move and some appear or disappear.
+		final double maxX = layout.getCurrentLayoutMaxX();
+		final double w = Math.min( 400, maxX );
+		final ScreenTransform startTransform = new ScreenTransform( 0, w, 0, 50, WIDTH, HEIGHT );
+		final ScreenTransform endTransform = new ScreenTransform( w / 4, w / 4 + w, 5, 55, WIDTH, HEIGHT );
+		final ScreenEntities start = new ScreenEntities( graph );
+		final ScreenEntities end = new ScreenEntities( graph );
+		layout.cropAndScale( startTransform, start, 0, 0, colorGenerator );
+		layout.cropAndScale( endTransform, end, 0, 0, colorGenerator );
+		System.out.println( String.format( "Interpolating from %d to %d vertices.", start.getVertices().size(), end.getVertices().size() ) );
+
+		final ScreenEntities[] current = new ScreenEntities[] { new ScreenEntities( graph ), new ScreenEntities( graph ) };
+		final ScreenEntitiesInterpolator interpolator = new ScreenEntitiesInterpolator();
+		final Runnable animation = () -> {
+			interpolator.set( start, end, null );
+			for ( int i = 0; i < N_FRAMES; ++i )
+			{
+				final ScreenEntities entities = current[ i & 1 ];
+				entities.clear();
+				interpolator.interpolate( ( double ) i / N_FRAMES, entities );
+			}
+		};
+
+		System.out.println();
+		System.out.println( String.format( "Time for %d frames:", N_FRAMES ) );
+		BenchmarkHelper.benchmarkAndPrint( 10, false, animation );
+
+		// Steady state: all buffers have grown to the number of entities.
+		final com.sun.management.ThreadMXBean bean = ( com.sun.management.ThreadMXBean ) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		interpolator.set( start, end, null );
+		final long before = bean.getThreadAllocatedBytes( threadId );
+		for ( int i = 0; i < N_FRAMES; ++i )
+		{
+			final ScreenEntities entities = current[ i & 1 ];
+			entities.clear();
+			interpolator.interpolate( ( double ) i / N_FRAMES, entities );
+		}
+		final long after = bean.getThreadAllocatedBytes( threadId );
+		System.out.println();
+		System.out.println( String.format( "Allocated %d bytes in %d frames (%.1f bytes per frame).",
+				after - before, N_FRAMES, ( double ) ( after - before ) / N_FRAMES ) );
+	}
+}
@@ -0,0 +1,54 @@
+package org.mastodon.graph.revised;
+
+import java.util.BitSet;
+
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.query.SpotQuery;
+
+import net.imglib2.util.BenchmarkHelper;
+
+public class SpotQueryBenchmark
+{
+	public static void main( final String[] args )
+	{
+		final int N_RUNS = 20;
+		final String QUERY = "x > 0 and t in 20..100 and not y < -50";
+
+		System.out.println( "Creating model." );
+		final long s = System.currentTimeMillis();
+		// About 10 million spots.
+		final Model model = new CreateLargeModelExample().run( 9, 18, 8 );
+		final int size = model.getGraph().vertices().size();
+		final long e = System.currentTimeMillis();
+		System.out.println( String.format( "Created a model with %d spots in %.1f s.", size, ( ( double ) e - s ) / 1000. ) );
+
+		final SpotQuery query = SpotQuery.compile( QUERY );
+		System.out.println( "Query: " + query );
+		final int[] count = new int[ 2 ];
+
+		System.out.println();
+		final long s1 = System.currentTimeMillis();
+		BenchmarkHelper.benchmarkAndPrint( N_RUNS, false, () -> count[ 0 ] = loop( model ).cardinality() );
+		final long e1 = System.currentTimeMillis();
+		System.out.println( String.format( "Ad-hoc loop found %d spots in %.1f ms.", count[ 0 ], ( ( double ) e1 - s1 ) / N_RUNS ) );
+
+		System.out.println();
+		final long s2 = System.currentTimeMillis();
+		BenchmarkHelper.benchmarkAndPrint( N_RUNS, false, () -> count[ 1 ] = query.evaluate( model ).cardinality() );
+		final long e2 = System.currentTimeMillis();
+		System.out.println( String.format( "Query found %d spots in %.1f ms.", count[ 1 ], ( ( double ) e2 - s2 ) / N_RUNS ) );
+	}
+
+	private static BitSet loop( final Model model )
+	{
+		final BitSet bits = new BitSet();
+		for ( final Spot spot : model.getGraph().vertices() )
+		{
+			final int t = spot.getTimepoint();
+			if ( spot.getDoublePosition( 0 ) > 0 && t >= 20 && t <= 100 && !( spot.getDoublePosition( 1 ) < -50 ) )
+				bits.set( spot.getInternalPoolIndex() );
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,50 @@
+package org.mastodon.revised.mamut.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.feature.LazyFeaturePropertyMap;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+
+public class LinkVelocityFeatureComputerTest
+{
+	@Test
+	public void testVelocityFollowsSpotPositions()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot source = graph.addVertex().init( 0, new double[] { 0, 0, 0 }, 1 );
+		final Spot target = graph.addVertex().init( 2, new double[] { 4, 0, 0 }, 1 );
+		final Link link = graph.addEdge( source, target ).init();
+
+		final Feature< Link, LazyFeaturePropertyMap< Link > > feature = new LinkVelocityFeatureComputer().compute( model, new FeatureComputation() );
+		final LazyFeaturePropertyMap< Link > pm = feature.getPropertyMap();
+		final FeatureProjection< Link > velocity = feature.getProjections().get( LinkVelocityFeatureComputer.KEY );
+		assertEquals( 0, pm.size() );
+		assertEquals( 2., velocity.value( link ), 1e-12 );
+		assertEquals( 1, pm.size() );
+
+		// Moving the target invalidates the memoized velocity.
+		target.setPosition( 10., 0 );
+		assertEquals( 5., velocity.value( link ), 1e-12 );
+		source.setPosition( 6., 0 );
+		assertEquals( 2., velocity.value( link ), 1e-12 );
+
+		// Writes act on the memoized values.
+		assertEquals( 2., pm.set( link, new double[] { 42. } )[ 0 ], 1e-12 );
+		assertEquals( 42., velocity.value( link ), 1e-12 );
+		assertEquals( 42., pm.remove( link )[ 0 ], 1e-12 );
+		assertNull( pm.remove( link ) );
+		assertEquals( 2., velocity.value( link ), 1e-12 );
+		pm.clear();
+		assertEquals( 0, pm.size() );
+		pm.dispose();
+	}
+}
@@ -0,0 +1,186 @@
+package org.mastodon.revised.mamut.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.revised.mamut.feature.TrackStatisticsComputer.TrackStatisticsPropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureComputation;
+import org.mastodon.revised.model.feature.FeatureProjection;
+import org.mastodon.revised.model.mamut.ConnectedComponents;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.mamut.Track;
+import org.mastodon.revised.ui.ProgressListener;
+
+public class TrackStatisticsComputerTest
+{
+	private Model model;
+
+	private Track linear;
+
+	private Track dividing;
+
+	private Track isolated;
+
+	/**
+	 * Builds three tracks:
+	 * <ul>
+	 * <li>a linear track of 3 spots over time-points 0 to 3, with speeds 5 and
+	 * 5;
+	 * <li>a track dividing at time-point 0, with leaves at distances 2 and 4
+	 * from its first spot and speeds 1, 2 and 3;
+	 * <li>an isolated spot.
+	 * </ul>
+	 */
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		final ModelGraph graph = model.getGraph();
+
+		final Spot a0 = graph.addVertex().init( 0, new double[] { 0, 0, 0 }, 1 );
+		final Spot a1 = graph.addVertex().init( 1, new double[] { 3, 4, 0 }, 1 );
+		final Spot a2 = graph.addVertex().init( 3, new double[] { 3, 4, 10 }, 1 );
+		graph.addEdge( a0, a1 ).init();
+		graph.addEdge( a1, a2 ).init();
+
+		final Spot b0 = graph.addVertex().init( 0, new double[] { 0, 0, 0 }, 1 );
+		final Spot b1 = graph.addVertex().init( 1, new double[] { 1, 0, 0 }, 1 );
+		final Spot b2 = graph.addVertex().init( 1, new double[] { 0, 2, 0 }, 1 );
+		final Spot b3 = graph.addVertex().init( 2, new double[] { 4, 0, 0 }, 1 );
+		graph.addEdge( b0, b1 ).init();
+		graph.addEdge( b0, b2 ).init();
+		graph.addEdge( b1, b3 ).init();
+
+		final Spot c0 = graph.addVertex().init( 5, new double[] { 1, 1, 1 }, 1 );
+
+		final ConnectedComponents components = ConnectedComponents.compute( graph );
+		linear = new Track( components.getComponent( a0 ) );
+		dividing = new Track( components.getComponent( b0 ) );
+		isolated = new Track( components.getComponent( c0 ) );
+	}
+
+	@Test
+	public void testStatistics()
+	{
+		final Feature< Track, TrackStatisticsPropertyMap > feature = new TrackStatisticsComputer().compute( model, new FeatureComputation() );
+		final Map< String, FeatureProjection< Track > > projections = feature.getProjections();
+		final FeatureProjection< Track > duration = projections.get( TrackStatisticsComputer.DURATION );
+		final FeatureProjection< Track > nDivisions = projections.get( TrackStatisticsComputer.N_DIVISIONS );
+		final FeatureProjection< Track > meanSpeed = projections.get( TrackStatisticsComputer.MEAN_SPEED );
+		final FeatureProjection< Track > displacement = projections.get( TrackStatisticsComputer.DISPLACEMENT );
+
+		assertEquals( 3, feature.getPropertyMap().size() );
+
+		assertEquals( 3., duration.value( linear ), 0 );
+		assertEquals( 0., nDivisions.value( linear ), 0 );
+		assertEquals( 5., meanSpeed.value( linear ), 1e-12 );
+		assertEquals( Math.sqrt( 125. ), displacement.value( linear ), 1e-12 );
+
+		assertEquals( 2., duration.value( dividing ), 0 );
+		assertEquals( 1., nDivisions.value( dividing ), 0 );
+		assertEquals( 2., meanSpeed.value( dividing ), 1e-12 );
+		assertEquals( 4., displacement.value( dividing ), 1e-12 );
+
+		assertEquals( 0., duration.value( isolated ), 0 );
+		assertTrue( Double.isNaN( meanSpeed.value( isolated ) ) );
+		assertEquals( 0., displacement.value( isolated ), 0 );
+
+		assertFalse( duration.isSet( new Track( 3 ) ) );
+	}
+
+	@Test
+	public void testPropertyMap()
+	{
+		final Feature< Track, TrackStatisticsPropertyMap > feature = new TrackStatisticsComputer().compute( model, new FeatureComputation() );
+		final TrackStatisticsPropertyMap pm = feature.getPropertyMap();
+		final FeatureProjection< Track > duration = feature.getProjections().get( TrackStatisticsComputer.DURATION );
+		final List< String > keys = new ArrayList<>( pm.getProjectionKeys() );
+		final int iDuration = keys.indexOf( TrackStatisticsComputer.DURATION );
+
+		final double[] values = pm.get( linear );
+		assertEquals( 3., values[ iDuration ], 0 );
+
+		// Set.
+		final double[] newValues = new double[ keys.size() ];
+		newValues[ iDuration ] = 42.;
+		assertArrayEquals( values, pm.set( linear, newValues ), 0 );
+		assertEquals( 42., duration.value( linear ), 0 );
+		assertEquals( 42., pm.getValues( TrackStatisticsComputer.DURATION )[ linear.id() ], 0 );
+
+		// Remove.
+		assertArrayEquals( newValues, pm.remove( linear ), 0 );
+		assertNull( pm.remove( linear ) );
+		assertFalse( pm.isSet( linear ) );
+		assertFalse( duration.isSet( linear ) );
+		assertTrue( Double.isNaN( duration.value( linear ) ) );
+		assertEquals( 2, pm.size() );
+
+		// Setting again restores the track.
+		pm.set( linear, values );
+		assertTrue( pm.isSet( linear ) );
+		assertEquals( 3., duration.value( linear ), 0 );
+
+		// Clear.
+		pm.clear();
+		assertEquals( 0, pm.size() );
+		assertNull( pm.get( dividing ) );
+
+		try
+		{
+			pm.set( linear, new double[ keys.size() + 1 ] );
+			fail( "Expected an error for a wrong number of values." );
+		}
+		catch ( final IllegalArgumentException e )
+		{}
+		try
+		{
+			pm.set( new Track( 3 ), newValues );
+			fail( "Expected an error for a track outside the labelling." );
+		}
+		catch ( final IllegalArgumentException e )
+		{}
+	}
+
+	@Test
+	public void testProgress()
+	{
+		final List< Integer > steps = Collections.synchronizedList( new ArrayList<>() );
+		final FeatureComputation computation = new FeatureComputation( new ProgressListener()
+		{
+			@Override
+			public void showStatus( final String string )
+			{}
+
+			@Override
+			public void showProgress( final int current, final int total )
+			{
+				steps.add( current );
+			}
+
+			@Override
+			public void clearStatus()
+			{}
+		} );
+		new TrackStatisticsComputer().compute( model, computation );
+		assertEquals( 3, computation.getProcessed() );
+		// Each step is reported once, although tracks are processed in
+		// parallel.
+		assertEquals( steps.size(), new HashSet<>( steps ).size() );
+		assertEquals( 100, Collections.max( steps ).intValue() );
+	}
+}
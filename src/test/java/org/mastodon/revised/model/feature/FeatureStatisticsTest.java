@@ -0,0 +1,135 @@
+package org.mastodon.revised.model.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+
+public class FeatureStatisticsTest
+{
+	private static final String KEY = "Value";
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private DoublePropertyMap< Spot > values;
+
+	private FeatureStatistics< Spot, Link > statistics;
+
+	/**
+	 * Spots at time-points 0, 0, 0, 1, 2 with values 1, 2, 3, 5, NaN.
+	 */
+	private Spot[] spots;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		final int[] timepoints = new int[] { 0, 0, 0, 1, 2 };
+		spots = new Spot[ timepoints.length ];
+		for ( int i = 0; i < spots.length; i++ )
+			spots[ i ] = graph.addVertex().init( timepoints[ i ], new double[] { i, 0, 0 }, 1 );
+
+		values = new DoublePropertyMap<>( graph.vertices(), Double.NaN );
+		values.set( spots[ 0 ], 1. );
+		values.set( spots[ 1 ], 2. );
+		values.set( spots[ 2 ], 3. );
+		values.set( spots[ 3 ], 5. );
+		final Feature< Spot, DoublePropertyMap< Spot > > feature = new Feature<>( KEY, Spot.class, values,
+				Collections.singletonMap( KEY, FeatureProjectors.project( values ) ) );
+		model.getFeatureModel().declareFeature( feature );
+		statistics = model.getFeatureStatistics();
+	}
+
+	@Test
+	public void testDeclaration()
+	{
+		final ProjectionStatistics global = statistics.getStatistics( KEY, KEY );
+		assertEquals( 4, global.getN() );
+		assertEquals( 1., global.getMin(), 0 );
+		assertEquals( 5., global.getMax(), 0 );
+		assertEquals( 11. / 4, global.getMean(), 1e-12 );
+
+		assertEquals( 3, statistics.getStatistics( KEY, KEY, 0 ).getN() );
+		assertEquals( 5., statistics.getStatistics( KEY, KEY, 1 ).getMean(), 0 );
+		assertNull( statistics.getStatistics( KEY, KEY, 2 ) );
+
+		assertNull( statistics.getStatistics( "Unknown", KEY ) );
+		assertNull( statistics.getStatistics( KEY, "Unknown" ) );
+	}
+
+	@Test
+	public void testAdd()
+	{
+		values.set( spots[ 4 ], -2. );
+		final ProjectionStatistics global = statistics.getStatistics( KEY, KEY );
+		assertEquals( 5, global.getN() );
+		assertEquals( -2., global.getMin(), 0 );
+		assertEquals( -2., statistics.getStatistics( KEY, KEY, 2 ).getMax(), 0 );
+
+		// Statistics are updated in place.
+		values.set( spots[ 0 ], 10. );
+		assertSame( global, statistics.getStatistics( KEY, KEY ) );
+		assertEquals( 10., global.getMax(), 0 );
+		assertEquals( 5, global.getN() );
+	}
+
+	@Test
+	public void testRemove()
+	{
+		values.remove( spots[ 1 ] );
+		assertEquals( 3, statistics.getStatistics( KEY, KEY ).getN() );
+		assertEquals( 2, statistics.getStatistics( KEY, KEY, 0 ).getN() );
+
+		// Removing the only value of a time-point discards its statistics.
+		graph.remove( spots[ 3 ] );
+		assertNull( statistics.getStatistics( KEY, KEY, 1 ) );
+		assertEquals( 2, statistics.getStatistics( KEY, KEY ).getN() );
+	}
+
+	@Test
+	public void testRepair()
+	{
+		// Removing the last max and min triggers a rebuild on the next query.
+		values.remove( spots[ 3 ] );
+		values.remove( spots[ 0 ] );
+		final ProjectionStatistics global = statistics.getStatistics( KEY, KEY );
+		assertTrue( global.isExtremaValid() );
+		assertEquals( 2, global.getN() );
+		assertEquals( 2., global.getMin(), 0 );
+		assertEquals( 3., global.getMax(), 0 );
+
+		final ProjectionStatistics t0 = statistics.getStatistics( KEY, KEY, 0 );
+		assertTrue( t0.isExtremaValid() );
+		assertEquals( 2., t0.getMin(), 0 );
+		assertEquals( 3., t0.getMax(), 0 );
+		assertNull( statistics.getStatistics( KEY, KEY, 1 ) );
+	}
+
+	@Test
+	public void testRepairDiscardsEmptyTimepoints()
+	{
+		// Empty time-points 1 and 2 while the extrema are invalid.
+		graph.remove( spots[ 2 ] );
+		values.set( spots[ 4 ], 3. );
+		values.remove( spots[ 3 ] );
+		values.remove( spots[ 4 ] );
+		assertTrue( statistics.getStatistics( KEY, KEY ).isExtremaValid() );
+		assertNull( statistics.getStatistics( KEY, KEY, 1 ) );
+		assertNull( statistics.getStatistics( KEY, KEY, 2 ) );
+		assertEquals( 2, statistics.getStatistics( KEY, KEY, 0 ).getN() );
+		assertEquals( 2., statistics.getStatistics( KEY, KEY, 0 ).getMax(), 0 );
+	}
+}
@@ -0,0 +1,117 @@
+package org.mastodon.revised.model.feature;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ProjectionStatisticsTest
+{
+	@Test
+	public void testEmpty()
+	{
+		final ProjectionStatistics stats = new ProjectionStatistics();
+		assertEquals( 0, stats.getN() );
+		assertTrue( Double.isNaN( stats.getMin() ) );
+		assertTrue( Double.isNaN( stats.getMax() ) );
+		assertTrue( Double.isNaN( stats.getMean() ) );
+		assertTrue( Double.isNaN( stats.getQuantile( 0.5 ) ) );
+		assertArrayEquals( new int[ 4 ], stats.getHistogram( 4 ) );
+		assertTrue( stats.isExtremaValid() );
+	}
+
+	@Test
+	public void testAddRemove()
+	{
+		final ProjectionStatistics stats = new ProjectionStatistics();
+		for ( final double value : new double[] { 3., -1., 0., 5., Double.NaN, 5. } )
+			stats.add( value );
+		assertEquals( 5, stats.getN() );
+		assertEquals( -1., stats.getMin(), 0 );
+		assertEquals( 5., stats.getMax(), 0 );
+		assertEquals( 12. / 5, stats.getMean(), 1e-12 );
+
+		// Removing one of two equal maxima keeps the extrema valid.
+		stats.remove( 5. );
+		assertTrue( stats.isExtremaValid() );
+		assertEquals( 5., stats.getMax(), 0 );
+		assertEquals( 7. / 4, stats.getMean(), 1e-12 );
+
+		// Removing the last one invalidates them.
+		stats.remove( 5. );
+		assertFalse( stats.isExtremaValid() );
+		assertEquals( 3, stats.getN() );
+
+		stats.remove( Double.NaN );
+		assertEquals( 3, stats.getN() );
+
+		// Removing all values resets the statistics.
+		stats.remove( 3. );
+		stats.remove( -1. );
+		stats.remove( 0. );
+		assertEquals( 0, stats.getN() );
+		assertTrue( stats.isExtremaValid() );
+		assertTrue( Double.isNaN( stats.getMean() ) );
+	}
+
+	@Test
+	public void testClear()
+	{
+		final ProjectionStatistics stats = new ProjectionStatistics();
+		stats.add( 1. );
+		stats.add( 2. );
+		stats.remove( 2. );
+		assertFalse( stats.isExtremaValid() );
+		stats.clear();
+		assertEquals( 0, stats.getN() );
+		assertTrue( stats.isExtremaValid() );
+		stats.add( 4. );
+		assertEquals( 4., stats.getMin(), 0 );
+		assertEquals( 4., stats.getMax(), 0 );
+	}
+
+	@Test
+	public void testQuantiles()
+	{
+		final Random random = new Random( 1 );
+		final double[] values = new double[ 10000 ];
+		final ProjectionStatistics stats = new ProjectionStatistics();
+		for ( int i = 0; i < values.length; i++ )
+		{
+			values[ i ] = ( random.nextDouble() - 0.3 ) * 100.;
+			stats.add( values[ i ] );
+		}
+		Arrays.sort( values );
+		assertEquals( values[ 0 ], stats.getQuantile( 0. ), 0 );
+		assertEquals( values[ values.length - 1 ], stats.getQuantile( 1. ), 0 );
+		for ( final double q : new double[] { 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99 } )
+		{
+			final double expected = values[ ( int ) ( q * ( values.length - 1 ) ) ];
+			assertEquals( "Quantile " + q, expected, stats.getQuantile( q ), ProjectionStatistics.RELATIVE_ACCURACY * Math.abs( expected ) + 1e-9 );
+		}
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		final ProjectionStatistics stats = new ProjectionStatistics();
+		for ( int i = 0; i < 100; i++ )
+			stats.add( i );
+		final int[] histogram = stats.getHistogram( 10 );
+		int sum = 0;
+		for ( final int count : histogram )
+			sum += count;
+		assertEquals( 100, sum );
+		assertEquals( 10, histogram[ 5 ], 1 );
+
+		final ProjectionStatistics constant = new ProjectionStatistics();
+		constant.add( 7. );
+		constant.add( 7. );
+		assertArrayEquals( new int[] { 2, 0, 0 }, constant.getHistogram( 3 ) );
+	}
+}
@@ -0,0 +1,148 @@
+package org.mastodon.revised.model.mamut;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConnectedComponentsTest
+{
+	@Test
+	public void testLabel()
+	{
+		// Pool index 2 is unused. 0-3-5 and 1-4 are linked, 6 is isolated.
+		final boolean[] live = new boolean[] { true, true, false, true, true, true, true };
+		final int[] sources = new int[] { 5, 1, 0 };
+		final int[] targets = new int[] { 3, 4, 3 };
+		final ConnectedComponents components = ConnectedComponents.label( live, sources, targets );
+
+		assertEquals( 3, components.numComponents() );
+		assertEquals( 7, components.capacity() );
+		assertArrayEquals( new int[] { 0, 1, -1, 0, 1, 0, 2 }, components( components, live.length ) );
+		assertArrayEquals( new int[] { 0, 3, 5 }, members( components, 0 ) );
+		assertArrayEquals( new int[] { 1, 4 }, members( components, 1 ) );
+		assertArrayEquals( new int[] { 6 }, members( components, 2 ) );
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		final ConnectedComponents components = ConnectedComponents.label( new boolean[ 0 ], new int[ 0 ], new int[ 0 ] );
+		assertEquals( 0, components.numComponents() );
+	}
+
+	@Test
+	public void testLabelAgainstSequentialUnionFind()
+	{
+		final Random random = new Random( 1 );
+		final int n = 20000;
+		final boolean[] live = new boolean[ n ];
+		for ( int v = 0; v < n; v++ )
+			live[ v ] = random.nextInt( 10 ) != 0;
+		final int[] liveIndices = new int[ n ];
+		int nLive = 0;
+		for ( int v = 0; v < n; v++ )
+			if ( live[ v ] )
+				liveIndices[ nLive++ ] = v;
+
+		final int nEdges = 15000;
+		final int[] sources = new int[ nEdges ];
+		final int[] targets = new int[ nEdges ];
+		final int[] parent = new int[ n ];
+		Arrays.setAll( parent, v -> v );
+		for ( int e = 0; e < nEdges; e++ )
+		{
+			sources[ e ] = liveIndices[ random.nextInt( nLive ) ];
+			targets[ e ] = liveIndices[ random.nextInt( nLive ) ];
+			final int a = find( parent, sources[ e ] );
+			final int b = find( parent, targets[ e ] );
+			parent[ Math.max( a, b ) ] = Math.min( a, b );
+		}
+
+		// Components are numbered by their smallest pool index.
+		final int[] expected = new int[ n ];
+		final int[] rootComponent = new int[ n ];
+		int nComponents = 0;
+		for ( int v = 0; v < n; v++ )
+		{
+			if ( !live[ v ] )
+			{
+				expected[ v ] = -1;
+				continue;
+			}
+			final int root = find( parent, v );
+			if ( root == v )
+				rootComponent[ v ] = nComponents++;
+			expected[ v ] = rootComponent[ root ];
+		}
+
+		final ConnectedComponents components = ConnectedComponents.label( live, sources, targets );
+		assertEquals( nComponents, components.numComponents() );
+		assertArrayEquals( expected, components( components, n ) );
+		int nMembers = 0;
+		for ( int c = 0; c < components.numComponents(); c++ )
+		{
+			final int[] members = members( components, c );
+			for ( int i = 0; i < members.length; i++ )
+			{
+				assertEquals( c, components.getComponent( members[ i ] ) );
+				if ( i > 0 )
+					assertTrue( "Members must be sorted.", members[ i ] > members[ i - 1 ] );
+			}
+			nMembers += members.length;
+		}
+		assertEquals( nLive, nMembers );
+	}
+
+	@Test
+	public void testCompute()
+	{
+		final Model model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot a = graph.addVertex().init( 0, new double[] { 0, 0, 0 }, 1 );
+		final Spot b = graph.addVertex().init( 1, new double[] { 0, 0, 0 }, 1 );
+		final Spot c = graph.addVertex().init( 0, new double[] { 0, 0, 0 }, 1 );
+		final Spot d = graph.addVertex().init( 1, new double[] { 0, 0, 0 }, 1 );
+		graph.addEdge( a, d ).init();
+		graph.remove( b );
+
+		final ConnectedComponents components = ConnectedComponents.compute( graph );
+		assertEquals( 2, components.numComponents() );
+		assertEquals( components.getComponent( a ), components.getComponent( d ) );
+		assertNotEquals( components.getComponent( a ), components.getComponent( c ) );
+
+		// Spots added afterwards are not labelled.
+		final Spot e = graph.addVertex().init( 2, new double[] { 0, 0, 0 }, 1 );
+		if ( e.getInternalPoolIndex() < components.capacity() )
+			assertEquals( -1, components.getComponent( e.getInternalPoolIndex() ) );
+	}
+
+	private static int[] components( final ConnectedComponents components, final int n )
+	{
+		final int[] out = new int[ n ];
+		for ( int v = 0; v < n; v++ )
+			out[ v ] = components.getComponent( v );
+		return out;
+	}
+
+	private static int[] members( final ConnectedComponents components, final int c )
+	{
+		final int[] out = new int[ components.size( c ) ];
+		for ( int i = 0; i < out.length; i++ )
+			out[ i ] = components.getMember( c, i );
+		return out;
+	}
+
+	private static int find( final int[] parent, final int v )
+	{
+		int r = v;
+		while ( parent[ r ] != r )
+			r = parent[ r ];
+		return r;
+	}
+}
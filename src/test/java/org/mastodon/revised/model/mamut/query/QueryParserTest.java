@@ -0,0 +1,100 @@
+package org.mastodon.revised.model.mamut.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class QueryParserTest
+{
+	private static String parse( final String expression )
+	{
+		return QueryParser.parse( expression ).toString();
+	}
+
+	private static void assertError( final String expression, final String message, final int position )
+	{
+		try
+		{
+			QueryParser.parse( expression );
+			fail( "Expected a parse error for: " + expression );
+		}
+		catch ( final IllegalArgumentException e )
+		{
+			assertTrue( "Unexpected error message: " + e.getMessage(), e.getMessage().startsWith( message ) );
+			assertTrue( "Unexpected error position: " + e.getMessage(), e.getMessage().contains( "at position " + position + " " ) );
+		}
+	}
+
+	@Test
+	public void testComparisons()
+	{
+		assertEquals( "\"x\" < 1.0", parse( "x < 1" ) );
+		assertEquals( "\"x\" <= 1.0", parse( "x <= 1" ) );
+		assertEquals( "\"x\" > 1.0", parse( "x > 1" ) );
+		assertEquals( "\"x\" >= 1.0", parse( "x >= 1" ) );
+		assertEquals( "\"x\" = 1.0", parse( "x = 1" ) );
+		assertEquals( "\"x\" = 1.0", parse( "x == 1" ) );
+		assertEquals( "\"x\" != -1.5", parse( "x != -1.5" ) );
+		assertEquals( "\"x\" < 2000.0", parse( "x<2e3" ) );
+	}
+
+	@Test
+	public void testPrecedence()
+	{
+		// 'and' binds tighter than 'or'.
+		assertEquals( "(\"a\" > 1.0 or (\"b\" < 2.0 and \"c\" = 3.0))", parse( "a > 1 or b < 2 and c = 3" ) );
+		assertEquals( "((\"a\" > 1.0 and \"b\" < 2.0) or \"c\" = 3.0)", parse( "a > 1 and b < 2 or c = 3" ) );
+		// 'not' binds tighter than 'and'.
+		assertEquals( "(not \"a\" > 1.0 and \"b\" < 2.0)", parse( "not a > 1 and b < 2" ) );
+		// Parentheses.
+		assertEquals( "not (\"a\" > 1.0 or \"b\" < 2.0)", parse( "not ( a > 1 or b < 2 )" ) );
+		assertEquals( "((\"a\" > 1.0 or \"b\" < 2.0) and \"c\" = 3.0)", parse( "(a > 1 || b < 2) && c = 3" ) );
+		// Left associativity.
+		assertEquals( "((\"a\" > 1.0 or \"b\" > 2.0) or \"c\" > 3.0)", parse( "a > 1 or b > 2 or c > 3" ) );
+		// Keywords are case insensitive.
+		assertEquals( "(not \"a\" > 1.0 and \"b\" < 2.0)", parse( "NOT a > 1 And b < 2" ) );
+		assertEquals( "not not \"a\" > 1.0", parse( "! ! a > 1" ) );
+	}
+
+	@Test
+	public void testRange()
+	{
+		assertEquals( "\"t\" in 100.0..200.0", parse( "t in 100..200" ) );
+		assertEquals( "\"t\" in 100.0..200.0", parse( "t IN 100 .. 200" ) );
+		assertEquals( "\"x\" in -1.5..2.5", parse( "x in -1.5..2.5" ) );
+		assertEquals( "\"x\" in 0.5..1000.0", parse( "x in .5..1e3" ) );
+	}
+
+	@Test
+	public void testQuotedNames()
+	{
+		assertEquals( "\"Track mean speed\" >= 5.0", parse( "\"Track mean speed\" >= 5" ) );
+		assertEquals( "\"Track mean speed\" in 1.0..2.0", parse( "'Track mean speed' in 1..2" ) );
+		assertEquals( "\"and\" > 1.0", parse( "\"and\" > 1" ) );
+		assertEquals( "tag = \"mitosis\"", parse( "tag = mitosis" ) );
+		assertEquals( "tag = \"cell death\"", parse( "tag == 'cell death'" ) );
+		assertEquals( "tag(\"Cell type\") = \"neuron\"", parse( "tag(\"Cell type\") = \"neuron\"" ) );
+		assertEquals( "tag(\"Cell type\") = \"neuron\"", parse( "TAG ( 'Cell type' ) = neuron" ) );
+	}
+
+	@Test
+	public void testErrors()
+	{
+		assertError( "x >", "Expected a number", 3 );
+		assertError( "x > > 1", "Expected a number", 4 );
+		assertError( "x 1", "Expected a comparison operator or 'in'", 2 );
+		assertError( "x in 1 2", "Expected '..'", 7 );
+		assertError( "x in 1..", "Expected a number", 8 );
+		assertError( "(x > 1", "Expected ')'", 6 );
+		assertError( "x > 1)", "Unexpected ')'", 5 );
+		assertError( "x > 1 y", "Unexpected 'y'", 6 );
+		assertError( "x > 1 and", "Expected a name", 9 );
+		assertError( "tag < a", "Expected '=' after tag", 4 );
+		assertError( "tag(a = b", "Expected ')'", 6 );
+		assertError( "x ~ 1", "Unexpected character '~'", 2 );
+		assertError( "tag = \"abc", "Unterminated string", 6 );
+		assertError( "", "Expected a name", 0 );
+	}
+}
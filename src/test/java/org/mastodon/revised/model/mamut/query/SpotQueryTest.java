@@ -0,0 +1,147 @@
+package org.mastodon.revised.model.mamut.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.revised.model.feature.Feature;
+import org.mastodon.revised.model.feature.FeatureProjectors;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.tag.TagSetStructure;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+
+public class SpotQueryTest
+{
+	private static final int N_SPOTS = 10;
+
+	private Model model;
+
+	/**
+	 * Pool index of spot {@code i}, at timepoint {@code i} and x = {@code i}.
+	 */
+	private int[] ids;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		final ModelGraph graph = model.getGraph();
+
+		// Feature "Q", only set for even spots, with value i.
+		final DoublePropertyMap< Spot > q = new DoublePropertyMap<>( graph.vertices(), Double.NaN );
+		ids = new int[ N_SPOTS ];
+		final Spot ref = graph.vertexRef();
+		for ( int i = 0; i < N_SPOTS; i++ )
+		{
+			final Spot spot = graph.addVertex( ref ).init( i, new double[] { i, 0, 0 }, 1 );
+			ids[ i ] = spot.getInternalPoolIndex();
+			if ( i % 2 == 0 )
+				q.set( spot, i );
+		}
+		model.getFeatureModel().declareFeature( new Feature<>( "Q", Spot.class, q, Collections.singletonMap( "Q", FeatureProjectors.project( q ) ) ) );
+
+		// Spots 0 to 2 are neurons, spot 3 is a glial cell.
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet cellType = tss.createTagSet( "Cell type" );
+		cellType.createTag( "neuron", 0xFF0000 );
+		cellType.createTag( "glia", 0x00FF00 );
+		model.getTagSetModel().setTagSetStructure( tss );
+		final TagSet ts = model.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+		final Tag neuron = ts.getTags().get( 0 );
+		final Tag glia = ts.getTags().get( 1 );
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int x = ( int ) spot.getDoublePosition( 0 );
+			if ( x < 3 )
+				model.getTagSetModel().getVertexTags().set( spot, neuron );
+			else if ( x == 3 )
+				model.getTagSetModel().getVertexTags().set( spot, glia );
+		}
+		graph.releaseRef( ref );
+	}
+
+	private void assertMatches( final String expression, final int... spots )
+	{
+		final BitSet expected = new BitSet();
+		for ( final int i : spots )
+			expected.set( ids[ i ] );
+		assertEquals( expression, expected, SpotQuery.compile( expression ).evaluate( model ) );
+	}
+
+	@Test
+	public void testComparisons()
+	{
+		assertMatches( "x < 3", 0, 1, 2 );
+		assertMatches( "x >= 8", 8, 9 );
+		assertMatches( "t = 4", 4 );
+		assertMatches( "t != 4", 0, 1, 2, 3, 5, 6, 7, 8, 9 );
+		assertMatches( "x in 2..4", 2, 3, 4 );
+		assertMatches( "x < 3 or x > 7", 0, 1, 2, 8, 9 );
+		assertMatches( "x > 2 and t < 5", 3, 4 );
+	}
+
+	@Test
+	public void testUnsetFeatureValues()
+	{
+		assertMatches( "Q >= 4", 4, 6, 8 );
+		assertMatches( "Q != 4", 0, 2, 6, 8 );
+		assertMatches( "Q in 0..10", 0, 2, 4, 6, 8 );
+	}
+
+	@Test
+	public void testNotMasksUnsetValues()
+	{
+		assertMatches( "not x < 3", 3, 4, 5, 6, 7, 8, 9 );
+		// Spots without a value match neither a predicate nor its negation.
+		assertMatches( "not Q >= 4", 0, 2 );
+		assertMatches( "not Q in 2..6", 0, 8 );
+		assertMatches( "not not Q >= 4", 4, 6, 8 );
+		// Unknown or true is true, unknown and false is false.
+		assertMatches( "not ( Q >= 4 or x < 2 )", 2 );
+		assertMatches( "not ( Q >= 4 and x < 5 )", 0, 2, 5, 6, 7, 8, 9 );
+	}
+
+	@Test( timeout = 10000 )
+	public void testDeepNesting()
+	{
+		// Binding is linear in the depth: this would not return if operands
+		// were bound again for each of their "is set" bits.
+		String expression = "Q >= 4";
+		for ( int i = 0; i < 50; i++ )
+			expression = "not ( " + expression + " and x < 9 )";
+		assertMatches( expression, 4, 6, 8, 9 );
+		assertMatches( "not ( " + expression + " or x < 2 )", 2 );
+	}
+
+	@Test
+	public void testTags()
+	{
+		assertMatches( "tag = neuron", 0, 1, 2 );
+		assertMatches( "tag(\"Cell type\") = glia", 3 );
+		assertMatches( "not tag = neuron", 3, 4, 5, 6, 7, 8, 9 );
+		assertMatches( "tag = neuron and not Q >= 2", 0 );
+	}
+
+	@Test
+	public void testUnknownAttributeOrTag()
+	{
+		for ( final String expression : new String[] { "foo > 1", "tag = astrocyte", "tag(\"Lineage\") = neuron" } )
+		{
+			try
+			{
+				SpotQuery.compile( expression ).evaluate( model );
+				fail( "Expected an error for: " + expression );
+			}
+			catch ( final IllegalArgumentException e )
+			{}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package org.mastodon.revised.model.tag;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+
+public class BulkTaggingTest
+{
+	private static final int N_SPOTS = 20;
+
+	private Model model;
+
+	private ModelGraph graph;
+
+	private Tag neuron;
+
+	private Tag glia;
+
+	private ObjTagMap< Spot, Tag > cellTypes;
+
+	private int nTagsChanged;
+
+	private int nBulkTagsChanged;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		graph = model.getGraph();
+		final Spot spot = graph.vertexRef();
+		for ( int i = 0; i < N_SPOTS; i++ )
+			graph.addVertex( spot ).init( i % 4, new double[] { i, 0, 0 }, 1 );
+		graph.releaseRef( spot );
+
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet cellType = tss.createTagSet( "Cell type" );
+		cellType.createTag( "neuron", 0xFF0000 );
+		cellType.createTag( "glia", 0x00FF00 );
+		model.getTagSetModel().setTagSetStructure( tss );
+		final TagSet tagSet = model.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+		neuron = tagSet.getTags().get( 0 );
+		glia = tagSet.getTags().get( 1 );
+		cellTypes = model.getTagSetModel().getVertexTags().tags( tagSet );
+
+		model.getTagSetModel().listeners().add( new TagSetModel.TagSetModelListener()
+		{
+			@Override
+			public void tagSetStructureChanged()
+			{}
+
+			@Override
+			public void tagsChanged()
+			{
+				++nTagsChanged;
+			}
+		} );
+		( ( DefaultObjTags< Spot > ) model.getTagSetModel().getVertexTags() ).bulkTagListeners().add( ids -> ++nBulkTagsChanged );
+		model.setUndoPoint();
+	}
+
+	@Test
+	public void testSingleNotification()
+	{
+		cellTypes.set( spots( 0, 10 ), neuron );
+		assertEquals( 1, nTagsChanged );
+		assertEquals( 1, nBulkTagsChanged );
+
+		cellTypes.remove( spots( 5, 15 ) );
+		assertEquals( 2, nTagsChanged );
+		assertEquals( 2, nBulkTagsChanged );
+
+		// Nothing to change.
+		cellTypes.remove( spots( 15, 20 ) );
+		assertEquals( 2, nBulkTagsChanged );
+	}
+
+	@Test
+	public void testUndoRedo()
+	{
+		cellTypes.set( spots( 0, 10 ), neuron );
+		model.setUndoPoint();
+		cellTypes.set( spots( 5, 15 ), glia );
+		model.setUndoPoint();
+		cellTypes.remove( spots( 0, 3 ) );
+		model.setUndoPoint();
+		assertTags( "...NNGGGGGGGGGG....." );
+
+		model.undo();
+		assertTags( "NNNNNGGGGGGGGGG....." );
+		model.undo();
+		assertTags( "NNNNNNNNNN.........." );
+		model.undo();
+		assertTags( "...................." );
+
+		model.redo();
+		assertTags( "NNNNNNNNNN.........." );
+		model.redo();
+		assertTags( "NNNNNGGGGGGGGGG....." );
+		model.redo();
+		assertTags( "...NNGGGGGGGGGG....." );
+	}
+
+	@Test
+	public void testUndoAfterRemoval()
+	{
+		cellTypes.set( spots( 0, 10 ), neuron );
+		model.setUndoPoint();
+		for ( final Spot spot : spots( 2, 6 ) )
+			graph.remove( spot );
+		model.setUndoPoint();
+
+		// Restore the spots, then un-tag them.
+		model.undo();
+		assertTags( "NNNNNNNNNN.........." );
+		model.undo();
+		assertTags( "...................." );
+		model.redo();
+		assertTags( "NNNNNNNNNN.........." );
+	}
+
+	@Test
+	public void testTimepointIndex()
+	{
+		final TagTimepointIndex< Spot, Link > index = model.getTagTimepointIndex();
+		cellTypes.set( spots( 0, 10 ), neuron );
+		model.setUndoPoint();
+		assertEquals( 10, index.count( neuron ) );
+		assertEquals( 3, index.count( neuron, 0 ) );
+		assertEquals( 2, index.count( neuron, 3 ) );
+
+		cellTypes.set( spots( 8, 12 ), glia );
+		model.setUndoPoint();
+		assertEquals( 8, index.count( neuron ) );
+		assertEquals( 4, index.count( glia ) );
+
+		model.undo();
+		assertEquals( 10, index.count( neuron ) );
+		assertEquals( 0, index.count( glia ) );
+	}
+
+	/**
+	 * Returns the spots at x positions {@code from} (inclusive) to {@code to}
+	 * (exclusive).
+	 */
+	private RefList< Spot > spots( final int from, final int to )
+	{
+		final RefList< Spot > spots = RefCollections.createRefList( graph.vertices() );
+		for ( final Spot spot : graph.vertices() )
+		{
+			final int x = ( int ) spot.getDoublePosition( 0 );
+			if ( x >= from && x < to )
+				spots.add( spot );
+		}
+		return spots;
+	}
+
+	/**
+	 * Checks the tags of the spots ordered by x position: 'N' for neuron, 'G'
+	 * for glia, '.' for none.
+	 */
+	private void assertTags( final String expected )
+	{
+		final char[] actual = new char[ N_SPOTS ];
+		for ( final Spot spot : graph.vertices() )
+		{
+			final Tag tag = cellTypes.get( spot );
+			actual[ ( int ) spot.getDoublePosition( 0 ) ] = tag == null ? '.' : tag == neuron ? 'N' : 'G';
+		}
+		assertEquals( expected, new String( actual ) );
+	}
+}
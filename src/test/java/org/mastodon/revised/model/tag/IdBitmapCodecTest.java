@@ -0,0 +1,109 @@
+package org.mastodon.revised.model.tag;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IdBitmapCodecTest
+{
+	private static void assertRoundTrip( final int... ids )
+	{
+		final int[] expected = Arrays.stream( ids ).sorted().distinct().toArray();
+		final byte[] encoded = IdBitmapCodec.encode( ids.clone(), ids.length );
+		assertArrayEquals( expected, IdBitmapCodec.decode( encoded ) );
+	}
+
+	private static void assertCorrupted( final byte[] data )
+	{
+		try
+		{
+			IdBitmapCodec.decode( data );
+			fail( "Expected corrupted data to be rejected: " + Arrays.toString( data ) );
+		}
+		catch ( final IllegalArgumentException e )
+		{}
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertRoundTrip();
+	}
+
+	@Test
+	public void testArrayContainers()
+	{
+		assertRoundTrip( 0 );
+		assertRoundTrip( 65535 );
+		assertRoundTrip( 3, 1, 4, 15, 9, 2, 6 );
+		// Gaps spanning several chunks.
+		assertRoundTrip( 5, 70000, 65536, 1 << 20, Integer.MAX_VALUE );
+	}
+
+	@Test
+	public void testBitmapContainers()
+	{
+		final Random random = new Random( 42 );
+		final int[] ids = new int[ 20000 ];
+		for ( int i = 0; i < ids.length; i++ )
+			ids[ i ] = 2 * random.nextInt( 3 * 65536 );
+		assertRoundTrip( ids );
+	}
+
+	@Test
+	public void testRunContainers()
+	{
+		final int[] ids = new int[ 200000 ];
+		for ( int i = 0; i < ids.length; i++ )
+			ids[ i ] = i < 100000 ? i : i + 50000;
+		assertRoundTrip( ids );
+		// A run that ends at a chunk boundary, and one that crosses it.
+		assertRoundTrip( 65530, 65531, 65532, 65533, 65534, 65535, 65536, 65537 );
+	}
+
+	@Test
+	public void testDuplicates()
+	{
+		assertRoundTrip( 7, 7, 7, 1, 1, 65536, 65536 );
+	}
+
+	@Test
+	public void testPartialArray()
+	{
+		final int[] ids = new int[] { 9, 3, 5, 1, 2 };
+		assertArrayEquals( new int[] { 3, 5, 9 }, IdBitmapCodec.decode( IdBitmapCodec.encode( ids, 3 ) ) );
+	}
+
+	@Test
+	public void testCorruptedData()
+	{
+		final byte[] valid = IdBitmapCodec.encode( new int[] { 1, 2, 3, 100 }, 4 );
+
+		// Truncated.
+		assertCorrupted( new byte[ 0 ] );
+		assertCorrupted( Arrays.copyOf( valid, valid.length - 1 ) );
+		// Trailing bytes.
+		assertCorrupted( Arrays.copyOf( valid, valid.length + 1 ) );
+		// Negative or inconsistent counts.
+		assertCorrupted( ByteBuffer.allocate( 8 ).putInt( -1 ).putInt( 0 ).array() );
+		assertCorrupted( ByteBuffer.allocate( 8 ).putInt( 3 ).putInt( 0 ).array() );
+		assertCorrupted( ByteBuffer.allocate( 8 ).putInt( Integer.MAX_VALUE ).putInt( 1 ).array() );
+		// Fewer ids than declared.
+		final byte[] fewer = valid.clone();
+		fewer[ 3 ]++;
+		assertCorrupted( fewer );
+		// More ids than declared.
+		final byte[] more = valid.clone();
+		more[ 3 ]--;
+		assertCorrupted( more );
+		// Unknown container type.
+		final byte[] unknown = valid.clone();
+		unknown[ 10 ] = 7;
+		assertCorrupted( unknown );
+	}
+}
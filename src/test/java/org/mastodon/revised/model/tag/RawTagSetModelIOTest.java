@@ -0,0 +1,286 @@
+package org.mastodon.revised.model.tag;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mastodon.revised.mamut.MamutProject;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.model.tag.TagSetStructure.Tag;
+import org.mastodon.revised.model.tag.TagSetStructure.TagSet;
+
+public class RawTagSetModelIOTest
+{
+	private static final int N_SPOTS = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Model model;
+
+	private MamutProject project;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		project = new MamutProject( folder.newFolder(), null );
+
+		// A track of spots at x = t = i.
+		model = new Model();
+		final ModelGraph graph = model.getGraph();
+		final Spot previous = graph.vertexRef();
+		final Spot spot = graph.vertexRef();
+		final Link link = graph.edgeRef();
+		for ( int i = 0; i < N_SPOTS; i++ )
+		{
+			graph.addVertex( spot ).init( i, new double[] { i, 0, 0 }, 1 );
+			if ( i > 0 )
+				graph.addEdge( previous, spot, link ).init();
+			previous.refTo( spot );
+		}
+
+		/*
+		 * Spot 3 is a neuron, 6 to 9 and 16 are glial cells. "astrocyte" is
+		 * not used. Links leaving even spots are divisions.
+		 */
+		final TagSetStructure tss = new TagSetStructure();
+		final TagSet cellType = tss.createTagSet( "Cell type" );
+		cellType.createTag( "neuron", 0xFF0000 );
+		cellType.createTag( "glia", 0x00FF00 );
+		cellType.createTag( "astrocyte", 0x0000FF );
+		tss.createTagSet( "Event" ).createTag( "division", 0xFFFF00 );
+		model.getTagSetModel().setTagSetStructure( tss );
+		final Tag neuron = tag( model, "Cell type", "neuron" );
+		final Tag glia = tag( model, "Cell type", "glia" );
+		final Tag division = tag( model, "Event", "division" );
+		for ( final Spot s : graph.vertices() )
+		{
+			final int x = ( int ) s.getDoublePosition( 0 );
+			if ( x == 3 )
+				model.getTagSetModel().getVertexTags().set( s, neuron );
+			else if ( ( x >= 6 && x <= 9 ) || x == 16 )
+				model.getTagSetModel().getVertexTags().set( s, glia );
+		}
+		for ( final Link l : graph.edges() )
+			if ( ( int ) l.getSource( previous ).getDoublePosition( 0 ) % 2 == 0 )
+				model.getTagSetModel().getEdgeTags().set( l, division );
+
+		// Leave gaps in the pools, around tagged objects.
+		for ( final int x : new int[] { 2, 8, 12 } )
+			for ( final Spot s : graph.vertices() )
+				if ( ( int ) s.getDoublePosition( 0 ) == x )
+				{
+					graph.remove( s );
+					break;
+				}
+
+		graph.releaseRef( previous );
+		graph.releaseRef( spot );
+		graph.releaseRef( link );
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		model.saveRaw( project );
+		final Model loaded = new Model();
+		loaded.loadRaw( project );
+
+		assertEquals( model.getTagSetModel().getTagSetStructure().toString(), loaded.getTagSetModel().getTagSetStructure().toString() );
+		assertEquals( model.getGraph().vertices().size(), loaded.getGraph().vertices().size() );
+		assertEquals( model.getGraph().edges().size(), loaded.getGraph().edges().size() );
+		assertEquals( vertexTags( model ), vertexTags( loaded ) );
+		assertEquals( edgeTags( model ), edgeTags( loaded ) );
+		assertTrue( loaded.getTagSetModel().getVertexTags().getTaggedWith( tag( loaded, "Cell type", "astrocyte" ) ).isEmpty() );
+	}
+
+	@Test
+	public void testRoundTripEmptyModel() throws IOException
+	{
+		final Model empty = new Model();
+		empty.saveRaw( project );
+		final Model loaded = new Model();
+		loaded.loadRaw( project );
+		assertTrue( loaded.getTagSetModel().getTagSetStructure().getTagSets().isEmpty() );
+		assertTrue( loaded.getGraph().vertices().isEmpty() );
+	}
+
+	@Test
+	public void testTagBitmapReader() throws IOException
+	{
+		model.saveRaw( project );
+		final Map< String, Integer > counts = new HashMap<>();
+		try (final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( new FileInputStream( project.getRawTagsFile() ) ) ))
+		{
+			final RawTagSetModelIO.TagBitmapReader reader = new RawTagSetModelIO.TagBitmapReader( ois );
+			final TagSetStructure tss = reader.getTagSetStructure();
+			while ( reader.next() )
+			{
+				final String label = label( tss, reader.getTagId() );
+				// Skip the glia block without reading it.
+				if ( !label.equals( "glia" ) )
+					counts.put( ( reader.isVertexTag() ? "vertex " : "edge " ) + label, reader.getFileIds().length );
+			}
+		}
+		assertEquals( Integer.valueOf( 1 ), counts.get( "vertex neuron" ) );
+		assertEquals( Integer.valueOf( 0 ), counts.get( "vertex astrocyte" ) );
+		assertEquals( Integer.valueOf( 0 ), counts.get( "vertex division" ) );
+		assertEquals( Integer.valueOf( 0 ), counts.get( "edge neuron" ) );
+		assertEquals( Integer.valueOf( edgeTags( model ).size() ), counts.get( "edge division" ) );
+		assertFalse( counts.containsKey( "vertex glia" ) );
+	}
+
+	@Test
+	public void testReaderRejectsFormerFormat() throws IOException
+	{
+		// Files in the former format start with the tag set structure.
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream( bytes ))
+		{
+			model.getTagSetModel().getTagSetStructure().saveRaw( oos );
+			oos.writeInt( 0 );
+		}
+		assertRejected( bytes.toByteArray() );
+	}
+
+	@Test
+	public void testReaderRejectsUnsupportedVersions() throws IOException
+	{
+		for ( final int version : new int[] { 0, -1, RawTagSetModelIO.VERSION + 1 } )
+		{
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (final ObjectOutputStream oos = new ObjectOutputStream( bytes ))
+			{
+				oos.writeInt( RawTagSetModelIO.MAGIC );
+				oos.writeInt( version );
+				new TagSetStructure().saveRaw( oos );
+				oos.writeInt( 0 );
+				oos.writeInt( 0 );
+			}
+			assertRejected( bytes.toByteArray() );
+		}
+	}
+
+	@Test
+	public void testReaderRejectsGarbledBlocks() throws IOException
+	{
+		// Block size, then block content.
+		assertRejected( garbledFile( -4, new byte[ 0 ] ) );
+		assertRejected( garbledFile( 100, new byte[ 8 ] ) );
+		assertRejected( garbledFile( 8, new byte[] { 0, 0, 0, 5, 0, 0, 0, 0 } ) );
+		assertRejected( garbledFile( 4, new byte[] { 1, 2, 3, 4 } ) );
+	}
+
+	private static byte[] garbledFile( final int nBytes, final byte[] block ) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream( bytes ))
+		{
+			oos.writeInt( RawTagSetModelIO.MAGIC );
+			oos.writeInt( RawTagSetModelIO.VERSION );
+			final TagSetStructure tss = new TagSetStructure();
+			final Tag tag = tss.createTagSet( "Cell type" ).createTag( "neuron", 0xFF0000 );
+			tss.saveRaw( oos );
+			oos.writeInt( 1 );
+			oos.writeInt( tag.id() );
+			oos.writeInt( nBytes );
+			oos.write( block );
+			oos.writeInt( 0 );
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads all the blocks of the specified file, and checks that an
+	 * {@link IOException} is thrown.
+	 */
+	private static void assertRejected( final byte[] file )
+	{
+		try (final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( file ) ))
+		{
+			final RawTagSetModelIO.TagBitmapReader reader = new RawTagSetModelIO.TagBitmapReader( ois );
+			while ( reader.next() )
+				reader.getFileIds();
+			fail( "Expected the tag file to be rejected." );
+		}
+		catch ( final IOException e )
+		{}
+	}
+
+	private static Tag tag( final Model model, final String tagSetName, final String label )
+	{
+		for ( final TagSet tagSet : model.getTagSetModel().getTagSetStructure().getTagSets() )
+			if ( tagSet.getName().equals( tagSetName ) )
+				for ( final Tag tag : tagSet.getTags() )
+					if ( tag.label().equals( label ) )
+						return tag;
+		throw new IllegalArgumentException( "Unknown tag: " + label );
+	}
+
+	private static String label( final TagSetStructure tss, final int tagId )
+	{
+		for ( final TagSet tagSet : tss.getTagSets() )
+			for ( final Tag tag : tagSet.getTags() )
+				if ( tag.id() == tagId )
+					return tag.label();
+		throw new IllegalArgumentException( "Unknown tag id: " + tagId );
+	}
+
+	/**
+	 * Returns the tag labels of the spots, indexed by spot x position.
+	 */
+	private static Map< Integer, String > vertexTags( final Model model )
+	{
+		final Map< Integer, String > tags = new HashMap<>();
+		for ( final TagSet tagSet : model.getTagSetModel().getTagSetStructure().getTagSets() )
+		{
+			final ObjTagMap< Spot, Tag > map = model.getTagSetModel().getVertexTags().tags( tagSet );
+			for ( final Spot spot : model.getGraph().vertices() )
+			{
+				final Tag tag = map.get( spot );
+				if ( tag != null )
+					tags.put( ( int ) spot.getDoublePosition( 0 ), tagSet.getName() + ":" + tag.label() );
+			}
+		}
+		return tags;
+	}
+
+	/**
+	 * Returns the tag labels of the links, indexed by source spot x position.
+	 */
+	private static Map< Integer, String > edgeTags( final Model model )
+	{
+		final Map< Integer, String > tags = new HashMap<>();
+		final Spot ref = model.getGraph().vertexRef();
+		for ( final TagSet tagSet : model.getTagSetModel().getTagSetStructure().getTagSets() )
+		{
+			final ObjTagMap< Link, Tag > map = model.getTagSetModel().getEdgeTags().tags( tagSet );
+			for ( final Link link : model.getGraph().edges() )
+			{
+				final Tag tag = map.get( link );
+				if ( tag != null )
+					tags.put( ( int ) link.getSource( ref ).getDoublePosition( 0 ), tagSet.getName() + ":" + tag.label() );
+			}
+		}
+		model.getGraph().releaseRef( ref );
+		return tags;
+	}
+}
@@ -0,0 +1,221 @@
+package org.mastodon.revised.trackscheme;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mastodon.revised.trackscheme.LineageTreeLayoutTestUtils.orderedVertices;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.views.context.Context;
+
+import gnu.trove.set.TIntSet;
+
+/**
+ * Checks that {@link ContextLayout} gives the same layout when it updates the
+ * previous layout incrementally as a full context layout.
+ */
+public class ContextLayoutTest
+{
+	/**
+	 * Covers timepoints 1 to 5.
+	 */
+	private static final ScreenTransform TRANSFORM = new ScreenTransform( 0, 100, 1, 4, 800, 600 );
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection;
+
+	private CountingLayout layout;
+
+	private ContextLayout contextLayout;
+
+	/**
+	 * Counts the successful incremental context layouts.
+	 */
+	private static class CountingLayout extends LineageTreeLayout
+	{
+		private int numIncremental;
+
+		public CountingLayout( final TrackSchemeGraph< ?, ? > graph, final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection )
+		{
+			super( graph, selection );
+		}
+
+		@Override
+		boolean layoutContextIncremental( final RefList< TrackSchemeVertex > layoutRoots, final int mark, final TIntSet dirtyGraphRoots )
+		{
+			final boolean incremental = super.layoutContextIncremental( layoutRoots, mark, dirtyGraphRoots );
+			if ( incremental )
+				++numIncremental;
+			return incremental;
+		}
+	}
+
+	/**
+	 * Builds 6 trees, "A" to "F". Each tree has a root, two vertices, and
+	 * divides in a left and a right branch of 4 vertices. For instance, tree
+	 * "A" has vertices "A0", "A1", "A2", "Al3" to "Al6" and "Ar3" to "Ar6",
+	 * where the digit is the timepoint.
+	 */
+	@Before
+	public void setUp()
+	{
+		final Model model = new Model();
+		final ModelGraph modelGraph = model.getGraph();
+		final Spot parent = modelGraph.vertexRef();
+		final Spot spot = modelGraph.vertexRef();
+		final Link link = modelGraph.edgeRef();
+		for ( int k = 0; k < 6; k++ )
+		{
+			final String name = String.valueOf( ( char ) ( 'A' + k ) );
+			for ( int t = 0; t <= 2; t++ )
+			{
+				modelGraph.addVertex( spot ).init( t, new double[] { 0, 0, 0 }, 1 ).setLabel( name + t );
+				if ( t > 0 )
+					modelGraph.addEdge( parent, spot, link ).init();
+				parent.refTo( spot );
+			}
+			final Spot division = modelGraph.vertexRef().refTo( parent );
+			for ( final String side : new String[] { "l", "r" } )
+			{
+				parent.refTo( division );
+				for ( int t = 3; t <= 6; t++ )
+				{
+					modelGraph.addVertex( spot ).init( t, new double[] { 0, 0, 0 }, 1 ).setLabel( name + side + t );
+					modelGraph.addEdge( parent, spot, link ).init();
+					parent.refTo( spot );
+				}
+			}
+			modelGraph.releaseRef( division );
+		}
+		modelGraph.releaseRef( parent );
+		modelGraph.releaseRef( spot );
+		modelGraph.releaseRef( link );
+
+		graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ) );
+		selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		layout = new CountingLayout( graph, selection );
+		contextLayout = new ContextLayout( graph, layout );
+		assertTrue( contextLayout.buildContext( context( l -> l.matches( "[ABC].*" ) ), TRANSFORM, true ) );
+	}
+
+	@After
+	public void tearDown()
+	{
+		layout.close();
+	}
+
+	@Test
+	public void testVerticesEnterContext()
+	{
+		// The end of a branch, whose parents become ghosts, and a new tree.
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "[ABC].*|Dr[56]" ) ) );
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "[ABCE].*|Dr[56]" ) ) );
+	}
+
+	@Test
+	public void testVerticesLeaveContext()
+	{
+		// A branch, the root of a tree, and a whole tree.
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "A.*|B[012r].*|C.*" ) ) );
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "A[2lr].*|B[012r].*|C.*" ) ) );
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "A[2lr].*|C.*" ) ) );
+	}
+
+	@Test
+	public void testVerticesEnterAndLeaveContext()
+	{
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "A.*|Bl.*|C[0-2].*|F.*" ) ) );
+		// Back to the initial context.
+		assertIncrementalLayoutIsFullLayout( context( l -> l.matches( "[ABC].*" ) ) );
+	}
+
+	@Test
+	public void testUnchangedContext()
+	{
+		assertFalse( contextLayout.buildContext( context( l -> l.matches( "[ABC].*" ) ), TRANSFORM, true ) );
+		// Vertices outside of the timepoint range do not change the context.
+		assertFalse( contextLayout.buildContext( context( l -> l.matches( "[ABC].*|D0|Dl6" ) ), TRANSFORM, true ) );
+	}
+
+	/**
+	 * Lays out the specified context, checks that the layout was updated
+	 * incrementally, and compares it to a full context layout.
+	 */
+	private void assertIncrementalLayoutIsFullLayout( final Context< TrackSchemeVertex > context )
+	{
+		final int numIncremental = layout.numIncremental;
+		assertTrue( contextLayout.buildContext( context, TRANSFORM, true ) );
+		assertEquals( "The layout must be updated incrementally.", numIncremental + 1, layout.numIncremental );
+
+		final LineageTreeLayout full = new LineageTreeLayout( graph, selection );
+		new ContextLayout( graph, full ).buildContext( context, TRANSFORM, true );
+		final LayoutAttributes expected = full.getLayoutAttributes();
+		final LayoutAttributes actual = layout.getLayoutAttributes();
+		for ( final TrackSchemeVertex v : graph.vertices() )
+		{
+			final boolean active = expected.getLayoutTimestamp( v ) == full.getCurrentLayoutTimestamp();
+			assertEquals( "Whether " + v.getLabel() + " is laid out", active, actual.getLayoutTimestamp( v ) == layout.getCurrentLayoutTimestamp() );
+			if ( active )
+			{
+				assertEquals( "Layout X of " + v.getLabel(), expected.getLayoutX( v ), actual.getLayoutX( v ), 0 );
+				assertEquals( "Whether " + v.getLabel() + " is a ghost", expected.isGhost( v ), actual.isGhost( v ) );
+			}
+		}
+		assertEquals( full.getCurrentLayoutMinX(), layout.getCurrentLayoutMinX(), 0 );
+		assertEquals( full.getCurrentLayoutMaxX(), layout.getCurrentLayoutMaxX(), 0 );
+		assertEquals( full.getTimepoints(), layout.getTimepoints() );
+		assertArrayEquals( orderedVertices( full ), orderedVertices( layout ) );
+		full.close();
+	}
+
+	/**
+	 * Returns a context that contains the vertices whose label matches the
+	 * specified predicate.
+	 */
+	private Context< TrackSchemeVertex > context( final Predicate< String > inside )
+	{
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		return new Context< TrackSchemeVertex >()
+		{
+			@Override
+			public Lock readLock()
+			{
+				return lock.readLock();
+			}
+
+			@Override
+			public Iterable< TrackSchemeVertex > getInsideVertices( final int timepoint )
+			{
+				final RefList< TrackSchemeVertex > vertices = RefCollections.createRefList( graph.vertices() );
+				for ( final TrackSchemeVertex v : graph.vertices() )
+					if ( v.getTimepoint() == timepoint && inside.test( v.getLabel() ) )
+						vertices.add( v );
+				return vertices;
+			}
+		};
+	}
+}
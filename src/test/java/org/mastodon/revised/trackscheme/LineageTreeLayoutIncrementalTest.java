@@ -0,0 +1,185 @@
+package org.mastodon.revised.trackscheme;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mastodon.revised.trackscheme.LineageTreeLayoutTestUtils.orderedVertices;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraph;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+
+/**
+ * Checks that {@link LineageTreeLayout#layout()} gives the same layout when
+ * it updates the previous layout incrementally as a full layout.
+ */
+public class LineageTreeLayoutIncrementalTest
+{
+	private ModelGraph modelGraph;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection;
+
+	private LineageTreeLayout layout;
+
+	private Spot ref1;
+
+	private Spot ref2;
+
+	private Link eref;
+
+	/**
+	 * Builds 6 trees, "A" to "F". Each tree has a root, two vertices, and
+	 * divides in a left and a right branch of 3 vertices. For instance, tree
+	 * "A" has vertices "A", "A1", "A2", "Al3", "Al4", "Al5", "Ar3", "Ar4",
+	 * "Ar5", where the digit is the timepoint. Tree "F" starts at timepoint 6
+	 * instead of 0.
+	 */
+	@Before
+	public void setUp()
+	{
+		final Model model = new Model();
+		modelGraph = model.getGraph();
+		ref1 = modelGraph.vertexRef();
+		ref2 = modelGraph.vertexRef();
+		eref = modelGraph.edgeRef();
+		for ( int k = 0; k < 6; k++ )
+		{
+			final String name = String.valueOf( ( char ) ( 'A' + k ) );
+			final int t0 = k == 5 ? 6 : 0;
+			addSpot( name, t0, null );
+			addSpot( name + "1", t0 + 1, name );
+			addSpot( name + "2", t0 + 2, name + "1" );
+			for ( final String side : new String[] { "l", "r" } )
+			{
+				String parent = name + "2";
+				for ( int t = 3; t <= 5; t++ )
+				{
+					addSpot( name + side + t, t0 + t, parent );
+					parent = name + side + t;
+				}
+			}
+		}
+
+		graph = new TrackSchemeGraph<>(
+				modelGraph,
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( modelGraph ) );
+		selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( modelGraph, model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		layout = new LineageTreeLayout( graph, selection );
+		layout.layout();
+	}
+
+	@After
+	public void tearDown()
+	{
+		modelGraph.releaseRef( ref1 );
+		modelGraph.releaseRef( ref2 );
+		modelGraph.releaseRef( eref );
+	}
+
+	@Test
+	public void testAddVertices()
+	{
+		// A longer branch, and a new tree.
+		addSpot( "Bl6", 6, "Bl5" );
+		addSpot( "Bl7", 7, "Bl6" );
+		addSpot( "G", 2, null );
+		addSpot( "G1", 3, "G" );
+		assertIncrementalLayoutIsFullLayout();
+	}
+
+	@Test
+	public void testRemoveVertices()
+	{
+		// A leaf, and a vertex that splits its tree in two.
+		modelGraph.remove( spot( "Ar5", ref1 ) );
+		modelGraph.remove( spot( "C1", ref1 ) );
+		assertIncrementalLayoutIsFullLayout();
+	}
+
+	@Test
+	public void testLinkAndUnlink()
+	{
+		// Merge tree "F" into tree "A", and split tree "E".
+		modelGraph.addEdge( spot( "Al5", ref1 ), spot( "F", ref2 ), eref ).init();
+		modelGraph.remove( link( "E2", "Er3" ) );
+		assertIncrementalLayoutIsFullLayout();
+	}
+
+	@Test
+	public void testSuccessiveEdits()
+	{
+		addSpot( "Dr6", 6, "Dr5" );
+		assertIncrementalLayoutIsFullLayout();
+
+		modelGraph.remove( spot( "Dl4", ref1 ) );
+		assertIncrementalLayoutIsFullLayout();
+
+		modelGraph.addEdge( spot( "Dl5", ref1 ), spot( "F", ref2 ), eref ).init();
+		assertIncrementalLayoutIsFullLayout();
+
+		modelGraph.remove( link( "B1", "B2" ) );
+		addSpot( "Br6", 6, "Br5" );
+		assertIncrementalLayoutIsFullLayout();
+
+		// Nothing changed.
+		assertIncrementalLayoutIsFullLayout();
+	}
+
+	/**
+	 * Updates the layout, checks that it was updated incrementally, and
+	 * compares it to a full layout.
+	 */
+	private void assertIncrementalLayoutIsFullLayout()
+	{
+		final int timestamp = layout.getCurrentLayoutTimestamp();
+		layout.layout();
+		assertEquals( "The layout must be updated incrementally.", timestamp, layout.getCurrentLayoutTimestamp() );
+
+		final LineageTreeLayout full = new LineageTreeLayout( graph, selection );
+		full.layout();
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			assertEquals( "Layout X of " + v.getLabel(), full.getLayoutAttributes().getLayoutX( v ), layout.getLayoutAttributes().getLayoutX( v ), 0 );
+		assertEquals( full.getCurrentLayoutMinX(), layout.getCurrentLayoutMinX(), 0 );
+		assertEquals( full.getCurrentLayoutMaxX(), layout.getCurrentLayoutMaxX(), 0 );
+		assertEquals( full.getTimepoints(), layout.getTimepoints() );
+		assertArrayEquals( orderedVertices( full ), orderedVertices( layout ) );
+		full.close();
+	}
+
+	private void addSpot( final String label, final int timepoint, final String parent )
+	{
+		final Spot spot = modelGraph.addVertex( ref1 ).init( timepoint, new double[] { 0, 0, 0 }, 1 );
+		spot.setLabel( label );
+		if ( parent != null )
+			modelGraph.addEdge( spot( parent, ref2 ), spot, eref ).init();
+	}
+
+	private Spot spot( final String label, final Spot ref )
+	{
+		for ( final Spot spot : modelGraph.vertices() )
+			if ( spot.getLabel().equals( label ) )
+				return ref.refTo( spot );
+		throw new IllegalArgumentException( "Unknown spot: " + label );
+	}
+
+	private Link link( final String source, final String target )
+	{
+		for ( final Link link : spot( source, ref1 ).outgoingEdges() )
+			if ( link.getTarget( ref2 ).getLabel().equals( target ) )
+				return eref.refTo( link );
+		throw new IllegalArgumentException( "Unknown link: " + source + " -> " + target );
+	}
+}
@@ -0,0 +1,206 @@
+package org.mastodon.revised.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.collection.RefSet;
+import org.mastodon.graph.revised.CreateLargeModelExample;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import net.imglib2.RealPoint;
+
+/**
+ * Checks the vertex picking and box selection queries of
+ * {@link LineageTreeLayout} against a linear scan of the laid out vertices.
+ */
+public class LineageTreeLayoutPickingTest
+{
+	private static final double[] RATIOS = new double[] { 0.2, 1, 5 };
+
+	private Model model;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private LineageTreeLayout layout;
+
+	private Random random;
+
+	@Before
+	public void setUp()
+	{
+		model = new CreateLargeModelExample().run( 20, 5, 3 );
+		graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ) );
+		final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		layout = new LineageTreeLayout( graph, selection );
+		layout.layout();
+		random = new Random( 1 );
+	}
+
+	@Test
+	public void testClosestActiveVertex()
+	{
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final double x = randomX();
+			final double y = randomY();
+			for ( final double ratio : RATIOS )
+			{
+				final TrackSchemeVertex v = layout.getClosestActiveVertex( new RealPoint( x, y ), ratio, ref );
+				assertNotNull( v );
+				assertEquals( closestSquDist( x, y, ratio, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY ), squDist( x, y, ratio, v ), 0 );
+			}
+		}
+		graph.releaseRef( ref );
+	}
+
+	@Test
+	public void testClosestActiveVertexWithin()
+	{
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final double x1 = randomX();
+			final double y1 = randomY();
+			final double x2 = randomX();
+			final double y2 = randomY();
+			for ( final double ratio : RATIOS )
+			{
+				final double expected = closestSquDist( x2, y2, ratio, Math.min( x1, x2 ), Math.max( x1, x2 ), Math.min( y1, y2 ), Math.max( y1, y2 ) );
+				final TrackSchemeVertex v = layout.getClosestActiveVertexWithin( x1, y1, x2, y2, ratio, ref );
+				if ( expected == Double.POSITIVE_INFINITY )
+					assertNull( v );
+				else
+					assertEquals( expected, squDist( x2, y2, ratio, assertNotNullAndGet( v ) ), 0 );
+			}
+		}
+		graph.releaseRef( ref );
+	}
+
+	@Test
+	public void testActiveVerticesWithin()
+	{
+		for ( int i = 0; i < 1000; i++ )
+		{
+			final double x1 = randomX();
+			final double y1 = randomY();
+			final double x2 = randomX();
+			final double y2 = randomY();
+			final TIntSet expected = verticesWithin( Math.min( x1, x2 ), Math.max( x1, x2 ), Math.min( y1, y2 ), Math.max( y1, y2 ) );
+			final RefSet< TrackSchemeVertex > vertices = layout.getActiveVerticesWithin( x1, y1, x2, y2 );
+			final TIntSet actual = new TIntHashSet();
+			for ( final TrackSchemeVertex v : vertices )
+				actual.add( v.getInternalPoolIndex() );
+			assertEquals( expected, actual );
+		}
+	}
+
+	@Test
+	public void testPickingAfterRemoval()
+	{
+		final TrackSchemeVertex ref = graph.vertexRef();
+		for ( int i = 0; i < 100; i++ )
+		{
+			// Remove the picked vertex, and pick again without a new layout.
+			final RealPoint pos = new RealPoint( randomX(), randomY() );
+			final TrackSchemeVertex v = layout.getClosestActiveVertex( pos, 1, ref );
+			final int removed = v.getInternalPoolIndex();
+			model.getGraph().remove( graph.getVertexMap().getLeft( v ) );
+
+			final TrackSchemeVertex w = layout.getClosestActiveVertex( pos, 1, ref );
+			assertNotEquals( "Picked a removed vertex.", removed, w.getInternalPoolIndex() );
+			final double x = pos.getDoublePosition( 0 );
+			final double y = pos.getDoublePosition( 1 );
+			assertEquals( closestSquDist( x, y, 1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY ), squDist( x, y, 1, w ), 0 );
+		}
+		graph.releaseRef( ref );
+	}
+
+	private static TrackSchemeVertex assertNotNullAndGet( final TrackSchemeVertex v )
+	{
+		assertNotNull( v );
+		return v;
+	}
+
+	private double randomX()
+	{
+		return layout.getCurrentLayoutMinX() - 5 + random.nextDouble() * ( layout.getCurrentLayoutMaxX() - layout.getCurrentLayoutMinX() + 10 );
+	}
+
+	private double randomY()
+	{
+		final TIntArrayList timepoints = layout.getTimepoints();
+		final int min = timepoints.get( 0 );
+		final int max = timepoints.get( timepoints.size() - 1 );
+		return min - 2 + random.nextDouble() * ( max - min + 4 );
+	}
+
+	private double squDist( final double x, final double y, final double ratio, final TrackSchemeVertex v )
+	{
+		final double dx = x - layout.getLayoutAttributes().getLayoutX( v );
+		final double dy = ( y - v.getTimepoint() ) * ratio;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Returns the minimal squared distance to {@code (x, y)} of the laid out
+	 * vertices in the specified rectangle, or infinity if there are none.
+	 */
+	private double closestSquDist( final double x, final double y, final double ratio, final double minX, final double maxX, final double minY, final double maxY )
+	{
+		double best = Double.POSITIVE_INFINITY;
+		final TIntArrayList timepoints = layout.getTimepoints();
+		for ( int i = 0; i < timepoints.size(); i++ )
+			for ( final TrackSchemeVertex v : layout.getTimepointToOrderedVertices().get( timepoints.get( i ) ) )
+				if ( isWithin( v, minX, maxX, minY, maxY ) )
+					best = Math.min( best, squDist( x, y, ratio, v ) );
+		return best;
+	}
+
+	/**
+	 * Returns the internal pool indices of the laid out vertices in the
+	 * specified rectangle.
+	 */
+	private TIntSet verticesWithin( final double minX, final double maxX, final double minY, final double maxY )
+	{
+		final TIntSet ids = new TIntHashSet();
+		final TIntArrayList timepoints = layout.getTimepoints();
+		for ( int i = 0; i < timepoints.size(); i++ )
+			for ( final TrackSchemeVertex v : layout.getTimepointToOrderedVertices().get( timepoints.get( i ) ) )
+				if ( isWithin( v, minX, maxX, minY, maxY ) )
+					ids.add( v.getInternalPoolIndex() );
+		return ids;
+	}
+
+	/**
+	 * As in {@link LineageTreeLayout}, X bounds exclude the minimum and
+	 * include the maximum.
+	 */
+	private boolean isWithin( final TrackSchemeVertex v, final double minX, final double maxX, final double minY, final double maxY )
+	{
+		final double x = layout.getLayoutAttributes().getLayoutX( v );
+		final int t = v.getTimepoint();
+		return x > minX && x <= maxX && t >= minY && t <= maxY;
+	}
+}
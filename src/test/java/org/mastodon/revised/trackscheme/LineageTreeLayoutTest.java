@@ -0,0 +1,73 @@
+package org.mastodon.revised.trackscheme;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mastodon.revised.trackscheme.LineageTreeLayoutTestUtils.orderedVertices;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.collection.RefList;
+import org.mastodon.graph.revised.CreateLargeModelExample;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+
+public class LineageTreeLayoutTest
+{
+	private Model model;
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	private LineageTreeLayout layout;
+
+	@Before
+	public void setUp()
+	{
+		// 100 trees of 763 spots, above the parallel layout threshold.
+		model = new CreateLargeModelExample().run( 100, 8, 4 );
+		graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ) );
+		final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		layout = new LineageTreeLayout( graph, selection );
+	}
+
+	@Test
+	public void testParallelLayoutMatchesSequential()
+	{
+		assertTrue( "The graph must be large enough to be laid out in parallel.", graph.vertices().size() >= 50000 );
+		final RefList< TrackSchemeVertex > roots = LexicographicalVertexOrder.sort( graph, graph.getRoots() );
+
+		layout.setParallelLayout( false );
+		layout.layout( roots, -1 );
+		final double[] expectedX = layoutX();
+		final double expectedMaxX = layout.getCurrentLayoutMaxX();
+		final int[][] expectedOrder = orderedVertices( layout );
+
+		layout.setParallelLayout( true );
+		layout.layout( roots, -1 );
+		assertArrayEquals( expectedX, layoutX(), 0 );
+		assertEquals( expectedMaxX, layout.getCurrentLayoutMaxX(), 0 );
+		assertArrayEquals( expectedOrder, orderedVertices( layout ) );
+	}
+
+	/**
+	 * Returns the layout X of each vertex, indexed by pool index.
+	 */
+	private double[] layoutX()
+	{
+		final double[] xs = new double[ graph.vertices().size() ];
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			xs[ v.getInternalPoolIndex() ] = layout.getLayoutAttributes().getLayoutX( v );
+		return xs;
+	}
+}
@@ -0,0 +1,28 @@
+package org.mastodon.revised.trackscheme;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Helpers shared by the {@link LineageTreeLayout} tests.
+ */
+final class LineageTreeLayoutTestUtils
+{
+	/**
+	 * Returns the pool indices of the ordered vertices of each timepoint.
+	 *
+	 * @param layout
+	 *            the layout.
+	 * @return a new array, with one row per laid out timepoint.
+	 */
+	static int[][] orderedVertices( final LineageTreeLayout layout )
+	{
+		final TIntArrayList timepoints = layout.getTimepoints();
+		final int[][] order = new int[ timepoints.size() ][];
+		for ( int i = 0; i < timepoints.size(); i++ )
+			order[ i ] = layout.getTimepointToOrderedVertices().get( timepoints.get( i ) ).getIndexCollection().toArray();
+		return order;
+	}
+
+	private LineageTreeLayoutTestUtils()
+	{}
+}
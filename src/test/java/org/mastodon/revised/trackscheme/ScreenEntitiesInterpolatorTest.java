@@ -0,0 +1,305 @@
+package org.mastodon.revised.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.APPEAR;
+import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.DESELECTING;
+import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.DISAPPEAR;
+import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.NONE;
+import static org.mastodon.revised.trackscheme.ScreenVertex.Transition.SELECTING;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mastodon.adapter.SelectionModelAdapter;
+import org.mastodon.graph.revised.CreateLargeModelExample;
+import org.mastodon.model.DefaultSelectionModel;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.revised.model.mamut.Link;
+import org.mastodon.revised.model.mamut.Model;
+import org.mastodon.revised.model.mamut.ModelGraphTrackSchemeProperties;
+import org.mastodon.revised.model.mamut.Spot;
+import org.mastodon.revised.ui.coloring.DefaultGraphColorGenerator;
+
+/**
+ * Checks that {@link ScreenEntitiesInterpolator} gives the same entities as
+ * the former implementation, that matched entities with hash maps for each
+ * transition.
+ */
+public class ScreenEntitiesInterpolatorTest
+{
+	private static final double[] RATIOS = new double[] { 0, 0.1, 0.5, 0.9, 1 };
+
+	private TrackSchemeGraph< Spot, Link > graph;
+
+	/**
+	 * Entities of a pan, with selection changes in between.
+	 */
+	private ScreenEntities start;
+
+	private ScreenEntities end;
+
+	@Before
+	public void setUp()
+	{
+		final Model model = new CreateLargeModelExample().run( 20, 4, 3 );
+		graph = new TrackSchemeGraph<>(
+				model.getGraph(),
+				model.getGraphIdBimap(),
+				new ModelGraphTrackSchemeProperties( model.getGraph() ) );
+		final SelectionModel< TrackSchemeVertex, TrackSchemeEdge > selection = new SelectionModelAdapter<>(
+				new DefaultSelectionModel<>( model.getGraph(), model.getGraphIdBimap() ),
+				graph.getVertexMap(),
+				graph.getEdgeMap() );
+		final LineageTreeLayout layout = new LineageTreeLayout( graph, selection );
+		layout.layout();
+		final DefaultGraphColorGenerator< TrackSchemeVertex, TrackSchemeEdge > colorGenerator = new DefaultGraphColorGenerator<>();
+
+		final double w = Math.min( 40, layout.getCurrentLayoutMaxX() );
+		int i = 0;
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			selection.setSelected( v, i++ % 3 == 0 );
+		for ( final TrackSchemeEdge e : graph.edges() )
+			selection.setSelected( e, i++ % 3 == 0 );
+		start = new ScreenEntities( graph );
+		layout.cropAndScale( new ScreenTransform( 0, w, 0, 20, 800, 600 ), start, 0, 0, colorGenerator );
+
+		for ( final TrackSchemeVertex v : graph.vertices() )
+			selection.setSelected( v, i++ % 2 == 0 );
+		for ( final TrackSchemeEdge e : graph.edges() )
+			selection.setSelected( e, i++ % 2 == 0 );
+		end = new ScreenEntities( graph );
+		layout.cropAndScale( new ScreenTransform( w / 4, w / 4 + w, 3, 23, 800, 600 ), end, 0, 0, colorGenerator );
+	}
+
+	@Test
+	public void testInterpolation()
+	{
+		final List< String > all = new ArrayList<>();
+		for ( final double ratio : RATIOS )
+			all.addAll( assertSameAsReference( new ScreenEntitiesInterpolator( start, end ), start, end, null, ratio ) );
+
+		// All transitions are covered.
+		assertTrue( all.stream().anyMatch( s -> s.contains( " " + APPEAR + " " ) ) );
+		assertTrue( all.stream().anyMatch( s -> s.contains( " " + DISAPPEAR + " " ) ) );
+		assertTrue( all.stream().anyMatch( s -> s.contains( " " + SELECTING + " " ) ) );
+		assertTrue( all.stream().anyMatch( s -> s.contains( " " + DESELECTING + " " ) ) );
+		assertTrue( all.stream().anyMatch( s -> s.contains( " " + NONE + " " ) ) );
+	}
+
+	@Test
+	public void testIncrementalTransform()
+	{
+		for ( final ScreenTransform incremental : new ScreenTransform[] {
+				ScreenEntitiesInterpolator.getIncrementalY( start, end ),
+				ScreenEntitiesInterpolator.getIncrementalXY( start, end ) } )
+			for ( final double ratio : RATIOS )
+				assertSameAsReference( new ScreenEntitiesInterpolator( start, end, incremental ), start, end, incremental, ratio );
+	}
+
+	@Test
+	public void testReuse()
+	{
+		// Transitions of different sizes, so that stale buffer contents would
+		// show.
+		final ScreenEntities empty = new ScreenEntities( graph );
+		empty.screenTransform().set( end.screenTransform() );
+		final ScreenEntities[][] transitions = new ScreenEntities[][] {
+				{ start, end },
+				{ end, empty },
+				{ empty, start },
+				{ end, start },
+				{ start, end } };
+
+		final ScreenEntitiesInterpolator interpolator = new ScreenEntitiesInterpolator();
+		for ( final ScreenEntities[] transition : transitions )
+		{
+			final ScreenTransform incremental = ScreenEntitiesInterpolator.getIncrementalY( transition[ 0 ], transition[ 1 ] );
+			interpolator.set( transition[ 0 ], transition[ 1 ], incremental );
+			for ( final double ratio : RATIOS )
+				assertSameAsReference( interpolator, transition[ 0 ], transition[ 1 ], incremental, ratio );
+		}
+	}
+
+	/**
+	 * Interpolates with the specified interpolator, set to the specified
+	 * entities and transform, and with the reference implementation, and
+	 * checks that the entities are the same.
+	 *
+	 * @return the description of the interpolated entities.
+	 */
+	private List< String > assertSameAsReference(
+			final ScreenEntitiesInterpolator interpolator,
+			final ScreenEntities start,
+			final ScreenEntities end,
+			final ScreenTransform incrementalStartTransform,
+			final double ratio )
+	{
+		final ScreenEntities expected = new ScreenEntities( graph );
+		interpolateReference( start, end, incrementalStartTransform, ratio, expected );
+		final List< String > expectedDescription = describe( expected );
+
+		final ScreenEntities actual = new ScreenEntities( graph );
+		interpolator.interpolate( ratio, actual );
+		final List< String > actualDescription = describe( actual );
+
+		assertEquals( "Ratio " + ratio, expectedDescription, actualDescription );
+		return actualDescription;
+	}
+
+	private static List< String > describe( final ScreenEntities entities )
+	{
+		final List< String > description = new ArrayList<>();
+		for ( final ScreenVertex v : entities.getVertices() )
+			description.add( "vertex " + v.getTrackSchemeVertexId()
+					+ " x=" + v.getX()
+					+ " y=" + v.getY()
+					+ " dist=" + v.getVertexDist()
+					+ " selected=" + v.isSelected()
+					+ " ghost=" + v.isGhost()
+					+ " " + v.getTransition()
+					+ " ratio=" + v.getInterpolationCompletionRatio()
+					+ " color=" + v.getColor() );
+		for ( final ScreenEdge e : entities.getEdges() )
+			description.add( "edge " + e.getTrackSchemeEdgeId()
+					+ " " + e.getSourceScreenVertexIndex() + "->" + e.getTargetScreenVertexIndex()
+					+ " selected=" + e.isSelected()
+					+ " " + e.getTransition()
+					+ " ratio=" + e.getInterpolationCompletionRatio()
+					+ " color=" + e.getColor() );
+		for ( final ScreenVertexRange r : entities.getRanges() )
+			description.add( "range " + r.getMinX() + " " + r.getMaxX() + " " + r.getMinY() + " " + r.getMaxY() );
+		for ( final ScreenColumn c : entities.getColumns() )
+			description.add( "column " + c.label + " " + c.xLeft + " " + c.width );
+		final ScreenTransform t = entities.screenTransform();
+		description.add( "transform " + t.getMinX() + " " + t.getMaxX() + " " + t.getMinY() + " " + t.getMaxY() + " " + t.getScreenWidth() + " " + t.getScreenHeight() );
+		return description;
+	}
+
+	/**
+	 * The former interpolation, that matches entities by id with hash maps.
+	 */
+	private static void interpolateReference(
+			final ScreenEntities start,
+			final ScreenEntities end,
+			final ScreenTransform incrementalStartTransform,
+			final double currentRatio,
+			final ScreenEntities current )
+	{
+		final Map< Integer, Integer > idToStartVertex = new HashMap<>();
+		for ( final ScreenVertex v : start.getVertices() )
+			idToStartVertex.put( v.getTrackSchemeVertexId(), v.getInternalPoolIndex() );
+		final Map< Integer, Integer > idToEndVertex = new HashMap<>();
+		for ( final ScreenVertex v : end.getVertices() )
+			idToEndVertex.put( v.getTrackSchemeVertexId(), v.getInternalPoolIndex() );
+		final Map< Integer, Integer > idToStartEdge = new HashMap<>();
+		for ( final ScreenEdge e : start.getEdges() )
+			idToStartEdge.put( e.getTrackSchemeEdgeId(), e.getInternalPoolIndex() );
+
+		final double ratio = Math.sin( Math.PI * Math.sin( Math.PI * currentRatio / 2 ) / 2 );
+
+		final ScreenVertex vCurrent = current.getVertexPool().createRef();
+		final ScreenVertex vEnd = end.getVertexPool().createRef();
+		for ( final ScreenVertex v : start.getVertices() )
+		{
+			final int vId = v.getTrackSchemeVertexId();
+			if ( vId < 0 )
+				continue;
+
+			current.getVertices().add( current.getVertexPool().create( vCurrent ) );
+			double startX = v.getX();
+			double startY = v.getY();
+			if ( incrementalStartTransform != null )
+			{
+				startX = incrementalStartTransform.layoutToScreenX( startX );
+				startY = incrementalStartTransform.layoutToScreenY( startY );
+			}
+			final Integer endIndex = idToEndVertex.get( vId );
+			if ( endIndex != null )
+			{
+				end.getVertexPool().getObject( endIndex, vEnd );
+				final boolean endSelected = vEnd.isSelected();
+				vCurrent.setTrackSchemeVertexId( vId );
+				vCurrent.setSelected( endSelected );
+				vCurrent.setGhost( vEnd.isGhost() );
+				vCurrent.setVertexDist( vEnd.getVertexDist() );
+				vCurrent.setX( ratio * vEnd.getX() + ( 1 - ratio ) * startX );
+				vCurrent.setY( ratio * vEnd.getY() + ( 1 - ratio ) * startY );
+				vCurrent.setTransition( v.isSelected() == endSelected ? NONE : ( endSelected ? SELECTING : DESELECTING ) );
+				vCurrent.setColor( vEnd.getColor() );
+				vCurrent.setInterpolationCompletionRatio( ratio );
+				vEnd.setInterpolatedScreenVertexIndex( vCurrent.getInternalPoolIndex() );
+			}
+			else
+			{
+				vCurrent.setTrackSchemeVertexId( -1 );
+				vCurrent.setSelected( v.isSelected() );
+				vCurrent.setGhost( v.isGhost() );
+				vCurrent.setVertexDist( v.getVertexDist() );
+				vCurrent.setX( startX );
+				vCurrent.setY( startY );
+				vCurrent.setTransition( DISAPPEAR );
+				vCurrent.setInterpolationCompletionRatio( ratio );
+				vCurrent.setColor( v.getColor() );
+			}
+		}
+		for ( final ScreenVertex v : end.getVertices() )
+		{
+			if ( !idToStartVertex.containsKey( v.getTrackSchemeVertexId() ) )
+			{
+				current.getVertices().add( current.getVertexPool().create( vCurrent ) );
+				vCurrent.setTrackSchemeVertexId( v.getTrackSchemeVertexId() );
+				vCurrent.setSelected( v.isSelected() );
+				vCurrent.setGhost( v.isGhost() );
+				vCurrent.setVertexDist( v.getVertexDist() );
+				vCurrent.setX( v.getX() );
+				vCurrent.setY( v.getY() );
+				vCurrent.setTransition( APPEAR );
+				vCurrent.setInterpolationCompletionRatio( ratio );
+				vCurrent.setColor( v.getColor() );
+				v.setInterpolatedScreenVertexIndex( vCurrent.getInternalPoolIndex() );
+			}
+		}
+
+		final ScreenEdge eCurrent = current.getEdgePool().createRef();
+		final ScreenEdge eStart = start.getEdgePool().createRef();
+		for ( final ScreenEdge e : end.getEdges() )
+		{
+			final int sourceIndex = end.getVertices().get( e.getSourceScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
+			final int targetIndex = end.getVertices().get( e.getTargetScreenVertexIndex(), vEnd ).getInterpolatedScreenVertexIndex();
+			final boolean endSelected = e.isSelected();
+			current.getEdges().add( current.getEdgePool().create( eCurrent ).init(
+					e.getTrackSchemeEdgeId(),
+					sourceIndex,
+					targetIndex,
+					endSelected,
+					e.getColor() ) );
+			final Integer startIndex = idToStartEdge.get( e.getTrackSchemeEdgeId() );
+			if ( startIndex != null && endSelected != start.getEdgePool().getObject( startIndex, eStart ).isSelected() )
+			{
+				eCurrent.setTransition( endSelected ? SELECTING : DESELECTING );
+				eCurrent.setInterpolationCompletionRatio( ratio );
+			}
+		}
+
+		final ScreenVertexRange rCurrent = current.getRangePool().createRef();
+		for ( final ScreenVertexRange r : end.getRanges() )
+			current.getRanges().add( current.getRangePool().create( rCurrent ).cloneFrom( r ) );
+		current.getColumns().addAll( end.getColumns() );
+
+		ScreenTransform startTransform = start.screenTransform();
+		if ( incrementalStartTransform != null )
+			startTransform = incrementalStartTransform.concatenate( start.screenTransform() );
+		current.screenTransform().interpolate( startTransform, end.screenTransform(), ratio );
+
+		current.getVertexPool().releaseRef( vCurrent );
+		end.getVertexPool().releaseRef( vEnd );
+		current.getEdgePool().releaseRef( eCurrent );
+		start.getEdgePool().releaseRef( eStart );
+		current.getRangePool().releaseRef( rCurrent );
+	}
+}